@@ -1,21 +1,137 @@
 package com.dp.bigdata.taurus.agent;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.dp.bigdata.taurus.agent.exec.AttemptProcess;
+import com.dp.bigdata.taurus.agent.exec.Executor;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.common.utils.ClassLoaderUtils;
 import com.dp.bigdata.taurus.zookeeper.common.utils.IPUtils;
 
 
 public class AgentServerHelper {
-	
+
+	private static final Log LOG = LogFactory.getLog(AgentServerHelper.class);
+
+	private static final String MEMINFO = "/proc/meminfo";
+
+	private static final String CONF = "agentConf.properties";
+
 	public static String getLocalIp(){
 		return IPUtils.getFirstNoLoopbackIP4Address();
 	}
-	
-	public static ExecutorService createThreadPool(int corePoolSize, int maxPoolSize){
-		return new ThreadPoolExecutor(corePoolSize, maxPoolSize, 1L,TimeUnit.SECONDS,
-				new LinkedBlockingQueue<Runnable>());
+
+	/**
+	 * create a pool of the given number of threads. A ThreadPoolExecutor only starts threads beyond its core size
+	 * when the queue is full, so all the threads are core threads; idle threads exit after a minute.
+	 * 
+	 * @param poolSize number of threads
+	 * @param queueSize number of tasks which may wait for a thread, the tasks beyond it are rejected with
+	 *        RejectedExecutionException; 0 for an unbounded queue
+	 */
+	public static ExecutorService createThreadPool(int poolSize, int queueSize){
+		BlockingQueue<Runnable> queue;
+		if(queueSize > 0){
+			queue = new ArrayBlockingQueue<Runnable>(queueSize);
+		} else{
+			queue = new LinkedBlockingQueue<Runnable>();
+		}
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, queue);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * read agentConf.properties, it is empty if the file cannot be read.
+	 */
+	public static Properties getAgentConf(){
+		Properties props = new Properties();
+		try {
+			InputStream in = ClassLoaderUtils.getDefaultClassLoader().getResourceAsStream(CONF);
+			if(in != null){
+				props.load(in);
+				in.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("Fail to read " + CONF, e);
+		}
+		return props;
+	}
+
+	/**
+	 * collect the resources of this machine and the attempts of this agent.
+	 * The values which cannot be read are left 0.
+	 */
+	public static HeartbeatInfo createHeartbeat(Executor executor){
+		HeartbeatInfo info = new HeartbeatInfo();
+		info.setTime(new Date());
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		info.setProcessors(os.getAvailableProcessors());
+		info.setLoadAverage(Math.max(os.getSystemLoadAverage(), 0));
+		readMemory(info);
+		info.setFreeDiskSpace(new File(AgentEnvValue.getJobPath()).getUsableSpace());
+		info.setSlots(ScheduleUtility.getExecuteSlots());
+		info.setRunningAttempts(ScheduleUtility.getRunningAttempts());
+		info.setQueuedAttempts(ScheduleUtility.getQueuedAttempts());
+		info.setQueueWaitTime(ScheduleUtility.getAndResetAverageWaitTime());
+		info.setRejectedAttempts(ScheduleUtility.getRejectedAttempts());
+		for(AttemptProcess process : executor.getRunningProcesses()){
+			info.getRunningAttemptIDs().add(process.getAttemptID());
+		}
+		return info;
+	}
+
+	/*
+	 * free memory counts the page cache too, as it is given back on demand
+	 */
+	private static void readMemory(HeartbeatInfo info){
+		File file = new File(MEMINFO);
+		if(!file.exists()){
+			return;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file));
+			long free = 0;
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.startsWith("MemTotal:")){
+					info.setTotalMemory(parseKB(line));
+				} else if(line.startsWith("MemFree:") || line.startsWith("Buffers:") || line.startsWith("Cached:")){
+					free += parseKB(line);
+				}
+			}
+			info.setFreeMemory(free);
+		} catch (IOException e) {
+			LOG.warn("Fail to read " + MEMINFO, e);
+		} finally {
+			if(reader != null){
+				try {
+					reader.close();
+				} catch (IOException e) { /*do nothing*/ }
+			}
+		}
+	}
+
+	private static long parseKB(String line){
+		String[] fields = line.trim().split("\\s+");
+		return fields.length < 2 ? 0 : Long.parseLong(fields[1]) * 1024;
 	}
 }
@@ -23,6 +23,8 @@ public class AgentServerModule extends DeploymentInfoChannelModule{
 	private static final String CONF = "agentConf.properties";
 	
 	private static final String KEY_CHECK_INTERVALS = "checkIntervals";
+	
+	private static final String KEY_HEARTBEAT_INTERVALS = "heartbeatIntervals";
 
 	@Override
 	protected void configureOthers() {
@@ -52,7 +54,8 @@ public class AgentServerModule extends DeploymentInfoChannelModule{
 				props.load(in);
 				in.close();
 				int opTimeout = Integer.parseInt(props.getProperty(KEY_CHECK_INTERVALS));
-				return new TaurusAgentServer(deployer,schedule, exec, opTimeout);
+				int heartbeatInterval = Integer.parseInt(props.getProperty(KEY_HEARTBEAT_INTERVALS, "0"));
+				return new TaurusAgentServer(deployer,schedule, exec, opTimeout, heartbeatInterval);
 			} catch (Exception e) {
 				LOG.error(e.getMessage(),e);
 				return null;
@@ -0,0 +1,392 @@
+package com.dp.bigdata.taurus.agent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * AttemptLogServer serves the logs of the attempts on this agent over HTTP:
+ *
+ * <pre>
+ * GET /log/{taskID}/{attemptID}?offset=&length=   bytes [offset, offset + length) of the log
+ * GET /log/{taskID}/{attemptID}?tail=             the last bytes of the log
+ * GET /log/{taskID}/{attemptID}?follow=true       the log from the offset, then the new output as it is written
+ * </pre>
+ *
+ * A <code>Range: bytes=</code> header is honored as well. The file is sent with FileChannel.transferTo, so even
+ * big logs are never read into the memory. Following goes on in the new log when the log is rotated, and ends when
+ * the log has not grown for FOLLOW_IDLE_TIME milliseconds, after FOLLOW_MAX_TIME milliseconds, or when the client
+ * goes away; only MAX_FOLLOWERS of the workers follow logs at the same time, so the others are left for the reads. A
+ * client which does not send its request within the header timeout is dropped.
+ * <p>
+ * The server listens on the given address, all the addresses if there is none, and only serves the allowed hosts if
+ * they are given.
+ */
+public class AttemptLogServer implements Runnable{
+
+	private static final Log LOG = LogFactory.getLog(AttemptLogServer.class);
+
+	public static final int DEFAULT_PORT = 8183;
+	private static final int MAX_HEADER_SIZE = 8 * 1024;
+	private static final int WORKER_THREADS = 4;
+	private static final int WORKER_QUEUE_SIZE = 16;
+	private static final long FOLLOW_POLL_TIME = 1000;
+	private static final long FOLLOW_IDLE_TIME = 60 * 1000;
+	private static final long FOLLOW_MAX_TIME = 30 * 60 * 1000;
+	private static final int MAX_FOLLOWERS = 2;
+	public static final int DEFAULT_HEADER_TIMEOUT = 10 * 1000;
+	private static final Pattern PATH = Pattern.compile("/log/([\\w\\-\\.]+)/([\\w\\-\\.]+)");
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+	private final int port;
+	private final InetAddress bindAddress;
+	private final String jobPath;
+	private final Semaphore followers = new Semaphore(MAX_FOLLOWERS);
+	private Set<String> allowedHosts = Collections.emptySet();
+	private int headerTimeout = DEFAULT_HEADER_TIMEOUT;
+	private ServerSocketChannel server;
+	private ExecutorService workers;
+
+	public AttemptLogServer(int port, String jobPath){
+		this(port, null, jobPath);
+	}
+
+	/**
+	 * @param bindAddress the address to listen on, null for all the addresses
+	 */
+	public AttemptLogServer(int port, InetAddress bindAddress, String jobPath){
+		this.port = port;
+		this.bindAddress = bindAddress;
+		this.jobPath = jobPath;
+	}
+
+	public void start() throws IOException{
+		server = ServerSocketChannel.open();
+		server.socket().setReuseAddress(true);
+		server.socket().bind(new InetSocketAddress(bindAddress, port));
+		workers = AgentServerHelper.createThreadPool(WORKER_THREADS, WORKER_QUEUE_SIZE);
+		Thread t = new Thread(this, "AttemptLogServer");
+		t.setDaemon(true);
+		t.start();
+		LOG.info("Attempt logs are served on " + server.socket().getLocalSocketAddress());
+	}
+
+	public void stop(){
+		try{
+			server.close();
+		} catch(IOException e){ /*do nothing*/ }
+		workers.shutdownNow();
+	}
+
+	/**
+	 * the port the server listens on, the actual one if it was started on port 0
+	 */
+	public int getPort(){
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * only the given IPs are served, an empty set serves every host
+	 */
+	public void setAllowedHosts(Set<String> allowedHosts){
+		this.allowedHosts = allowedHosts;
+	}
+
+	public void setHeaderTimeout(int headerTimeout){
+		this.headerTimeout = headerTimeout;
+	}
+
+	@Override
+	public void run(){
+		while(server.isOpen()){
+			final SocketChannel channel;
+			try{
+				channel = server.accept();
+			} catch(IOException e){
+				if(server.isOpen()){
+					LOG.error("Fail to accept the log request", e);
+				}
+				continue;
+			}
+			try{
+				workers.execute(new Runnable() {
+					public void run() {
+						serve(channel);
+					}
+				});
+			} catch(RejectedExecutionException e){
+				try{
+					writeHeader(channel, "503 Service Unavailable", -1, null);
+				} catch(IOException ioe){ /*do nothing*/ }
+				close(channel);
+			}
+		}
+	}
+
+	private boolean isAllowed(SocketChannel channel){
+		if(allowedHosts.isEmpty()){
+			return true;
+		}
+		InetAddress address = channel.socket().getInetAddress();
+		return address != null && allowedHosts.contains(address.getHostAddress());
+	}
+
+	private void serve(SocketChannel channel){
+		try{
+			// the timeout only applies to the stream of the socket, not to the reads of the channel
+			channel.socket().setSoTimeout(headerTimeout);
+			String header = readHeader(channel.socket().getInputStream());
+			if(header == null){
+				writeHeader(channel, "400 Bad Request", -1, null);
+				return;
+			}
+			// answered after the request is read, a close with unread data would reset the connection
+			if(!isAllowed(channel)){
+				writeHeader(channel, "403 Forbidden", -1, null);
+				return;
+			}
+			String[] lines = header.split("\r\n");
+			String[] requestLine = lines[0].split(" ");
+			if(requestLine.length < 2 || !requestLine[0].equals("GET")){
+				writeHeader(channel, "405 Method Not Allowed", -1, null);
+				return;
+			}
+			String uri = requestLine[1];
+			int index = uri.indexOf('?');
+			Matcher matcher = PATH.matcher(index < 0 ? uri : uri.substring(0, index));
+			if(!matcher.matches() || matcher.group(1).startsWith(".") || matcher.group(2).startsWith(".")){
+				writeHeader(channel, "404 Not Found", -1, null);
+				return;
+			}
+			File file = new File(jobPath + '/' + matcher.group(1) + "/logs/" + matcher.group(2));
+			if(!file.isFile()){
+				writeHeader(channel, "404 Not Found", -1, null);
+				return;
+			}
+			Map<String, String> params = parseQuery(index < 0 ? "" : uri.substring(index + 1));
+			for(int i = 1; i < lines.length; i++){
+				if(lines[i].regionMatches(true, 0, "Range:", 0, 6)){
+					params.put("range", lines[i].substring(6).trim());
+				}
+			}
+			send(channel, file, params);
+		} catch(IOException e){
+			// the client has gone away
+			LOG.debug("Fail to serve the log request", e);
+		} catch(RuntimeException e){
+			LOG.error("Fail to serve the log request", e);
+		} finally{
+			close(channel);
+		}
+	}
+
+	private void send(SocketChannel channel, File file, Map<String, String> params) throws IOException{
+		FileInputStream in = new FileInputStream(file);
+		try{
+			FileChannel log = in.getChannel();
+			long size = log.size();
+			long start = 0;
+			long end = size;
+			boolean isPartial = false;
+			if(params.containsKey("range")){
+				Matcher matcher = RANGE.matcher(params.get("range"));
+				if(!matcher.matches() || (matcher.group(1).length() == 0 && matcher.group(2).length() == 0)){
+					writeHeader(channel, "416 Requested Range Not Satisfiable", -1, "bytes */" + size);
+					return;
+				}
+				if(matcher.group(1).length() == 0){
+					start = size - Long.parseLong(matcher.group(2));
+				} else{
+					start = Long.parseLong(matcher.group(1));
+					if(matcher.group(2).length() > 0){
+						end = Long.parseLong(matcher.group(2)) + 1;
+					}
+				}
+				isPartial = true;
+			} else if(params.containsKey("tail")){
+				start = size - parseLong(params.get("tail"));
+				isPartial = true;
+			} else if(params.containsKey("offset")){
+				start = parseLong(params.get("offset"));
+				if(params.containsKey("length")){
+					end = start + parseLong(params.get("length"));
+				}
+				isPartial = true;
+			}
+			start = Math.max(start, 0);
+			end = Math.min(end, size);
+			if("true".equals(params.get("follow"))){
+				if(!followers.tryAcquire()){
+					writeHeader(channel, "503 Service Unavailable", -1, null);
+					return;
+				}
+				try{
+					writeHeader(channel, "200 OK", -1, null);
+					follow(channel, file, log, Math.min(start, size));
+				} finally{
+					followers.release();
+				}
+				return;
+			}
+			if(isPartial && start >= end){
+				writeHeader(channel, "416 Requested Range Not Satisfiable", -1, "bytes */" + size);
+				return;
+			}
+			if(isPartial){
+				writeHeader(channel, "206 Partial Content", end - start,
+						"bytes " + start + "-" + (end - 1) + "/" + size);
+			} else{
+				writeHeader(channel, "200 OK", end - start, null);
+			}
+			transfer(log, start, end, channel);
+		} finally{
+			in.close();
+		}
+	}
+
+	/*
+	 * the response has no length, it ends when the connection is closed. The log sink renames the log to .1 when it
+	 * rotates it, so once the open file has been sent and the file at the path has become shorter, the new log is
+	 * opened and followed from its beginning.
+	 */
+	private void follow(SocketChannel channel, File file, FileChannel log, long position) throws IOException{
+		long startTime = System.currentTimeMillis();
+		long lastGrowTime = startTime;
+		FileInputStream rotated = null;
+		try{
+			while(System.currentTimeMillis() - lastGrowTime < FOLLOW_IDLE_TIME
+					&& System.currentTimeMillis() - startTime < FOLLOW_MAX_TIME){
+				long size = log.size();
+				if(size > position){
+					transfer(log, position, size, channel);
+					position = size;
+					lastGrowTime = System.currentTimeMillis();
+				} else if(file.length() < position){
+					FileInputStream in;
+					try{
+						in = new FileInputStream(file);
+					} catch(FileNotFoundException e){
+						in = null;
+					}
+					// otherwise the new log is not created yet
+					if(in != null){
+						close(rotated);
+						rotated = in;
+						log = in.getChannel();
+						position = 0;
+						continue;
+					}
+				}
+				try{
+					Thread.sleep(FOLLOW_POLL_TIME);
+				} catch(InterruptedException e){
+					return;
+				}
+			}
+		} finally{
+			close(rotated);
+		}
+	}
+
+	private static void transfer(FileChannel log, long start, long end, SocketChannel channel) throws IOException{
+		long position = start;
+		while(position < end){
+			long n = log.transferTo(position, end - position, channel);
+			if(n <= 0){
+				break;
+			}
+			position += n;
+		}
+	}
+
+	private static String readHeader(InputStream in) throws IOException{
+		byte[] buffer = new byte[MAX_HEADER_SIZE];
+		int length = 0;
+		while(length < buffer.length){
+			int n = in.read(buffer, length, buffer.length - length);
+			if(n < 0){
+				return null;
+			}
+			length += n;
+			String header = new String(buffer, 0, length, "ISO-8859-1");
+			int index = header.indexOf("\r\n\r\n");
+			if(index >= 0){
+				return header.substring(0, index);
+			}
+		}
+		return null;
+	}
+
+	private static void writeHeader(SocketChannel channel, String status, long length, String contentRange)
+			throws IOException{
+		StringBuilder sb = new StringBuilder();
+		sb.append("HTTP/1.1 ").append(status).append("\r\n");
+		sb.append("Content-Type: text/plain; charset=UTF-8\r\n");
+		sb.append("Accept-Ranges: bytes\r\n");
+		if(length >= 0){
+			sb.append("Content-Length: ").append(length).append("\r\n");
+		} else if(!status.startsWith("200")){
+			sb.append("Content-Length: 0\r\n");
+		}
+		if(contentRange != null){
+			sb.append("Content-Range: ").append(contentRange).append("\r\n");
+		}
+		sb.append("Connection: close\r\n\r\n");
+		ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes("ISO-8859-1"));
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException{
+		Map<String, String> params = new HashMap<String, String>();
+		for(String pair : query.split("&")){
+			int index = pair.indexOf('=');
+			if(index > 0){
+				params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+						URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	private static long parseLong(String value){
+		try{
+			return Long.parseLong(value.trim());
+		} catch(NumberFormatException e){
+			return 0;
+		}
+	}
+
+	private static void close(Closeable closeable){
+		if(closeable == null){
+			return;
+		}
+		try{
+			closeable.close();
+		} catch(IOException e){ /*do nothing*/ }
+	}
+}
@@ -1,12 +1,8 @@
 package com.dp.bigdata.taurus.agent;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -17,13 +13,14 @@ import com.dp.bigdata.taurus.agent.exec.Executor;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentConf;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentStatus;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.DeploymentInfoChannel;
+import com.dp.bigdata.taurus.zookeeper.common.utils.KeyedLock;
 
 
 
 public class DeploymentUtility {
 
 	private static final Log s_logger = LogFactory.getLog(DeploymentUtility.class);
-	private static Map<String, Lock> taskIdToLockMap = new HashMap<String, Lock>();
+	private static final KeyedLock<String> taskLocks = new KeyedLock<String>();
 
 
 	private static final String DEPLOYMENT_CMD;
@@ -34,23 +31,12 @@ public class DeploymentUtility {
 	private static ExecutorService threadPool;
 	
 	static{
-		threadPool = AgentServerHelper.createThreadPool(2, 4);
+		threadPool = AgentServerHelper.createThreadPool(4, 0);
 		String path = AgentEnvValue.getAgentPath();
 		DEPLOYMENT_CMD = path + DEPLOYMENT_FILE;
 		deployPath = AgentEnvValue.getJobPath();
 	}
 
-	private static Lock getLock(String taskId){
-		synchronized(taskIdToLockMap){
-			Lock lock = taskIdToLockMap.get(taskId);
-			if(lock == null){
-				lock = new ReentrantLock();
-				taskIdToLockMap.put(taskId, lock);
-			}
-			return lock;
-		}
-	}
-	
 	public static void checkAndUndeployTasks(Executor executor, String localIp, DeploymentInfoChannel cs, boolean addWatcher) {
 		s_logger.debug("Start checkAndUndeployTasks");
 		Watcher watcher = null;
@@ -97,9 +83,8 @@ public class DeploymentUtility {
 		@Override
 		public void run() {
 			s_logger.info("start deploy");
-			Lock lock = getLock(task);
+			taskLocks.lock(task);
 			try{
-				lock.lock();
 				DeploymentConf conf = (DeploymentConf) cs.getConf(localIp, task);
 				DeploymentStatus status = (DeploymentStatus) cs.getStatus(localIp, task, null);
 				if(status == null || status.getStatus() == DeploymentStatus.DEPLOY_SUCCESS){
@@ -110,7 +95,7 @@ public class DeploymentUtility {
 				cs.updateStatus(localIp, task, status);
 				cs.updateConf(localIp, task, conf);
 			} finally{
-				lock.unlock();
+				taskLocks.unlock(task);
 			}
 		}
 		
@@ -176,9 +161,8 @@ public class DeploymentUtility {
 
 		@Override
 		public void run() {
-			Lock lock = getLock(taskID);
+			taskLocks.lock(taskID);
 			try{
-				lock.lock();
 				DeploymentConf conf = (DeploymentConf) cs.getConf(localIp, taskID);
 				DeploymentStatus status = (DeploymentStatus) cs.getStatus(localIp, taskID, null);
 				if(status == null || status.getStatus() == DeploymentStatus.DELETE_SUCCESS){
@@ -188,7 +172,7 @@ public class DeploymentUtility {
 				undeployTask(conf, status);
 				cs.updateStatus(localIp, taskID, status);
 			} finally{
-				lock.unlock();
+				taskLocks.unlock(taskID);
 			}
 		}
 		
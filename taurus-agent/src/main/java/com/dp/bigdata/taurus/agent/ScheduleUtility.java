@@ -1,14 +1,12 @@
 package com.dp.bigdata.taurus.agent;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.Properties;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.logging.Log;
@@ -16,21 +14,51 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 
+import com.dp.bigdata.taurus.agent.exec.AttemptLogSink;
 import com.dp.bigdata.taurus.agent.exec.Executor;
 
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleConf;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleStatus;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.ScheduleInfoChannel;
+import com.dp.bigdata.taurus.zookeeper.common.utils.KeyedLock;
 
 public class ScheduleUtility {
 	private static final Log s_logger = LogFactory.getLog(ScheduleUtility.class);
-	private static Map<String, Lock> jobInstanceToLockMap = new HashMap<String, Lock>();
+	private static final KeyedLock<String> attemptLocks = new KeyedLock<String>();
 	
 	private static String agentPath;
 	private static String jobPath;
 	private static final String HADOOP_AUTHORITY = "/script/hadoop-authority.sh";
+	private static final String KEY_EXECUTE_THREADS = "executeThreads";
+	private static final String KEY_EXECUTE_QUEUE_SIZE = "executeQueueSize";
+	private static final int DEFAULT_EXECUTE_THREADS = 4;
+	private static final int DEFAULT_EXECUTE_QUEUE_SIZE = 20;
+	private static final int KILL_THREADS = 4;
+	private static final String KEY_LOG_MAX_FILE_SIZE = "logMaxFileSize";
+	private static final String KEY_LOG_MAX_BACKUPS = "logMaxBackups";
+	/*
+	 * a log is rotated when it reaches logMaxFileSize bytes, only logMaxBackups rotated files are kept
+	 */
+	private static long logMaxFileSize;
+	private static int logMaxBackups;
 	private static ExecutorService killThreadPool;
 	private static ExecutorService executeThreadPool;
+	/*
+	 * every execute thread is a slot, the attempts beyond the slots wait in a bounded queue and the
+	 * attempts beyond the queue are rejected
+	 */
+	private static int executeSlots;
+	/*
+	 * attempts waiting for an execute thread, and attempts being executed; reported by the heartbeat
+	 */
+	private static final AtomicInteger queuedAttempts = new AtomicInteger();
+	private static final AtomicInteger runningAttempts = new AtomicInteger();
+	private static final AtomicLong rejectedAttempts = new AtomicLong();
+	/*
+	 * queue wait of the attempts started since the last read
+	 */
+	private static final AtomicLong startedAttempts = new AtomicLong();
+	private static final AtomicLong totalWaitTime = new AtomicLong();
 	
 	private static final String HADOOP_JOB = "hadoop";
 	private static final String WORMHOLE_JOB = "wormhole";
@@ -38,23 +66,64 @@ public class ScheduleUtility {
 	private static final String SHELL_JOB = "shell script";
 	
 	static{
-		killThreadPool = AgentServerHelper.createThreadPool(2, 4);
-		executeThreadPool = AgentServerHelper.createThreadPool(4, 10);
+		Properties conf = AgentServerHelper.getAgentConf();
+		executeSlots = parseInt(conf.getProperty(KEY_EXECUTE_THREADS), DEFAULT_EXECUTE_THREADS);
+		int queueSize = parseInt(conf.getProperty(KEY_EXECUTE_QUEUE_SIZE), DEFAULT_EXECUTE_QUEUE_SIZE);
+		logMaxFileSize = parseLong(conf.getProperty(KEY_LOG_MAX_FILE_SIZE), -1);
+		if(logMaxFileSize <= 0){
+			logMaxFileSize = AttemptLogSink.DEFAULT_MAX_FILE_SIZE;
+		}
+		logMaxBackups = parseInt(conf.getProperty(KEY_LOG_MAX_BACKUPS), AttemptLogSink.DEFAULT_MAX_BACKUPS);
+		// kills are never rejected
+		killThreadPool = AgentServerHelper.createThreadPool(KILL_THREADS, 0);
+		executeThreadPool = AgentServerHelper.createThreadPool(executeSlots, queueSize);
 		jobPath = AgentEnvValue.getJobPath();
 		agentPath = AgentEnvValue.getAgentPath();
 	}
 
-	private static Lock getLock(String jobInstanceId){
-		synchronized(jobInstanceToLockMap){
-			Lock lock = jobInstanceToLockMap.get(jobInstanceId);
-			if(lock == null){
-				lock = new ReentrantLock();
-				jobInstanceToLockMap.put(jobInstanceId, lock);
-			}
-			return lock;
+	private static int parseInt(String value, int defaultValue){
+		try{
+			return value == null ? defaultValue : Integer.parseInt(value.trim());
+		} catch(NumberFormatException e){
+			s_logger.warn("Invalid number : " + value);
+			return defaultValue;
 		}
 	}
-	
+
+	private static long parseLong(String value, long defaultValue){
+		try{
+			return value == null ? defaultValue : Long.parseLong(value.trim());
+		} catch(NumberFormatException e){
+			s_logger.warn("Invalid number : " + value);
+			return defaultValue;
+		}
+	}
+
+	public static int getExecuteSlots(){
+		return executeSlots;
+	}
+
+	public static int getQueuedAttempts(){
+		return queuedAttempts.get();
+	}
+
+	public static int getRunningAttempts(){
+		return runningAttempts.get();
+	}
+
+	public static long getRejectedAttempts(){
+		return rejectedAttempts.get();
+	}
+
+	/**
+	 * get the average time in milliseconds which the attempts started since the last call have waited in the queue
+	 */
+	public static long getAndResetAverageWaitTime(){
+		long started = startedAttempts.getAndSet(0);
+		long waited = totalWaitTime.getAndSet(0);
+		return started == 0 ? 0 : waited / started;
+	}
+
 	public static void checkAndKillTasks(Executor executor, String localIp, ScheduleInfoChannel cs, boolean addWatcher) {
 		s_logger.debug("Start checkAndKillTasks");
 		Watcher watcher = null;
@@ -77,16 +146,14 @@ public class ScheduleUtility {
 		} 
 		Set<String> currentNew = cs.getNewExecutionJobInstanceIds(localIp, watcher);
 		for(String attemptID: currentNew){
-			System.out.println(attemptID);
 			submitTask(executor, localIp, cs, attemptID);
 		}
 		s_logger.debug("End checkAndRunTasks");
 	}
 	
 	private static void submitTask(Executor executor, String localIp, ScheduleInfoChannel cs, String attemptID){
-		Lock lock = getLock(attemptID);
+		attemptLocks.lock(attemptID);
 		try{
-			lock.lock();
 			cs.completeExecution(localIp, attemptID);
 			s_logger.debug(attemptID + " start schedule");
 			ScheduleStatus status = (ScheduleStatus) cs.getStatus(localIp, attemptID, null);
@@ -103,11 +170,29 @@ public class ScheduleUtility {
 			ScheduleStatus status = new ScheduleStatus();
 			status.setStatus(ScheduleStatus.SCHEDULE_FAILED);
 			cs.updateStatus(localIp, attemptID,status);
+			return;
 		} finally{
-			lock.unlock();
+			attemptLocks.unlock(attemptID);
 		}
 		Runnable executeThread = new ExecuteThread(executor, localIp, cs, attemptID);
-		executeThreadPool.submit(executeThread);
+		queuedAttempts.incrementAndGet();
+		try{
+			executeThreadPool.submit(executeThread);
+		} catch(RejectedExecutionException e){
+			queuedAttempts.decrementAndGet();
+			rejectedAttempts.incrementAndGet();
+			s_logger.warn(attemptID + " is rejected, all the execute threads are busy and the queue is full");
+			ScheduleStatus status = new ScheduleStatus();
+			status.setStatus(ScheduleStatus.SCHEDULE_FAILED);
+			status.setFailureInfo("Agent is busy");
+			attemptLocks.lock(attemptID);
+			try{
+				cs.updateStatus(localIp, attemptID, status);
+			} finally{
+				attemptLocks.unlock(attemptID);
+			}
+			return;
+		}
 		s_logger.debug(attemptID + " end schedule");
 	}
 
@@ -116,26 +201,39 @@ public class ScheduleUtility {
 		String localIp;
 		ScheduleInfoChannel cs;
 		String taskAttempt;
+		long submitTime;
 		ExecuteThread(Executor executor, String localIp, ScheduleInfoChannel cs, String taskAttempt){
 			this.executor = executor;
 			this.localIp = localIp;
 			this.cs = cs;
 			this.taskAttempt = taskAttempt;
+			this.submitTime = System.currentTimeMillis();
 		}
 		
 		@Override
 		public void run() {
-			Lock lock = getLock(taskAttempt);
+			totalWaitTime.addAndGet(System.currentTimeMillis() - submitTime);
+			startedAttempts.incrementAndGet();
+			queuedAttempts.decrementAndGet();
+			runningAttempts.incrementAndGet();
+			try{
+				execute();
+			} finally{
+				runningAttempts.decrementAndGet();
+			}
+		}
+
+		private void execute() {
 			ScheduleConf conf = null;
 			ScheduleStatus status = null;
+			attemptLocks.lock(taskAttempt);
 			try{
-				lock.lock();
 				conf = (ScheduleConf) cs.getConf(localIp, taskAttempt);
 				status = (ScheduleStatus) cs.getStatus(localIp, taskAttempt, null);
 				status.setStatus(ScheduleStatus.EXECUTING);
 				cs.updateStatus(localIp, taskAttempt, status);
 			} finally{
-				lock.unlock();
+				attemptLocks.unlock(taskAttempt);
 			}
 			try {
 				executeJob(conf, status);
@@ -143,8 +241,8 @@ public class ScheduleUtility {
 				s_logger.error(e,e);
 				status.setStatus(ScheduleStatus.EXECUTE_FAILED);
 			}
+			attemptLocks.lock(taskAttempt);
 			try {
-				lock.lock();
 				cs.updateConf(localIp, taskAttempt, conf);
 				ScheduleStatus thisStatus = (ScheduleStatus) cs.getStatus(localIp, taskAttempt, null);
 				if(thisStatus.getStatus()!=ScheduleStatus.DELETE_FAILED && thisStatus.getStatus()!=ScheduleStatus.DELETE_SUCCESS
@@ -153,7 +251,7 @@ public class ScheduleUtility {
 				}
 				s_logger.debug(taskAttempt + " end execute");
 			} finally{
-				lock.unlock();
+				attemptLocks.unlock(taskAttempt);
 			}
 		}
 		
@@ -179,11 +277,43 @@ public class ScheduleUtility {
 				return;
 			}
 			String logFilePath = jobPath + '/' + taskID + "/logs/" + attemptID;
+			AttemptLogSink log;
+			try {
+				log = new AttemptLogSink(logFilePath, logMaxFileSize, logMaxBackups);
+			} catch (IOException e) {
+				s_logger.error(e,e);
+				status.setStatus(ScheduleStatus.EXECUTE_FAILED);
+				status.setFailureInfo("Job failed to open the log " + logFilePath);
+				return;
+			}
+			try {
+				executeJob(conf, status, log);
+			} finally {
+				try {
+					log.close();
+				} catch (IOException e) {
+					s_logger.error(e,e);
+				}
+			}
+			if(status.getStatus() == ScheduleStatus.EXECUTE_FAILED) {
+				String info = status.getFailureInfo();
+				status.setFailureInfo((info == null ? "" : info + "\n") + log.getExcerpt());
+			}
+		}
+
+		/*
+		 * the authority script and the job write into the same log
+		 */
+		private void executeJob(ScheduleConf conf, ScheduleStatus status, AttemptLogSink log) {
+			String attemptID = conf.getAttemptID();
+			String taskType = conf.getTaskType();
+			String taskID = conf.getTaskID();
+			String command = conf.getCommand();
+			String userName = conf.getUserName();
 	
 			if(taskType.equals(HADOOP_JOB)||taskType.equals(HIVE_JOB)) {
 				try {
-					FileOutputStream logFileStream = new FileOutputStream(logFilePath);
-					int returnCode = executor.execute(null,null, logFileStream, agentPath + HADOOP_AUTHORITY);
+					int returnCode = executor.execute(null,null, log, agentPath + HADOOP_AUTHORITY);
 					if(returnCode != 0) {
 						s_logger.error("Hadoop authority script executing failed");
 						status.setStatus(ScheduleStatus.EXECUTE_FAILED);
@@ -194,6 +324,7 @@ public class ScheduleUtility {
 					s_logger.error(e,e);
 					status.setStatus(ScheduleStatus.EXECUTE_FAILED);
 					status.setFailureInfo("Job failed to get hadoop authority");
+					return;
 				}
 				
 			}
@@ -202,9 +333,6 @@ public class ScheduleUtility {
 			int returnCode = 0;
 			try {
 				if(!command.isEmpty()) {
-					File logFile = new File(logFilePath);
-					logFile.getParentFile().mkdirs();
-					logFile.createNewFile();
 					CommandLine cmdLine;
 					if(userName.isEmpty()) {
 						userName = "nobody";
@@ -216,10 +344,9 @@ public class ScheduleUtility {
 				    cmdLine.addArgument("-c");
 				    cmdLine.addArgument("sudo -u " + userName + " -s \"cd "+ path  +" && " + escapedCmd + "\"", false);
 					
-					FileOutputStream logFileStream = new FileOutputStream(logFilePath);
 					s_logger.debug(taskAttempt + " start execute");
 
-					returnCode = executor.execute(attemptID, 0, null, cmdLine, logFileStream, logFileStream);
+					returnCode = executor.execute(attemptID, 0, null, cmdLine, log, log);
 				}
 				if(returnCode == 0) {
 					status.setStatus(ScheduleStatus.EXECUTE_SUCCESS);
@@ -253,15 +380,14 @@ public class ScheduleUtility {
 
 		@Override
 		public void run() {
-			Lock lock = getLock(jobInstanceId);
+			attemptLocks.lock(jobInstanceId);
 			try{
-				lock.lock();
 				ScheduleConf conf = (ScheduleConf) cs.getConf(localIp, jobInstanceId);
 				ScheduleStatus status = (ScheduleStatus) cs.getStatus(localIp, jobInstanceId, null);
 				killTask(localIp,conf, status);
 				cs.updateStatus(localIp, jobInstanceId, status);
 			} finally{
-				lock.unlock();
+				attemptLocks.unlock(jobInstanceId);
 			}
 		}
 		
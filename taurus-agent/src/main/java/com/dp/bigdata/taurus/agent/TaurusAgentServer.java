@@ -1,5 +1,17 @@
 package com.dp.bigdata.taurus.agent;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import com.dp.bigdata.taurus.agent.exec.Executor;
 import com.dp.bigdata.taurus.zookeeper.common.MachineType;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.DeploymentInfoChannel;
@@ -8,17 +20,26 @@ import com.google.inject.Inject;
 
 public class TaurusAgentServer implements AgentServer{
 
+	private static final Log LOG = LogFactory.getLog(TaurusAgentServer.class);
+
 	private static final int CHECK_INTERVALS = 30*1000;
+	private static final int HEARTBEAT_INTERVALS = 10*1000;
 
 	private String localIp;
 	private DeploymentInfoChannel deployer;
 	private ScheduleInfoChannel schedule;
 
 	private int interval = CHECK_INTERVALS;
+	private int heartbeatInterval = HEARTBEAT_INTERVALS;
 	private Executor executor;
-	
+
 	@Inject
 	public TaurusAgentServer(DeploymentInfoChannel deployer,ScheduleInfoChannel schedule, Executor executor, int interval){
+		this(deployer, schedule, executor, interval, HEARTBEAT_INTERVALS);
+	}
+
+	public TaurusAgentServer(DeploymentInfoChannel deployer,ScheduleInfoChannel schedule, Executor executor, int interval,
+			int heartbeatInterval){
 		this.deployer = deployer;
 		this.schedule = schedule;
 		this.executor = executor;
@@ -26,11 +47,16 @@ public class TaurusAgentServer implements AgentServer{
 		if(interval > 0){
 			this.interval = interval;
 		}
+		if(heartbeatInterval > 0){
+			this.heartbeatInterval = heartbeatInterval;
+		}
 	}
 
 	public void start(){
 		deployer.connectToCluster(MachineType.AGENT, localIp);
 		schedule.connectToCluster(MachineType.AGENT, localIp);
+		startHeartbeat();
+		startLogServer();
 		DeploymentUtility.checkAndDeployTasks(executor, localIp, deployer,true);
 		DeploymentUtility.checkAndUndeployTasks(executor, localIp, deployer,true);
 		ScheduleUtility.checkAndRunTasks(executor, localIp, schedule, true);
@@ -45,4 +71,67 @@ public class TaurusAgentServer implements AgentServer{
 			ScheduleUtility.checkAndKillTasks(executor, localIp, schedule, false);
 		}
 	}
+
+	/*
+	 * serve the attempt logs, a logServerPort not above 0 turns it off. The agent keeps running without it.
+	 * logServerAddress is the address to listen on, and logServerAllowedHosts the comma separated hosts to serve.
+	 */
+	private void startLogServer(){
+		int port = AttemptLogServer.DEFAULT_PORT;
+		String value = AgentServerHelper.getAgentConf().getProperty("logServerPort");
+		if(value != null){
+			try{
+				port = Integer.parseInt(value.trim());
+			} catch(NumberFormatException e){
+				LOG.warn("Invalid logServerPort " + value + ", use " + port);
+			}
+		}
+		if(port <= 0){
+			return;
+		}
+		try{
+			InetAddress address = null;
+			String bind = AgentServerHelper.getAgentConf().getProperty("logServerAddress");
+			if(bind != null && bind.trim().length() > 0){
+				address = InetAddress.getByName(bind.trim());
+			}
+			AttemptLogServer server = new AttemptLogServer(port, address, AgentEnvValue.getJobPath());
+			Set<String> allowedHosts = new HashSet<String>();
+			String hosts = AgentServerHelper.getAgentConf().getProperty("logServerAllowedHosts");
+			if(hosts != null){
+				for(String host : hosts.split(",")){
+					if(host.trim().length() > 0){
+						allowedHosts.add(InetAddress.getByName(host.trim()).getHostAddress());
+					}
+				}
+			}
+			server.setAllowedHosts(allowedHosts);
+			server.start();
+		} catch(IOException e){
+			LOG.error("Fail to start the log server on port " + port, e);
+		}
+	}
+
+	/*
+	 * publish the heartbeat of this agent at a fixed rate, the scheduler reads it to place the attempts
+	 */
+	private void startHeartbeat(){
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "AgentHeartbeat");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		heartbeat.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try{
+					schedule.updateHeartbeatInfo(MachineType.AGENT, localIp, AgentServerHelper.createHeartbeat(executor));
+				} catch(RuntimeException e){
+					// a failed heartbeat must not cancel the next ones
+					LOG.error("Fail to update the heartbeat", e);
+				}
+			}
+		}, 0, heartbeatInterval, TimeUnit.MILLISECONDS);
+	}
 }
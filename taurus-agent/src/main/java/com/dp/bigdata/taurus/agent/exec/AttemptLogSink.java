@@ -0,0 +1,210 @@
+package com.dp.bigdata.taurus.agent.exec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * AttemptLogSink captures the output of an attempt into its log file. The output is buffered and written through a
+ * FileChannel. When the file reaches <code>maxFileSize</code> it is rotated to <code>file.1</code> ...
+ * <code>file.N</code> for <code>maxBackups</code> N; with no backups the rest of the output is discarded. The first
+ * and the last bytes are kept in memory, so the failure of an attempt can be reported without reading the file.
+ * <p>
+ * stdout and stderr are pumped by two threads into the same sink, so all the methods are synchronized.
+ */
+public class AttemptLogSink extends OutputStream{
+
+	private static final Log LOG = LogFactory.getLog(AttemptLogSink.class);
+
+	private static final int BUF_SIZE = 64 * 1024;
+	public static final long DEFAULT_MAX_FILE_SIZE = 100L * 1024 * 1024; // 100M
+	public static final int DEFAULT_MAX_BACKUPS = 1;
+	public static final int HEAD_SIZE = 2 * 1024;
+	public static final int TAIL_SIZE = 4 * 1024;
+
+	private final File file;
+	private final long maxFileSize;
+	private final int maxBackups;
+
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUF_SIZE);
+	private long fileSize;
+	private boolean isTruncated;
+	private boolean isClosed;
+
+	private final byte[] head = new byte[HEAD_SIZE];
+	private int headSize;
+	/*
+	 * ring buffer of the last bytes, tailPos is the next position to write
+	 */
+	private final byte[] tail = new byte[TAIL_SIZE];
+	private int tailPos;
+	private boolean isTailFull;
+
+	public AttemptLogSink(String path) throws IOException{
+		this(path, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_BACKUPS);
+	}
+
+	public AttemptLogSink(String path, long maxFileSize, int maxBackups) throws IOException{
+		this.file = new File(path);
+		this.maxFileSize = maxFileSize;
+		this.maxBackups = maxBackups;
+		file.getParentFile().mkdirs();
+		channel = new FileOutputStream(file).getChannel();
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException{
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException{
+		if(isClosed){
+			throw new IOException("Log of " + file + " has been closed");
+		}
+		keep(b, off, len);
+		while(len > 0){
+			if(isTruncated){
+				return;
+			}
+			if(fileSize >= maxFileSize){
+				rotate();
+				continue;
+			}
+			int n = (int) Math.min(len, Math.min(buffer.remaining(), maxFileSize - fileSize));
+			buffer.put(b, off, n);
+			fileSize += n;
+			off += n;
+			len -= n;
+			if(!buffer.hasRemaining()){
+				flushBuffer();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException{
+		if(!isClosed){
+			flushBuffer();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException{
+		if(isClosed){
+			return;
+		}
+		try{
+			flushBuffer();
+		} finally{
+			isClosed = true;
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return the first bytes of the output
+	 */
+	public synchronized String getHead(){
+		return toString(head, 0, headSize);
+	}
+
+	/**
+	 * @return the last bytes of the output
+	 */
+	public synchronized String getTail(){
+		if(!isTailFull){
+			return toString(tail, 0, tailPos);
+		}
+		byte[] bytes = new byte[TAIL_SIZE];
+		System.arraycopy(tail, tailPos, bytes, 0, TAIL_SIZE - tailPos);
+		System.arraycopy(tail, 0, bytes, TAIL_SIZE - tailPos, tailPos);
+		return toString(bytes, 0, TAIL_SIZE);
+	}
+
+	/**
+	 * @return the head and the tail of the output, or the whole output if it fits in the tail
+	 */
+	public synchronized String getExcerpt(){
+		if(!isTailFull){
+			return getTail();
+		}
+		return getHead() + "\n...\n" + getTail();
+	}
+
+	private void keep(byte[] b, int off, int len){
+		if(headSize < HEAD_SIZE){
+			int n = Math.min(len, HEAD_SIZE - headSize);
+			System.arraycopy(b, off, head, headSize, n);
+			headSize += n;
+		}
+		if(len >= TAIL_SIZE){
+			System.arraycopy(b, off + len - TAIL_SIZE, tail, 0, TAIL_SIZE);
+			tailPos = 0;
+			isTailFull = true;
+			return;
+		}
+		int n = Math.min(len, TAIL_SIZE - tailPos);
+		System.arraycopy(b, off, tail, tailPos, n);
+		System.arraycopy(b, off + n, tail, 0, len - n);
+		if(tailPos + len >= TAIL_SIZE){
+			isTailFull = true;
+		}
+		tailPos = (tailPos + len) % TAIL_SIZE;
+	}
+
+	private void flushBuffer() throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void rotate() throws IOException{
+		flushBuffer();
+		if(maxBackups <= 0){
+			buffer.put(toBytes("\n[taurus] log is truncated at " + maxFileSize + " bytes\n"));
+			flushBuffer();
+			isTruncated = true;
+			return;
+		}
+		channel.close();
+		new File(file.getPath() + "." + maxBackups).delete();
+		for(int i = maxBackups - 1; i >= 1; i--){
+			File backup = new File(file.getPath() + "." + i);
+			if(backup.exists() && !backup.renameTo(new File(file.getPath() + "." + (i + 1)))){
+				LOG.warn("Fail to rotate " + backup);
+			}
+		}
+		if(!file.renameTo(new File(file.getPath() + ".1"))){
+			LOG.warn("Fail to rotate " + file);
+		}
+		channel = new FileOutputStream(file).getChannel();
+		fileSize = 0;
+	}
+
+	private static String toString(byte[] bytes, int off, int len){
+		try{
+			return new String(bytes, off, len, "UTF-8");
+		} catch(UnsupportedEncodingException e){
+			return new String(bytes, off, len);
+		}
+	}
+
+	private static byte[] toBytes(String s){
+		try{
+			return s.getBytes("UTF-8");
+		} catch(UnsupportedEncodingException e){
+			return s.getBytes();
+		}
+	}
+}
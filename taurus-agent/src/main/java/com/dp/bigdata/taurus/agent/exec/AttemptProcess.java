@@ -0,0 +1,115 @@
+package com.dp.bigdata.taurus.agent.exec;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.apache.commons.exec.ExecuteWatchdog;
+
+/**
+ * AttemptProcess is the process of a running attempt in TaurusExecutor. It is registered before the process is
+ * launched, so a kill which comes while the process is starting is kept and carried out as soon as it starts.
+ */
+public final class AttemptProcess {
+
+	public static final int UNKNOWN_PID = -1;
+
+	private final String attemptID;
+	private final String command;
+	private final long startTime;
+	private final Watchdog watchdog;
+
+	AttemptProcess(String attemptID, String command, long maxExecutionTime){
+		this.attemptID = attemptID;
+		this.command = command;
+		this.startTime = System.currentTimeMillis();
+		this.watchdog = new Watchdog(maxExecutionTime > 0 ? maxExecutionTime : -1);
+	}
+
+	public String getAttemptID() {
+		return attemptID;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the pid of the process, or UNKNOWN_PID if it has not started or the JVM does not tell it
+	 */
+	public int getPid() {
+		return watchdog.getPid();
+	}
+
+	ExecuteWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	void kill() {
+		watchdog.destroyProcess();
+	}
+
+	@Override
+	public String toString() {
+		return attemptID + "(pid " + getPid() + ", started at " + startTime + ")";
+	}
+
+	/*
+	 * the executor hands the process to the watchdog once it is launched. ExecuteWatchdog.destroyProcess waits
+	 * for the process to start, which never happens if the launch fails, so a kill before the start is only
+	 * recorded here.
+	 */
+	private static final class Watchdog extends ExecuteWatchdog{
+
+		private Process process;
+		private int pid = UNKNOWN_PID;
+		private boolean isKillRequested;
+
+		Watchdog(long timeout){
+			super(timeout);
+		}
+
+		@Override
+		public synchronized void start(Process process) {
+			this.process = process;
+			this.pid = readPid(process);
+			super.start(process);
+			if(isKillRequested){
+				super.destroyProcess();
+			}
+		}
+
+		@Override
+		public synchronized void destroyProcess() {
+			if(process == null){
+				isKillRequested = true;
+				return;
+			}
+			super.destroyProcess();
+		}
+
+		synchronized int getPid() {
+			return pid;
+		}
+	}
+
+	/*
+	 * Process.pid() since java 9, the private pid field of UNIXProcess before
+	 */
+	private static int readPid(Process process){
+		try{
+			Method method = Process.class.getMethod("pid");
+			return ((Number) method.invoke(process)).intValue();
+		} catch(Exception e){ /*try the field*/ }
+		try{
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getInt(process);
+		} catch(Exception e){
+			return UNKNOWN_PID;
+		}
+	}
+}
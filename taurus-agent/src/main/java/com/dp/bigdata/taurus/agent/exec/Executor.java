@@ -2,6 +2,7 @@ package com.dp.bigdata.taurus.agent.exec;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.exec.CommandLine;
@@ -24,5 +25,10 @@ public interface Executor {
 			OutputStream stdOut, OutputStream stdErr) throws IOException;
 	
 	public int kill(String id);
+
+	/**
+	 * @return the processes of the attempts which are running now, with their pid and start time
+	 */
+	public List<AttemptProcess> getRunningProcesses();
 	
 }
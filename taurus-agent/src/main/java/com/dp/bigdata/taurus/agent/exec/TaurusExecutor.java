@@ -2,12 +2,14 @@ package com.dp.bigdata.taurus.agent.exec;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -18,7 +20,10 @@ import com.google.inject.Singleton;
 public class TaurusExecutor implements Executor{
 	
 	private static final Log LOG = LogFactory.getLog(TaurusExecutor.class);
-	private Map<String,DefaultExecutor> executorMap = new HashMap<String,DefaultExecutor>();
+	/*
+	 * processes of the running attempts by attempt ID, an attempt is removed when its process exits
+	 */
+	private final ConcurrentMap<String, AttemptProcess> processes = new ConcurrentHashMap<String, AttemptProcess>();
 	
 
 	@Override
@@ -54,29 +59,36 @@ public class TaurusExecutor implements Executor{
 	public int execute(String id, long maxExecutionTime, Map env, CommandLine cmdLine, OutputStream stdOut, OutputStream stdErr) 
 		throws IOException{
 		DefaultExecutor executor = new DefaultExecutor();
-		executor.setWatchdog(new ExecuteWatchdog(-1));
-		System.out.println("!!!!!!!put " + id);
-		if(id != null) {
-			executorMap.put(id, executor);
-		}
+		AttemptProcess process = new AttemptProcess(id, cmdLine.toString(), maxExecutionTime);
+		executor.setWatchdog(process.getWatchdog());
 		executor.setExitValues(null);
 		PumpStreamHandler streamHandler = new PumpStreamHandler(stdOut,stdErr);
 		executor.setStreamHandler(streamHandler);
-		if(maxExecutionTime > 0){
-			executor.setWatchdog(new ExecuteWatchdog(maxExecutionTime));
-		}
 		LOG.info(cmdLine);
-		return executor.execute(cmdLine, env);
+		if(id == null) {
+			return executor.execute(cmdLine, env);
+		}
+		// registered before the launch, so a kill during the start is not lost
+		if(processes.putIfAbsent(id, process) != null) {
+			throw new IOException("Attempt " + id + " is already running");
+		}
+		try {
+			return executor.execute(cmdLine, env);
+		} finally {
+			processes.remove(id, process);
+		}
 	}
 	
 	@Override
 	public int kill(String id) {
+		AttemptProcess process = id == null ? null : processes.get(id);
+		if(process == null) {
+			LOG.warn("Attempt " + id + " is not running, nothing to kill");
+			return 1;
+		}
 		try{
-			System.out.println("!!!!!!!get " + id);
-
-			System.out.println(executorMap.get(id));
-			System.out.println(executorMap.get(id).getWatchdog());
-			executorMap.get(id).getWatchdog().destroyProcess();
+			process.kill();
+			LOG.info("Killed " + process);
 		} catch(Exception e) {
 			LOG.error(e,e);
 			return 1;
@@ -84,4 +96,9 @@ public class TaurusExecutor implements Executor{
 		return 0;
 	}
 
+	@Override
+	public List<AttemptProcess> getRunningProcesses() {
+		return new ArrayList<AttemptProcess>(processes.values());
+	}
+
 }
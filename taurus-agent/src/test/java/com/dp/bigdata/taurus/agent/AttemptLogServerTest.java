@@ -0,0 +1,209 @@
+package com.dp.bigdata.taurus.agent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AttemptLogServerTest {
+
+	private static final String TASKID = "task_201210171442_0001";
+	private static final String ATTEMPTID = "attempt_201210171442_0001_0001_0001";
+
+	private File dir;
+	private AttemptLogServer server;
+
+	@Before
+	public void setUp() throws IOException{
+		dir = File.createTempFile("taurus-job", "");
+		dir.delete();
+		File logs = new File(dir, TASKID + "/logs");
+		logs.mkdirs();
+		FileOutputStream out = new FileOutputStream(new File(logs, ATTEMPTID));
+		out.write("0123456789".getBytes());
+		out.close();
+		server = new AttemptLogServer(0, InetAddress.getByName("127.0.0.1"), dir.getPath());
+		server.start();
+	}
+
+	@After
+	public void tearDown(){
+		server.stop();
+		new File(dir, TASKID + "/logs/" + ATTEMPTID).delete();
+		new File(dir, TASKID + "/logs/" + ATTEMPTID + ".1").delete();
+		new File(dir, TASKID + "/logs").delete();
+		new File(dir, TASKID).delete();
+		dir.delete();
+	}
+
+	private Socket connect(String path, String range) throws IOException{
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+		socket.setSoTimeout(10000);
+		StringBuilder sb = new StringBuilder();
+		sb.append("GET ").append(path).append(" HTTP/1.1\r\n");
+		if(range != null){
+			sb.append("Range: ").append(range).append("\r\n");
+		}
+		sb.append("\r\n");
+		socket.getOutputStream().write(sb.toString().getBytes("ISO-8859-1"));
+		return socket;
+	}
+
+	/*
+	 * the whole response, the server closes the connection when it is done
+	 */
+	private String get(String path, String range) throws IOException{
+		Socket socket = connect(path, range);
+		try{
+			InputStream in = socket.getInputStream();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int n;
+			while((n = in.read(buffer)) > 0){
+				out.write(buffer, 0, n);
+			}
+			return out.toString("ISO-8859-1");
+		} finally{
+			socket.close();
+		}
+	}
+
+	/*
+	 * the response header of a followed log, the body never ends
+	 */
+	private static String readStatus(Socket socket) throws IOException{
+		InputStream in = socket.getInputStream();
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while(sb.indexOf("\r\n\r\n") < 0 && (c = in.read()) >= 0){
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	private static String read(Socket socket, int length) throws IOException{
+		InputStream in = socket.getInputStream();
+		byte[] buffer = new byte[length];
+		int n = 0;
+		while(n < length){
+			int read = in.read(buffer, n, length - n);
+			if(read < 0){
+				break;
+			}
+			n += read;
+		}
+		return new String(buffer, 0, n, "ISO-8859-1");
+	}
+
+	private static String body(String response){
+		return response.substring(response.indexOf("\r\n\r\n") + 4);
+	}
+
+	@Test
+	public void testWholeLog() throws IOException{
+		String response = get("/log/" + TASKID + "/" + ATTEMPTID, null);
+		assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+		assertTrue(response.contains("Content-Length: 10"));
+		assertEquals("0123456789", body(response));
+	}
+
+	@Test
+	public void testRange() throws IOException{
+		String response = get("/log/" + TASKID + "/" + ATTEMPTID, "bytes=2-5");
+		assertTrue(response.startsWith("HTTP/1.1 206 Partial Content"));
+		assertTrue(response.contains("Content-Range: bytes 2-5/10"));
+		assertEquals("2345", body(response));
+
+		assertEquals("789", body(get("/log/" + TASKID + "/" + ATTEMPTID, "bytes=-3")));
+		assertEquals("89", body(get("/log/" + TASKID + "/" + ATTEMPTID, "bytes=8-")));
+		assertTrue(get("/log/" + TASKID + "/" + ATTEMPTID, "bytes=20-").startsWith("HTTP/1.1 416"));
+	}
+
+	@Test
+	public void testTailAndOffset() throws IOException{
+		String response = get("/log/" + TASKID + "/" + ATTEMPTID + "?tail=4", null);
+		assertTrue(response.startsWith("HTTP/1.1 206 Partial Content"));
+		assertEquals("6789", body(response));
+		assertEquals("345", body(get("/log/" + TASKID + "/" + ATTEMPTID + "?offset=3&length=3", null)));
+	}
+
+	@Test
+	public void testNotFound() throws IOException{
+		assertTrue(get("/log/" + TASKID + "/attempt_201210171442_0001_0002_0001", null).startsWith("HTTP/1.1 404"));
+		assertTrue(get("/log/" + TASKID + "/..", null).startsWith("HTTP/1.1 404"));
+		assertTrue(get("/other", null).startsWith("HTTP/1.1 404"));
+	}
+
+	@Test
+	public void testAllowedHosts() throws IOException{
+		server.setAllowedHosts(Collections.singleton("10.1.77.84"));
+		assertTrue(get("/log/" + TASKID + "/" + ATTEMPTID, null).startsWith("HTTP/1.1 403"));
+		server.setAllowedHosts(Collections.singleton("127.0.0.1"));
+		assertTrue(get("/log/" + TASKID + "/" + ATTEMPTID, null).startsWith("HTTP/1.1 200"));
+	}
+
+	@Test
+	public void testHeaderTimeout() throws IOException{
+		server.setHeaderTimeout(200);
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+		try{
+			socket.setSoTimeout(10000);
+			// the request is never finished, so the server drops the connection
+			socket.getOutputStream().write("GET /log/".getBytes("ISO-8859-1"));
+			long start = System.currentTimeMillis();
+			assertEquals(-1, socket.getInputStream().read());
+			assertTrue(System.currentTimeMillis() - start < 5000);
+		} finally{
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testFollowersCap() throws IOException{
+		String path = "/log/" + TASKID + "/" + ATTEMPTID + "?follow=true";
+		Socket first = connect(path, null);
+		Socket second = connect(path, null);
+		try{
+			assertTrue(readStatus(first).startsWith("HTTP/1.1 200 OK"));
+			assertTrue(readStatus(second).startsWith("HTTP/1.1 200 OK"));
+			// the other workers are left for the reads
+			assertTrue(get(path, null).startsWith("HTTP/1.1 503"));
+			assertEquals("0123456789", body(get("/log/" + TASKID + "/" + ATTEMPTID, null)));
+		} finally{
+			first.close();
+			second.close();
+		}
+	}
+
+	@Test
+	public void testFollowRotation() throws IOException{
+		Socket socket = connect("/log/" + TASKID + "/" + ATTEMPTID + "?follow=true", null);
+		try{
+			assertTrue(readStatus(socket).startsWith("HTTP/1.1 200 OK"));
+			assertEquals("0123456789", read(socket, 10));
+
+			// rotated as AttemptLogSink does, the last output of the old log is still sent
+			File log = new File(dir, TASKID + "/logs/" + ATTEMPTID);
+			FileOutputStream out = new FileOutputStream(log, true);
+			out.write("ab".getBytes());
+			out.close();
+			assertTrue(log.renameTo(new File(dir, TASKID + "/logs/" + ATTEMPTID + ".1")));
+			out = new FileOutputStream(log);
+			out.write("cde".getBytes());
+			out.close();
+			assertEquals("abcde", read(socket, 5));
+		} finally{
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.dp.bigdata.taurus.agent.exec;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AttemptLogSinkTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException{
+		dir = File.createTempFile("taurus-log", "");
+		dir.delete();
+	}
+
+	@After
+	public void tearDown(){
+		File[] files = new File(dir, "logs").listFiles();
+		if(files != null){
+			for(File file : files){
+				file.delete();
+			}
+		}
+		new File(dir, "logs").delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testRotate() throws IOException{
+		String path = new File(dir, "logs/attempt").getPath();
+		AttemptLogSink log = new AttemptLogSink(path, 100, 2);
+		for(int i = 0; i < 35; i++){
+			log.write("0123456789".getBytes());
+		}
+		log.close();
+		assertEquals(50, new File(path).length());
+		assertEquals(100, new File(path + ".1").length());
+		assertEquals(100, new File(path + ".2").length());
+		assertFalse(new File(path + ".3").exists());
+	}
+
+	@Test
+	public void testTruncate() throws IOException{
+		String path = new File(dir, "logs/attempt").getPath();
+		AttemptLogSink log = new AttemptLogSink(path, 100, 0);
+		for(int i = 0; i < 35; i++){
+			log.write("0123456789".getBytes());
+		}
+		log.close();
+		assertTrue(new File(path).length() < 200);
+		assertFalse(new File(path + ".1").exists());
+	}
+
+	@Test
+	public void testExcerpt() throws IOException{
+		String path = new File(dir, "logs/attempt").getPath();
+		AttemptLogSink log = new AttemptLogSink(path);
+		log.write("short output".getBytes());
+		assertEquals("short output", log.getExcerpt());
+
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < AttemptLogSink.TAIL_SIZE; i++){
+			sb.append('x');
+		}
+		log.write(sb.toString().getBytes());
+		log.write("last line".getBytes());
+		log.close();
+		assertTrue(log.getHead().startsWith("short output"));
+		assertEquals(AttemptLogSink.HEAD_SIZE, log.getHead().length());
+		assertTrue(log.getTail().endsWith("xlast line"));
+		assertEquals(AttemptLogSink.TAIL_SIZE, log.getTail().length());
+	}
+}
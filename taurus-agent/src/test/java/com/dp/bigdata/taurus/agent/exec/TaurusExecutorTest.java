@@ -0,0 +1,45 @@
+package com.dp.bigdata.taurus.agent.exec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TaurusExecutorTest {
+
+	@Test
+	public void testKill() throws Exception{
+		final TaurusExecutor executor = new TaurusExecutor();
+		final AtomicInteger returnCode = new AtomicInteger(Integer.MIN_VALUE);
+		Thread t = new Thread(){
+			public void run(){
+				try {
+					returnCode.set(executor.execute("attempt_1", new ByteArrayOutputStream(), new ByteArrayOutputStream(),
+							"sleep", "30"));
+				} catch (IOException e) {
+					returnCode.set(-1);
+				}
+			}
+		};
+		t.start();
+
+		List<AttemptProcess> processes = executor.getRunningProcesses();
+		for(int i = 0; i < 100 && (processes.isEmpty() || processes.get(0).getPid() == AttemptProcess.UNKNOWN_PID); i++){
+			Thread.sleep(50);
+			processes = executor.getRunningProcesses();
+		}
+		assertEquals(1, processes.size());
+		assertEquals("attempt_1", processes.get(0).getAttemptID());
+
+		assertEquals(0, executor.kill("attempt_1"));
+		t.join(10000);
+		assertFalse(t.isAlive());
+		assertTrue(returnCode.get() != 0);
+		assertTrue(executor.getRunningProcesses().isEmpty());
+		assertEquals(1, executor.kill("attempt_1"));
+	}
+}
@@ -0,0 +1,145 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+
+/**
+ * AttemptArchiver moves the finished attempts (SUCCEEDED, FAILED, KILLED and TIMEOUT) scheduled more than
+ * retentionDays ago from TaurusTaskAttempt to TaurusTaskAttemptArchive, so the queries of the scheduler only scan the
+ * live and the recent attempts. It runs every interval milliseconds on its own thread, never on the scheduling
+ * thread, and moves batchSize attempts per transaction with a pause between the batches to keep the locks short.
+ * <p>
+ * The latest attempt of every task is kept whatever its age. The dependencies on older instances fall back to the
+ * archive when TaurusTaskAttempt does not hold enough instances.
+ *
+ * @author damon.zhu
+ * @see InstanceOutcomeCache
+ */
+public class AttemptArchiver implements Runnable {
+
+    private static final Log LOG = LogFactory.getLog(AttemptArchiver.class);
+
+    public static final int DEFAULT_RETENTION_DAYS = 30;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final long DEFAULT_INTERVAL = 60 * 60 * 1000;
+    private static final long BATCH_PAUSE = 1000;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final List<Integer> TERMINAL_STATUSES = Arrays.asList(AttemptStatus.SUCCEEDED,
+            AttemptStatus.FAILED, AttemptStatus.KILLED, AttemptStatus.TIMEOUT);
+
+    @Autowired
+    private TaskAttemptArchiveMapper archiveMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private int retentionDays = DEFAULT_RETENTION_DAYS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long interval = DEFAULT_INTERVAL;
+    private ScheduledExecutorService executor;
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AttemptArchiver");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+        LOG.info("Archive the attempts older than " + retentionDays + " days every " + interval + " ms");
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public void run() {
+        try {
+            long start = System.currentTimeMillis();
+            int count = archive();
+            if (count > 0) {
+                LOG.info("Archived " + count + " attempts in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // try again next time
+            LOG.error("Fail to archive the attempts", e);
+        }
+    }
+
+    /**
+     * move the finished attempts past the retention window into the archive, batch by batch.
+     *
+     * @return the number of archived attempts
+     * @throws InterruptedException
+     */
+    public int archive() throws InterruptedException {
+        Date before = new Date(System.currentTimeMillis() - retentionDays * DAY);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        int total = 0;
+        while (true) {
+            final List<String> attemptIDs = archiveMapper.selectArchivableIDs(TERMINAL_STATUSES, before, batchSize);
+            if (attemptIDs.isEmpty()) {
+                return total;
+            }
+            total += template.execute(new TransactionCallback<Integer>() {
+                public Integer doInTransaction(TransactionStatus status) {
+                    int inserted = archiveMapper.insertArchive(attemptIDs);
+                    int deleted = archiveMapper.deleteArchived(attemptIDs, TERMINAL_STATUSES);
+                    if (inserted != deleted) {
+                        throw new IllegalStateException("Archived " + inserted + " attempts but deleted " + deleted);
+                    }
+                    return deleted;
+                }
+            });
+            if (attemptIDs.size() < batchSize) {
+                return total;
+            }
+            Thread.sleep(BATCH_PAUSE);
+        }
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+}
@@ -0,0 +1,357 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * AttemptDispatcher submits the ready attempts to the agents in parallel. The attempts of a task are submitted one by
+ * one in the given (scheduleTime) order, while the attempts of different tasks are submitted by a bounded pool of
+ * workers. The number of submits in flight to one agent is limited: a worker waits at most acquireTimeout for a slot of
+ * the agent, otherwise the attempt and the later attempts of its task are deferred to the next dispatch, so a slow agent
+ * does not hold all the workers. The latency of each submit is recorded in a histogram, which is logged with the
+ * submits in flight when a dispatch defers attempts or runs longer than slowDispatchTime.
+ *
+ * @author damon.zhu
+ * @see Engine
+ */
+public class AttemptDispatcher {
+
+    private static final Log LOG = LogFactory.getLog(AttemptDispatcher.class);
+
+    public static final int DEFAULT_THREAD_COUNT = 8;
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_AGENT = 4;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT = 1000;
+    public static final long DEFAULT_DISPATCH_TIMEOUT = 60 * 1000;
+    public static final long DEFAULT_SLOW_DISPATCH_TIME = 10 * 1000;
+    /**
+     * upper bounds in milliseconds of the latency buckets; the last bucket holds the slower submits.
+     */
+    private static final long[] LATENCY_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+
+    private int threadCount = DEFAULT_THREAD_COUNT;
+    private int maxInFlightPerAgent = DEFAULT_MAX_IN_FLIGHT_PER_AGENT;
+    private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT; // milliseconds
+    private long dispatchTimeout = DEFAULT_DISPATCH_TIMEOUT; // milliseconds
+    private long slowDispatchTime = DEFAULT_SLOW_DISPATCH_TIME; // milliseconds
+    private volatile ExecutorService workers;
+    private final ConcurrentMap<String, Semaphore> agentSlots; // Map<ip, Semaphore>
+
+    /*
+     * metrics of the submits
+     */
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(LATENCY_BOUNDS.length + 1);
+    private final AtomicLong submitCount = new AtomicLong();
+    private final AtomicLong totalSubmitTime = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private volatile long maxSubmitTime;
+    private volatile long lastDispatchTime;
+    private volatile int lastDispatchSize;
+
+    public AttemptDispatcher() {
+        agentSlots = new ConcurrentHashMap<String, Semaphore>();
+    }
+
+    /**
+     * Submitter submits one attempt to its agent.
+     */
+    public interface Submitter {
+        /**
+         * @return false if the attempt is deferred to the next dispatch, because no slot of its agent was free in time.
+         */
+        boolean submit(AttemptContext context) throws ScheduleException;
+    }
+
+    /**
+     * submit the given attempts and wait until all of them have been submitted or deferred, at most dispatchTimeout.
+     * The groups which have not started by then are deferred as well; the submits still running go on in the
+     * background.
+     *
+     * @param contexts attempts ordered by scheduleTime
+     * @param submitter
+     * @return the number of deferred attempts
+     * @throws InterruptedException
+     */
+    public int dispatch(List<AttemptContext> contexts, final Submitter submitter) throws InterruptedException {
+        if (contexts.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+
+        /*
+         * group the attempts by task, the tasks keep the order of their earliest attempt.
+         */
+        Map<String, List<AttemptContext>> groups = new LinkedHashMap<String, List<AttemptContext>>();
+        for (AttemptContext context : contexts) {
+            List<AttemptContext> group = groups.get(context.getTaskid());
+            if (group == null) {
+                group = new ArrayList<AttemptContext>();
+                groups.put(context.getTaskid(), group);
+            }
+            group.add(context);
+        }
+
+        ExecutorService pool = getWorkers();
+        final AtomicInteger deferred = new AtomicInteger();
+        List<List<AttemptContext>> submitted = new ArrayList<List<AttemptContext>>(groups.values());
+        List<AtomicBoolean> started = new ArrayList<AtomicBoolean>(submitted.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(submitted.size());
+        for (final List<AttemptContext> group : submitted) {
+            final AtomicBoolean groupStarted = new AtomicBoolean();
+            started.add(groupStarted);
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    if (!groupStarted.compareAndSet(false, true)) {
+                        // deferred by the timeout of the dispatch
+                        return;
+                    }
+                    for (int i = 0; i < group.size(); i++) {
+                        AttemptContext context = group.get(i);
+                        try {
+                            if (!submitter.submit(context)) {
+                                // the later attempts of the task must not overtake this one
+                                deferred.addAndGet(group.size() - i);
+                                return;
+                            }
+                        } catch (ScheduleException e) {
+                            LOG.error(e.getMessage());
+                        } catch (RuntimeException e) {
+                            LOG.error("Fail to dispatch attempt " + context.getAttemptid(), e);
+                        }
+                    }
+                }
+            }));
+        }
+        long deadline = start + dispatchTimeout;
+        int unfinished = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            try {
+                future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                LOG.error("Fail to dispatch attempts", e.getCause());
+            } catch (TimeoutException e) {
+                if (started.get(i).compareAndSet(false, true)) {
+                    // the attempts of a group which has not started are read again by the next dispatch
+                    future.cancel(false);
+                    deferred.addAndGet(submitted.get(i).size());
+                } else {
+                    unfinished++;
+                }
+            }
+        }
+
+        lastDispatchTime = System.currentTimeMillis() - start;
+        lastDispatchSize = contexts.size();
+        deferredCount.addAndGet(deferred.get());
+        if (deferred.get() > 0 || unfinished > 0 || lastDispatchTime > slowDispatchTime) {
+            LOG.info("Dispatch " + lastDispatchSize + " attempts in " + lastDispatchTime + " ms, deferred : "
+                    + deferred.get() + ", still submitting : " + unfinished + " groups; " + getSummary());
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Dispatch " + lastDispatchSize + " attempts in " + lastDispatchTime + " ms");
+        }
+        return deferred.get();
+    }
+
+    /**
+     * wait at most acquireTimeout for a free slot of the given agent.
+     *
+     * @param ip
+     * @return false if no slot was free in time
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(String ip) throws InterruptedException {
+        return slotsOf(ip).tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    public void release(String ip) {
+        slotsOf(ip).release();
+    }
+
+    /**
+     * record the time taken to submit an attempt.
+     *
+     * @param nanos
+     */
+    public void recordSubmitTime(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int i = 0;
+        while (i < LATENCY_BOUNDS.length && millis > LATENCY_BOUNDS[i]) {
+            i++;
+        }
+        latencyCounts.incrementAndGet(i);
+        submitCount.incrementAndGet();
+        totalSubmitTime.addAndGet(millis);
+        if (millis > maxSubmitTime) {
+            maxSubmitTime = millis;
+        }
+    }
+
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private Semaphore slotsOf(String ip) {
+        Semaphore slots = agentSlots.get(ip);
+        if (slots == null) {
+            Semaphore created = new Semaphore(maxInFlightPerAgent, true);
+            slots = agentSlots.putIfAbsent(ip, created);
+            if (slots == null) {
+                slots = created;
+            }
+        }
+        return slots;
+    }
+
+    private ExecutorService getWorkers() {
+        if (workers == null) {
+            synchronized (this) {
+                if (workers == null) {
+                    workers = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "AttemptDispatcher-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                }
+            }
+        }
+        return workers;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public void setMaxInFlightPerAgent(int maxInFlightPerAgent) {
+        this.maxInFlightPerAgent = maxInFlightPerAgent;
+    }
+
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public void setDispatchTimeout(long dispatchTimeout) {
+        this.dispatchTimeout = dispatchTimeout;
+    }
+
+    public void setSlowDispatchTime(long slowDispatchTime) {
+        this.slowDispatchTime = slowDispatchTime;
+    }
+
+    /**
+     * @return the metrics of the submits in one line: the counts, the latency histogram and the submits in flight to
+     *         each busy agent.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("submits : ").append(getSubmitCount()).append(", deferred : ").append(getDeferredCount())
+                .append(", average : ").append(getAverageSubmitTime()).append(" ms, max : ").append(getMaxSubmitTime())
+                .append(" ms, latency :");
+        long[] counts = getSubmitLatencyCounts();
+        for (int i = 0; i < counts.length; i++) {
+            summary.append(i < LATENCY_BOUNDS.length ? " <=" + LATENCY_BOUNDS[i] : " >" + LATENCY_BOUNDS[i - 1])
+                    .append("ms:").append(counts[i]);
+        }
+        summary.append(", in flight :");
+        for (String ip : agentSlots.keySet()) {
+            int inFlight = getInFlight(ip);
+            if (inFlight > 0) {
+                summary.append(' ').append(ip).append(':').append(inFlight);
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return the number of submits in flight to the given agent.
+     */
+    public int getInFlight(String ip) {
+        Semaphore slots = agentSlots.get(ip);
+        return slots == null ? 0 : maxInFlightPerAgent - slots.availablePermits();
+    }
+
+    /**
+     * @return the upper bounds in milliseconds of the latency buckets.
+     */
+    public long[] getSubmitLatencyBounds() {
+        return LATENCY_BOUNDS.clone();
+    }
+
+    /**
+     * @return the number of submits of each latency bucket; the last one counts the submits slower than all the bounds.
+     */
+    public long[] getSubmitLatencyCounts() {
+        long[] counts = new long[latencyCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latencyCounts.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of submitted attempts.
+     */
+    public long getSubmitCount() {
+        return submitCount.get();
+    }
+
+    /**
+     * @return the number of attempts deferred to a later dispatch.
+     */
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * @return the average time in milliseconds of the submits.
+     */
+    public long getAverageSubmitTime() {
+        long count = submitCount.get();
+        return count == 0 ? 0 : totalSubmitTime.get() / count;
+    }
+
+    /**
+     * @return the maximum time in milliseconds of the submits.
+     */
+    public long getMaxSubmitTime() {
+        return maxSubmitTime;
+    }
+
+    /**
+     * @return the time in milliseconds of the last dispatch.
+     */
+    public long getLastDispatchTime() {
+        return lastDispatchTime;
+    }
+
+    /**
+     * @return the number of attempts of the last dispatch.
+     */
+    public int getLastDispatchSize() {
+        return lastDispatchSize;
+    }
+}
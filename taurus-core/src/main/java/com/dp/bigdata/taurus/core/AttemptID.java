@@ -23,7 +23,7 @@ public class AttemptID extends ID {
         builder.append(SEPARATOR);
         builder.append(instanceID);
         builder.append(SEPARATOR);
-        builder.append(idFormat.format(id));
+        builder.append(format(id));
         return builder;
     }
     public static String getTaskID(String attemptID) {
@@ -2,7 +2,18 @@ package com.dp.bigdata.taurus.core;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -11,7 +22,9 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
 /**
- * AttemptStatusMonitor is to update the TaskAttmpt status.
+ * AttemptStatusMonitor is to update the TaskAttmpt status. The status of the running attempts are fetched in parallel
+ * by a bounded pool of workers, and each result is handled as soon as it arrives. The latency and the backlog of the
+ * sweeps are recorded, and logged at info when a sweep takes longer than slowSweepTime.
  * 
  * @author damon.zhu
  * @see Engine
@@ -19,8 +32,22 @@ import org.springframework.context.support.FileSystemXmlApplicationContext;
 public class AttemptStatusMonitor implements Runnable {
 
     private static final Log LOG = LogFactory.getLog(AttemptStatusMonitor.class);
+    public static final int DEFAULT_THREAD_COUNT = 8;
+    public static final long DEFAULT_SLOW_SWEEP_TIME = Engine.SCHDUELE_INTERVAL / 2;
+
     private AtomicBoolean isInterrupt = new AtomicBoolean(false);
     private Scheduler scheduler;
+    private int threadCount = DEFAULT_THREAD_COUNT;
+    private long slowSweepTime = DEFAULT_SLOW_SWEEP_TIME; // milliseconds
+
+    /*
+     * metrics of the sweeps
+     */
+    private final AtomicLong sweepCount = new AtomicLong();
+    private volatile long lastSweepTime;
+    private volatile long maxSweepTime;
+    private volatile int lastSweepSize;
+    private final AtomicInteger backlog = new AtomicInteger();
 
     @Autowired
     public AttemptStatusMonitor(Scheduler scheduler) {
@@ -37,42 +64,167 @@ public class AttemptStatusMonitor implements Runnable {
 
     public void run() {
         LOG.info("Starting to monitor attempts status");
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AttemptStatusMonitor-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
         try {
             while (!isInterrupt.get()) {
-                List<AttemptContext> runningAttempts = scheduler.getAllRunningAttempt();
-                for (AttemptContext attempt : runningAttempts) {
-                    AttemptStatus sstatus = scheduler.getAttemptStatus(attempt.getAttemptid());
-                    int status = sstatus.getStatus();
-                    LOG.info("Current status for attempt " + attempt.getAttemptid() + " : " + status);
-                    switch (status) {
-                        case AttemptStatus.SUCCEEDED:
-                            scheduler.attemptSucceed(attempt.getAttemptid());
-                            break;
-                        case AttemptStatus.FAILED:
-                            attempt.getAttempt().setReturnvalue(sstatus.getReturnCode());
-                            scheduler.attemptFailed(attempt.getAttemptid());
-                            break;
-                        case AttemptStatus.RUNNING: {
-                            int timeout = attempt.getExecutiontimeout();
-                            Date start = attempt.getStarttime();
-                            long now = System.currentTimeMillis();
-                            if (now > start.getTime() + timeout * 1000 * 60) {
-                                LOG.info("attempt " +  attempt.getAttemptid() + " executing timeout ");
-                                scheduler.attemptExpired(attempt.getAttemptid());
-                            }
-                        }
-
-                    }
+                long start = System.currentTimeMillis();
+                sweep(workers);
+                long elapsed = System.currentTimeMillis() - start;
+                if (elapsed < Engine.SCHDUELE_INTERVAL) {
+                    Thread.sleep(Engine.SCHDUELE_INTERVAL - elapsed);
                 }
-
-                Thread.sleep(Engine.SCHDUELE_INTERVAL);
             }
         } catch (InterruptedException ie) {
             LOG.error(ie);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void sweep(ExecutorService workers) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<AttemptContext> runningAttempts = scheduler.getAllRunningAttempt();
+        CompletionService<StatusResult> completion = new ExecutorCompletionService<StatusResult>(workers);
+        backlog.set(runningAttempts.size());
+        for (final AttemptContext attempt : runningAttempts) {
+            completion.submit(new Callable<StatusResult>() {
+                public StatusResult call() throws Exception {
+                    return new StatusResult(attempt, scheduler.getAttemptStatus(attempt.getAttemptid()));
+                }
+            });
+        }
+        boolean isSlow = false;
+        for (int i = 0; i < runningAttempts.size(); i++) {
+            Future<StatusResult> future = null;
+            if (!isSlow) {
+                long wait = start + slowSweepTime - System.currentTimeMillis();
+                future = completion.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    isSlow = true;
+                    LOG.info("Monitor sweep has taken " + slowSweepTime + " ms, backlog : " + getBacklog() + " of "
+                            + runningAttempts.size() + " attempts");
+                }
+            }
+            if (future == null) {
+                future = completion.take();
+            }
+            backlog.decrementAndGet();
+            StatusResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                LOG.error("Fail to get attempt status", e.getCause());
+                continue;
+            }
+            try {
+                handle(result.attempt, result.status);
+            } catch (RuntimeException e) {
+                LOG.error("Fail to update attempt " + result.attempt.getAttemptid(), e);
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        sweepCount.incrementAndGet();
+        lastSweepTime = elapsed;
+        lastSweepSize = runningAttempts.size();
+        if (elapsed > maxSweepTime) {
+            maxSweepTime = elapsed;
+        }
+        if (elapsed > slowSweepTime) {
+            LOG.info("Monitor sweep takes " + elapsed + " ms for " + lastSweepSize + " attempts, sweeps : "
+                    + getSweepCount() + ", max : " + getMaxSweepTime() + " ms");
+        }
+    }
+
+    private void handle(AttemptContext attempt, AttemptStatus sstatus) {
+        int status = sstatus.getStatus();
+        LOG.info("Current status for attempt " + attempt.getAttemptid() + " : " + status);
+        switch (status) {
+            case AttemptStatus.SUCCEEDED:
+                scheduler.attemptSucceed(attempt.getAttemptid());
+                break;
+            case AttemptStatus.FAILED:
+                scheduler.attemptFailed(attempt.getAttemptid(), sstatus.getReturnCode());
+                break;
+            case AttemptStatus.SUBMIT_FAIL:
+                scheduler.attemptSubmitFailed(attempt.getAttemptid());
+                break;
+            case AttemptStatus.RUNNING: {
+                int timeout = attempt.getExecutiontimeout();
+                Date start = attempt.getStarttime();
+                long now = System.currentTimeMillis();
+                if (now > start.getTime() + timeout * 1000 * 60) {
+                    LOG.info("attempt " +  attempt.getAttemptid() + " executing timeout ");
+                    scheduler.attemptExpired(attempt.getAttemptid());
+                }
+            }
+
         }
     }
 
     public void isInterrupt(boolean interrupt) {
         isInterrupt.compareAndSet(false, true);
     }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public void setSlowSweepTime(long slowSweepTime) {
+        this.slowSweepTime = slowSweepTime;
+    }
+
+    /**
+     * @return the number of finished sweeps.
+     */
+    public long getSweepCount() {
+        return sweepCount.get();
+    }
+
+    /**
+     * @return the time in milliseconds of the last sweep.
+     */
+    public long getLastSweepTime() {
+        return lastSweepTime;
+    }
+
+    /**
+     * @return the maximum time in milliseconds of the sweeps.
+     */
+    public long getMaxSweepTime() {
+        return maxSweepTime;
+    }
+
+    /**
+     * @return the number of attempts checked in the last sweep.
+     */
+    public int getLastSweepSize() {
+        return lastSweepSize;
+    }
+
+    /**
+     * @return the number of attempts whose status has not been handled in the current sweep.
+     */
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    private static final class StatusResult {
+
+        private final AttemptContext attempt;
+        private final AttemptStatus status;
+
+        StatusResult(AttemptContext attempt, AttemptStatus status) {
+            this.attempt = attempt;
+            this.status = status;
+        }
+    }
 }
@@ -1,36 +1,75 @@
 package com.dp.bigdata.taurus.core;
 
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
 import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
 import com.dp.bigdata.taurus.generated.module.Task;
 import com.dp.bigdata.taurus.generated.module.TaskAttempt;
-import com.dp.bigdata.taurus.generated.module.TaskAttemptExample;
 
 /**
- * Triggle for Crontab Expression.
- * 
+ * Triggle for Crontab Expression. The next fire time of each running task is kept in a min-heap, so a triggle only
+ * touches the tasks which fire before now. The heap is rebuilt lazily after <code>reload</code> and is updated
+ * incrementally by <code>schedule</code> and <code>unschedule</code>. The attempts of all the missed fire times are
+ * inserted in one batch, and the number of missed fire times to catch up per task can be limited.
+ *
  * @author damon.zhu
  */
 public class CrontabTriggle implements Triggle {
 
     private static final Log LOG = LogFactory.getLog(CrontabTriggle.class);
 
+    /*
+     * bounds the attempts inserted for one task after the engine has been down, a task fired every minute catches up
+     * on the last 100 minutes.
+     */
+    public static final int DEFAULT_MAX_CATCH_UP_ATTEMPTS = 100;
+
     @Autowired
-    private TaskAttemptMapper attemptMapper;
+    private TaskAttemptQueryMapper attemptQueryMapper;
     @Autowired
     private IDFactory idFactory;
+    @Autowired
+    private InstanceOutcomeCache outcomeCache;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    private SqlSessionTemplate batchSession;
+    private TransactionTemplate transactionTemplate;
+    private int maxCatchUpAttempts = DEFAULT_MAX_CATCH_UP_ATTEMPTS;
 
     private Scheduler scheduler;
 
+    /*
+     * the heap may contain stale entries, an entry is valid only if it is the current entry of its task.
+     */
+    private final PriorityQueue<FireEntry> fireQueue = new PriorityQueue<FireEntry>();
+    private final Map<String, FireEntry> fireEntries = new HashMap<String, FireEntry>(); // Map<taskID, FireEntry>
+    private boolean isLoaded = false;
+
     @Autowired
     public CrontabTriggle(Scheduler scheduler) {
         super();
@@ -38,50 +77,86 @@ public class CrontabTriggle implements Triggle {
     }
 
     public void triggle(Date now) {
-        Map<String, Task> tasks = scheduler.getAllRegistedTask();
-        for (Task task : tasks.values()) {
-            
-            if (task.getStatus() != TaskStatus.RUNNING) {
-                continue;
-            }
+        List<FireEntry> fired = pollFiredEntries(now);
+        if (fired.isEmpty()) {
+            return;
+        }
 
-            /*
-             * validate the cron-expression
-             */
-            CronExpression ce = null;
-            try {
-                ce = new CronExpression(task.getCrontab());
-            } catch (ParseException e) {
-                LOG.error("parse contab error for task id : " + task.getTaskid() + " when crontab string is : " + task.getCrontab());
-                try {
-                    scheduler.suspendTask(task.getTaskid());
-                } catch (ScheduleException e1) {
-                    LOG.error("Fail to suspend the task : " + task.getTaskid(), e1);
+        /*
+         * collect the missed fire times of all the fired tasks, and insert them in one batch. The IDs of a task are
+         * taken from the ID factory in one call, and the attempts of a failed batch are kept to be inserted again with
+         * the same IDs.
+         */
+        List<TaskAttempt> attempts = new ArrayList<TaskAttempt>();
+        List<Map<Date, TaskAttempt>> firedAttempts = new ArrayList<Map<Date, TaskAttempt>>(fired.size());
+        List<Date> lastFireTimes = new ArrayList<Date>(fired.size());
+        List<Date> nextFireTimes = new ArrayList<Date>(fired.size());
+        for (FireEntry entry : fired) {
+            Deque<Date> fireTimes = new ArrayDeque<Date>();
+            int skipped = 0;
+            Date nextFireTime = entry.nextFireTime;
+            while (nextFireTime != null && nextFireTime.before(now)) {
+                fireTimes.addLast(nextFireTime);
+                if (maxCatchUpAttempts > 0 && fireTimes.size() > maxCatchUpAttempts) {
+                    fireTimes.removeFirst();
+                    skipped++;
                 }
-                continue;
+                nextFireTime = entry.cron.getNextValidTimeAfter(nextFireTime);
             }
+            if (skipped > 0) {
+                LOG.warn("Skip " + skipped + " missed fire times of task " + entry.taskID + ", only the latest "
+                        + maxCatchUpAttempts + " will be executed");
+            }
+            Map<Date, TaskAttempt> unsaved = entry.unsaved == null ? Collections.<Date, TaskAttempt> emptyMap()
+                    : entry.unsaved;
+            int missing = 0;
+            for (Date fireTime : fireTimes) {
+                if (!unsaved.containsKey(fireTime)) {
+                    missing++;
+                }
+            }
+            Iterator<String> instanceIDs = missing == 0 ? Collections.<String> emptyList().iterator() : idFactory
+                    .newInstanceIDs(entry.taskID, missing).iterator();
+            Map<Date, TaskAttempt> entryAttempts = new HashMap<Date, TaskAttempt>();
+            for (Date fireTime : fireTimes) {
+                TaskAttempt attempt = unsaved.get(fireTime);
+                if (attempt == null) {
+                    String instanceID = instanceIDs.next();
+                    attempt = new TaskAttempt();
+                    attempt.setInstanceid(instanceID);
+                    attempt.setTaskid(entry.taskID);
+                    attempt.setScheduletime(fireTime);
+                    attempt.setStatus(AttemptStatus.INITIALIZED);
+                    attempt.setAttemptid(idFactory.newFirstAttemptID(instanceID));
+                }
+                attempts.add(attempt);
+                entryAttempts.put(fireTime, attempt);
+            }
+            firedAttempts.add(entryAttempts);
+            lastFireTimes.add(fireTimes.peekLast());
+            nextFireTimes.add(nextFireTime);
+        }
 
-            /*
-             * get the previous fire time and previous attempt
-             */
-            Date previousFireTime = getPreviousFireTime(task, now);
-
-            /*
-             * iterator each fire time from last previousFireTime to current.
-             */
-            Date nextFireTime = ce.getNextValidTimeAfter(previousFireTime);
-            while (nextFireTime.before(now)) {
-                String instanceID = idFactory.newInstanceID(task.getTaskid());
-                TaskAttempt attempt = new TaskAttempt();
-                String attemptID = idFactory.newAttemptID(instanceID);
-                attempt.setInstanceid(instanceID);
-                attempt.setTaskid(task.getTaskid());
-                attempt.setScheduletime(nextFireTime);
-                attempt.setStatus(AttemptStatus.INITIALIZED);
-                attempt.setAttemptid(attemptID);
-                attemptMapper.insert(attempt);
-                nextFireTime = ce.getNextValidTimeAfter(nextFireTime);
+        try {
+            insertAttempts(attempts);
+        } catch (RuntimeException e) {
+            LOG.error("Fail to insert " + attempts.size() + " attempts", e);
+            // the entries will be fired again in the next triggle, with the same attempts
+            for (int i = 0; i < fired.size(); i++) {
+                FireEntry entry = fired.get(i);
+                entry.unsaved = firedAttempts.get(i);
+                reschedule(entry, entry.nextFireTime);
             }
+            return;
+        }
+        for (TaskAttempt attempt : attempts) {
+            outcomeCache.instanceCreated(attempt.getTaskid(), attempt.getInstanceid());
+        }
+        for (int i = 0; i < fired.size(); i++) {
+            FireEntry entry = fired.get(i);
+            entry.unsaved = null;
+            entry.previousFireTime = lastFireTimes.get(i);
+            reschedule(entry, nextFireTimes.get(i));
         }
     }
 
@@ -89,13 +164,203 @@ public class CrontabTriggle implements Triggle {
         triggle(new Date());
     }
 
+    /**
+     * Set the maximum number of missed fire times executed for a task after the engine has been down; the older ones
+     * are skipped. Zero means no limit, the default is {@link #DEFAULT_MAX_CATCH_UP_ATTEMPTS}.
+     *
+     * @param maxCatchUpAttempts
+     */
+    public void setMaxCatchUpAttempts(int maxCatchUpAttempts) {
+        this.maxCatchUpAttempts = maxCatchUpAttempts;
+    }
+
+    /*
+     * insert the attempts with a batch executor in one transaction.
+     */
+    private void insertAttempts(final List<TaskAttempt> attempts) {
+        if (attempts.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (batchSession == null) {
+                batchSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+                transactionTemplate = new TransactionTemplate(transactionManager);
+            }
+        }
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                TaskAttemptMapper mapper = batchSession.getMapper(TaskAttemptMapper.class);
+                for (TaskAttempt attempt : attempts) {
+                    mapper.insert(attempt);
+                }
+            }
+        });
+    }
+
+    /**
+     * get the earliest time when one of the running tasks should be fired.
+     *
+     * @return Date for the next fire time, or null if no task will be fired.
+     */
+    public synchronized Date getNextFireTime() {
+        FireEntry entry = peekValidEntry();
+        return entry == null ? null : entry.nextFireTime;
+    }
+
+    /**
+     * Drop all the fire times; they will be rebuilt from the registered tasks in the next triggle.
+     */
+    public synchronized void reload() {
+        fireQueue.clear();
+        fireEntries.clear();
+        isLoaded = false;
+    }
+
+    /**
+     * Add or update the fire time for the given task. Tasks which are not running are removed.
+     *
+     * @param task
+     */
+    public void schedule(Task task) {
+        if (task.getStatus() == null || task.getStatus() != TaskStatus.RUNNING) {
+            unschedule(task.getTaskid());
+            return;
+        }
+        CronExpression ce = parseCrontab(task);
+        if (ce == null) {
+            suspend(task);
+            return;
+        }
+        synchronized (this) {
+            if (!isLoaded) {
+                return;
+            }
+            FireEntry previous = fireEntries.get(task.getTaskid());
+            if (previous != null) {
+                offer(new FireEntry(task.getTaskid(), ce, previous.previousFireTime));
+                return;
+            }
+        }
+        Date previousFireTime = getPreviousFireTime(task, new Date());
+        synchronized (this) {
+            if (isLoaded && !fireEntries.containsKey(task.getTaskid())) {
+                offer(new FireEntry(task.getTaskid(), ce, previousFireTime));
+            }
+        }
+    }
+
+    /**
+     * Remove the fire time for the given task.
+     *
+     * @param taskID
+     */
+    public synchronized void unschedule(String taskID) {
+        fireEntries.remove(taskID);
+    }
+
+    private List<FireEntry> pollFiredEntries(Date now) {
+        synchronized (this) {
+            if (isLoaded) {
+                return pollValidEntries(now);
+            }
+        }
+
+        /*
+         * rebuild the heap from the registered tasks
+         */
+        List<FireEntry> entries = new ArrayList<FireEntry>();
+        List<Task> invalidTasks = new ArrayList<Task>();
+        for (Task task : scheduler.getAllRegistedTask().values()) {
+            if (task.getStatus() == null || task.getStatus() != TaskStatus.RUNNING) {
+                continue;
+            }
+            CronExpression ce = parseCrontab(task);
+            if (ce == null) {
+                invalidTasks.add(task);
+                continue;
+            }
+            entries.add(new FireEntry(task.getTaskid(), ce, getPreviousFireTime(task, now)));
+        }
+        for (Task task : invalidTasks) {
+            suspend(task);
+        }
+
+        synchronized (this) {
+            if (!isLoaded) {
+                fireQueue.clear();
+                fireEntries.clear();
+                for (FireEntry entry : entries) {
+                    offer(entry);
+                }
+                isLoaded = true;
+            }
+            return pollValidEntries(now);
+        }
+    }
+
+    private List<FireEntry> pollValidEntries(Date now) {
+        List<FireEntry> fired = new ArrayList<FireEntry>();
+        FireEntry entry = peekValidEntry();
+        while (entry != null && entry.nextFireTime.before(now)) {
+            fired.add(fireQueue.poll());
+            entry = peekValidEntry();
+        }
+        return fired;
+    }
+
+    private FireEntry peekValidEntry() {
+        FireEntry entry = fireQueue.peek();
+        while (entry != null && (fireEntries.get(entry.taskID) != entry || entry.nextFireTime == null)) {
+            fireQueue.poll();
+            entry = fireQueue.peek();
+        }
+        return entry;
+    }
+
+    private synchronized void reschedule(FireEntry entry, Date nextFireTime) {
+        // the task may be updated or removed during the triggle
+        if (fireEntries.get(entry.taskID) == entry && nextFireTime != null) {
+            entry.nextFireTime = nextFireTime;
+            fireQueue.offer(entry);
+        }
+    }
+
+    private void offer(FireEntry entry) {
+        fireEntries.put(entry.taskID, entry);
+        if (entry.nextFireTime != null) {
+            fireQueue.offer(entry);
+        }
+    }
+
+    /*
+     * validate the cron-expression
+     */
+    private CronExpression parseCrontab(Task task) {
+        try {
+            return new CronExpression(task.getCrontab());
+        } catch (ParseException e) {
+            LOG.error("parse contab error for task id : " + task.getTaskid() + " when crontab string is : " + task.getCrontab());
+            return null;
+        }
+    }
+
+    private void suspend(Task task) {
+        unschedule(task.getTaskid());
+        try {
+            scheduler.suspendTask(task.getTaskid());
+        } catch (ScheduleException e1) {
+            LOG.error("Fail to suspend the task : " + task.getTaskid(), e1);
+        }
+    }
+
     private Date getPreviousFireTime(Task task, Date now) {
-        List<TaskAttempt> attempts = retrieveTaskAttemptByTaskID(task.getTaskid());
+        Date lastAttemptTime = attemptQueryMapper.selectLastScheduleTime(task.getTaskid());
         Date previousFireTime;
         /*
-         * if it is the first time to execute this task, set time to now; otherwise set to the first attempt's schedule time.
+         * if it is the first time to execute this task, set time to now; otherwise set to the latest attempt's schedule time.
          */
-        if (attempts == null || attempts.size() == 0) {
+        if (lastAttemptTime == null) {
             Calendar lastExecDateCal = Calendar.getInstance();
             lastExecDateCal.setTime(now);
             lastExecDateCal.set(Calendar.MILLISECOND, 0);
@@ -103,7 +368,7 @@ public class CrontabTriggle implements Triggle {
             lastExecDateCal.add(Calendar.MINUTE, -1);
             previousFireTime = lastExecDateCal.getTime();
         } else {
-            previousFireTime = attempts.get(0).getScheduletime();
+            previousFireTime = lastAttemptTime;
         }
 
         /*
@@ -116,11 +381,30 @@ public class CrontabTriggle implements Triggle {
         return previousFireTime;
     }
 
-    public List<TaskAttempt> retrieveTaskAttemptByTaskID(String taskID) {
-        TaskAttemptExample example = new TaskAttemptExample();
-        example.or().andTaskidEqualTo(taskID);
-        String orderByClause = "scheduleTime desc";
-        example.setOrderByClause(orderByClause);
-        return attemptMapper.selectByExample(example);
+    /**
+     * FireEntry is the heap node of a running task.
+     */
+    private static final class FireEntry implements Comparable<FireEntry> {
+
+        private final String taskID;
+        private final CronExpression cron;
+        private Date previousFireTime;
+        private Date nextFireTime;
+        /*
+         * Map<fireTime, attempt>, the attempts of the last triggle which failed to be inserted
+         */
+        private Map<Date, TaskAttempt> unsaved;
+
+        FireEntry(String taskID, CronExpression cron, Date previousFireTime) {
+            this.taskID = taskID;
+            this.cron = cron;
+            this.previousFireTime = previousFireTime;
+            this.nextFireTime = cron.getNextValidTimeAfter(previousFireTime);
+        }
+
+        @Override
+        public int compareTo(FireEntry o) {
+            return nextFireTime.compareTo(o.nextFireTime);
+        }
     }
 }
@@ -1,21 +1,42 @@
 package com.dp.bigdata.taurus.core;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.dp.bigdata.taurus.core.mapper.IDCounterMapper;
 import com.dp.bigdata.taurus.generated.mapper.InstanceIDCounterMapper;
 import com.dp.bigdata.taurus.generated.mapper.TaskIDCounterMapper;
 import com.dp.bigdata.taurus.generated.module.InstanceIDCounter;
 import com.dp.bigdata.taurus.generated.module.TaskIDCounter;
 
 /**
+ * DefaultIDFactory hands out instance and attempt IDs from blocks of counters kept in memory. A block is reserved by
+ * adding the block size to the persisted counter with a single update, so IDs stay unique across engine restarts; the
+ * unused part of a block is skipped after a restart, so the sequence may have gaps. The first attempt of an instance
+ * needs no counter at all, the counter of an instance is only created for its retries.
+ *
  * @author damon.zhu
  */
 public class DefaultIDFactory implements IDFactory {
 
+    public static final int DEFAULT_INSTANCE_BLOCK_SIZE = 100;
+    public static final int DEFAULT_ATTEMPT_BLOCK_SIZE = 5;
+    /*
+     * most instances have a few attempts, so the attempt blocks are dropped when there are too many of them.
+     */
+    private static final int MAX_ATTEMPT_BLOCKS = 4096;
+
     public static AtomicInteger taskCounter = new AtomicInteger(0);
     public static String IDENTITY = new SimpleDateFormat("yyyyMMddHHmm").format(new Date());
 
@@ -23,12 +44,42 @@ public class DefaultIDFactory implements IDFactory {
     private TaskIDCounterMapper taskIDMapper;
     @Autowired
     private InstanceIDCounterMapper instanceIDMapper;
+    @Autowired
+    private IDCounterMapper counterMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
+    private int instanceBlockSize = DEFAULT_INSTANCE_BLOCK_SIZE;
+    private int attemptBlockSize = DEFAULT_ATTEMPT_BLOCK_SIZE;
+    private final ConcurrentHashMap<String, Block> instanceBlocks = new ConcurrentHashMap<String, Block>(); // Map<taskID, Block>
+    private final ConcurrentHashMap<String, Block> attemptBlocks = new ConcurrentHashMap<String, Block>(); // Map<instanceID, Block>
+    private final Object instanceLock = new Object();
+    private final Object attemptLock = new Object();
 
     public void setIdentity(String identity) {
         IDENTITY = identity;
     }
 
+    public void setInstanceBlockSize(int instanceBlockSize) {
+        this.instanceBlockSize = instanceBlockSize;
+    }
+
+    public void setAttemptBlockSize(int attemptBlockSize) {
+        this.attemptBlockSize = attemptBlockSize;
+    }
+
+    /**
+     * Drop all the reserved blocks, the next IDs will be reserved from the database again.
+     */
+    public void reset() {
+        synchronized (instanceLock) {
+            instanceBlocks.clear();
+        }
+        synchronized (attemptLock) {
+            attemptBlocks.clear();
+        }
+    }
+
     public synchronized String newTaskID() {
         return new TaskID(IDENTITY, taskCounter.incrementAndGet()).toString();
     }
@@ -37,48 +88,161 @@ public class DefaultIDFactory implements IDFactory {
         return newInstanceID(TaskID.forName(taskID));
     }
 
-    public synchronized String newInstanceID(TaskID taskID) {
+    public String newInstanceID(TaskID taskID) {
         String taskid = taskID.toString();
-        TaskIDCounter counter = taskIDMapper.selectByPrimaryKey(taskid);
-        InstanceID instanceID;
-        if (counter == null) {
-            instanceID = new InstanceID(taskID, 1);
-            TaskIDCounter record = new TaskIDCounter();
-            record.setCounter(1);
-            record.setTaskid(taskID.toString());
-            taskIDMapper.insertSelective(record);
-        } else {
-            int c = counter.getCounter();
-            c++;
-            instanceID = new InstanceID(taskID, c);
-            counter.setCounter(c);
-            taskIDMapper.updateByPrimaryKey(counter);
+        Block block = instanceBlocks.get(taskid);
+        int id = block == null ? 0 : block.next();
+        if (id == 0) {
+            synchronized (instanceLock) {
+                block = instanceBlocks.get(taskid);
+                id = block == null ? 0 : block.next();
+                if (id == 0) {
+                    block = reserveInstanceBlock(taskid, instanceBlockSize);
+                    instanceBlocks.put(taskid, block);
+                    id = block.next();
+                }
+            }
+        }
+        return new InstanceID(taskID, id).toString();
+    }
+
+    public List<String> newInstanceIDs(String taskID, int count) {
+        return newInstanceIDs(TaskID.forName(taskID), count);
+    }
+
+    public List<String> newInstanceIDs(TaskID taskID, int count) {
+        String taskid = taskID.toString();
+        List<String> ids = new ArrayList<String>(count);
+        take(instanceBlocks.get(taskid), taskID, count, ids);
+        if (ids.size() < count) {
+            synchronized (instanceLock) {
+                Block block = instanceBlocks.get(taskid);
+                take(block, taskID, count, ids);
+                if (ids.size() < count) {
+                    // one block for all the rest
+                    block = reserveInstanceBlock(taskid, Math.max(instanceBlockSize, count - ids.size()));
+                    instanceBlocks.put(taskid, block);
+                    take(block, taskID, count, ids);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static void take(Block block, TaskID taskID, int count, List<String> ids) {
+        int id;
+        while (block != null && ids.size() < count && (id = block.next()) != 0) {
+            ids.add(new InstanceID(taskID, id).toString());
         }
-        return instanceID.toString();
+    }
+
+    public String newFirstAttemptID(String instanceID) {
+        return newFirstAttemptID(InstanceID.forName(instanceID));
+    }
+
+    public String newFirstAttemptID(InstanceID instanceID) {
+        return new AttemptID(instanceID, 1).toString();
     }
 
     public String newAttemptID(String instanceID) {
         return newAttemptID(InstanceID.forName(instanceID));
     }
 
-    public synchronized String newAttemptID(InstanceID instanceID) {
+    public String newAttemptID(InstanceID instanceID) {
         String instanceid = instanceID.toString();
-        InstanceIDCounter counter = instanceIDMapper.selectByPrimaryKey(instanceid);
-        AttemptID attemptID;
-        if (counter == null) {
-            attemptID = new AttemptID(instanceID, 1);
+        Block block = attemptBlocks.get(instanceid);
+        int id = block == null ? 0 : block.next();
+        if (id == 0) {
+            synchronized (attemptLock) {
+                block = attemptBlocks.get(instanceid);
+                id = block == null ? 0 : block.next();
+                if (id == 0) {
+                    if (attemptBlocks.size() >= MAX_ATTEMPT_BLOCKS) {
+                        attemptBlocks.clear();
+                    }
+                    block = reserveAttemptBlock(instanceid);
+                    attemptBlocks.put(instanceid, block);
+                    id = block.next();
+                }
+            }
+        }
+        return new AttemptID(instanceID, id).toString();
+    }
+
+    private Block reserveInstanceBlock(final String taskid, final int size) {
+        while (true) {
+            Integer last = new TransactionTemplate(transactionManager).execute(new TransactionCallback<Integer>() {
+                public Integer doInTransaction(TransactionStatus status) {
+                    if (counterMapper.addTaskCounter(taskid, size) == 0) {
+                        return null;
+                    }
+                    return counterMapper.selectTaskCounter(taskid);
+                }
+            });
+            if (last != null) {
+                return new Block(last - size + 1, last);
+            }
+            TaskIDCounter record = new TaskIDCounter();
+            record.setCounter(size);
+            record.setTaskid(taskid);
+            try {
+                taskIDMapper.insertSelective(record);
+                return new Block(1, size);
+            } catch (DataIntegrityViolationException e) {
+                // another engine has inserted the counter, try again
+            }
+        }
+    }
+
+    private Block reserveAttemptBlock(final String instanceid) {
+        final int size = attemptBlockSize;
+        while (true) {
+            Integer last = new TransactionTemplate(transactionManager).execute(new TransactionCallback<Integer>() {
+                public Integer doInTransaction(TransactionStatus status) {
+                    if (counterMapper.addInstanceCounter(instanceid, size) == 0) {
+                        return null;
+                    }
+                    return counterMapper.selectInstanceCounter(instanceid);
+                }
+            });
+            if (last != null) {
+                return new Block(last - size + 1, last);
+            }
+            // the first attempt has been handed out by newFirstAttemptID without a counter
             InstanceIDCounter record = new InstanceIDCounter();
-            record.setCounter(1);
-            record.setInstanceid(instanceID.toString());
-            instanceIDMapper.insert(record);
-        } else {
-            int c = counter.getCounter();
-            c++;
-            attemptID = new AttemptID(instanceID, c);
-            counter.setCounter(c);
-            instanceIDMapper.updateByPrimaryKey(counter);
+            record.setCounter(1 + size);
+            record.setInstanceid(instanceid);
+            try {
+                instanceIDMapper.insert(record);
+                return new Block(2, 1 + size);
+            } catch (DataIntegrityViolationException e) {
+                // another engine has inserted the counter, try again
+            }
         }
-        return attemptID.toString();
+    }
+
+    /**
+     * A block of reserved IDs [first, last].
+     */
+    private static final class Block {
 
+        private final AtomicInteger next;
+        private final int last;
+
+        Block(int first, int last) {
+            this.next = new AtomicInteger(first);
+            this.last = last;
+        }
+
+        /**
+         * @return the next ID, or 0 if the block is used up.
+         */
+        int next() {
+            if (next.get() > last) {
+                return 0;
+            }
+            int id = next.getAndIncrement();
+            return id <= last ? id : 0;
+        }
     }
 }
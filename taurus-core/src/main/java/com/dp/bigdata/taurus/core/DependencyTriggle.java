@@ -1,52 +1,133 @@
 package com.dp.bigdata.taurus.core;
 
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.core.parser.DependencyExpression;
 import com.dp.bigdata.taurus.core.parser.DependencyParser;
 import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
 import com.dp.bigdata.taurus.generated.module.Task;
 import com.dp.bigdata.taurus.generated.module.TaskAttempt;
-import com.dp.bigdata.taurus.generated.module.TaskAttemptExample;
 import com.mysql.jdbc.StringUtils;
 
 /**
- * DependencyTriggle
- * 
+ * DependencyTriggle. Dependency expressions are compiled once and cached by taskID, the entry of a task is dropped when
+ * the task is updated or unregistered. A waiting attempt is only re-evaluated when
+ * one of the tasks it depends on has changed (a finished attempt or a new instance), which is found through a reverse
+ * index from the upstream task name to the waiting attempts. All waiting attempts are re-evaluated periodically as a
+ * safety net.
+ *
  * @author damon.zhu
  */
 public class DependencyTriggle implements Triggle {
 
     private static final Log LOG = LogFactory.getLog(DependencyTriggle.class);
-    
+
+    /**
+     * Interval to re-evaluate all the waiting attempts.
+     */
+    private static final long FULL_EVALUATION_INTERVAL = 6 * Scheduler.SCHDUELE_INTERVAL;
+    private static final List<Integer> WAITING_STATUSES = Arrays.asList(AttemptStatus.INITIALIZED,
+            AttemptStatus.DEPENDENCY_TIMEOUT);
+
     @Autowired
     private TaskAttemptMapper taskAttemptMapper;
     @Autowired
+    private TaskAttemptQueryMapper attemptQueryMapper;
+    @Autowired
     private AttemptStatusCheck statusCheck;
-    private DependencyParser parser;
     private Scheduler scheduler;
 
+    private final Map<String, CompiledExpression> compiledExpressions; // Map<taskID, compiled expression>
+    private final Set<String> changedTasks; // Set<task name>
+    private volatile Map<String, Set<String>> dependents; // Map<upstream task name, waiting attemptIDs>
+    private Set<String> waitingAttempts; // Set<attemptID>
+    private long lastFullEvaluation;
+
     @Autowired
     public DependencyTriggle(Scheduler scheduler) {
         this.scheduler = scheduler;
-        parser = new DependencyParser();
+        compiledExpressions = new ConcurrentHashMap<String, CompiledExpression>();
+        changedTasks = new HashSet<String>();
+        dependents = new HashMap<String, Set<String>>();
+        waitingAttempts = new HashSet<String>();
+    }
+
+    /**
+     * Notify the triggle that the attempts of the given task have changed, so the attempts depending on it should be
+     * re-evaluated.
+     *
+     * @param taskName
+     */
+    public void upstreamChanged(String taskName) {
+        synchronized (changedTasks) {
+            changedTasks.add(taskName);
+        }
+    }
+
+    /**
+     * Drop the compiled expression of the given task, after it has been updated or unregistered.
+     *
+     * @param taskID
+     */
+    public void taskChanged(String taskID) {
+        compiledExpressions.remove(taskID);
     }
 
     public void triggle() {
-        TaskAttemptExample example = new TaskAttemptExample();
-        example.or().andStatusEqualTo(AttemptStatus.INITIALIZED);
-        example.or().andStatusEqualTo(AttemptStatus.DEPENDENCY_TIMEOUT);
-        List<TaskAttempt> attempts = taskAttemptMapper.selectByExample(example);
+        List<TaskAttempt> attempts = attemptQueryMapper.selectByStatuses(WAITING_STATUSES);
         final Map<String, Task> tasks = scheduler.getAllRegistedTask();
+
+        /*
+         * new waiting attempts mean new instances of their tasks.
+         */
+        Set<String> changed;
+        synchronized (changedTasks) {
+            changed = new HashSet<String>(changedTasks);
+            changedTasks.clear();
+        }
+        for (TaskAttempt attempt : attempts) {
+            Task task = tasks.get(attempt.getTaskid());
+            if (task != null && !waitingAttempts.contains(attempt.getAttemptid())) {
+                changed.add(task.getName());
+            }
+        }
+
+        long current = System.currentTimeMillis();
+        boolean isFullEvaluation = current >= lastFullEvaluation + FULL_EVALUATION_INTERVAL;
+        if (isFullEvaluation) {
+            lastFullEvaluation = current;
+        }
+        Set<String> affected = new HashSet<String>();
+        for (String name : changed) {
+            Set<String> ids = dependents.get(name);
+            if (ids != null) {
+                affected.addAll(ids);
+            }
+        }
+
+        Map<String, Set<String>> newDependents = new HashMap<String, Set<String>>();
+        Set<String> newWaitingAttempts = new HashSet<String>();
         for (TaskAttempt attempt : attempts) {
             Task task = tasks.get(attempt.getTaskid());
+            if (task == null) {
+                continue;
+            }
             String expression = task.getDependencyexpr();
+            DependencyExpression compiled = null;
             boolean isDepencyFinish = false;
             boolean hasDependency = true;
             if (StringUtils.isNullOrEmpty(expression)) {
@@ -57,8 +138,13 @@ public class DependencyTriggle implements Triggle {
                 isDepencyFinish = true;
             } else {
                 try {
-                    //LOG.info("Attempt " + attempt.getAttemptID() + " has dependency expression : " + expression);
-                    isDepencyFinish = parser.isDepdencySatisfied(expression, statusCheck);
+                    compiled = compile(task.getTaskid(), expression);
+                    boolean isEvaluate = isFullEvaluation || affected.contains(attempt.getAttemptid())
+                            || !waitingAttempts.contains(attempt.getAttemptid());
+                    if (isEvaluate) {
+                        //LOG.info("Attempt " + attempt.getAttemptID() + " has dependency expression : " + expression);
+                        isDepencyFinish = compiled.evaluate(statusCheck);
+                    }
                 } catch (ParseException e) {
                     LOG.error("Parse error", e);
                 }
@@ -76,9 +162,27 @@ public class DependencyTriggle implements Triggle {
                 attempt.setStatus(AttemptStatus.DEPENDENCY_PASS);
                 taskAttemptMapper.updateByPrimaryKeySelective(attempt);
             } else {
+                /*
+                 * index the attempt which is still waiting
+                 */
+                newWaitingAttempts.add(attempt.getAttemptid());
+                if (compiled != null) {
+                    for (String name : compiled.getDependencyNames()) {
+                        Set<String> ids = newDependents.get(name);
+                        if (ids == null) {
+                            ids = new HashSet<String>();
+                            newDependents.put(name, ids);
+                        }
+                        ids.add(attempt.getAttemptid());
+                    }
+                }
+
                 /*
                  *  check whether the attempt has expire the wait-time
                  */
+                if (attempt.getStatus() == AttemptStatus.DEPENDENCY_TIMEOUT) {
+                    continue;
+                }
                 int timeout = task.getWaittimeout();
                 Date start = attempt.getScheduletime();
                 long now = System.currentTimeMillis();
@@ -90,5 +194,45 @@ public class DependencyTriggle implements Triggle {
                 }
             }
         }
+        dependents = newDependents;
+        waitingAttempts = newWaitingAttempts;
+    }
+
+    /**
+     * get the waiting attempts which depend on the given task.
+     *
+     * @param taskName
+     * @return Set<String> for the waiting attemptIDs
+     */
+    public Set<String> getWaitingAttempts(String taskName) {
+        Set<String> ids = dependents.get(taskName);
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+
+    boolean isCompiled(String taskID) {
+        return compiledExpressions.containsKey(taskID);
+    }
+
+    private DependencyExpression compile(String taskID, String expression) throws ParseException {
+        CompiledExpression compiled = compiledExpressions.get(taskID);
+        // the expression may have been changed by an update which has not been reported yet
+        if (compiled == null || !compiled.expression.equals(expression)) {
+            compiled = new CompiledExpression(expression, DependencyParser.compile(expression));
+            compiledExpressions.put(taskID, compiled);
+        }
+        return compiled.compiled;
+    }
+
+    private static final class CompiledExpression {
+        final String expression;
+        final DependencyExpression compiled;
+
+        CompiledExpression(String expression, DependencyExpression compiled) {
+            this.expression = expression;
+            this.compiled = compiled;
+        }
     }
 }
@@ -3,23 +3,29 @@ package com.dp.bigdata.taurus.core;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
 import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
 import com.dp.bigdata.taurus.generated.mapper.TaskMapper;
 import com.dp.bigdata.taurus.generated.module.Host;
 import com.dp.bigdata.taurus.generated.module.Task;
 import com.dp.bigdata.taurus.generated.module.TaskAttempt;
-import com.dp.bigdata.taurus.generated.module.TaskAttemptExample;
 import com.dp.bigdata.taurus.generated.module.TaskExample;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteCompletionListener;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteContext;
 import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteException;
 import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteStatus;
 import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecutorManager;
@@ -34,16 +40,18 @@ final public class Engine implements Scheduler {
 
     private static final Log LOG = LogFactory.getLog(Engine.class);
 
-    private Map<String, Task> registedTasks; // Map<taskID, task>
-    private Map<String, String> tasksMapCache; // Map<name, taskID>
-    private Map<String, HashMap<String, AttemptContext>> runningAttempts; // Map<taskID,HashMap<attemptID,AttemptContext>>
+    private ConcurrentMap<String, ConcurrentMap<String, AttemptContext>> runningAttempts; // Map<taskID,Map<attemptID,AttemptContext>>
+    private final ConcurrentMap<String, AttemptContext> submittingAttempts; // Map<attemptID,AttemptContext>, assigned but not registered yet
+    private ConcurrentMap<String, AtomicInteger> hostRunningCounts; // Map<ip, number of running attempts>
+    private ConcurrentMap<Integer, AtomicInteger> poolRunningCounts; // Map<poolID, number of running attempts>
+    private final AtomicInteger runningCount = new AtomicInteger();
     private Runnable progressMonitor;
     @Autowired
     @Qualifier("triggle.crontab")
-    private Triggle crontabTriggle;
+    private CrontabTriggle crontabTriggle;
     @Autowired
     @Qualifier("triggle.dependency")
-    private Triggle dependencyTriggle;
+    private DependencyTriggle dependencyTriggle;
     @Autowired
     @Qualifier("filter.isAllowMutilInstance")
     private Filter filter;
@@ -52,67 +60,133 @@ final public class Engine implements Scheduler {
     @Autowired
     private TaskAttemptMapper taskAttemptMapper;
     @Autowired
+    private TaskAttemptQueryMapper attemptQueryMapper;
+    @Autowired
     private TaskMapper taskMapper;
     @Autowired
+    private MetadataCache metadataCache;
+    @Autowired
     private IDFactory idFactory;
     @Autowired
     private ExecutorManager zookeeper;
+    @Autowired
+    private InstanceOutcomeCache outcomeCache;
+    @Autowired
+    private AttemptDispatcher dispatcher;
     /**
      * Maximum concurrent running attempt number
      */
     private int maxConcurrency = 20;
+    /**
+     * Changes of a task and its attempts are serialized by the lock of the task; tasks share LOCK_STRIPES locks
+     */
+    private static final int LOCK_STRIPES = 64;
+    private final Lock[] taskLocks;
+    /**
+     * Events which wake up the scheduling loop before the next periodic scan
+     */
+    private final WakeupQueue wakeupQueue;
+    /**
+     * Finished attempts are reported by the status watches; the progress monitor only reconciles the missed ones
+     */
+    private final ExecuteCompletionListener completionListener;
+    /**
+     * Ready attempts are submitted to the agents by the dispatcher
+     */
+    private final AttemptDispatcher.Submitter submitter;
 
     public Engine() {
-        registedTasks = new ConcurrentHashMap<String, Task>();
-        tasksMapCache = new ConcurrentHashMap<String, String>();
-        runningAttempts = new ConcurrentHashMap<String, HashMap<String, AttemptContext>>();
+        runningAttempts = new ConcurrentHashMap<String, ConcurrentMap<String, AttemptContext>>();
+        submittingAttempts = new ConcurrentHashMap<String, AttemptContext>();
+        hostRunningCounts = new ConcurrentHashMap<String, AtomicInteger>();
+        poolRunningCounts = new ConcurrentHashMap<Integer, AtomicInteger>();
+        taskLocks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            taskLocks[i] = new ReentrantLock();
+        }
+        wakeupQueue = new WakeupQueue();
+        completionListener = new AttemptCompletionListener();
+        submitter = new AttemptDispatcher.Submitter() {
+            public boolean submit(AttemptContext context) throws ScheduleException {
+                return submitAttempt(context);
+            }
+        };
     }
 
     /**
      * load data from the database;
      */
     public void load() {
-        // load all tasks
-        TaskExample example = new TaskExample();
-        example.or().andStatusEqualTo(TaskStatus.RUNNING);
-        example.or().andStatusEqualTo(TaskStatus.SUSPEND);
-        List<Task> tasks = taskMapper.selectByExample(example);
-        for (Task task : tasks) {
-            registedTasks.put(task.getTaskid(), task);
-        }
+        // load all tasks, pools and hosts
+        metadataCache.load();
         // load running attempts
-        TaskAttemptExample example1 = new TaskAttemptExample();
-        example1.or().andStatusEqualTo(AttemptStatus.RUNNING);
-        List<TaskAttempt> attempts = taskAttemptMapper.selectByExample(example1);
+        List<TaskAttempt> attempts = attemptQueryMapper.selectByStatuses(Collections.singletonList(AttemptStatus.RUNNING));
         for (TaskAttempt attempt : attempts) {
-            Task task = registedTasks.get(attempt.getTaskid());
+            Task task = metadataCache.getTask(attempt.getTaskid());
             AttemptContext context = new AttemptContext(attempt, task);
             registAttemptContext(context);
+            watchCompletion(context);
         }
+        // fire times are rebuilt from the loaded tasks
+        crontabTriggle.reload();
+        outcomeCache.clear();
     }
 
     /**
-     * start the engine;
+     * start the engine; each phase only runs when the wakeup queue reports a change (a crontab fire time, a registered
+     * task or a finished attempt). The periodic scan of all phases is kept as a safety net.
      */
     public void start() {
         new Thread(progressMonitor).start();
 
+        long nextScanTime = 0;
+        int events = WakeupQueue.ALL;
         while (true) {
-            LOG.info("Engine trys to scan the database...");
-            crontabTriggle.triggle();
-            dependencyTriggle.triggle();
-            List<AttemptContext> contexts = filter.filter(getReadyToRunAttempt());
-            for (AttemptContext context : contexts) {
+            long now = System.currentTimeMillis();
+            if (now >= nextScanTime) {
+                LOG.info("Engine trys to scan the database...");
+                events = WakeupQueue.ALL;
+                nextScanTime = now + SCHDUELE_INTERVAL;
+            }
+            if ((events & WakeupQueue.CRONTAB) != 0) {
+                crontabTriggle.triggle();
+                events |= WakeupQueue.DEPENDENCY;
+            }
+            if ((events & WakeupQueue.DEPENDENCY) != 0) {
+                dependencyTriggle.triggle();
+                events |= WakeupQueue.DISPATCH;
+            }
+            if ((events & WakeupQueue.DISPATCH) != 0) {
+                List<AttemptContext> contexts = filter.filter(getReadyToRunAttempt());
                 try {
-                    executeAttempt(context);
-                } catch (ScheduleException e) {
-                    // do nothing
-                    LOG.error(e.getMessage());
+                    // wait for the submits, otherwise the next round would read the same attempts again
+                    if (dispatcher.dispatch(contexts, submitter) > 0) {
+                        // the deferred attempts are dispatched again once this round is over
+                        wakeupQueue.offer(WakeupQueue.DISPATCH);
+                    }
+                } catch (InterruptedException e) {
+                    LOG.error("Dispatch is interrupted", e);
                 }
             }
+
+            /*
+             * sleep until the next fire time or the next periodic scan, whichever comes first.
+             */
+            long deadline = nextScanTime;
+            boolean isFireTime = false;
+            Date nextFireTime = crontabTriggle.getNextFireTime();
+            if (nextFireTime != null && nextFireTime.getTime() < deadline) {
+                // crontab triggle only fires the time strictly before now
+                deadline = nextFireTime.getTime() + 1;
+                isFireTime = true;
+            }
             try {
-                Thread.sleep(SCHDUELE_INTERVAL);
+                events = wakeupQueue.poll(deadline);
             } catch (InterruptedException e) {
+                events = 0;
+            }
+            if (events == 0 && isFireTime) {
+                events = WakeupQueue.CRONTAB;
             }
         }
     }
@@ -121,177 +195,349 @@ final public class Engine implements Scheduler {
      * graceful shutdown the server;
      */
     public void stop() {
-        // TODO Auto-generated method stub
-
+        dispatcher.shutdown();
     }
 
-    public synchronized void registerTask(Task task) throws ScheduleException {
-        if (!registedTasks.containsKey(task.getTaskid())) {
-            registedTasks.put(task.getTaskid(), task);
-            taskMapper.insert(task);
-        } else {
-            throw new ScheduleException("The task : " + task.getTaskid() + " has been registered.");
+    public void registerTask(Task task) throws ScheduleException {
+        Lock lock = lockFor(task.getTaskid());
+        lock.lock();
+        try {
+            if (metadataCache.getTask(task.getTaskid()) == null) {
+                taskMapper.insert(task);
+                metadataCache.taskChanged(task);
+                crontabTriggle.schedule(task);
+                wakeupQueue.offer(WakeupQueue.CRONTAB);
+            } else {
+                throw new ScheduleException("The task : " + task.getTaskid() + " has been registered.");
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void unRegisterTask(String taskID) throws ScheduleException {
-        Map<String, AttemptContext> contexts = runningAttempts.get(taskID);
-        if (contexts != null && contexts.size() > 0) {
-            throw new ScheduleException("There are running attempts, so cannot remove this task");
-        }
+    public void unRegisterTask(String taskID) throws ScheduleException {
+        Lock lock = lockFor(taskID);
+        lock.lock();
+        try {
+            Map<String, AttemptContext> contexts = runningAttempts.get(taskID);
+            if (contexts != null && contexts.size() > 0) {
+                throw new ScheduleException("There are running attempts, so cannot remove this task");
+            }
 
-        if (registedTasks.containsKey(taskID)) {
-            Task task = registedTasks.get(taskID);
-            task.setStatus(TaskStatus.DELETED);
-            taskMapper.updateByPrimaryKeySelective(task);
-            registedTasks.remove(taskID);
+            Task task = metadataCache.getTask(taskID);
+            if (task != null) {
+                Task deleted = copyOf(task);
+                deleted.setStatus(TaskStatus.DELETED);
+                taskMapper.updateByPrimaryKeySelective(deleted);
+                metadataCache.taskRemoved(taskID);
+                crontabTriggle.unschedule(taskID);
+                dependencyTriggle.taskChanged(taskID);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void updateTask(Task task) throws ScheduleException {
-        if (registedTasks.containsKey(task.getTaskid())) {
-            registedTasks.remove(task.getTaskid());
-            registedTasks.put(task.getTaskid(), task);
-            taskMapper.updateByPrimaryKeySelective(task);
-        } else {
-            throw new ScheduleException("The task : " + task.getTaskid() + " has not been found.");
+    public void updateTask(Task task) throws ScheduleException {
+        Lock lock = lockFor(task.getTaskid());
+        lock.lock();
+        try {
+            if (metadataCache.getTask(task.getTaskid()) != null) {
+                taskMapper.updateByPrimaryKeySelective(task);
+                // only the changed fields are given, the cache keeps the whole task
+                Task updated = taskMapper.selectByPrimaryKey(task.getTaskid());
+                metadataCache.taskChanged(updated);
+                crontabTriggle.schedule(updated);
+                dependencyTriggle.taskChanged(task.getTaskid());
+                wakeupQueue.offer(WakeupQueue.CRONTAB);
+            } else {
+                throw new ScheduleException("The task : " + task.getTaskid() + " has not been found.");
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void executeTask(String taskID, long timeout) throws ScheduleException {
-        //TODO timeout
-        String instanceID = idFactory.newInstanceID(taskID);
-        TaskAttempt attempt = new TaskAttempt();
-        String attemptID = idFactory.newAttemptID(instanceID);
-        attempt.setInstanceid(instanceID);
-        attempt.setTaskid(taskID);
-        attempt.setStatus(AttemptStatus.INITIALIZED);
-        attempt.setAttemptid(attemptID);
-        attempt.setScheduletime(new Date());
-        Task task = registedTasks.get(taskID);
-        AttemptContext context = new AttemptContext(attempt, task);
+    public void executeTask(String taskID, long timeout) throws ScheduleException {
+        AttemptContext context;
+        Lock lock = lockFor(taskID);
+        lock.lock();
+        try {
+            //TODO timeout
+            String instanceID = idFactory.newInstanceID(taskID);
+            TaskAttempt attempt = new TaskAttempt();
+            String attemptID = idFactory.newFirstAttemptID(instanceID);
+            attempt.setInstanceid(instanceID);
+            attempt.setTaskid(taskID);
+            attempt.setStatus(AttemptStatus.INITIALIZED);
+            attempt.setAttemptid(attemptID);
+            attempt.setScheduletime(new Date());
+            Task task = metadataCache.getTask(taskID);
+            context = new AttemptContext(attempt, task);
+            outcomeCache.instanceCreated(taskID, instanceID);
+            // a new instance changes the recent instances of this task
+            dependencyTriggle.upstreamChanged(task.getName());
+        } finally {
+            lock.unlock();
+        }
         executeAttempt(context);
     }
 
-    public synchronized void suspendTask(String taskID) throws ScheduleException {
-        if (registedTasks.containsKey(taskID)) {
-            Task task = registedTasks.get(taskID);
-            task.setStatus(TaskStatus.SUSPEND);
-            taskMapper.updateByPrimaryKey(task);
-        } else {
-            throw new ScheduleException("The task : " + taskID + " has not been found.");
+    public void suspendTask(String taskID) throws ScheduleException {
+        Lock lock = lockFor(taskID);
+        lock.lock();
+        try {
+            Task task = metadataCache.getTask(taskID);
+            if (task != null) {
+                Task suspended = copyOf(task);
+                suspended.setStatus(TaskStatus.SUSPEND);
+                taskMapper.updateByPrimaryKey(suspended);
+                metadataCache.taskChanged(suspended);
+                crontabTriggle.unschedule(taskID);
+            } else {
+                throw new ScheduleException("The task : " + taskID + " has not been found.");
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void executeAttempt(AttemptContext context) throws ScheduleException {
+    public void executeAttempt(AttemptContext context) throws ScheduleException {
+        if (!submitAttempt(context)) {
+            throw new ScheduleException("The host : " + context.getAttempt().getExechost()
+                    + " is busy, fail to execute attemptID : " + context.getAttemptid());
+        }
+    }
+
+    /**
+     * The lock of the task is only held to assign and mark the attempt, and to register it after the submit; the
+     * submit waits for a slot of the agent and writes to the zookeeper, so it is done without the lock.
+     * 
+     * @return false if no slot of the agent was free within the acquire timeout of the dispatcher; the attempt is left
+     *         unchanged in the database for the next dispatch.
+     */
+    private boolean submitAttempt(AttemptContext context) throws ScheduleException {
         TaskAttempt attempt = context.getAttempt();
-        Host host = assignPolicy.assignTask(context.getTask());
-        attempt.setExechost(host.getIp());
-        attempt.setStarttime(new Date());
-        final long start = System.nanoTime();
+        Host host;
+        Lock lock = lockFor(context.getTaskid());
+        lock.lock();
         try {
-            zookeeper.execute(context.getContext());
-        } catch (ExecuteException ee) {
-            attempt.setStatus(AttemptStatus.SUBMIT_FAIL);
-            taskAttemptMapper.updateByPrimaryKey(attempt);
-            throw new ScheduleException("Fail to execute attemptID : " + attempt.getAttemptid() + " on host : " + host.getIp());
+            host = assignPolicy.assignTask(context.getTask());
+            if (host == null) {
+                throw new ScheduleException("No host is available for attemptID : " + attempt.getAttemptid());
+            }
+            if (submittingAttempts.putIfAbsent(context.getAttemptid(), context) != null) {
+                throw new ScheduleException("The attemptID : " + attempt.getAttemptid() + " is being submitted");
+            }
+            attempt.setExechost(host.getIp());
+            attempt.setStarttime(new Date());
+        } finally {
+            lock.unlock();
         }
-        final long end = System.nanoTime();
-        LOG.info("Time (seconds) taken " + (end - start) / 1.0e9 + " to start attempt : " + context.getAttemptid());
 
-        // update the status for TaskAttempt
-        attempt.setStatus(AttemptStatus.RUNNING);
-        taskAttemptMapper.updateByPrimaryKey(attempt);
-        // register the attempt context
-        registAttemptContext(context);
+        try {
+            try {
+                if (!dispatcher.tryAcquire(host.getIp())) {
+                    LOG.info("Defer attempt : " + context.getAttemptid() + ", host : " + host.getIp() + " is busy");
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScheduleException("Interrupted while waiting for host : " + host.getIp());
+            }
+            final long start = System.nanoTime();
+            try {
+                zookeeper.execute(context.getContext());
+            } catch (ExecuteException ee) {
+                lock.lock();
+                try {
+                    attempt.setStatus(AttemptStatus.SUBMIT_FAIL);
+                    taskAttemptMapper.updateByPrimaryKey(attempt);
+                } finally {
+                    lock.unlock();
+                }
+                throw new ScheduleException("Fail to execute attemptID : " + attempt.getAttemptid() + " on host : " + host.getIp());
+            } finally {
+                dispatcher.release(host.getIp());
+            }
+            final long end = System.nanoTime();
+            dispatcher.recordSubmitTime(end - start);
+            LOG.info("Time (seconds) taken " + (end - start) / 1.0e9 + " to start attempt : " + context.getAttemptid());
+
+            lock.lock();
+            try {
+                // update the status for TaskAttempt
+                attempt.setStatus(AttemptStatus.RUNNING);
+                taskAttemptMapper.updateByPrimaryKey(attempt);
+                // register the attempt context, before its status is watched
+                registAttemptContext(context);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            submittingAttempts.remove(context.getAttemptid());
+        }
+        // a finish reported before the watch is found by its first read
+        watchCompletion(context);
+        return true;
     }
 
-    public boolean isRuningAttempt(String attemptID) {
-        HashMap<String, AttemptContext> contexts = runningAttempts.get(AttemptID.getTaskID(attemptID));
-        AttemptContext context = contexts.get(attemptID);
-        if (context == null) {
-            return false;
-        } else {
-            return true;
+    private void watchCompletion(AttemptContext context) {
+        try {
+            zookeeper.watchCompletion(context.getContext(), completionListener);
+        } catch (RuntimeException e) {
+            // the progress monitor will find the status
+            LOG.error("Fail to watch the status of attempt : " + context.getAttemptid(), e);
         }
+    }
+
+    public boolean isRuningAttempt(String attemptID) {
+        return getRunningAttemptContext(attemptID) != null;
 
     }
 
-    public synchronized void killAttempt(String attemptID) throws ScheduleException {
-        HashMap<String, AttemptContext> contexts = runningAttempts.get(AttemptID.getTaskID(attemptID));
-        AttemptContext context = contexts.get(attemptID);
-        if (context == null) {
-            throw new ScheduleException("Unable find attemptID : " + attemptID);
-        }
+    public void killAttempt(String attemptID) throws ScheduleException {
+        Lock lock = lockFor(AttemptID.getTaskID(attemptID));
+        lock.lock();
         try {
-            zookeeper.kill(context.getContext());
-        } catch (ExecuteException ee) {
-            // do nothing; keep the attempt status unchanged.
-            throw new ScheduleException("Fail to execute attemptID : " + attemptID + " on host : " + context.getExechost());
+            AttemptContext context = getRunningAttemptContext(attemptID);
+            if (context == null) {
+                if (submittingAttempts.containsKey(attemptID)) {
+                    throw new ScheduleException("The attemptID : " + attemptID + " is being submitted");
+                }
+                throw new ScheduleException("Unable find attemptID : " + attemptID);
+            }
+            try {
+                zookeeper.kill(context.getContext());
+            } catch (ExecuteException ee) {
+                // do nothing; keep the attempt status unchanged.
+                throw new ScheduleException("Fail to execute attemptID : " + attemptID + " on host : " + context.getExechost());
+            }
+            context.getAttempt().setStatus(AttemptStatus.KILLED);
+            context.getAttempt().setEndtime(new Date());
+            taskAttemptMapper.updateByPrimaryKeySelective(context.getAttempt());
+            unregistAttemptContext(context);
+            outcomeCache.attemptFinished(context.getAttempt());
+            dependencyTriggle.upstreamChanged(context.getName());
+            wakeupQueue.offer(WakeupQueue.DEPENDENCY);
+        } finally {
+            lock.unlock();
         }
-        context.getAttempt().setStatus(AttemptStatus.KILLED);
-        context.getAttempt().setEndtime(new Date());
-        taskAttemptMapper.updateByPrimaryKeySelective(context.getAttempt());
-        unregistAttemptContext(context);
     }
 
     public void attemptSucceed(String attemptID) {
-        AttemptContext context = runningAttempts.get(AttemptID.getTaskID(attemptID)).get(attemptID);
-        TaskAttempt attempt = context.getAttempt();
-        attempt.setReturnvalue(0);
-        attempt.setEndtime(new Date());
-        attempt.setStatus(AttemptStatus.SUCCEEDED);
-        taskAttemptMapper.updateByPrimaryKeySelective(attempt);
-        unregistAttemptContext(context);
+        Lock lock = lockFor(AttemptID.getTaskID(attemptID));
+        lock.lock();
+        try {
+            AttemptContext context = getRunningAttemptContext(attemptID);
+            if (context == null) {
+                // it has been reported by the status watch or the progress monitor
+                return;
+            }
+            TaskAttempt attempt = context.getAttempt();
+            attempt.setReturnvalue(0);
+            attempt.setEndtime(new Date());
+            attempt.setStatus(AttemptStatus.SUCCEEDED);
+            taskAttemptMapper.updateByPrimaryKeySelective(attempt);
+            unregistAttemptContext(context);
+            outcomeCache.attemptFinished(attempt);
+            dependencyTriggle.upstreamChanged(context.getName());
+            wakeupQueue.offer(WakeupQueue.DEPENDENCY);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void attemptExpired(String attemptID) {
-        AttemptContext context = runningAttempts.get(AttemptID.getTaskID(attemptID)).get(attemptID);
-        TaskAttempt attempt = context.getAttempt();
-        attempt.setEndtime(new Date());
-        attempt.setStatus(AttemptStatus.TIMEOUT);
-        taskAttemptMapper.updateByPrimaryKeySelective(attempt);
+        Lock lock = lockFor(AttemptID.getTaskID(attemptID));
+        lock.lock();
+        try {
+            AttemptContext context = getRunningAttemptContext(attemptID);
+            if (context == null) {
+                return;
+            }
+            TaskAttempt attempt = context.getAttempt();
+            attempt.setEndtime(new Date());
+            attempt.setStatus(AttemptStatus.TIMEOUT);
+            taskAttemptMapper.updateByPrimaryKeySelective(attempt);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void attemptFailed(String attemptID) {
-        AttemptContext context = runningAttempts.get(AttemptID.getTaskID(attemptID)).get(attemptID);
-        TaskAttempt attempt = context.getAttempt();
-        attempt.setStatus(AttemptStatus.FAILED);
-        attempt.setEndtime(new Date());
-        taskAttemptMapper.updateByPrimaryKeySelective(attempt);
-        unregistAttemptContext(context);
-
-        /*
-         * Check whether it is necessary to retry this failed attempt. If true, insert new attempt into the database; Otherwise, do
-         * nothing.
-         */
-        Task task = context.getTask();
-        if (task.getIsautoretry()) {
-            TaskAttemptExample example = new TaskAttemptExample();
-            example.or().andInstanceidEqualTo(attempt.getInstanceid());
-            List<TaskAttempt> attemptsOfRecentInstance = taskAttemptMapper.selectByExample(example);
-            if (task.getRetrytimes() < attemptsOfRecentInstance.size() - 1) {
-                //do nothing
-            } else if (task.getRetrytimes() == attemptsOfRecentInstance.size() - 1) {
-                //do nothing
-            } else {
-                LOG.info("Attempt " + attempt.getAttemptid() + " fail, begin to retry the attempt...");
-                String instanceID = attempt.getInstanceid();
-                TaskAttempt retry = new TaskAttempt();
-                String id = idFactory.newAttemptID(instanceID);
-                retry.setAttemptid(id);
-                retry.setTaskid(task.getTaskid());
-                retry.setInstanceid(instanceID);
-                retry.setScheduletime(attempt.getScheduletime());
-                retry.setStatus(AttemptStatus.DEPENDENCY_PASS);
-                taskAttemptMapper.insertSelective(retry);
+        finishFailed(attemptID, AttemptStatus.FAILED, null);
+    }
+
+    public void attemptFailed(String attemptID, int returnCode) {
+        finishFailed(attemptID, AttemptStatus.FAILED, returnCode);
+    }
+
+    public void attemptSubmitFailed(String attemptID) {
+        finishFailed(attemptID, AttemptStatus.SUBMIT_FAIL, null);
+    }
+
+    /**
+     * the return code is set under the lock of the task, with the other changes of the attempt
+     */
+    private void finishFailed(String attemptID, int status, Integer returnCode) {
+        Lock lock = lockFor(AttemptID.getTaskID(attemptID));
+        lock.lock();
+        try {
+            AttemptContext context = getRunningAttemptContext(attemptID);
+            if (context == null) {
+                // it has been reported by the status watch or the progress monitor
+                return;
+            }
+            TaskAttempt attempt = context.getAttempt();
+            if (returnCode != null) {
+                attempt.setReturnvalue(returnCode);
             }
+            attempt.setStatus(status);
+            attempt.setEndtime(new Date());
+            taskAttemptMapper.updateByPrimaryKeySelective(attempt);
+            unregistAttemptContext(context);
+            outcomeCache.attemptFinished(attempt);
+            dependencyTriggle.upstreamChanged(context.getName());
+
+            /*
+             * Check whether it is necessary to retry this failed attempt. If true, insert new attempt into the database; Otherwise, do
+             * nothing.
+             */
+            Task task = context.getTask();
+            if (task.getIsautoretry()) {
+                int attemptsOfRecentInstance = attemptQueryMapper.countByInstanceID(attempt.getInstanceid());
+                if (task.getRetrytimes() < attemptsOfRecentInstance - 1) {
+                    //do nothing
+                } else if (task.getRetrytimes() == attemptsOfRecentInstance - 1) {
+                    //do nothing
+                } else {
+                    LOG.info("Attempt " + attempt.getAttemptid() + " fail, begin to retry the attempt...");
+                    String instanceID = attempt.getInstanceid();
+                    TaskAttempt retry = new TaskAttempt();
+                    String id = idFactory.newAttemptID(instanceID);
+                    retry.setAttemptid(id);
+                    retry.setTaskid(task.getTaskid());
+                    retry.setInstanceid(instanceID);
+                    retry.setScheduletime(attempt.getScheduletime());
+                    retry.setStatus(AttemptStatus.DEPENDENCY_PASS);
+                    taskAttemptMapper.insertSelective(retry);
+                }
+            }
+            wakeupQueue.offer(WakeupQueue.DEPENDENCY);
+        } finally {
+            lock.unlock();
         }
     }
 
+    private AttemptContext getRunningAttemptContext(String attemptID) {
+        Map<String, AttemptContext> contexts = runningAttempts.get(AttemptID.getTaskID(attemptID));
+        return contexts == null ? null : contexts.get(attemptID);
+    }
+
     public List<AttemptContext> getAllRunningAttempt() {
         List<AttemptContext> contexts = new ArrayList<AttemptContext>();
-        for (HashMap<String, AttemptContext> maps : runningAttempts.values()) {
+        for (Map<String, AttemptContext> maps : runningAttempts.values()) {
             for (AttemptContext context : maps.values()) {
                 contexts.add(context);
             }
@@ -301,19 +547,36 @@ final public class Engine implements Scheduler {
 
     public List<AttemptContext> getRunningAttemptsByTaskID(String taskID) {
         List<AttemptContext> contexts = new ArrayList<AttemptContext>();
-        HashMap<String, AttemptContext> maps = runningAttempts.get(taskID);
+        Map<String, AttemptContext> maps = runningAttempts.get(taskID);
         if (maps == null) {
             return contexts;
         }
-        for (AttemptContext context : runningAttempts.get(taskID).values()) {
+        for (AttemptContext context : maps.values()) {
             contexts.add(context);
         }
         return Collections.unmodifiableList(contexts);
     }
 
+    public int getRunningAttemptCount() {
+        return runningCount.get();
+    }
+
+    public int getRunningAttemptCount(String host) {
+        AtomicInteger count = hostRunningCounts.get(host);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getRunningAttemptCountOfPool(int poolID) {
+        AtomicInteger count = poolRunningCounts.get(poolID);
+        return count == null ? 0 : count.get();
+    }
+
     public AttemptStatus getAttemptStatus(String attemptID) {
-        HashMap<String, AttemptContext> maps = runningAttempts.get(AttemptID.getTaskID(attemptID));
-        AttemptContext context = maps.get(attemptID);
+        AttemptContext context = getRunningAttemptContext(attemptID);
+        if (context == null) {
+            // the attempt has finished
+            return new AttemptStatus(AttemptStatus.UNKNOWN);
+        }
         ExecuteStatus status = null;
         try {
             status = zookeeper.getStatus(context.getContext());
@@ -327,54 +590,89 @@ final public class Engine implements Scheduler {
 
     private List<AttemptContext> getReadyToRunAttempt() {
         List<AttemptContext> contexts = new ArrayList<AttemptContext>();
-        TaskAttemptExample example = new TaskAttemptExample();
-        example.or().andStatusEqualTo(AttemptStatus.DEPENDENCY_PASS);
-        example.setOrderByClause("scheduleTime");
-        List<TaskAttempt> attempts = taskAttemptMapper.selectByExample(example);
+        List<TaskAttempt> attempts = attemptQueryMapper.selectByStatuses(Collections.singletonList(AttemptStatus.DEPENDENCY_PASS));
         for (TaskAttempt attempt : attempts) {
-            Task task = registedTasks.get(attempt.getTaskid());
+            Task task = metadataCache.getTask(attempt.getTaskid());
             contexts.add(new AttemptContext(attempt, task));
         }
         return contexts;
     }
 
     private void registAttemptContext(AttemptContext context) {
-        HashMap<String, AttemptContext> contexts = runningAttempts.get(context.getTaskid());
+        ConcurrentMap<String, AttemptContext> contexts = runningAttempts.get(context.getTaskid());
         if (contexts == null) {
-            contexts = new HashMap<String, AttemptContext>();
+            ConcurrentMap<String, AttemptContext> created = new ConcurrentHashMap<String, AttemptContext>();
+            contexts = runningAttempts.putIfAbsent(context.getTaskid(), created);
+            if (contexts == null) {
+                contexts = created;
+            }
+        }
+        if (contexts.put(context.getAttemptid(), context) == null) {
+            runningCount.incrementAndGet();
+            if (context.getExechost() != null) {
+                counterOf(hostRunningCounts, context.getExechost()).incrementAndGet();
+            }
+            if (context.getTask() != null && context.getTask().getPoolid() != null) {
+                counterOf(poolRunningCounts, context.getTask().getPoolid()).incrementAndGet();
+            }
         }
-        contexts.put(context.getAttemptid(), context);
-        runningAttempts.put(context.getTaskid(), contexts);
     }
 
     private void unregistAttemptContext(AttemptContext context) {
-        if (runningAttempts.containsKey(context.getTaskid())) {
-            HashMap<String, AttemptContext> contexts = runningAttempts.get(context.getTaskid());
-            if (contexts.containsKey(context.getAttemptid())) {
-                contexts.remove(context.getAttemptid());
+        Map<String, AttemptContext> contexts = runningAttempts.get(context.getTaskid());
+        if (contexts != null && contexts.remove(context.getAttemptid()) != null) {
+            runningCount.decrementAndGet();
+            if (context.getExechost() != null) {
+                counterOf(hostRunningCounts, context.getExechost()).decrementAndGet();
+            }
+            if (context.getTask() != null && context.getTask().getPoolid() != null) {
+                counterOf(poolRunningCounts, context.getTask().getPoolid()).decrementAndGet();
+            }
+        }
+    }
+
+    private static <K> AtomicInteger counterOf(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        AtomicInteger count = counters.get(key);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = counters.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
             }
         }
+        return count;
+    }
+
+    private Lock lockFor(String taskID) {
+        return taskLocks[(taskID.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /*
+     * the cached tasks are shared by the readers, so a change is made on a copy
+     */
+    private static Task copyOf(Task task) {
+        Task copy = new Task();
+        BeanUtils.copyProperties(task, copy);
+        return copy;
     }
 
     public Map<String, Task> getAllRegistedTask() {
-        return Collections.unmodifiableMap(registedTasks);
+        return metadataCache.getTasks();
     }
 
-    public synchronized Task getTaskByName(String name) throws ScheduleException {
-        if (tasksMapCache.containsKey(name)) {
-            String taskID = tasksMapCache.get(name);
-            return registedTasks.get(taskID);
+    public Task getTaskByName(String name) throws ScheduleException {
+        Task task = metadataCache.getTaskByName(name);
+        if (task != null) {
+            return task;
+        }
+        // the deleted tasks are not cached
+        TaskExample example = new TaskExample();
+        example.or().andNameEqualTo(name);
+        List<Task> tasks = taskMapper.selectByExample(example);
+        if (tasks != null && tasks.size() == 1) {
+            return tasks.get(0);
         } else {
-            TaskExample example = new TaskExample();
-            example.or().andNameEqualTo(name);
-            List<Task> tasks = taskMapper.selectByExample(example);
-            if (tasks != null && tasks.size() == 1) {
-                Task task = tasks.get(0);
-                tasksMapCache.put(name, task.getTaskid());
-                return task;
-            } else {
-                throw new ScheduleException("Cannot found tasks for the given name.");
-            }
+            throw new ScheduleException("Cannot found tasks for the given name.");
         }
     }
 
@@ -393,4 +691,28 @@ final public class Engine implements Scheduler {
     public void setMaxConcurrency(int maxConcurrency) {
         this.maxConcurrency = maxConcurrency;
     }
+
+    /**
+     * AttemptCompletionListener finishes the attempts reported by the status watches.
+     */
+    private final class AttemptCompletionListener implements ExecuteCompletionListener {
+
+        public void onCompleted(ExecuteContext context, ExecuteStatus status) {
+            String attemptID = context.getAttemptID();
+            switch (status.getStatus()) {
+                case AttemptStatus.SUCCEEDED:
+                    attemptSucceed(attemptID);
+                    break;
+                case AttemptStatus.FAILED:
+                    attemptFailed(attemptID, status.getReturnCode());
+                    break;
+                case AttemptStatus.SUBMIT_FAIL:
+                    // the agent has rejected the attempt
+                    attemptSubmitFailed(attemptID);
+                    break;
+                default:
+                    // killed attempts are finished by killAttempt
+            }
+        }
+    }
 }
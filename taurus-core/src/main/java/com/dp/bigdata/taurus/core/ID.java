@@ -12,11 +12,18 @@ public abstract class ID {
     protected static final String SEPARATOR = "_";
     protected int id;
 
-    protected static final NumberFormat idFormat = NumberFormat.getInstance();
-    static {
-        idFormat.setGroupingUsed(false);
-        idFormat.setMinimumIntegerDigits(4);
-    }
+    /*
+     * NumberFormat is not thread safe and the IDs are made by the scheduling, dispatching and restlet threads at once.
+     */
+    private static final ThreadLocal<NumberFormat> idFormat = new ThreadLocal<NumberFormat>() {
+        @Override
+        protected NumberFormat initialValue() {
+            NumberFormat format = NumberFormat.getInstance();
+            format.setGroupingUsed(false);
+            format.setMinimumIntegerDigits(4);
+            return format;
+        }
+    };
 
     /** constructs an ID object from the given int */
     public ID(int id) {
@@ -25,4 +32,15 @@ public abstract class ID {
 
     protected ID() {
     }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * the id padded to at least four digits
+     */
+    protected static String format(int id) {
+        return idFormat.get().format(id);
+    }
 }
@@ -1,5 +1,7 @@
 package com.dp.bigdata.taurus.core;
 
+import java.util.List;
+
 /**
  * 
  * @author damon.zhu
@@ -15,6 +17,25 @@ public interface IDFactory {
 	
 	public String newInstanceID(TaskID taskID);
 	
+	/**
+	 * count new instances of the task, reserved together so that a catch-up of many fire times costs at most one
+	 * update of the counter.
+	 */
+	public List<String> newInstanceIDs(String taskID, int count);
+	
+	public List<String> newInstanceIDs(TaskID taskID, int count);
+	
+	/**
+	 * the first attempt of an instance just created by newInstanceID, the instance ID is unique so the attempt ID is
+	 * made without touching the database.
+	 */
+	public String newFirstAttemptID(String instanceID);
+	
+	public String newFirstAttemptID(InstanceID instanceID);
+	
+	/**
+	 * the next attempt of an instance which already has its first attempt, that is a retry or a rerun.
+	 */
 	public String newAttemptID(String instanceID);
 	
 	public String newAttemptID(InstanceID instanceID);
@@ -28,7 +28,7 @@ public class InstanceID extends ID {
 		builder.append(SEPARATOR);
 		builder.append(indentify);
 		builder.append(SEPARATOR);
-		builder.append(idFormat.format(id));
+		builder.append(format(id));
 		return builder;
 	}
 
@@ -0,0 +1,369 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ * InstanceOutcomeCache keeps the outcome (status and return value) of the last N instances of each task. It is loaded
+ * from the database on the first lookup of a task, and is kept up to date by the <code>Engine</code> callbacks.
+ * Instances are ordered by their number, which may have gaps, so the number-th most recent instance is found by rank.
+ * <p>
+ * The entry of a task is installed before it is read from the database; the callbacks which come in while it is
+ * loading are replayed on top of the loaded outcomes, so no change is lost. Only the attempts of the instances looked
+ * for are read, ATTEMPTS_PER_INSTANCE rows per instance at first, twice as many while an instance is cut off. When
+ * TaurusTaskAttempt holds fewer instances than looked for, the older ones are read from the archive.
+ *
+ * @author damon.zhu
+ * @see DefaultAttemptStatusCheck
+ * @see AttemptArchiver
+ */
+public class InstanceOutcomeCache {
+
+    private static final Log LOG = LogFactory.getLog(InstanceOutcomeCache.class);
+
+    public static final int DEFAULT_CAPACITY = 32;
+    static final int ATTEMPTS_PER_INSTANCE = 4;
+
+    @Autowired
+    private TaskAttemptQueryMapper attemptQueryMapper;
+
+    @Autowired
+    private TaskAttemptArchiveMapper archiveMapper;
+
+    private int capacity = DEFAULT_CAPACITY;
+    private final ConcurrentMap<String, RecentInstances> instances; // Map<taskID, RecentInstances>
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public InstanceOutcomeCache() {
+        instances = new ConcurrentHashMap<String, RecentInstances>();
+    }
+
+    /**
+     * get the outcome of the number-th most recent instance of the given task. The instances older than the cached
+     * instances are read from the database.
+     *
+     * @param taskID
+     * @param number
+     * @return Outcome, an empty Outcome if there is no such instance.
+     */
+    public Outcome getOutcome(String taskID, int number) {
+        RecentInstances recent = instances.get(taskID);
+        if (recent == null) {
+            missCount.incrementAndGet();
+            recent = load(taskID);
+        } else {
+            hitCount.incrementAndGet();
+        }
+        Outcome outcome = recent.get(number);
+        if (outcome == null) {
+            // older than the cached instances
+            missCount.incrementAndGet();
+            outcome = find(loadOutcomes(taskID, number), number);
+        }
+        return outcome;
+    }
+
+    /**
+     * a new instance has been created for the given task.
+     *
+     * @param taskID
+     * @param instanceID
+     */
+    public void instanceCreated(String taskID, String instanceID) {
+        RecentInstances recent = instances.get(taskID);
+        if (recent != null) {
+            recent.put(InstanceID.forName(instanceID).getId(), new Outcome(AttemptStatus.INITIALIZED, null, null));
+        }
+    }
+
+    /**
+     * an attempt of the given instance has finished.
+     *
+     * @param attempt
+     */
+    public void attemptFinished(TaskAttempt attempt) {
+        RecentInstances recent = instances.get(attempt.getTaskid());
+        if (recent != null) {
+            recent.update(InstanceID.forName(attempt.getInstanceid()).getId(), new Outcome(attempt.getStatus(),
+                    attempt.getReturnvalue(), attempt.getStarttime()));
+        }
+    }
+
+    public void invalidate(String taskID) {
+        instances.remove(taskID);
+    }
+
+    public void clear() {
+        instances.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    private RecentInstances load(String taskID) {
+        RecentInstances created = new RecentInstances(capacity);
+        RecentInstances recent = instances.putIfAbsent(taskID, created);
+        if (recent != null) {
+            // it is loaded by another thread
+            return recent;
+        }
+        Outcomes outcomes;
+        try {
+            outcomes = loadOutcomes(taskID, capacity);
+        } catch (RuntimeException e) {
+            instances.remove(taskID, created);
+            // the waiting lookups read the database themselves
+            created.loaded(new Outcomes(new TreeMap<Integer, Outcome>(), false));
+            throw e;
+        }
+        created.loaded(outcomes);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Load " + outcomes.outcomes.size() + " instances for task " + taskID + ", hit : " + hitCount.get()
+                    + " miss : " + missCount.get());
+        }
+        return created;
+    }
+
+    /*
+     * the outcomes of the given number of recent instances at least, unless the task has fewer instances.
+     */
+    private Outcomes loadOutcomes(String taskID, int count) {
+        int limit = Math.max(count, 1) * ATTEMPTS_PER_INSTANCE;
+        while (true) {
+            List<TaskAttempt> attempts = attemptQueryMapper.selectRecentOutcomes(taskID, limit);
+            TreeMap<Integer, Outcome> outcomes = new TreeMap<Integer, Outcome>();
+            addOutcomes(outcomes, attempts);
+            if (attempts.size() >= limit) {
+                // the attempts of the oldest instance may be cut off by the limit
+                outcomes.pollFirstEntry();
+                if (outcomes.size() >= count) {
+                    return new Outcomes(outcomes, false);
+                }
+                limit *= 2;
+                continue;
+            }
+            if (outcomes.size() >= count) {
+                // the older instances may be archived
+                return new Outcomes(outcomes, false);
+            }
+
+            // the retries of an archived instance may still be live, so both are merged
+            List<TaskAttempt> archived = archiveMapper.selectRecentArchivedOutcomes(taskID, limit);
+            addOutcomes(outcomes, archived);
+            if (archived.size() < limit) {
+                return new Outcomes(outcomes, true);
+            }
+            outcomes.pollFirstEntry();
+            if (outcomes.size() >= count) {
+                return new Outcomes(outcomes, false);
+            }
+            limit *= 2;
+        }
+    }
+
+    /*
+     * the outcome of an instance is the outcome of its last started attempt.
+     */
+    private static void addOutcomes(TreeMap<Integer, Outcome> outcomes, List<TaskAttempt> attempts) {
+        for (TaskAttempt attempt : attempts) {
+            int number = InstanceID.forName(attempt.getInstanceid()).getId();
+            Outcome outcome = new Outcome(attempt.getStatus(), attempt.getReturnvalue(), attempt.getStarttime());
+            Outcome previous = outcomes.get(number);
+            if (previous == null || outcome.isStartedAfter(previous)) {
+                outcomes.put(number, outcome);
+            }
+        }
+    }
+
+    /*
+     * instance numbers may have gaps, so the number-th most recent instance is found by its rank.
+     */
+    private static Outcome find(Outcomes outcomes, int number) {
+        if (number <= 0 || number > outcomes.outcomes.size()) {
+            return new Outcome(null, null, null);
+        }
+        int i = 1;
+        for (Outcome outcome : outcomes.outcomes.descendingMap().values()) {
+            if (i++ == number) {
+                return outcome;
+            }
+        }
+        return new Outcome(null, null, null);
+    }
+
+    /**
+     * The outcomes read from the database, isComplete if they are all the instances of the task.
+     */
+    private static final class Outcomes {
+        final TreeMap<Integer, Outcome> outcomes;
+        final boolean isComplete;
+
+        Outcomes(TreeMap<Integer, Outcome> outcomes, boolean isComplete) {
+            this.outcomes = outcomes;
+            this.isComplete = isComplete;
+        }
+    }
+
+    /**
+     * Outcome of an instance.
+     */
+    public static final class Outcome {
+
+        private final Integer status;
+        private final Integer returnValue;
+        private final Date startTime;
+
+        Outcome(Integer status, Integer returnValue, Date startTime) {
+            this.status = status;
+            this.returnValue = returnValue;
+            this.startTime = startTime;
+        }
+
+        public Integer getStatus() {
+            return status;
+        }
+
+        public Integer getReturnValue() {
+            return returnValue;
+        }
+
+        /**
+         * @param value
+         * @return true if the instance has finished with the given return value, false otherwise.
+         */
+        public boolean isDone(int value) {
+            if (status == null || returnValue == null) {
+                return false;
+            }
+            return (status == AttemptStatus.SUCCEEDED || status == AttemptStatus.FAILED || status == AttemptStatus.KILLED)
+                    && returnValue == value;
+        }
+
+        boolean isStartedAfter(Outcome other) {
+            if (startTime == null) {
+                return false;
+            }
+            return other.startTime == null || startTime.after(other.startTime);
+        }
+    }
+
+    /**
+     * The last N instances of a task, ordered by instance number. Until it is loaded, the lookups wait and the changes
+     * are queued to be replayed after the loaded outcomes.
+     */
+    private static final class RecentInstances {
+
+        private final int capacity;
+        private final TreeMap<Integer, Outcome> outcomes = new TreeMap<Integer, Outcome>();
+        private boolean isComplete;
+        private List<Change> pending = new ArrayList<Change>();
+
+        RecentInstances(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void loaded(Outcomes loaded) {
+            List<Change> changes = pending;
+            pending = null;
+            isComplete = loaded.isComplete;
+            for (Map.Entry<Integer, Outcome> entry : loaded.outcomes.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            for (Change change : changes) {
+                if (change.isCreated) {
+                    put(change.number, change.outcome);
+                } else {
+                    update(change.number, change.outcome);
+                }
+            }
+            notifyAll();
+        }
+
+        synchronized Outcome get(int number) {
+            while (pending != null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if (number <= 0) {
+                return null;
+            }
+            if (number > outcomes.size()) {
+                // all the instances are known, so there is no such instance.
+                return isComplete ? new Outcome(null, null, null) : null;
+            }
+            int i = 1;
+            for (Outcome outcome : outcomes.descendingMap().values()) {
+                if (i++ == number) {
+                    return outcome;
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(int number, Outcome outcome) {
+            if (pending != null) {
+                pending.add(new Change(number, outcome, true));
+                return;
+            }
+            outcomes.put(number, outcome);
+            while (outcomes.size() > capacity) {
+                outcomes.pollFirstEntry();
+                isComplete = false;
+            }
+        }
+
+        synchronized void update(int number, Outcome outcome) {
+            if (pending != null) {
+                pending.add(new Change(number, outcome, false));
+                return;
+            }
+            if (outcomes.containsKey(number)) {
+                outcomes.put(number, outcome);
+            }
+        }
+    }
+
+    private static final class Change {
+        final int number;
+        final Outcome outcome;
+        final boolean isCreated;
+
+        Change(int number, Outcome outcome, boolean isCreated) {
+            this.number = number;
+            this.outcome = outcome;
+            this.isCreated = isCreated;
+        }
+    }
+}
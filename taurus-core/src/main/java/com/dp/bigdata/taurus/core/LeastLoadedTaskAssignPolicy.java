@@ -0,0 +1,128 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecutorManager;
+
+/**
+ * Task Assign Policy : the least loaded live host of the pool runs the task.
+ * <p>
+ * Only the hosts whose agents are connected to the cluster are candidates, and among them the hosts with a free slot if
+ * there are any. Two of them are picked at random and the one
+ * with the lower load wins (power of two choices), so only two heartbeats are read for each assignment and parallel
+ * dispatches do not all pile onto the same host. The load of a host is
+ *
+ * <pre>
+ * running attempts + queued attempts + cpuWeight * load average per processor + memoryWeight * used memory ratio
+ * </pre>
+ *
+ * The resource terms are left out when the agent has not reported them. No host is assigned when none of the agents of
+ * the pool is live.
+ *
+ * @author damon.zhu
+ * @see RoundRobinTaskAssignPolicy
+ * @see SlotManager
+ */
+public class LeastLoadedTaskAssignPolicy implements TaskAssignPolicy {
+
+    private static final Log LOG = LogFactory.getLog(LeastLoadedTaskAssignPolicy.class);
+
+    @Autowired
+    private SlotManager slotManager;
+    @Autowired
+    private ExecutorManager zookeeper;
+    @Autowired
+    private Scheduler scheduler;
+
+    private double cpuWeight = 1.0;
+    private double memoryWeight = 1.0;
+
+    private final Random random = new Random();
+
+    public Host assignTask(Task task) {
+        List<Host> hosts = slotManager.getHosts(task.getPoolid());
+        if (hosts.isEmpty()) {
+            LOG.error("There is no host in the pool " + task.getPoolid() + " for task : " + task.getTaskid());
+            return null;
+        }
+
+        List<Host> liveHosts = slotManager.getLiveHosts(task.getPoolid());
+        List<Host> candidates = new ArrayList<Host>(liveHosts.size());
+        for (Host host : liveHosts) {
+            if (slotManager.getFreeSlots(host.getIp()) > 0) {
+                candidates.add(host);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = liveHosts;
+        }
+        if (candidates.isEmpty()) {
+            // a dead host would only fail the submit, the attempt waits for the next dispatch instead
+            LOG.warn("There is no live agent in the pool " + task.getPoolid() + " for task : " + task.getTaskid());
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        int first;
+        int second;
+        synchronized (random) {
+            first = random.nextInt(candidates.size());
+            second = random.nextInt(candidates.size() - 1);
+        }
+        if (second >= first) {
+            second++;
+        }
+        Host a = candidates.get(first);
+        Host b = candidates.get(second);
+        return getLoad(a) <= getLoad(b) ? a : b;
+    }
+
+    /**
+     * the load of the given host, a lower value means the host is less busy.
+     *
+     * @param host
+     * @return double
+     */
+    protected double getLoad(Host host) {
+        double load = scheduler.getRunningAttemptCount(host.getIp());
+        HeartbeatInfo heartbeat = zookeeper.getHeartbeatInfo(host.getIp());
+        if (heartbeat != null) {
+            // attempts which have been submitted but wait for an execute thread on the agent
+            load += heartbeat.getQueuedAttempts();
+            if (heartbeat.getProcessors() > 0) {
+                load += cpuWeight * heartbeat.getLoadAverage() / heartbeat.getProcessors();
+            }
+            if (heartbeat.getTotalMemory() > 0) {
+                load += memoryWeight * (1 - (double) heartbeat.getFreeMemory() / heartbeat.getTotalMemory());
+            }
+        }
+        return load;
+    }
+
+    public double getCpuWeight() {
+        return cpuWeight;
+    }
+
+    public void setCpuWeight(double cpuWeight) {
+        this.cpuWeight = cpuWeight;
+    }
+
+    public double getMemoryWeight() {
+        return memoryWeight;
+    }
+
+    public void setMemoryWeight(double memoryWeight) {
+        this.memoryWeight = memoryWeight;
+    }
+}
@@ -22,7 +22,7 @@ public class MaximumConcurrentTaskFilter implements Filter {
 
     public List<AttemptContext> filter(List<AttemptContext> contexts) {
         List<AttemptContext> results;
-        int max = scheduler.getMaxConcurrency() - scheduler.getAllRunningAttempt().size();
+        int max = scheduler.getMaxConcurrency() - scheduler.getRunningAttemptCount();
 
         if (max <= 0) {
             results = new ArrayList<AttemptContext>();
@@ -0,0 +1,303 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.generated.mapper.HostMapper;
+import com.dp.bigdata.taurus.generated.mapper.PoolMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskMapper;
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.HostExample;
+import com.dp.bigdata.taurus.generated.module.Pool;
+import com.dp.bigdata.taurus.generated.module.PoolExample;
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.generated.module.TaskExample;
+
+/**
+ * MetadataCache keeps the registered tasks (RUNNING and SUSPEND), the pools and the hosts in memory, so the lookups of
+ * the scheduler and the reads of the restlet do not hit the database. The content is an immutable snapshot which is
+ * replaced as a whole by every change: the readers never lock and always see one consistent version.
+ * <p>
+ * The tasks are written through by the <code>Engine</code>. The pools and the hosts are also changed outside the
+ * scheduler, so they are reloaded when poolsChanged or hostsChanged is called, and every <code>refreshInterval</code>
+ * milliseconds as a safety net. Each change bumps the version and is published to the MetadataListeners.
+ * <p>
+ * The tasks, pools and hosts handed out are shared by all the readers and must be treated as read only. A change is
+ * made on a copy, written to the database, and then given to taskChanged (or announced by poolsChanged/hostsChanged).
+ *
+ * @author damon.zhu
+ * @see MetadataListener
+ */
+public class MetadataCache {
+
+    private static final Log LOG = LogFactory.getLog(MetadataCache.class);
+
+    public static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000;
+
+    @Autowired
+    private TaskMapper taskMapper;
+    @Autowired
+    private PoolMapper poolMapper;
+    @Autowired
+    private HostMapper hostMapper;
+
+    private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+    private final List<MetadataListener> listeners = new CopyOnWriteArrayList<MetadataListener>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long lastRefreshTime;
+
+    /**
+     * reload the registered tasks, the pools and the hosts from the database.
+     */
+    public synchronized void load() {
+        TaskExample example = new TaskExample();
+        example.or().andStatusEqualTo(TaskStatus.RUNNING);
+        example.or().andStatusEqualTo(TaskStatus.SUSPEND);
+        TreeMap<String, Task> tasks = new TreeMap<String, Task>();
+        for (Task task : taskMapper.selectByExample(example)) {
+            tasks.put(task.getTaskid(), task);
+        }
+        Topology topology = loadTopology();
+        Snapshot next = snapshot.withTasks(tasks);
+        install(new Snapshot(next.version, next.tasks, next.taskNames, topology), null, MetadataEvent.Type.TASK,
+                MetadataEvent.Type.POOL, MetadataEvent.Type.HOST);
+        LOG.info("Loaded " + tasks.size() + " tasks and " + topology.pools.size() + " pools, version "
+                + snapshot.version);
+    }
+
+    public void addListener(MetadataListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(MetadataListener listener) {
+        listeners.remove(listener);
+    }
+
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * @param taskID
+     * @return the registered task, null if it is not registered.
+     */
+    public Task getTask(String taskID) {
+        return snapshot.tasks.get(taskID);
+    }
+
+    /**
+     * @param name
+     * @return the registered task of the given name, null if there is no such task.
+     */
+    public Task getTaskByName(String name) {
+        Snapshot current = snapshot;
+        String taskID = current.taskNames.get(name);
+        return taskID == null ? null : current.tasks.get(taskID);
+    }
+
+    /**
+     * @return SortedMap<taskID, Task>, an unmodifiable view of one version of the registered tasks.
+     */
+    public SortedMap<String, Task> getTasks() {
+        return snapshot.tasks;
+    }
+
+    public Pool getPool(int poolID) {
+        return topology().pools.get(poolID);
+    }
+
+    public Pool getPoolByName(String name) {
+        return topology().poolNames.get(name);
+    }
+
+    /**
+     * @return List<Pool> ordered by id
+     */
+    public List<Pool> getPools() {
+        return topology().poolList;
+    }
+
+    public Host getHost(int hostID) {
+        return topology().hosts.get(hostID);
+    }
+
+    /**
+     * @param poolID
+     * @return List<Host> of the given pool ordered by id
+     */
+    public List<Host> getHosts(int poolID) {
+        List<Host> hosts = topology().poolHosts.get(poolID);
+        return hosts == null ? Collections.<Host> emptyList() : hosts;
+    }
+
+    /**
+     * put the given task into the cache, or remove it if it has been DELETED.
+     *
+     * @param task
+     */
+    public synchronized void taskChanged(Task task) {
+        TreeMap<String, Task> tasks = new TreeMap<String, Task>(snapshot.tasks);
+        if (task.getStatus() != null && task.getStatus() == TaskStatus.DELETED) {
+            tasks.remove(task.getTaskid());
+        } else {
+            tasks.put(task.getTaskid(), task);
+        }
+        install(snapshot.withTasks(tasks), task.getTaskid(), MetadataEvent.Type.TASK);
+    }
+
+    public synchronized void taskRemoved(String taskID) {
+        if (!snapshot.tasks.containsKey(taskID)) {
+            return;
+        }
+        TreeMap<String, Task> tasks = new TreeMap<String, Task>(snapshot.tasks);
+        tasks.remove(taskID);
+        install(snapshot.withTasks(tasks), taskID, MetadataEvent.Type.TASK);
+    }
+
+    /**
+     * reload the pools and the hosts after a pool has been created or removed; the hosts of a removed pool are moved
+     * to another pool.
+     */
+    public synchronized void poolsChanged() {
+        install(snapshot.withTopology(loadTopology()), null, MetadataEvent.Type.POOL, MetadataEvent.Type.HOST);
+    }
+
+    /**
+     * reload the pools and the hosts after a host has been changed.
+     */
+    public synchronized void hostsChanged() {
+        install(snapshot.withTopology(loadTopology()), null, MetadataEvent.Type.HOST);
+    }
+
+    private Topology topology() {
+        if (System.currentTimeMillis() - lastRefreshTime > refreshInterval) {
+            refresh();
+        }
+        return snapshot.topology;
+    }
+
+    private synchronized void refresh() {
+        if (System.currentTimeMillis() - lastRefreshTime <= refreshInterval) {
+            // it has been reloaded by another thread
+            return;
+        }
+        try {
+            install(snapshot.withTopology(loadTopology()), null, MetadataEvent.Type.POOL, MetadataEvent.Type.HOST);
+        } catch (RuntimeException e) {
+            // keep the current pools and hosts, try again after refreshInterval
+            lastRefreshTime = System.currentTimeMillis();
+            LOG.error("Fail to refresh the pools and the hosts", e);
+        }
+    }
+
+    private Topology loadTopology() {
+        PoolExample example = new PoolExample();
+        example.or();
+        example.setOrderByClause("id");
+        List<Pool> pools = poolMapper.selectByExample(example);
+        HostExample hexample = new HostExample();
+        hexample.or();
+        hexample.setOrderByClause("id");
+        List<Host> hosts = hostMapper.selectByExample(hexample);
+        lastRefreshTime = System.currentTimeMillis();
+        return new Topology(pools, hosts);
+    }
+
+    private void install(Snapshot next, String key, MetadataEvent.Type... types) {
+        snapshot = next;
+        for (MetadataEvent.Type type : types) {
+            MetadataEvent event = new MetadataEvent(type, key, next.version);
+            for (MetadataListener listener : listeners) {
+                try {
+                    listener.onChanged(event);
+                } catch (RuntimeException e) {
+                    LOG.error("Fail to notify " + event, e);
+                }
+            }
+        }
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, Collections.unmodifiableSortedMap(new TreeMap<String, Task>()),
+                Collections.<String, String> emptyMap(), Topology.EMPTY);
+
+        final long version;
+        final SortedMap<String, Task> tasks; // Map<taskID, task>
+        final Map<String, String> taskNames; // Map<name, taskID>
+        final Topology topology;
+
+        Snapshot(long version, SortedMap<String, Task> tasks, Map<String, String> taskNames, Topology topology) {
+            this.version = version;
+            this.tasks = tasks;
+            this.taskNames = taskNames;
+            this.topology = topology;
+        }
+
+        Snapshot withTasks(TreeMap<String, Task> tasks) {
+            Map<String, String> names = new HashMap<String, String>();
+            for (Task task : tasks.values()) {
+                if (task.getName() != null) {
+                    names.put(task.getName(), task.getTaskid());
+                }
+            }
+            return new Snapshot(version + 1, Collections.unmodifiableSortedMap(tasks), names, topology);
+        }
+
+        Snapshot withTopology(Topology topology) {
+            return new Snapshot(version + 1, tasks, taskNames, topology);
+        }
+    }
+
+    private static final class Topology {
+        static final Topology EMPTY = new Topology(Collections.<Pool> emptyList(), Collections.<Host> emptyList());
+
+        final List<Pool> poolList;
+        final Map<Integer, Pool> pools; // Map<poolID, pool>
+        final Map<String, Pool> poolNames; // Map<name, pool>
+        final Map<Integer, Host> hosts; // Map<hostID, host>
+        final Map<Integer, List<Host>> poolHosts; // Map<poolID, hosts>
+
+        Topology(List<Pool> poolList, List<Host> hostList) {
+            this.poolList = Collections.unmodifiableList(new ArrayList<Pool>(poolList));
+            pools = new HashMap<Integer, Pool>();
+            poolNames = new HashMap<String, Pool>();
+            for (Pool pool : poolList) {
+                pools.put(pool.getId(), pool);
+                poolNames.put(pool.getName(), pool);
+            }
+            hosts = new HashMap<Integer, Host>();
+            Map<Integer, List<Host>> grouped = new HashMap<Integer, List<Host>>();
+            for (Host host : hostList) {
+                hosts.put(host.getId(), host);
+                List<Host> group = grouped.get(host.getPoolid());
+                if (group == null) {
+                    group = new ArrayList<Host>();
+                    grouped.put(host.getPoolid(), group);
+                }
+                group.add(host);
+            }
+            poolHosts = new HashMap<Integer, List<Host>>();
+            for (Map.Entry<Integer, List<Host>> entry : grouped.entrySet()) {
+                poolHosts.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+        }
+    }
+}
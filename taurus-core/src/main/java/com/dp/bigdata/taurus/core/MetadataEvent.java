@@ -0,0 +1,45 @@
+package com.dp.bigdata.taurus.core;
+
+/**
+ * MetadataEvent is published by the <code>MetadataCache</code> after a change of the tasks, the pools or the hosts.
+ * The key is the taskID of the changed task, it is null when the whole kind of metadata has been reloaded.
+ *
+ * @author damon.zhu
+ * @see MetadataListener
+ */
+public class MetadataEvent {
+
+    public enum Type {
+        TASK, POOL, HOST
+    }
+
+    private final Type type;
+    private final String key;
+    private final long version;
+
+    public MetadataEvent(Type type, String key, long version) {
+        this.type = type;
+        this.key = key;
+        this.version = version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the version of the cache which contains the change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataEvent [type=" + type + ", key=" + key + ", version=" + version + "]";
+    }
+}
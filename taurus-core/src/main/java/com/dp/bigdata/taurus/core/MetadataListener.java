@@ -0,0 +1,12 @@
+package com.dp.bigdata.taurus.core;
+
+/**
+ * MetadataListener is notified of the changes of the <code>MetadataCache</code>, on the thread which made the change.
+ * It should return quickly and must not change the cache.
+ *
+ * @author damon.zhu
+ */
+public interface MetadataListener {
+
+    public void onChanged(MetadataEvent event);
+}
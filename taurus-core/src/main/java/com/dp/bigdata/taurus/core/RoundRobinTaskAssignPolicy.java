@@ -5,61 +5,41 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.dp.bigdata.taurus.generated.mapper.HostMapper;
-import com.dp.bigdata.taurus.generated.mapper.PoolMapper;
 import com.dp.bigdata.taurus.generated.module.Host;
-import com.dp.bigdata.taurus.generated.module.HostExample;
-import com.dp.bigdata.taurus.generated.module.Pool;
-import com.dp.bigdata.taurus.generated.module.PoolExample;
 import com.dp.bigdata.taurus.generated.module.Task;
 
 /**
- * Task Assign Policy : Round Robin to find the machine to run task.
- * 
+ * Task Assign Policy : Round Robin to find the machine to run task. The hosts of the pools are read from the
+ * <code>MetadataCache</code>.
+ *
  * @author damon.zhu
  */
 public class RoundRobinTaskAssignPolicy implements TaskAssignPolicy {
 
     @Autowired
-    private HostMapper hostMapper;
-    @Autowired
-    private PoolMapper poolMapper;
+    private MetadataCache metadataCache;
 
-    private HashMap<Integer, List<Host>> poolNameToHosts; // HashMap<poolID,
-                                                          // hosts>
-    private HashMap<Integer, Integer> poolCounter; // HashMap<poolID,
-                                                   // index>
+    private HashMap<Integer, Integer> poolCounter = new HashMap<Integer, Integer>(); // HashMap<poolID,
+                                                                                     // index>
 
-    public void init() {
-        poolNameToHosts = new HashMap<Integer, List<Host>>();
-        poolCounter = new HashMap<Integer, Integer>();
-        PoolExample example = new PoolExample();
-        example.or();
-        List<Pool> pools = poolMapper.selectByExample(example);
-        for (Pool pool : pools) {
-            HostExample hexample = new HostExample();
-            hexample.or().andPoolidEqualTo(pool.getId());
-            List<Host> hosts = hostMapper.selectByExample(hexample);
-            poolNameToHosts.put(pool.getId(), hosts);
-        }
-    }
-
-    public Host assignTask(Task task) {
+    public synchronized Host assignTask(Task task) {
         int poolID = task.getPoolid();
-        List<Host> hosts = poolNameToHosts.get(poolID);
-        int index = getNextHost(poolID);
+        List<Host> hosts = metadataCache.getHosts(poolID);
+        if (hosts.isEmpty()) {
+            return null;
+        }
+        int index = getNextHost(poolID, hosts.size());
         return hosts.get(index);
     }
 
-    private int getNextHost(int poolID) {
+    private int getNextHost(int poolID, int size) {
         Integer counter = poolCounter.get(poolID);
         if (counter == null) {
             counter = 0;
-            poolCounter.put(poolID, counter);
         }
-        List<Host> hosts = poolNameToHosts.get(poolID);
-        int size = hosts.size();
-        return (size + counter++) % size;
+        int index = counter % size;
+        poolCounter.put(poolID, index + 1);
+        return index;
 
     }
 }
@@ -85,6 +85,19 @@ public interface Scheduler {
 	 */
 	public void attemptFailed(String attemptID);
 	
+	/**
+	 * Notify the scheduler that a attempt has been failed with the given return code.
+	 * @param attemptID
+	 * @param returnCode
+	 */
+	public void attemptFailed(String attemptID, int returnCode);
+	
+	/**
+	 * Notify the scheduler that a attempt has been rejected by its agent.
+	 * @param attemptID
+	 */
+	public void attemptSubmitFailed(String attemptID);
+	
 	/**
 	 * get all running attempts
 	 * @return List<AttemptContext>
@@ -98,6 +111,26 @@ public interface Scheduler {
 	 */
 	public List<AttemptContext> getRunningAttemptsByTaskID(String taskID);
 	
+	/**
+	 * get the number of all running attempts, it does not copy the running attempts
+	 * @return int
+	 */
+	public int getRunningAttemptCount();
+	
+	/**
+	 * get the number of running attempts on the given host
+	 * @param host ip of the host
+	 * @return int
+	 */
+	public int getRunningAttemptCount(String host);
+	
+	/**
+	 * get the number of running attempts of the tasks in the given pool
+	 * @param poolID
+	 * @return int
+	 */
+	public int getRunningAttemptCountOfPool(int poolID);
+	
 	/**
 	 * get attempt status to the given attemptID
 	 * @param attemptID
@@ -0,0 +1,200 @@
+package com.dp.bigdata.taurus.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+/**
+ * SchemaMigration brings the schema of the database up to date when the scheduler starts. The migrations are the
+ * scripts <code>db/migration/V{version}__{description}.sql</code> on the classpath, applied in the order of their
+ * versions; the applied versions are recorded in TaurusSchemaVersion.
+ * <p>
+ * A version is recorded before its script runs, so when several schedulers start together only one of them applies
+ * it. The record is removed again if the script fails.
+ * <p>
+ * A statement which creates a table or an index that already exists is skipped, so a script that failed half way,
+ * or whose objects were created by hand, can be applied again.
+ *
+ * @author damon.zhu
+ */
+public class SchemaMigration {
+
+    private static final Log LOG = LogFactory.getLog(SchemaMigration.class);
+
+    private static final String LOCATION = "classpath*:db/migration/V*__*.sql";
+    private static final Pattern NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    // Derby: an object already exists; MySQL: the table or the key name already exists
+    private static final String DERBY_EXISTS = "X0Y32";
+    private static final int MYSQL_TABLE_EXISTS = 1050;
+    private static final int MYSQL_KEY_EXISTS = 1061;
+
+    @Autowired
+    private DataSource dataSource;
+
+    public void migrate() {
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                connection.setAutoCommit(true);
+                createVersionTable(connection);
+                Set<Integer> applied = getAppliedVersions(connection);
+                for (Migration migration : findMigrations()) {
+                    if (!applied.contains(migration.version)) {
+                        apply(connection, migration);
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Fail to migrate the schema", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to read the schema migrations", e);
+        }
+    }
+
+    private void createVersionTable(Connection connection) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            stmt.executeQuery("SELECT version FROM TaurusSchemaVersion WHERE version = 0").close();
+        } catch (SQLException e) {
+            stmt.executeUpdate("CREATE TABLE TaurusSchemaVersion (version INT NOT NULL, description VARCHAR(200),"
+                    + " appliedTime TIMESTAMP, PRIMARY KEY (version))");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private Set<Integer> getAppliedVersions(Connection connection) throws SQLException {
+        Set<Integer> versions = new HashSet<Integer>();
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT version FROM TaurusSchemaVersion");
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+        return versions;
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException, IOException {
+        PreparedStatement claim = connection
+                .prepareStatement("INSERT INTO TaurusSchemaVersion (version, description, appliedTime) VALUES (?, ?, ?)");
+        try {
+            claim.setInt(1, migration.version);
+            claim.setString(2, migration.description);
+            claim.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            claim.executeUpdate();
+        } catch (SQLException e) {
+            LOG.info("Schema version " + migration.version + " is applied by another scheduler");
+            return;
+        } finally {
+            claim.close();
+        }
+
+        LOG.info("Apply schema version " + migration.version + " : " + migration.description);
+        Statement stmt = connection.createStatement();
+        try {
+            for (String sql : readStatements(migration.script)) {
+                try {
+                    stmt.executeUpdate(sql);
+                } catch (SQLException e) {
+                    if (!isAlreadyExists(e)) {
+                        throw e;
+                    }
+                    LOG.info("Skip the statement of schema version " + migration.version + ", " + e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            stmt.executeUpdate("DELETE FROM TaurusSchemaVersion WHERE version = " + migration.version);
+            throw e;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static boolean isAlreadyExists(SQLException e) {
+        return DERBY_EXISTS.equals(e.getSQLState()) || e.getErrorCode() == MYSQL_TABLE_EXISTS
+                || e.getErrorCode() == MYSQL_KEY_EXISTS;
+    }
+
+    private static List<Migration> findMigrations() throws IOException {
+        TreeMap<Integer, Migration> migrations = new TreeMap<Integer, Migration>();
+        for (Resource script : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+            Matcher matcher = NAME.matcher(script.getFilename());
+            if (!matcher.matches()) {
+                continue;
+            }
+            Migration migration = new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2), script);
+            if (migrations.put(migration.version, migration) != null) {
+                throw new IllegalStateException("Duplicated schema version " + migration.version);
+            }
+        }
+        return new ArrayList<Migration>(migrations.values());
+    }
+
+    /*
+     * statements end with ';', lines starting with "--" are comments
+     */
+    private static List<String> readStatements(Resource script) throws IOException {
+        List<String> statements = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(script.getInputStream(), "UTF-8"));
+        try {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("--")) {
+                    continue;
+                }
+                sb.append(line).append(' ');
+                if (line.endsWith(";")) {
+                    statements.add(sb.substring(0, sb.lastIndexOf(";")).trim());
+                    sb.setLength(0);
+                }
+            }
+            if (sb.toString().trim().length() > 0) {
+                statements.add(sb.toString().trim());
+            }
+        } finally {
+            reader.close();
+        }
+        return statements;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Resource script;
+
+        Migration(int version, String description, Resource script) {
+            this.version = version;
+            this.description = description.replace('_', ' ');
+            this.script = script;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * SlotAdmissionFilter only admits an attempt when its pool has a free slot on a live host and has not used up its
+ * quota. The attempts are admitted in the given order.
+ *
+ * @author damon.zhu
+ * @see SlotManager
+ */
+public class SlotAdmissionFilter implements Filter {
+
+    private Filter next;
+    private SlotManager slotManager;
+
+    @Autowired
+    public SlotAdmissionFilter(SlotManager slotManager) {
+        this.slotManager = slotManager;
+    }
+
+    public List<AttemptContext> filter(List<AttemptContext> contexts) {
+        Map<Integer, Integer> freeSlots = new HashMap<Integer, Integer>(); // Map<poolID, free slots>
+        List<AttemptContext> results = new ArrayList<AttemptContext>();
+        for (AttemptContext context : contexts) {
+            if (context.getTask() == null || context.getTask().getPoolid() == null) {
+                results.add(context);
+                continue;
+            }
+            Integer poolID = context.getTask().getPoolid();
+            Integer free = freeSlots.get(poolID);
+            if (free == null) {
+                free = slotManager.getFreeSlotsOfPool(poolID);
+            }
+            if (free > 0) {
+                results.add(context);
+                free--;
+            }
+            freeSlots.put(poolID, free);
+        }
+
+        if (next != null) {
+            return next.filter(results);
+        } else {
+            return results;
+        }
+    }
+
+    public Filter getNext() {
+        return next;
+    }
+
+    public void setNext(Filter next) {
+        this.next = next;
+    }
+}
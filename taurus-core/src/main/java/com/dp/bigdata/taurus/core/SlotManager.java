@@ -0,0 +1,185 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.Pool;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecutorManager;
+
+/**
+ * SlotManager knows the execution slots of the hosts and the quotas of the pools. Each agent advertises its slots in
+ * the heartbeat, <code>defaultSlots</code> is used for the agents which do not. A pool may run at most its quota of
+ * attempts, the pools without a quota are only limited by the slots of their hosts.
+ * <p>
+ * The used slots are the running attempt counters of the <code>Scheduler</code>, so nothing is recomputed here. The
+ * hosts of the pools are read from the <code>MetadataCache</code>. The advertised slots take a heartbeat read per host,
+ * so they are reloaded by a background thread every <code>refreshInterval</code> milliseconds and right after the
+ * hosts have changed; the lookups of the scheduling thread never wait for them.
+ *
+ * @author damon.zhu
+ * @see SlotAdmissionFilter
+ */
+public class SlotManager {
+
+    private static final Log LOG = LogFactory.getLog(SlotManager.class);
+
+    public static final int DEFAULT_SLOTS = 4;
+
+    @Autowired
+    private MetadataCache metadataCache;
+    @Autowired
+    private ExecutorManager zookeeper;
+    @Autowired
+    private Scheduler scheduler;
+
+    private int defaultSlots = DEFAULT_SLOTS;
+    private Map<Integer, Integer> poolQuotas = new HashMap<Integer, Integer>(); // Map<poolID, quota>
+    private long refreshInterval = 60 * 1000;
+
+    private volatile Map<String, Integer> hostSlots = Collections.emptyMap(); // Map<ip, slots>
+    private ScheduledExecutorService executor;
+
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "SlotManager");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final Runnable refresher = new Runnable() {
+            public void run() {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    // keep the slots, try again next time
+                    LOG.error("Fail to refresh the slots of the hosts", e);
+                }
+            }
+        };
+        metadataCache.addListener(new MetadataListener() {
+            public void onChanged(MetadataEvent event) {
+                if (event.getType() == MetadataEvent.Type.HOST) {
+                    executor.execute(refresher);
+                }
+            }
+        });
+        executor.scheduleWithFixedDelay(refresher, 0, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * get all the hosts of the given pool
+     *
+     * @param poolID
+     * @return List<Host>
+     */
+    public List<Host> getHosts(int poolID) {
+        return metadataCache.getHosts(poolID);
+    }
+
+    /**
+     * get the hosts of the given pool whose agents are connected to the cluster
+     *
+     * @param poolID
+     * @return List<Host>
+     */
+    public List<Host> getLiveHosts(int poolID) {
+        List<Host> hosts = getHosts(poolID);
+        Set<String> liveAgents = zookeeper.getConnectedAgents();
+        List<Host> results = new ArrayList<Host>(hosts.size());
+        for (Host host : hosts) {
+            if (liveAgents.contains(host.getIp())) {
+                results.add(host);
+            }
+        }
+        return results;
+    }
+
+    public int getSlots(String ip) {
+        Integer slots = hostSlots.get(ip);
+        return slots == null ? defaultSlots : slots;
+    }
+
+    public int getFreeSlots(String ip) {
+        return getSlots(ip) - scheduler.getRunningAttemptCount(ip);
+    }
+
+    /**
+     * get the number of attempts which the given pool can start now: the free slots of its live hosts, bounded by the
+     * rest of its quota.
+     *
+     * @param poolID
+     * @return int
+     */
+    public int getFreeSlotsOfPool(int poolID) {
+        int free = 0;
+        for (Host host : getLiveHosts(poolID)) {
+            free += Math.max(getFreeSlots(host.getIp()), 0);
+        }
+        Integer quota = poolQuotas.get(poolID);
+        if (quota != null) {
+            free = Math.min(free, quota - scheduler.getRunningAttemptCountOfPool(poolID));
+        }
+        return Math.max(free, 0);
+    }
+
+    /**
+     * read the advertised slots of all the hosts from their heartbeats
+     */
+    void refresh() {
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        for (Pool pool : metadataCache.getPools()) {
+            for (Host host : metadataCache.getHosts(pool.getId())) {
+                HeartbeatInfo heartbeat = zookeeper.getHeartbeatInfo(host.getIp());
+                if (heartbeat != null && heartbeat.getSlots() > 0) {
+                    slots.put(host.getIp(), heartbeat.getSlots());
+                }
+            }
+        }
+        hostSlots = slots;
+    }
+
+    public int getDefaultSlots() {
+        return defaultSlots;
+    }
+
+    public void setDefaultSlots(int defaultSlots) {
+        this.defaultSlots = defaultSlots;
+    }
+
+    public Map<Integer, Integer> getPoolQuotas() {
+        return poolQuotas;
+    }
+
+    public void setPoolQuotas(Map<Integer, Integer> poolQuotas) {
+        this.poolQuotas = poolQuotas;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+}
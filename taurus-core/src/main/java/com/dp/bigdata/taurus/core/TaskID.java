@@ -23,7 +23,7 @@ public class TaskID extends ID {
 		builder.append(SEPARATOR);
 		builder.append(identifer);
 		builder.append(SEPARATOR);
-		builder.append(idFormat.format(id));
+		builder.append(format(id));
 		return builder;
 	}
 
@@ -0,0 +1,72 @@
+package com.dp.bigdata.taurus.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WakeupQueue collects the events which require the <code>Engine</code> to run a new scheduling round. Events are kept
+ * as a bit set, so several events offered before the engine wakes up are coalesced into one round.
+ *
+ * @author damon.zhu
+ * @see Engine
+ */
+public class WakeupQueue {
+
+    /**
+     * a crontab fire time has been reached, or a task has been registered/updated.
+     */
+    public static final int CRONTAB = 1;
+    /**
+     * some attempts may have satisfied their dependencies.
+     */
+    public static final int DEPENDENCY = 1 << 1;
+    /**
+     * some attempts may be ready to be dispatched.
+     */
+    public static final int DISPATCH = 1 << 2;
+
+    public static final int ALL = CRONTAB | DEPENDENCY | DISPATCH;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int pending;
+
+    /**
+     * Offer the events and wake up the waiting scheduler thread.
+     *
+     * @param events
+     */
+    public void offer(int events) {
+        lock.lock();
+        try {
+            pending |= events;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until some events are offered or the deadline is reached.
+     *
+     * @param deadline in milliseconds
+     * @return the pending events, 0 if the deadline is reached without any event.
+     * @throws InterruptedException
+     */
+    public int poll(long deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis());
+            while (pending == 0 && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int events = pending;
+            pending = 0;
+            return events;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
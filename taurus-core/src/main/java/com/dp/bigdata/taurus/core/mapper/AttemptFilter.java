@@ -0,0 +1,82 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * AttemptFilter is the condition of a page of attempts, the latest first. The null fields are not filtered on. A page
+ * starts after the cursor (cursorTime, cursorID), which is the scheduleTime and the attemptID of the last attempt of
+ * the previous page, so a page is an index range scan whatever its depth.
+ * 
+ * @author damon.zhu
+ * @see TaskAttemptQueryMapper#selectPage
+ */
+public class AttemptFilter {
+
+    private String taskID;
+    private List<Integer> statuses;
+    private Date fromTime;
+    private Date toTime;
+    private String execHost;
+    private Date cursorTime;
+    private String cursorID;
+
+    public String getTaskID() {
+        return taskID;
+    }
+
+    public void setTaskID(String taskID) {
+        this.taskID = taskID;
+    }
+
+    public List<Integer> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(List<Integer> statuses) {
+        this.statuses = statuses;
+    }
+
+    /**
+     * the attempts scheduled at or after fromTime
+     */
+    public Date getFromTime() {
+        return fromTime;
+    }
+
+    public void setFromTime(Date fromTime) {
+        this.fromTime = fromTime;
+    }
+
+    /**
+     * the attempts scheduled before toTime
+     */
+    public Date getToTime() {
+        return toTime;
+    }
+
+    public void setToTime(Date toTime) {
+        this.toTime = toTime;
+    }
+
+    public String getExecHost() {
+        return execHost;
+    }
+
+    public void setExecHost(String execHost) {
+        this.execHost = execHost;
+    }
+
+    public Date getCursorTime() {
+        return cursorTime;
+    }
+
+    public String getCursorID() {
+        return cursorID;
+    }
+
+    public void setCursor(Date cursorTime, String cursorID) {
+        this.cursorTime = cursorTime;
+        this.cursorID = cursorID;
+    }
+}
@@ -0,0 +1,36 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * IDCounterMapper moves the persisted ID counters forward in place, so a block of IDs is reserved with one statement.
+ *
+ * @author damon.zhu
+ * @see com.dp.bigdata.taurus.core.DefaultIDFactory
+ */
+public interface IDCounterMapper {
+
+    /**
+     * add count to the instance counter of the task
+     *
+     * @return 1, or 0 if the task has no counter yet
+     */
+    int addTaskCounter(@Param("taskID") String taskID, @Param("count") int count);
+
+    /**
+     * the instance counter of the task, read in the transaction of addTaskCounter
+     */
+    Integer selectTaskCounter(@Param("taskID") String taskID);
+
+    /**
+     * add count to the attempt counter of the instance
+     *
+     * @return 1, or 0 if the instance has no counter yet
+     */
+    int addInstanceCounter(@Param("instanceID") String instanceID, @Param("count") int count);
+
+    /**
+     * the attempt counter of the instance, read in the transaction of addInstanceCounter
+     */
+    Integer selectInstanceCounter(@Param("instanceID") String instanceID);
+}
@@ -0,0 +1,64 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ * TaskAttemptArchiveMapper moves the finished attempts from TaurusTaskAttempt to TaurusTaskAttemptArchive, and reads
+ * them back for the history of a task.
+ * 
+ * @author damon.zhu
+ * @see com.dp.bigdata.taurus.core.AttemptArchiver
+ */
+public interface TaskAttemptArchiveMapper {
+
+    /**
+     * the IDs of the attempts in the given statuses scheduled before the given time, index (status, scheduleTime). The
+     * latest attempt of a task is never selected, so the dependencies on it still find it in TaurusTaskAttempt. At most
+     * limit IDs, the oldest first.
+     */
+    List<String> selectArchivableIDs(@Param("statuses") List<Integer> statuses, @Param("before") Date before,
+            @Param("limit") int limit);
+
+    /**
+     * copy the given attempts into the archive
+     */
+    int insertArchive(@Param("attemptIDs") List<String> attemptIDs);
+
+    /**
+     * delete the given attempts from TaurusTaskAttempt, if they are still in the given statuses
+     */
+    int deleteArchived(@Param("attemptIDs") List<String> attemptIDs, @Param("statuses") List<Integer> statuses);
+
+    /**
+     * the archived attempt, or null if it is not archived
+     */
+    TaskAttempt selectArchivedByID(@Param("attemptID") String attemptID);
+
+    /**
+     * instanceID, status, returnValue and startTime of the latest archived attempts of the task, at most limit rows,
+     * index (taskID, scheduleTime)
+     * 
+     * @see TaskAttemptQueryMapper#selectRecentOutcomes
+     */
+    List<TaskAttempt> selectRecentArchivedOutcomes(@Param("taskID") String taskID, @Param("limit") int limit);
+
+    /**
+     * a page of the archived attempts matching the filter, the latest first, at most limit rows
+     * 
+     * @see TaskAttemptQueryMapper#selectPage
+     */
+    List<TaskAttempt> selectArchivedPage(@Param("filter") AttemptFilter filter, @Param("limit") int limit);
+
+    /**
+     * hand the archived attempts matching the filter to the handler one by one, the latest first
+     * 
+     * @see TaskAttemptQueryMapper#exportAttempts
+     */
+    void exportArchivedAttempts(@Param("filter") AttemptFilter filter, ResultHandler handler);
+}
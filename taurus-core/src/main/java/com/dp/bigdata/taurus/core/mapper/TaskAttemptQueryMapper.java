@@ -0,0 +1,53 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ * TaskAttemptQueryMapper holds the hand written queries of the scheduler on TaurusTaskAttempt. Unlike the generated
+ * TaskAttemptMapper, every query matches an index created by the schema migrations, and only reads the columns its
+ * caller needs.
+ * 
+ * @author damon.zhu
+ * @see com.dp.bigdata.taurus.core.SchemaMigration
+ */
+public interface TaskAttemptQueryMapper {
+
+    /**
+     * the attempts in the given statuses ordered by schedule time, index (status, scheduleTime)
+     */
+    List<TaskAttempt> selectByStatuses(@Param("statuses") List<Integer> statuses);
+
+    /**
+     * the schedule time of the latest attempt of the task, null if it has no attempt. index (taskID, scheduleTime)
+     */
+    Date selectLastScheduleTime(@Param("taskID") String taskID);
+
+    /**
+     * instanceID, status, returnValue and startTime of the latest attempts of the task, at most limit rows, index
+     * (taskID, scheduleTime)
+     */
+    List<TaskAttempt> selectRecentOutcomes(@Param("taskID") String taskID, @Param("limit") int limit);
+
+    /**
+     * the number of attempts of the instance, index (instanceID, startTime)
+     */
+    int countByInstanceID(@Param("instanceID") String instanceID);
+
+    /**
+     * a page of the attempts matching the filter, the latest first, at most limit rows. The next page starts after the
+     * cursor of the last row.
+     */
+    List<TaskAttempt> selectPage(@Param("filter") AttemptFilter filter, @Param("limit") int limit);
+
+    /**
+     * hand the attempts matching the filter to the handler one by one, the latest first, without holding them in the
+     * memory
+     */
+    void exportAttempts(@Param("filter") AttemptFilter filter, ResultHandler handler);
+}
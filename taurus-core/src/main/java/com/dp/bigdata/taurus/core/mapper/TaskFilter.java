@@ -0,0 +1,50 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import java.util.List;
+
+/**
+ * TaskFilter is the condition of a page of tasks ordered by taskID. The null fields are not filtered on. A page starts
+ * after cursorID, the taskID of the last task of the previous page.
+ * 
+ * @author damon.zhu
+ * @see TaskQueryMapper#selectPage
+ */
+public class TaskFilter {
+
+    private List<Integer> statuses;
+    private String creator;
+    private Integer poolID;
+    private String cursorID;
+
+    public List<Integer> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(List<Integer> statuses) {
+        this.statuses = statuses;
+    }
+
+    public String getCreator() {
+        return creator;
+    }
+
+    public void setCreator(String creator) {
+        this.creator = creator;
+    }
+
+    public Integer getPoolID() {
+        return poolID;
+    }
+
+    public void setPoolID(Integer poolID) {
+        this.poolID = poolID;
+    }
+
+    public String getCursorID() {
+        return cursorID;
+    }
+
+    public void setCursorID(String cursorID) {
+        this.cursorID = cursorID;
+    }
+}
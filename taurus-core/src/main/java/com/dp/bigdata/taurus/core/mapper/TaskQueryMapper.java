@@ -0,0 +1,26 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import com.dp.bigdata.taurus.generated.module.Task;
+
+/**
+ * TaskQueryMapper holds the hand written queries on TaurusTask.
+ * 
+ * @author damon.zhu
+ */
+public interface TaskQueryMapper {
+
+    /**
+     * the tasks matching the filter ordered by taskID, the primary key, at most limit rows
+     */
+    List<Task> selectPage(@Param("filter") TaskFilter filter, @Param("limit") int limit);
+
+    /**
+     * hand the tasks matching the filter to the handler one by one, ordered by taskID
+     */
+    void exportTasks(@Param("filter") TaskFilter filter, ResultHandler handler);
+}
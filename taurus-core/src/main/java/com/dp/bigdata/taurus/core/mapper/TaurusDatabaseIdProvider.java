@@ -0,0 +1,39 @@
+package com.dp.bigdata.taurus.core.mapper;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.mapping.DatabaseIdProvider;
+
+/**
+ * TaurusDatabaseIdProvider tells the statements of MySQL (databaseId "mysql", the production database) from the
+ * statements of Derby (databaseId "derby", the test database). Only the statements which limit their rows need both,
+ * MySQL ends them with LIMIT and Derby with FETCH FIRST.
+ *
+ * @author damon.zhu
+ */
+public class TaurusDatabaseIdProvider implements DatabaseIdProvider {
+
+    public static final String MYSQL = "mysql";
+    public static final String DERBY = "derby";
+
+    public void setProperties(Properties p) {
+        // nothing to configure
+    }
+
+    public String getDatabaseId(DataSource dataSource) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            String product = connection.getMetaData().getDatabaseProductName();
+            if (product.toLowerCase().contains(DERBY)) {
+                return DERBY;
+            }
+            return MYSQL;
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.dp.bigdata.taurus.core.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.dp.bigdata.taurus.core.AttemptStatusCheck;
+
+/**
+ * DependencyExpression is the compiled form of a dependency expression. The post-fix expression is flattened into an
+ * immutable program, so it can be cached and evaluated many times without parsing the expression again.
+ *
+ * @author damon.zhu
+ * @see DependencyParser
+ */
+public final class DependencyExpression {
+
+    private static final int AND = -1;
+    private static final int OR = -2;
+
+    private final String expression;
+    private final Operation[] operations;
+    /*
+     * each instruction is either the index of an operation, or AND/OR.
+     */
+    private final int[] program;
+    private final Set<String> dependencyNames;
+
+    DependencyExpression(String expression, ParserNode head) {
+        List<Operation> ops = new ArrayList<Operation>();
+        List<Integer> instructions = new ArrayList<Integer>();
+        Set<String> names = new HashSet<String>();
+        for (ParserNode current = head; current != null; current = current.getNext()) {
+            if (current.isOperator()) {
+                instructions.add(current.getOperator().getOperator() == Operator.AND ? AND : OR);
+            } else {
+                Operation op = current.getOperation();
+                instructions.add(ops.size());
+                ops.add(new Operation(op.getName(), op.getNumber(), op.getValue()));
+                names.add(op.getName());
+            }
+        }
+        this.expression = expression;
+        this.operations = ops.toArray(new Operation[ops.size()]);
+        this.program = new int[instructions.size()];
+        for (int i = 0; i < program.length; i++) {
+            program[i] = instructions.get(i);
+        }
+        this.dependencyNames = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Compute the expression.
+     *
+     * @param checker
+     * @return true if the dependencies are satisfied, false otherwise.
+     */
+    public boolean evaluate(AttemptStatusCheck checker) {
+        boolean[] values = new boolean[program.length];
+        int top = 0;
+        for (int instruction : program) {
+            if (instruction >= 0) {
+                values[top++] = checker.isDone(operations[instruction]);
+            } else {
+                boolean first = values[--top];
+                boolean second = values[--top];
+                values[top++] = (instruction == AND) ? (first && second) : (first || second);
+            }
+        }
+        return values[--top];
+    }
+
+    /**
+     * get the names of the tasks this expression depends on.
+     *
+     * @return Set<String>
+     */
+    public Set<String> getDependencyNames() {
+        return dependencyNames;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -30,26 +30,18 @@ public class DependencyParser {
      * @throws ILLegalDependencyExprException
      */
     public boolean isDepdencySatisfied(String dependencyExpr, AttemptStatusCheck checker) throws ParseException {
-        Stack<Boolean> s_value = new Stack<Boolean>();
-        ParserNode current = postExpression(dependencyExpr);
-
-        while (current != null) {
-            if (!current.isOperator()) {
-                Operation op = current.getOperation();
-                s_value.push(checker.isDone(op));
-            } else {
-                boolean first = s_value.pop();
-                boolean second = s_value.pop();
-                if (current.getOperator().getOperator() == Operator.AND) {
-                    s_value.push(first && second);
-                } else {
-                    s_value.push(first || second);
-                }
-            }
-            current = current.getNext();
-        }
+        return compile(dependencyExpr).evaluate(checker);
+    }
 
-        return s_value.pop();
+    /**
+     * Compile the dependency expression into an immutable program which can be cached and evaluated many times.
+     * 
+     * @param dependencyExpr
+     * @return DependencyExpression
+     * @throws ParseException
+     */
+    public static DependencyExpression compile(String dependencyExpr) throws ParseException {
+        return new DependencyExpression(dependencyExpr, postExpression(dependencyExpr));
     }
 
     /**
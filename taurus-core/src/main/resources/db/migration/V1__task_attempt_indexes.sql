@@ -0,0 +1,4 @@
+-- every scheduler tick filters TaurusTaskAttempt by status, by task and by instance
+CREATE INDEX idx_attempt_status_schedule ON TaurusTaskAttempt (status, scheduleTime);
+CREATE INDEX idx_attempt_task_schedule ON TaurusTaskAttempt (taskID, scheduleTime);
+CREATE INDEX idx_attempt_instance_start ON TaurusTaskAttempt (instanceID, startTime);
@@ -0,0 +1,5 @@
+-- the terminal attempts past the retention window are moved here by AttemptArchiver
+CREATE TABLE TaurusTaskAttemptArchive (attemptID VARCHAR(100) NOT NULL, instanceID VARCHAR(100), taskID VARCHAR(100),
+    startTime TIMESTAMP, endTime TIMESTAMP, scheduleTime TIMESTAMP, status INT, returnValue INT, execHost VARCHAR(100),
+    PRIMARY KEY (attemptID));
+CREATE INDEX idx_archive_task_schedule ON TaurusTaskAttemptArchive (taskID, scheduleTime);
@@ -1,5 +1,8 @@
 package com.dp.bigdata.taurus.core;
 
+import java.util.Calendar;
+import java.util.Date;
+
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.junit.After;
@@ -10,6 +13,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.dp.bigdata.taurus.generated.mapper.HostMapper;
+import com.dp.bigdata.taurus.generated.mapper.PoolMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.Pool;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
 /**
  * TableCreatorTest
  * 
@@ -22,6 +32,16 @@ public abstract class AbstractDaoTest {
 
     @Autowired
     protected SqlSessionFactoryBean sqlSessionFactoryBean;
+    @Autowired
+    private DefaultIDFactory defaultIDFactory;
+    @Autowired
+    private SchemaMigration schemaMigration;
+    @Autowired
+    private PoolMapper poolMapper;
+    @Autowired
+    private HostMapper hostMapper;
+    @Autowired
+    private TaskAttemptMapper taskAttemptMapper;
 
     @Before
     public void loadDatabase() {
@@ -44,10 +64,63 @@ public abstract class AbstractDaoTest {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        // the indexes of the production schema
+        schemaMigration.migrate();
     }
 
     protected abstract void loadData();
 
+    /*
+     * the fixtures shared by the tests, the pools get their IDs from 1 in the order they are inserted
+     */
+    protected void insertPool(String name) {
+        Pool pool = new Pool();
+        pool.setName(name);
+        pool.setCreator("damon.zhu");
+        poolMapper.insertSelective(pool);
+    }
+
+    protected void insertHost(String ip, int poolID) {
+        Host host = new Host();
+        host.setIp(ip);
+        host.setName(ip);
+        host.setPoolid(poolID);
+        hostMapper.insertSelective(host);
+    }
+
+    protected void insertAttempt(String attemptID, int status, Date scheduleTime) {
+        insertAttempt(attemptID, status, scheduleTime, null, null);
+    }
+
+    /*
+     * the task and the instance are the ones in the attempt ID
+     */
+    protected void insertAttempt(String attemptID, int status, Date scheduleTime, Date startTime, Integer returnValue) {
+        TaskAttempt attempt = new TaskAttempt();
+        attempt.setAttemptid(attemptID);
+        attempt.setInstanceid("instance" + attemptID.substring("attempt".length(), attemptID.lastIndexOf('_')));
+        attempt.setTaskid(AttemptID.getTaskID(attemptID));
+        attempt.setStatus(status);
+        attempt.setScheduletime(scheduleTime);
+        attempt.setStarttime(startTime);
+        attempt.setReturnvalue(returnValue);
+        taskAttemptMapper.insertSelective(attempt);
+    }
+
+    /*
+     * the hour of 2012-10-17
+     */
+    protected static Date time(int hour) {
+        return time(2012, hour);
+    }
+
+    protected static Date time(int year, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.set(year, Calendar.OCTOBER, 17, hour, 0, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTime();
+    }
+
     @After
     public void destroyDatabase() {
         SqlSessionFactory sqlSessionFactory = null;
@@ -59,11 +132,15 @@ public abstract class AbstractDaoTest {
             session.update("dropPool");
             session.update("dropTask");
             session.update("dropTaskAttempt");
+            session.update("dropTaskAttemptArchive");
             session.update("dropTaskIDCounter");
+            session.update("dropSchemaVersion");
             session.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
+        // the reserved ID blocks belong to the dropped counters
+        defaultIDFactory.reset();
     }
 
 }
@@ -0,0 +1,83 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.AttemptFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ *
+ * AttemptArchiverTest
+ * @author damon.zhu
+ *
+ */
+public class AttemptArchiverTest extends AbstractDaoTest {
+
+    private static final String TASKID = "task_201210171442_0001";
+
+    @Autowired
+    private TaskAttemptQueryMapper attemptQueryMapper;
+
+    @Autowired
+    private TaskAttemptArchiveMapper archiveMapper;
+
+    @Autowired
+    private AttemptArchiver archiver;
+
+    @Override
+    protected void loadData() {
+        insertAttempt("attempt_201210171442_0001_0001_0001", AttemptStatus.FAILED, time(2012, 1));
+        insertAttempt("attempt_201210171442_0001_0001_0002", AttemptStatus.SUCCEEDED, time(2012, 2));
+        insertAttempt("attempt_201210171442_0001_0002_0001", AttemptStatus.KILLED, time(2012, 3));
+        insertAttempt("attempt_201210171442_0001_0003_0001", AttemptStatus.RUNNING, time(2012, 4));
+        insertAttempt("attempt_201210171442_0001_0004_0001", AttemptStatus.TIMEOUT, time(2012, 5));
+        // the latest attempt is kept whatever its age
+        insertAttempt("attempt_201210171442_0001_0005_0001", AttemptStatus.SUCCEEDED, time(2012, 6));
+    }
+
+    @Test
+    public void testArchive() throws InterruptedException {
+        archiver.setBatchSize(2);
+        assertEquals(4, archiver.archive());
+
+        // the running attempt and the latest attempt are left
+        AttemptFilter filter = new AttemptFilter();
+        filter.setTaskID(TASKID);
+        List<TaskAttempt> live = attemptQueryMapper.selectPage(filter, 100);
+        assertEquals(2, live.size());
+        assertEquals(AttemptStatus.SUCCEEDED, live.get(0).getStatus().intValue());
+        assertEquals(AttemptStatus.RUNNING, live.get(1).getStatus().intValue());
+
+        assertEquals(4, archiveMapper.selectArchivedPage(filter, 100).size());
+        List<TaskAttempt> archived = archiveMapper.selectArchivedPage(filter, 3);
+        assertEquals(3, archived.size());
+        assertEquals("attempt_201210171442_0001_0002_0001", archived.get(1).getAttemptid());
+        assertEquals(AttemptStatus.SUCCEEDED, archived.get(2).getStatus().intValue());
+        assertEquals(TASKID, archiveMapper.selectArchivedByID("attempt_201210171442_0001_0002_0001").getTaskid());
+        assertNull(archiveMapper.selectArchivedByID(live.get(0).getAttemptid()));
+
+        // nothing is left to archive
+        assertEquals(0, archiver.archive());
+    }
+
+    @Test
+    public void testRetention() throws InterruptedException {
+        insertAttempt("attempt_201210171442_0001_0006_0001", AttemptStatus.SUCCEEDED, new Date());
+        archiver.setBatchSize(AttemptArchiver.DEFAULT_BATCH_SIZE);
+        archiver.setRetentionDays(100 * 365);
+        assertEquals(0, archiver.archive());
+        archiver.setRetentionDays(AttemptArchiver.DEFAULT_RETENTION_DAYS);
+        assertEquals(5, archiver.archive());
+        AttemptFilter filter = new AttemptFilter();
+        filter.setTaskID(TASKID);
+        assertEquals(2, attemptQueryMapper.selectPage(filter, 100).size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ * AttemptDispatcherTest
+ *
+ * @author damon.zhu
+ */
+public class AttemptDispatcherTest {
+
+    private static final String BUSY_HOST = "10.1.1.1";
+    private static final String FREE_HOST = "10.1.1.2";
+
+    private final AttemptDispatcher dispatcher = new AttemptDispatcher();
+    private final List<String> submitted = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testDeferBusyAgent() throws InterruptedException {
+        dispatcher.setMaxInFlightPerAgent(1);
+        dispatcher.setAcquireTimeout(50);
+        assertTrue(dispatcher.tryAcquire(BUSY_HOST));
+        assertEquals(1, dispatcher.getInFlight(BUSY_HOST));
+
+        List<AttemptContext> contexts = Arrays.asList(context("task_201210171442_0001", 1),
+                context("task_201210171442_0002", 1), context("task_201210171442_0001", 2));
+        long start = System.currentTimeMillis();
+        // both attempts of the task on the busy agent wait for the next dispatch, in their order
+        assertEquals(2, dispatcher.dispatch(contexts, new HostSubmitter()));
+        assertTrue(System.currentTimeMillis() - start < AttemptDispatcher.DEFAULT_DISPATCH_TIMEOUT);
+        assertEquals(Arrays.asList("attempt_201210171442_0002_0001_0001"), submitted);
+        assertEquals(2, dispatcher.getDeferredCount());
+        assertEquals(1, dispatcher.getSubmitCount());
+
+        dispatcher.release(BUSY_HOST);
+        submitted.clear();
+        assertEquals(0, dispatcher.dispatch(contexts, new HostSubmitter()));
+        assertEquals(3, submitted.size());
+        assertEquals(0, dispatcher.getInFlight(BUSY_HOST));
+        assertTrue(dispatcher.getSummary().startsWith("submits : 4, deferred : 2"));
+    }
+
+    @Test
+    public void testDispatchTimeout() throws InterruptedException {
+        dispatcher.setThreadCount(1);
+        dispatcher.setDispatchTimeout(100);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        List<AttemptContext> contexts = Arrays.asList(context("task_201210171442_0001", 1),
+                context("task_201210171442_0002", 1));
+        long start = System.currentTimeMillis();
+        // the only worker hangs on the first task, the second one is deferred
+        assertEquals(1, dispatcher.dispatch(contexts, new AttemptDispatcher.Submitter() {
+            public boolean submit(AttemptContext context) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                submitted.add(context.getAttemptid());
+                return true;
+            }
+        }));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(submitted.isEmpty());
+        blocked.countDown();
+    }
+
+    /*
+     * submits the attempts of the first task to the busy host and the others to the free one
+     */
+    private class HostSubmitter implements AttemptDispatcher.Submitter {
+        public boolean submit(AttemptContext context) throws ScheduleException {
+            String ip = context.getTaskid().endsWith("0001") ? BUSY_HOST : FREE_HOST;
+            try {
+                if (!dispatcher.tryAcquire(ip)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                throw new ScheduleException("Interrupted while waiting for host : " + ip);
+            }
+            try {
+                submitted.add(context.getAttemptid());
+            } finally {
+                dispatcher.release(ip);
+            }
+            dispatcher.recordSubmitTime(0);
+            return true;
+        }
+    }
+
+    private static AttemptContext context(String taskID, int instance) {
+        TaskAttempt attempt = new TaskAttempt();
+        attempt.setTaskid(taskID);
+        attempt.setAttemptid(taskID.replace("task", "attempt") + String.format("_%04d_0001", instance));
+        Task task = new Task();
+        task.setTaskid(taskID);
+        return new AttemptContext(attempt, task);
+    }
+}
@@ -103,7 +103,7 @@ public class CrontabTriggleTest extends AbstractDaoTest{
         attempt.setTaskid(TASKID1);
         String instanceID = idFactory.newInstanceID(TASKID1);
         attempt.setInstanceid(instanceID);
-        attempt.setAttemptid(idFactory.newAttemptID(instanceID));
+        attempt.setAttemptid(idFactory.newFirstAttemptID(instanceID));
         Calendar cal = Calendar.getInstance();
         cal.set(2012, Calendar.OCTOBER, 15, 19, 10, 0);
         attempt.setScheduletime(cal.getTime());
@@ -122,6 +122,84 @@ public class CrontabTriggleTest extends AbstractDaoTest{
         cleanTableTaskAttempt();
     }
     
+    @Test
+    public void testTriggleWithCatchUpLimit(){
+        /*
+         * insert previous task attempt
+         */
+        TaskAttempt attempt = new TaskAttempt();
+        attempt.setTaskid(TASKID1);
+        String instanceID = idFactory.newInstanceID(TASKID1);
+        attempt.setInstanceid(instanceID);
+        attempt.setAttemptid(idFactory.newFirstAttemptID(instanceID));
+        Calendar cal = Calendar.getInstance();
+        cal.set(2012, Calendar.OCTOBER, 15, 19, 10, 0);
+        attempt.setScheduletime(cal.getTime());
+        attemptMapper.insert(attempt);
+        
+        /*
+         * verify only the latest 2 missed fire times are executed
+         */
+        crontabTriggle.setMaxCatchUpAttempts(2);
+        Calendar now = Calendar.getInstance();
+        now.set(2012, Calendar.OCTOBER, 19, 19, 11, 0);
+        try {
+            crontabTriggle.triggle(now.getTime());
+        } finally {
+            crontabTriggle.setMaxCatchUpAttempts(CrontabTriggle.DEFAULT_MAX_CATCH_UP_ATTEMPTS);
+        }
+        TaskAttemptExample example = new TaskAttemptExample();
+        example.or();
+        List<TaskAttempt> attempts = attemptMapper.selectByExample(example);
+        assertEquals(3, attempts.size());
+        cleanTableTaskAttempt();
+    }
+    
+    @Test
+    public void testTriggleAfterFailedInsert(){
+        /*
+         * insert previous task attempt
+         */
+        TaskAttempt attempt = new TaskAttempt();
+        attempt.setTaskid(TASKID1);
+        String instanceID = idFactory.newInstanceID(TASKID1);
+        attempt.setInstanceid(instanceID);
+        attempt.setAttemptid(idFactory.newFirstAttemptID(instanceID));
+        Calendar cal = Calendar.getInstance();
+        cal.set(2012, Calendar.OCTOBER, 15, 19, 10, 0);
+        attempt.setScheduletime(cal.getTime());
+        attemptMapper.insert(attempt);
+        
+        /*
+         * an attempt of another task holds the ID of the next attempt, so the batch fails
+         */
+        TaskAttempt blocker = new TaskAttempt();
+        blocker.setTaskid("task_201210171442_0003");
+        blocker.setInstanceid("instance_201210171442_0003_0001");
+        blocker.setAttemptid("attempt_201210171442_0001_0002_0001");
+        attemptMapper.insert(blocker);
+        Calendar now = Calendar.getInstance();
+        now.set(2012, Calendar.OCTOBER, 19, 19, 11, 0);
+        crontabTriggle.triggle(now.getTime());
+        TaskAttemptExample example = new TaskAttemptExample();
+        example.or();
+        assertEquals(2, attemptMapper.selectByExample(example).size());
+        
+        /*
+         * verify the next triggle inserts the same attempts
+         */
+        attemptMapper.deleteByPrimaryKey(blocker.getAttemptid());
+        crontabTriggle.triggle(now.getTime());
+        example = new TaskAttemptExample();
+        example.or().andTaskidEqualTo(TASKID1);
+        example.setOrderByClause("instanceID");
+        List<TaskAttempt> attempts = attemptMapper.selectByExample(example);
+        assertEquals(5, attempts.size());
+        assertEquals("attempt_201210171442_0001_0002_0001", attempts.get(1).getAttemptid());
+        assertEquals("instance_201210171442_0001_0005", attempts.get(4).getInstanceid());
+        cleanTableTaskAttempt();
+    }
+    
     @Test
     public void testTriggleFromLastScheduleTime(){
         /*
@@ -131,7 +209,7 @@ public class CrontabTriggleTest extends AbstractDaoTest{
         attempt.setTaskid(TASKID2);
         String instanceID = idFactory.newInstanceID(TASKID2);
         attempt.setInstanceid(instanceID);
-        attempt.setAttemptid(idFactory.newAttemptID(instanceID));
+        attempt.setAttemptid(idFactory.newFirstAttemptID(instanceID));
         Calendar cal = Calendar.getInstance();
         cal.set(2012, Calendar.OCTOBER, 15, 10, 19, 0);
         attempt.setScheduletime(cal.getTime());
@@ -152,6 +230,29 @@ public class CrontabTriggleTest extends AbstractDaoTest{
         cleanTableTaskAttempt();
     }
     
+    @Test
+    public void testTriggleSuspendedTask() throws ScheduleException{
+        engine.suspendTask(TASKID1);
+        
+        /*
+         * verify
+         */
+        Calendar cal = Calendar.getInstance();
+        cal.set(2012, Calendar.OCTOBER, 19, 19, 10, 0);
+        crontabTriggle.triggle(cal.getTime());
+        TaskAttemptExample example = new TaskAttemptExample();
+        example.or();
+        List<TaskAttempt> attempts = attemptMapper.selectByExample(example);
+        assertEquals(0, attempts.size());
+        
+        Calendar next = Calendar.getInstance();
+        next.setTime(crontabTriggle.getNextFireTime());
+        assertEquals(20, next.get(Calendar.DAY_OF_MONTH));
+        assertEquals(10, next.get(Calendar.HOUR_OF_DAY));
+        assertEquals(19, next.get(Calendar.MINUTE));
+        cleanTableTaskAttempt();
+    }
+    
     /*
      * clean the table TaurusTaskAttempt
      */
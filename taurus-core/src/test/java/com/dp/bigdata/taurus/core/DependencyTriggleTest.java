@@ -71,7 +71,7 @@ public class DependencyTriggleTest extends AbstractDaoTest {
         attempt1.setTaskid(TASKID1);
         String instanceID1 = idFactory.newInstanceID(TASKID1);
         attempt1.setInstanceid(instanceID1);
-        attempt1.setAttemptid(idFactory.newAttemptID(instanceID1));
+        attempt1.setAttemptid(idFactory.newFirstAttemptID(instanceID1));
         attempt1.setReturnvalue(0);
         attempt1.setStatus(AttemptStatus.SUCCEEDED);
         attemptMapper.insertSelective(attempt1);
@@ -80,7 +80,7 @@ public class DependencyTriggleTest extends AbstractDaoTest {
         attempt2.setTaskid(TASKID1);
         String instanceID2 = idFactory.newInstanceID(TASKID1);
         attempt2.setInstanceid(instanceID2);
-        attempt2.setAttemptid(idFactory.newAttemptID(instanceID2));
+        attempt2.setAttemptid(idFactory.newFirstAttemptID(instanceID2));
         attempt2.setReturnvalue(0);
         attempt2.setStatus(AttemptStatus.INITIALIZED);
         attemptMapper.insertSelective(attempt2);
@@ -89,7 +89,7 @@ public class DependencyTriggleTest extends AbstractDaoTest {
         attempt3.setTaskid(TASKID2);
         String instanceID3 = idFactory.newInstanceID(TASKID2);
         attempt3.setInstanceid(instanceID3);
-        attempt3.setAttemptid(idFactory.newAttemptID(instanceID3));
+        attempt3.setAttemptid(idFactory.newFirstAttemptID(instanceID3));
         attempt3.setReturnvalue(1);
         attempt3.setStatus(AttemptStatus.SUCCEEDED);
         attemptMapper.insertSelective(attempt3);
@@ -98,7 +98,7 @@ public class DependencyTriggleTest extends AbstractDaoTest {
         attempt4.setTaskid(TASKID2);
         String instanceID4 = idFactory.newInstanceID(TASKID2);
         attempt4.setInstanceid(instanceID4);        
-        attempt4.setAttemptid(idFactory.newAttemptID(instanceID4));
+        attempt4.setAttemptid(idFactory.newFirstAttemptID(instanceID4));
         attempt4.setStatus(AttemptStatus.INITIALIZED);
         attemptMapper.insertSelective(attempt4);
         
@@ -106,7 +106,7 @@ public class DependencyTriggleTest extends AbstractDaoTest {
         attempt5.setTaskid(TASKID3);
         String instanceID5 = idFactory.newInstanceID(TASKID3);
         attempt5.setInstanceid(instanceID5);
-        attempt5.setAttemptid(idFactory.newAttemptID(instanceID5));
+        attempt5.setAttemptid(idFactory.newFirstAttemptID(instanceID5));
         attempt5.setStatus(AttemptStatus.INITIALIZED);
         attemptMapper.insertSelective(attempt5);
         
@@ -130,4 +130,14 @@ public class DependencyTriggleTest extends AbstractDaoTest {
         assertEquals(AttemptStatus.DEPENDENCY_PASS, attempt3.getStatus().intValue());
     }
 
+    @Test
+    public void testDropCompiledExpression() throws ScheduleException {
+        DependencyTriggle dependencyTriggle = (DependencyTriggle) triggle;
+        triggle.triggle();
+        assertTrue(dependencyTriggle.isCompiled(TASKID3));
+
+        engine.unRegisterTask(TASKID3);
+        assertFalse(dependencyTriggle.isCompiled(TASKID3));
+    }
+
 }
@@ -0,0 +1,211 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskMapper;
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+import com.dp.bigdata.taurus.generated.module.TaskExample;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteCompletionListener;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteContext;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecuteStatus;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecutorManager;
+
+/**
+ * EngineTest
+ *
+ * @author damon.zhu
+ */
+public class EngineTest extends AbstractDaoTest {
+
+    private final String SHARED_TASKID = "task_201210171443_0000";
+
+    @Autowired
+    private Engine engine;
+
+    @Autowired
+    private TaskMapper taskMapper;
+
+    @Autowired
+    private TaskAttemptMapper attemptMapper;
+
+    @Autowired
+    private MetadataCache metadataCache;
+
+    @Override
+    protected void loadData() {
+        //do nothing
+    }
+
+    @Test
+    public void testConcurrentRegisterTask() throws Exception {
+        final int threads = 16;
+        final int count = 50;
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            futures.add(executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    startSignal.await();
+                    int registered = 0;
+                    for (int j = 1; j <= count; j++) {
+                        engine.registerTask(newTask(String.format("task_201210171443_%04d", thread * count + j)));
+                        // every thread races to register the shared task
+                        try {
+                            engine.registerTask(newTask(SHARED_TASKID));
+                            registered++;
+                        } catch (ScheduleException e) {
+                            // it has been registered by another thread
+                        }
+                    }
+                    return registered;
+                }
+            }));
+        }
+
+        try {
+            startSignal.countDown();
+            int registered = 0;
+            for (Future<Integer> future : futures) {
+                registered += future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(1, registered);
+            for (int i = 1; i <= threads * count; i++) {
+                assertNotNull(engine.getAllRegistedTask().get(String.format("task_201210171443_%04d", i)));
+            }
+            TaskExample example = new TaskExample();
+            example.or().andStatusEqualTo(TaskStatus.SUSPEND);
+            assertEquals(threads * count + 1, taskMapper.countByExample(example));
+        } finally {
+            for (int i = 0; i <= threads * count; i++) {
+                engine.unRegisterTask(String.format("task_201210171443_%04d", i));
+            }
+        }
+    }
+
+    /*
+     * the agent finishes the attempt while it is being submitted: the lock of the task is free during the submit, the
+     * early finish is ignored as the attempt is not registered yet, and it is found by the first read of the watch.
+     */
+    @Test
+    public void testFinishWhileSubmitting() throws Exception {
+        final String attemptID = "attempt_201210171444_0001_0001_0001";
+        insertPool("hadoop");
+        insertHost("10.1.77.84", 1);
+        Task task = newTask("task_201210171444_0001");
+        task.setPoolid(1);
+        taskMapper.insertSelective(task);
+        metadataCache.load();
+        TaskAttempt attempt = new TaskAttempt();
+        attempt.setAttemptid(attemptID);
+        attempt.setInstanceid("instance_201210171444_0001_0001");
+        attempt.setTaskid(task.getTaskid());
+        attempt.setStatus(AttemptStatus.DEPENDENCY_PASS);
+        attempt.setScheduletime(new Date());
+        attemptMapper.insertSelective(attempt);
+
+        final CountDownLatch submitting = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        ExecutorManager agents = Stubs.stub(ExecutorManager.class, new Object() {
+            public void execute(ExecuteContext context) throws InterruptedException {
+                submitting.countDown();
+                finished.await();
+            }
+
+            public void watchCompletion(ExecuteContext context, ExecuteCompletionListener listener) {
+                // the status node already says the attempt has succeeded
+                listener.onCompleted(context, new ExecuteStatus(ExecuteStatus.SUCCEEDED));
+            }
+        });
+        Object zookeeper = ReflectionTestUtils.getField(engine, "zookeeper");
+        ReflectionTestUtils.setField(engine, "zookeeper", agents);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final AttemptContext context = new AttemptContext(attempt, metadataCache.getTask(task.getTaskid()));
+            Future<?> submit = executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    engine.executeAttempt(context);
+                    return null;
+                }
+            });
+            assertTrue(submitting.await(10, TimeUnit.SECONDS));
+
+            // the progress monitor reports the finish, it would wait forever for a lock held across the submit
+            executor.submit(new Callable<Void>() {
+                public Void call() {
+                    engine.attemptSucceed(attemptID);
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertFalse(engine.isRuningAttempt(attemptID));
+            assertEquals(0, engine.getRunningAttemptCount());
+            try {
+                engine.killAttempt(attemptID);
+                fail("the attempt is being submitted");
+            } catch (ScheduleException e) {
+                // expected
+            }
+
+            finished.countDown();
+            submit.get(10, TimeUnit.SECONDS);
+            assertFalse(engine.isRuningAttempt(attemptID));
+            assertEquals(0, engine.getRunningAttemptCount());
+            TaskAttempt stored = attemptMapper.selectByPrimaryKey(attemptID);
+            assertEquals(AttemptStatus.SUCCEEDED, stored.getStatus().intValue());
+            assertEquals("10.1.77.84", stored.getExechost());
+        } finally {
+            finished.countDown();
+            executor.shutdownNow();
+            ReflectionTestUtils.setField(engine, "zookeeper", zookeeper);
+        }
+    }
+
+    @Test
+    public void testChangesOnCopies() throws Exception {
+        Task task = newTask("task_201210171445_0001");
+        task.setStatus(TaskStatus.RUNNING);
+        taskMapper.insertSelective(task);
+        metadataCache.load();
+        Task cached = metadataCache.getTask(task.getTaskid());
+
+        engine.suspendTask(task.getTaskid());
+        // the readers of the previous version still see it running
+        assertEquals(TaskStatus.RUNNING, cached.getStatus().intValue());
+        assertEquals(TaskStatus.SUSPEND, metadataCache.getTask(task.getTaskid()).getStatus().intValue());
+        assertEquals(TaskStatus.SUSPEND, taskMapper.selectByPrimaryKey(task.getTaskid()).getStatus().intValue());
+
+        Task suspended = metadataCache.getTask(task.getTaskid());
+        engine.unRegisterTask(task.getTaskid());
+        assertEquals(TaskStatus.SUSPEND, suspended.getStatus().intValue());
+        assertNull(metadataCache.getTask(task.getTaskid()));
+        assertEquals(TaskStatus.DELETED, taskMapper.selectByPrimaryKey(task.getTaskid()).getStatus().intValue());
+    }
+
+    private Task newTask(String taskID) {
+        Task task = new Task();
+        task.setTaskid(taskID);
+        task.setName(taskID);
+        // suspended tasks are never fired
+        task.setStatus(TaskStatus.SUSPEND);
+        return task;
+    }
+}
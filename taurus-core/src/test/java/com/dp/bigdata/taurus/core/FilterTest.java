@@ -76,7 +76,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt1.setTaskid(TASKID1);
         String instanceID1 = idFactory.newInstanceID(TASKID1);
         attempt1.setInstanceid(instanceID1);
-        attempt1.setAttemptid(idFactory.newAttemptID(instanceID1));
+        attempt1.setAttemptid(idFactory.newFirstAttemptID(instanceID1));
         attempt1.setStatus(AttemptStatus.RUNNING);
         attemptMapper.insertSelective(attempt1);
         
@@ -84,7 +84,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt2.setTaskid(TASKID2);
         String instanceID2 = idFactory.newInstanceID(TASKID2);
         attempt2.setInstanceid(instanceID2);
-        attempt2.setAttemptid(idFactory.newAttemptID(instanceID2));
+        attempt2.setAttemptid(idFactory.newFirstAttemptID(instanceID2));
         attempt2.setStatus(AttemptStatus.RUNNING);
         attemptMapper.insertSelective(attempt2);
         
@@ -92,7 +92,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt3.setTaskid(TASKID3);
         String instanceID3 = idFactory.newInstanceID(TASKID3);
         attempt3.setInstanceid(instanceID3);
-        attempt3.setAttemptid(idFactory.newAttemptID(instanceID3));
+        attempt3.setAttemptid(idFactory.newFirstAttemptID(instanceID3));
         attempt3.setStatus(AttemptStatus.RUNNING);
         attemptMapper.insertSelective(attempt3);
         
@@ -106,6 +106,7 @@ public class FilterTest extends AbstractDaoTest{
          * set next to null
          */
         filter1.setNext(null);
+        filter2.setNext(null);
         
         /*
          * load attemptcontext
@@ -115,7 +116,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt4.setTaskid(TASKID3);
         String instanceID4 = idFactory.newInstanceID(TASKID3);
         attempt4.setInstanceid(instanceID4);
-        attempt4.setAttemptid(idFactory.newAttemptID(instanceID4));
+        attempt4.setAttemptid(idFactory.newFirstAttemptID(instanceID4));
         attempt4.setStatus(AttemptStatus.DEPENDENCY_PASS);
         contexts.add(new AttemptContext(attempt4 , task3));
         
@@ -123,7 +124,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt5.setTaskid(TASKID3);
         String instanceID5 = idFactory.newInstanceID(TASKID3);
         attempt5.setInstanceid(instanceID5);
-        attempt5.setAttemptid(idFactory.newAttemptID(instanceID5));
+        attempt5.setAttemptid(idFactory.newFirstAttemptID(instanceID5));
         attempt5.setStatus(AttemptStatus.DEPENDENCY_PASS);
         contexts.add(new AttemptContext(attempt5 , task3));
         
@@ -131,7 +132,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt6.setTaskid(TASKID3);
         String instanceID6 = idFactory.newInstanceID(TASKID3);
         attempt6.setInstanceid(instanceID6);
-        attempt6.setAttemptid(idFactory.newAttemptID(instanceID6));
+        attempt6.setAttemptid(idFactory.newFirstAttemptID(instanceID6));
         attempt6.setStatus(AttemptStatus.DEPENDENCY_PASS);
         contexts.add(new AttemptContext(attempt6 , task3));
         
@@ -139,7 +140,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt7.setTaskid(TASKID1);
         String instanceID7 = idFactory.newInstanceID(TASKID1);
         attempt7.setInstanceid(instanceID7);
-        attempt7.setAttemptid(idFactory.newAttemptID(instanceID7));
+        attempt7.setAttemptid(idFactory.newFirstAttemptID(instanceID7));
         attempt7.setStatus(AttemptStatus.DEPENDENCY_PASS);
         contexts.add(new AttemptContext(attempt7 , task1));
         
@@ -147,7 +148,7 @@ public class FilterTest extends AbstractDaoTest{
         attempt8.setTaskid(TASKID2);
         String instanceID8 = idFactory.newInstanceID(TASKID2);
         attempt8.setInstanceid(instanceID8);
-        attempt8.setAttemptid(idFactory.newAttemptID(instanceID8));
+        attempt8.setAttemptid(idFactory.newFirstAttemptID(instanceID8));
         attempt8.setStatus(AttemptStatus.DEPENDENCY_PASS);
         contexts.add(new AttemptContext(attempt8 , task2));
     }
@@ -2,9 +2,22 @@ package com.dp.bigdata.taurus.core;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.dp.bigdata.taurus.generated.mapper.InstanceIDCounterMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskIDCounterMapper;
+
 /**
  * IDFactoryTest
  * 
@@ -14,6 +27,12 @@ public class IDFactoryTest extends AbstractDaoTest {
 
     @Autowired
     private IDFactory idFactory;
+    @Autowired
+    private DefaultIDFactory defaultIDFactory;
+    @Autowired
+    private TaskIDCounterMapper taskIDMapper;
+    @Autowired
+    private InstanceIDCounterMapper instanceIDMapper;
 
     @Test
     public void testNewTaskID() {
@@ -37,18 +56,95 @@ public class IDFactoryTest extends AbstractDaoTest {
 
     }
 
+    @Test
+    public void testNewInstanceIDs() {
+        String taskID1 = "task_201210171442_0001";
+        assertEquals("instance_201210171442_0001_0001", idFactory.newInstanceID(taskID1));
+        List<String> ids = idFactory.newInstanceIDs(taskID1, 150);
+        assertEquals(150, ids.size());
+        assertEquals("instance_201210171442_0001_0002", ids.get(0));
+        assertEquals("instance_201210171442_0001_0151", ids.get(149));
+        assertEquals(2 * DefaultIDFactory.DEFAULT_INSTANCE_BLOCK_SIZE, taskIDMapper.selectByPrimaryKey(taskID1).getCounter()
+                .intValue());
+        assertEquals("instance_201210171442_0001_0152", idFactory.newInstanceID(taskID1));
+
+        // more than a block is reserved at once
+        String taskID2 = "task_201210171442_0002";
+        ids = idFactory.newInstanceIDs(taskID2, 250);
+        assertEquals("instance_201210171442_0002_0250", ids.get(249));
+        assertEquals(250, taskIDMapper.selectByPrimaryKey(taskID2).getCounter().intValue());
+    }
+
     @Test
     public void testNewAttemptID() {
         String instanceID1 = "instance_201210171442_0001_0001";
-        assertEquals("attempt_201210171442_0001_0001_0001", idFactory.newAttemptID(instanceID1));
+        assertEquals("attempt_201210171442_0001_0001_0001", idFactory.newFirstAttemptID(instanceID1));
+        // the first attempt needs no counter
+        assertNull(instanceIDMapper.selectByPrimaryKey(instanceID1));
         assertEquals("attempt_201210171442_0001_0001_0002", idFactory.newAttemptID(instanceID1));
         assertEquals("attempt_201210171442_0001_0001_0003", idFactory.newAttemptID(instanceID1));
         String instanceID2 = "instance_201210171442_0002_0001";
-        assertEquals("attempt_201210171442_0002_0001_0001", idFactory.newAttemptID(instanceID2));
+        assertEquals("attempt_201210171442_0002_0001_0001", idFactory.newFirstAttemptID(instanceID2));
         assertEquals("attempt_201210171442_0002_0001_0002", idFactory.newAttemptID(instanceID2));
         assertEquals("attempt_201210171442_0002_0001_0003", idFactory.newAttemptID(instanceID2));
     }
 
+    @Test
+    public void testReserveBlocks() {
+        String taskID = "task_201210171442_0001";
+        String instanceID = "instance_201210171442_0001_0001";
+        for (int i = 1; i <= DefaultIDFactory.DEFAULT_INSTANCE_BLOCK_SIZE + 1; i++) {
+            idFactory.newInstanceID(taskID);
+        }
+        assertEquals(2 * DefaultIDFactory.DEFAULT_INSTANCE_BLOCK_SIZE, taskIDMapper.selectByPrimaryKey(taskID).getCounter()
+                .intValue());
+        for (int i = 2; i <= DefaultIDFactory.DEFAULT_ATTEMPT_BLOCK_SIZE + 2; i++) {
+            idFactory.newAttemptID(instanceID);
+        }
+        assertEquals(1 + 2 * DefaultIDFactory.DEFAULT_ATTEMPT_BLOCK_SIZE, instanceIDMapper.selectByPrimaryKey(instanceID)
+                .getCounter().intValue());
+
+        // the blocks of a restarted engine follow the persisted counters
+        defaultIDFactory.reset();
+        assertEquals("instance_201210171442_0001_0201", idFactory.newInstanceID(taskID));
+        assertEquals("attempt_201210171442_0001_0001_0012", idFactory.newAttemptID(instanceID));
+    }
+
+    @Test
+    public void testConcurrentNewID() throws Exception {
+        final int threads = 16;
+        final int count = 500;
+        final String taskID = "task_201210171442_0001";
+        final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    int duplicated = 0;
+                    for (int j = 0; j < count; j++) {
+                        String instanceID = idFactory.newInstanceID(taskID);
+                        if (!ids.add(instanceID)) {
+                            duplicated++;
+                        }
+                        if (!ids.add(idFactory.newFirstAttemptID(instanceID))) {
+                            duplicated++;
+                        }
+                        if (!ids.add(idFactory.newAttemptID(instanceID))) {
+                            duplicated++;
+                        }
+                    }
+                    return duplicated;
+                }
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(0, future.get().intValue());
+        }
+        executor.shutdown();
+        assertEquals(3 * threads * count, ids.size());
+    }
+
     @Override
     protected void loadData() {
         //do nothing
@@ -0,0 +1,160 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ * InstanceOutcomeCacheTest
+ *
+ * @author damon.zhu
+ */
+public class InstanceOutcomeCacheTest extends AbstractDaoTest {
+
+    private static final String TASKID = "task_201210171442_0001";
+
+    @Autowired
+    private TaskAttemptArchiveMapper archiveMapper;
+
+    @Autowired
+    private InstanceOutcomeCache outcomeCache;
+
+    @Override
+    protected void loadData() {
+        insertAttempt("attempt_201210171442_0001_0001_0001", AttemptStatus.SUCCEEDED, time(1), time(1), 0);
+        insertAttempt("attempt_201210171442_0001_0002_0001", AttemptStatus.FAILED, time(2), time(2), 1);
+        // the retry shares the schedule time of its instance and starts later, so it is the outcome
+        insertAttempt("attempt_201210171442_0001_0002_0002", AttemptStatus.SUCCEEDED, time(2), time(3), 0);
+        insertAttempt("attempt_201210171442_0001_0003_0001", AttemptStatus.INITIALIZED, time(3), time(4), null);
+        outcomeCache.clear();
+    }
+
+    private static String instanceID(int instance) {
+        return String.format("instance_201210171442_0001_%04d", instance);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        long miss = outcomeCache.getMissCount();
+        long hit = outcomeCache.getHitCount();
+        assertEquals(AttemptStatus.INITIALIZED, outcomeCache.getOutcome(TASKID, 1).getStatus().intValue());
+        assertEquals(miss + 1, outcomeCache.getMissCount());
+
+        assertTrue(outcomeCache.getOutcome(TASKID, 2).isDone(0));
+        assertTrue(outcomeCache.getOutcome(TASKID, 3).isDone(0));
+        // all the instances are cached, so there is no 4th one
+        assertNull(outcomeCache.getOutcome(TASKID, 4).getStatus());
+        assertEquals(hit + 3, outcomeCache.getHitCount());
+        assertEquals(miss + 1, outcomeCache.getMissCount());
+
+        TaskAttempt finished = new TaskAttempt();
+        finished.setTaskid(TASKID);
+        finished.setInstanceid(instanceID(3));
+        finished.setStatus(AttemptStatus.SUCCEEDED);
+        finished.setReturnvalue(0);
+        outcomeCache.attemptFinished(finished);
+        assertTrue(outcomeCache.getOutcome(TASKID, 1).isDone(0));
+    }
+
+    @Test
+    public void testOlderThanCapacity() {
+        int capacity = outcomeCache.getCapacity();
+        outcomeCache.setCapacity(1);
+        try {
+            outcomeCache.clear();
+            assertEquals(AttemptStatus.INITIALIZED, outcomeCache.getOutcome(TASKID, 1).getStatus().intValue());
+            long miss = outcomeCache.getMissCount();
+            // read from the database, and not cached
+            assertTrue(outcomeCache.getOutcome(TASKID, 2).isDone(0));
+            assertEquals(miss + 1, outcomeCache.getMissCount());
+            assertTrue(outcomeCache.getOutcome(TASKID, 3).isDone(0));
+            assertNull(outcomeCache.getOutcome(TASKID, 4).getStatus());
+        } finally {
+            outcomeCache.setCapacity(capacity);
+            outcomeCache.clear();
+        }
+    }
+
+    @Test
+    public void testArchivedInstances() {
+        // instance 2 has a retry left in TaurusTaskAttempt
+        insertAttempt("attempt_201210171442_0001_0002_0003", AttemptStatus.FAILED, time(2), time(5), 1);
+        List<String> attemptIDs = Arrays.asList("attempt_201210171442_0001_0001_0001",
+                "attempt_201210171442_0001_0002_0001", "attempt_201210171442_0001_0002_0002");
+        List<Integer> statuses = Arrays.asList(AttemptStatus.SUCCEEDED, AttemptStatus.FAILED);
+        archiveMapper.insertArchive(attemptIDs);
+        archiveMapper.deleteArchived(attemptIDs, statuses);
+        outcomeCache.clear();
+
+        assertEquals(AttemptStatus.INITIALIZED, outcomeCache.getOutcome(TASKID, 1).getStatus().intValue());
+        // the live retry is started after the archived ones
+        assertFalse(outcomeCache.getOutcome(TASKID, 2).isDone(0));
+        assertTrue(outcomeCache.getOutcome(TASKID, 2).isDone(1));
+        assertTrue(outcomeCache.getOutcome(TASKID, 3).isDone(0));
+        assertNull(outcomeCache.getOutcome(TASKID, 4).getStatus());
+    }
+
+    @Test
+    public void testChangesWhileLoading() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final TaskAttempt loaded = new TaskAttempt();
+        loaded.setInstanceid(instanceID(1));
+        loaded.setStatus(AttemptStatus.RUNNING);
+        TaskAttemptQueryMapper mapper = Stubs.stub(TaskAttemptQueryMapper.class, new Object() {
+            public List<TaskAttempt> selectRecentOutcomes(String taskID, int limit) throws InterruptedException {
+                // the database is read before the changes below
+                reading.countDown();
+                release.await();
+                return Arrays.asList(loaded);
+            }
+        });
+        final InstanceOutcomeCache cache = new InstanceOutcomeCache();
+        ReflectionTestUtils.setField(cache, "attemptQueryMapper", mapper);
+        TaskAttemptArchiveMapper archive = Stubs.stub(TaskAttemptArchiveMapper.class, new Object() {
+            public List<TaskAttempt> selectRecentArchivedOutcomes(String taskID, int limit) {
+                // nothing is archived
+                return Collections.emptyList();
+            }
+        });
+        ReflectionTestUtils.setField(cache, "archiveMapper", archive);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<InstanceOutcomeCache.Outcome> latest = executor.submit(new Callable<InstanceOutcomeCache.Outcome>() {
+                public InstanceOutcomeCache.Outcome call() {
+                    return cache.getOutcome(TASKID, 1);
+                }
+            });
+            reading.await();
+            TaskAttempt finished = new TaskAttempt();
+            finished.setTaskid(TASKID);
+            finished.setInstanceid(instanceID(1));
+            finished.setStatus(AttemptStatus.SUCCEEDED);
+            finished.setReturnvalue(0);
+            cache.attemptFinished(finished);
+            cache.instanceCreated(TASKID, instanceID(2));
+            release.countDown();
+
+            assertEquals(AttemptStatus.INITIALIZED, latest.get().getStatus().intValue());
+            assertTrue(cache.getOutcome(TASKID, 2).isDone(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecutorManager;
+
+/**
+ * LeastLoadedTaskAssignPolicyTest
+ *
+ * @author damon.zhu
+ */
+public class LeastLoadedTaskAssignPolicyTest {
+
+    private static final double DELTA = 1e-9;
+
+    private final List<Host> hosts = new ArrayList<Host>();
+    private final Set<String> liveAgents = new HashSet<String>();
+    private final Map<String, Integer> freeSlots = new HashMap<String, Integer>();
+    private final Map<String, Integer> runningCounts = new HashMap<String, Integer>();
+    private final Map<String, HeartbeatInfo> heartbeats = new HashMap<String, HeartbeatInfo>();
+    private final Set<String> readHeartbeats = new HashSet<String>();
+
+    private LeastLoadedTaskAssignPolicy policy;
+    private Task task;
+
+    @Before
+    public void setUp() {
+        SlotManager slotManager = new SlotManager() {
+            @Override
+            public List<Host> getHosts(int poolID) {
+                return hosts;
+            }
+
+            @Override
+            public List<Host> getLiveHosts(int poolID) {
+                List<Host> results = new ArrayList<Host>();
+                for (Host host : hosts) {
+                    if (liveAgents.contains(host.getIp())) {
+                        results.add(host);
+                    }
+                }
+                return results;
+            }
+
+            @Override
+            public int getFreeSlots(String ip) {
+                Integer free = freeSlots.get(ip);
+                return free == null ? DEFAULT_SLOTS : free;
+            }
+        };
+        policy = new LeastLoadedTaskAssignPolicy();
+        ReflectionTestUtils.setField(policy, "slotManager", slotManager);
+        ReflectionTestUtils.setField(policy, "zookeeper", Stubs.stub(ExecutorManager.class, agents));
+        ReflectionTestUtils.setField(policy, "scheduler", Stubs.stub(Scheduler.class, agents));
+        task = new Task();
+        task.setTaskid("task_201210171442_0001");
+        task.setPoolid(1);
+    }
+
+    /*
+     * the heartbeats and the running counters of the maps above
+     */
+    private final Object agents = new Object() {
+        public HeartbeatInfo getHeartbeatInfo(String ip) {
+            readHeartbeats.add(ip);
+            return heartbeats.get(ip);
+        }
+
+        public int getRunningAttemptCount(String ip) {
+            Integer count = runningCounts.get(ip);
+            return count == null ? 0 : count;
+        }
+    };
+
+    private Host addHost(String ip, boolean isLive) {
+        Host host = new Host();
+        host.setIp(ip);
+        host.setPoolid(1);
+        hosts.add(host);
+        if (isLive) {
+            liveAgents.add(ip);
+        }
+        return host;
+    }
+
+    @Test
+    public void testNoHost() {
+        assertNull(policy.assignTask(task));
+        addHost("10.1.77.84", false);
+        addHost("10.1.77.85", false);
+        // the agents are dead, so the attempt waits for the next dispatch
+        assertNull(policy.assignTask(task));
+    }
+
+    @Test
+    public void testLoad() {
+        Host host = addHost("10.1.77.84", true);
+        assertEquals(0, policy.getLoad(host), DELTA);
+
+        runningCounts.put("10.1.77.84", 1);
+        HeartbeatInfo heartbeat = new HeartbeatInfo();
+        heartbeat.setQueuedAttempts(2);
+        heartbeat.setProcessors(8);
+        heartbeat.setLoadAverage(4.0);
+        heartbeat.setFreeMemory(4);
+        heartbeat.setTotalMemory(16);
+        heartbeats.put("10.1.77.84", heartbeat);
+        // 1 running + 2 queued + 4.0 / 8 processors + (1 - 4 / 16) of the memory
+        assertEquals(1 + 2 + 0.5 + 0.75, policy.getLoad(host), DELTA);
+
+        policy.setCpuWeight(2.0);
+        policy.setMemoryWeight(0);
+        assertEquals(1 + 2 + 1.0, policy.getLoad(host), DELTA);
+
+        // resources which are not reported are left out
+        heartbeat.setProcessors(0);
+        heartbeat.setTotalMemory(0);
+        assertEquals(3, policy.getLoad(host), DELTA);
+    }
+
+    @Test
+    public void testLessLoadedOfTwo() {
+        addHost("10.1.77.84", true);
+        addHost("10.1.77.85", true);
+        addHost("10.1.77.86", false);
+        runningCounts.put("10.1.77.84", 3);
+        runningCounts.put("10.1.77.85", 1);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("10.1.77.85", policy.assignTask(task).getIp());
+        }
+        // the dead host is never a candidate
+        assertFalse(readHeartbeats.contains("10.1.77.86"));
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() {
+        for (int i = 0; i < 8; i++) {
+            addHost("10.1.77." + (80 + i), true);
+            runningCounts.put("10.1.77." + (80 + i), i);
+        }
+        Map<String, Integer> assigned = new HashMap<String, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            readHeartbeats.clear();
+            String ip = policy.assignTask(task).getIp();
+            // two heartbeats are read for an assignment, not one per host
+            assertEquals(2, readHeartbeats.size());
+            Integer count = assigned.get(ip);
+            assigned.put(ip, count == null ? 1 : count + 1);
+        }
+        // the busiest host always loses the comparison
+        assertNull(assigned.get("10.1.77.87"));
+        // the others are picked less often as they get busier, so the work is spread
+        for (int i = 0; i < 6; i++) {
+            assertTrue(assigned.get("10.1.77." + (80 + i)) > assigned.get("10.1.77." + (81 + i)));
+        }
+    }
+
+    @Test
+    public void testFreeSlotsFirst() {
+        addHost("10.1.77.84", true);
+        addHost("10.1.77.85", true);
+        addHost("10.1.77.86", true);
+        runningCounts.put("10.1.77.85", 4);
+        runningCounts.put("10.1.77.86", 4);
+        freeSlots.put("10.1.77.84", 0);
+        for (int i = 0; i < 20; i++) {
+            // the idle host has no free slot, so it is not a candidate
+            assertFalse("10.1.77.84".equals(policy.assignTask(task).getIp()));
+        }
+        freeSlots.put("10.1.77.85", 0);
+        freeSlots.put("10.1.77.86", 0);
+        // all the hosts are full, so the live hosts are candidates again
+        Set<String> assigned = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            assigned.add(policy.assignTask(task).getIp());
+        }
+        assertTrue(assigned.contains("10.1.77.84"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.generated.mapper.HostMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskMapper;
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.Task;
+
+/**
+ *
+ * MetadataCacheTest
+ * @author damon.zhu
+ *
+ */
+public class MetadataCacheTest extends AbstractDaoTest {
+
+    @Autowired
+    private TaskMapper taskMapper;
+
+    @Autowired
+    private HostMapper hostMapper;
+
+    @Autowired
+    private MetadataCache metadataCache;
+
+    @Override
+    protected void loadData() {
+        insertTask("task_201210171442_0002", "second", TaskStatus.SUSPEND);
+        insertTask("task_201210171442_0001", "first", TaskStatus.RUNNING);
+        insertTask("task_201210171442_0003", "deleted", TaskStatus.DELETED);
+        insertPool("Unallocated");
+        insertPool("hadoop");
+        insertHost("10.1.77.84", 2);
+        insertHost("10.1.77.85", 2);
+        insertHost("10.1.77.86", 1);
+        metadataCache.load();
+    }
+
+    private void insertTask(String taskID, String name, int status) {
+        Task task = new Task();
+        task.setTaskid(taskID);
+        task.setName(name);
+        task.setPoolid(1);
+        task.setStatus(status);
+        taskMapper.insertSelective(task);
+    }
+
+    @Test
+    public void testLoad() {
+        // the deleted task is not registered
+        assertEquals(2, metadataCache.getTasks().size());
+        assertEquals("task_201210171442_0001", metadataCache.getTasks().firstKey());
+        assertEquals("task_201210171442_0002", metadataCache.getTaskByName("second").getTaskid());
+        assertNull(metadataCache.getTaskByName("deleted"));
+
+        assertEquals(2, metadataCache.getPools().size());
+        assertEquals(2, metadataCache.getPoolByName("hadoop").getId().intValue());
+        assertEquals("Unallocated", metadataCache.getPool(1).getName());
+        assertEquals(2, metadataCache.getHosts(2).size());
+        assertEquals("10.1.77.85", metadataCache.getHosts(2).get(1).getIp());
+        assertTrue(metadataCache.getHosts(3).isEmpty());
+    }
+
+    @Test
+    public void testChanges() {
+        final List<MetadataEvent> events = new ArrayList<MetadataEvent>();
+        MetadataListener listener = new MetadataListener() {
+            public void onChanged(MetadataEvent event) {
+                events.add(event);
+            }
+        };
+        metadataCache.addListener(listener);
+        try {
+            long version = metadataCache.getVersion();
+            // the cached objects are read only, so the changes are made on copies
+            Task cached = metadataCache.getTask("task_201210171442_0001");
+            Task task = new Task();
+            BeanUtils.copyProperties(cached, task);
+            task.setName("renamed");
+            metadataCache.taskChanged(task);
+            assertNull(metadataCache.getTaskByName("first"));
+            assertSame(task, metadataCache.getTaskByName("renamed"));
+            assertEquals("first", cached.getName());
+
+            Task deleted = new Task();
+            BeanUtils.copyProperties(task, deleted);
+            deleted.setStatus(TaskStatus.DELETED);
+            metadataCache.taskChanged(deleted);
+            assertNull(metadataCache.getTask("task_201210171442_0001"));
+            metadataCache.taskRemoved("task_201210171442_0002");
+            assertTrue(metadataCache.getTasks().isEmpty());
+
+            Host host = new Host();
+            BeanUtils.copyProperties(metadataCache.getHosts(1).get(0), host);
+            host.setPoolid(2);
+            hostMapper.updateByPrimaryKey(host);
+            metadataCache.hostsChanged();
+            assertEquals(3, metadataCache.getHosts(2).size());
+            assertTrue(metadataCache.getHosts(1).isEmpty());
+
+            assertEquals(4, events.size());
+            assertEquals(MetadataEvent.Type.TASK, events.get(0).getType());
+            assertEquals("task_201210171442_0001", events.get(0).getKey());
+            assertEquals(MetadataEvent.Type.HOST, events.get(3).getType());
+            assertEquals(version + 4, metadataCache.getVersion());
+            assertEquals(metadataCache.getVersion(), events.get(3).getVersion());
+        } finally {
+            metadataCache.removeListener(listener);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * SchemaMigrationTest
+ *
+ * @author damon.zhu
+ */
+public class SchemaMigrationTest extends AbstractDaoTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private SchemaMigration schemaMigration;
+
+    @Override
+    protected void loadData() {
+        // nothing but the schema
+    }
+
+    private int execute(String sql) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement stmt = connection.createStatement();
+            try {
+                if (sql.startsWith("SELECT")) {
+                    ResultSet rs = stmt.executeQuery(sql);
+                    rs.next();
+                    return rs.getInt(1);
+                }
+                return stmt.executeUpdate(sql);
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testReapply() throws SQLException {
+        int versions = execute("SELECT count(*) FROM TaurusSchemaVersion");
+        assertTrue(versions > 0);
+        // the indexes and the archive table are left, as if the scripts had failed half way
+        execute("DELETE FROM TaurusSchemaVersion");
+        schemaMigration.migrate();
+        assertEquals(versions, execute("SELECT count(*) FROM TaurusSchemaVersion"));
+
+        // a statement which fails for another reason still fails the script
+        execute("DELETE FROM TaurusSchemaVersion WHERE version = 2");
+        execute("DROP TABLE TaurusTaskAttemptArchive");
+        execute("CREATE TABLE TaurusTaskAttemptArchive (attemptID VARCHAR(100) NOT NULL, PRIMARY KEY (attemptID))");
+        try {
+            schemaMigration.migrate();
+            fail();
+        } catch (IllegalStateException e) {
+            // the archive has no taskID to index
+        }
+        assertEquals(versions - 1, execute("SELECT count(*) FROM TaurusSchemaVersion"));
+    }
+}
@@ -0,0 +1,206 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dp.bigdata.taurus.generated.module.Host;
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.execute.helper.ExecutorManager;
+
+/**
+ * SlotManagerTest
+ *
+ * @author damon.zhu
+ */
+public class SlotManagerTest extends AbstractDaoTest {
+
+    private static final int POOLID = 2;
+
+    @Autowired
+    private MetadataCache metadataCache;
+
+    @Autowired
+    private SlotManager slotManager;
+
+    @Autowired
+    @Qualifier("filter.slot")
+    private SlotAdmissionFilter filter;
+
+    private final Set<String> liveAgents = new HashSet<String>();
+    private final Map<String, Integer> advertisedSlots = new HashMap<String, Integer>();
+    private final Map<String, Integer> runningCounts = new HashMap<String, Integer>();
+    private final AtomicInteger heartbeatReads = new AtomicInteger();
+    private int poolRunningCount;
+
+    private Object zookeeper;
+    private Object scheduler;
+
+    @Override
+    protected void loadData() {
+        insertPool("Unallocated");
+        insertPool("hadoop");
+        insertHost("10.1.77.84", POOLID);
+        insertHost("10.1.77.85", POOLID);
+        insertHost("10.1.77.86", POOLID);
+        metadataCache.load();
+
+        liveAgents.add("10.1.77.84");
+        liveAgents.add("10.1.77.85");
+        // 10.1.77.85 does not advertise its slots
+        advertisedSlots.put("10.1.77.84", 2);
+        advertisedSlots.put("10.1.77.86", 8);
+        zookeeper = ReflectionTestUtils.getField(slotManager, "zookeeper");
+        scheduler = ReflectionTestUtils.getField(slotManager, "scheduler");
+        ReflectionTestUtils.setField(slotManager, "zookeeper", Stubs.stub(ExecutorManager.class, agents));
+        ReflectionTestUtils.setField(slotManager, "scheduler", Stubs.stub(Scheduler.class, agents));
+        slotManager.refresh();
+    }
+
+    @After
+    public void restore() {
+        ReflectionTestUtils.setField(slotManager, "zookeeper", zookeeper);
+        ReflectionTestUtils.setField(slotManager, "scheduler", scheduler);
+        slotManager.getPoolQuotas().clear();
+    }
+
+    /*
+     * the agents, the heartbeats and the running counters of the fields above
+     */
+    private final Object agents = new Object() {
+        public Set<String> getConnectedAgents() {
+            return liveAgents;
+        }
+
+        public HeartbeatInfo getHeartbeatInfo(String ip) {
+            heartbeatReads.incrementAndGet();
+            Integer slots = advertisedSlots.get(ip);
+            if (slots == null) {
+                return null;
+            }
+            HeartbeatInfo heartbeat = new HeartbeatInfo();
+            heartbeat.setSlots(slots);
+            return heartbeat;
+        }
+
+        public int getRunningAttemptCount(String ip) {
+            Integer count = runningCounts.get(ip);
+            return count == null ? 0 : count;
+        }
+
+        public int getRunningAttemptCountOfPool(int poolID) {
+            return poolRunningCount;
+        }
+    };
+
+    private AttemptContext newContext(int number, Integer poolID) {
+        Task task = new Task();
+        task.setTaskid("task_201210171442_0001");
+        task.setPoolid(poolID);
+        TaskAttempt attempt = new TaskAttempt();
+        attempt.setAttemptid(String.format("attempt_201210171442_0001_%04d_0001", number));
+        attempt.setTaskid(task.getTaskid());
+        return new AttemptContext(attempt, task);
+    }
+
+    @Test
+    public void testSlots() {
+        assertEquals(2, slotManager.getSlots("10.1.77.84"));
+        assertEquals(SlotManager.DEFAULT_SLOTS, slotManager.getSlots("10.1.77.85"));
+        assertEquals(8, slotManager.getSlots("10.1.77.86"));
+        runningCounts.put("10.1.77.84", 3);
+        assertEquals(-1, slotManager.getFreeSlots("10.1.77.84"));
+
+        assertEquals(3, slotManager.getHosts(POOLID).size());
+        List<String> live = new ArrayList<String>();
+        for (Host host : slotManager.getLiveHosts(POOLID)) {
+            live.add(host.getIp());
+        }
+        assertEquals(2, live.size());
+        assertFalse(live.contains("10.1.77.86"));
+    }
+
+    @Test
+    public void testFreeSlotsOfPool() {
+        // the dead host does not count, and the overcommitted host is not negative
+        runningCounts.put("10.1.77.84", 3);
+        runningCounts.put("10.1.77.85", 1);
+        assertEquals(3, slotManager.getFreeSlotsOfPool(POOLID));
+        runningCounts.put("10.1.77.84", 1);
+        assertEquals(4, slotManager.getFreeSlotsOfPool(POOLID));
+        assertEquals(0, slotManager.getFreeSlotsOfPool(1));
+
+        slotManager.getPoolQuotas().put(POOLID, 5);
+        poolRunningCount = 3;
+        assertEquals(2, slotManager.getFreeSlotsOfPool(POOLID));
+        poolRunningCount = 6;
+        assertEquals(0, slotManager.getFreeSlotsOfPool(POOLID));
+    }
+
+    @Test
+    public void testNoHeartbeatReadOnLookup() {
+        int reads = heartbeatReads.get();
+        for (int i = 0; i < 100; i++) {
+            slotManager.getHosts(POOLID);
+            slotManager.getLiveHosts(POOLID);
+            slotManager.getFreeSlotsOfPool(POOLID);
+            filter.filter(new ArrayList<AttemptContext>());
+        }
+        // the slots are only read by the refresh
+        assertEquals(reads, heartbeatReads.get());
+        slotManager.refresh();
+        assertEquals(reads + 3, heartbeatReads.get());
+    }
+
+    @Test
+    public void testRefreshOnHostChange() throws InterruptedException {
+        advertisedSlots.put("10.1.77.85", 6);
+        metadataCache.hostsChanged();
+        // refreshed by the background thread
+        long deadline = System.currentTimeMillis() + 10000;
+        while (slotManager.getSlots("10.1.77.85") != 6 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(6, slotManager.getSlots("10.1.77.85"));
+    }
+
+    @Test
+    public void testAdmission() {
+        runningCounts.put("10.1.77.84", 1);
+        runningCounts.put("10.1.77.85", 3);
+        List<AttemptContext> contexts = new ArrayList<AttemptContext>();
+        for (int i = 1; i <= 4; i++) {
+            contexts.add(newContext(i, POOLID));
+        }
+        contexts.add(newContext(5, 1));
+        // attempts without a pool are not limited
+        contexts.add(newContext(6, null));
+
+        List<AttemptContext> admitted = filter.filter(contexts);
+        // one free slot on each live host of the pool, and none in the empty pool
+        assertEquals(3, admitted.size());
+        assertSame(contexts.get(0), admitted.get(0));
+        assertSame(contexts.get(1), admitted.get(1));
+        assertSame(contexts.get(5), admitted.get(2));
+
+        slotManager.getPoolQuotas().put(POOLID, 4);
+        poolRunningCount = 3;
+        admitted = filter.filter(contexts);
+        assertEquals(2, admitted.size());
+        assertSame(contexts.get(0), admitted.get(0));
+    }
+}
@@ -0,0 +1,43 @@
+package com.dp.bigdata.taurus.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Stubs makes the fakes which the tests put in place of the mappers and the agents with ReflectionTestUtils. A call on
+ * the fake is handed to the public method with the same name and parameter types of the answers, usually an anonymous
+ * class holding only the methods the test needs; the other methods throw UnsupportedOperationException.
+ *
+ * @author damon.zhu
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    public static <T> T stub(Class<T> type, final Object answers) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { type },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getDeclaringClass() == Object.class) {
+                            return method.invoke(this, args);
+                        }
+                        Method answer;
+                        try {
+                            answer = answers.getClass().getMethod(method.getName(), method.getParameterTypes());
+                        } catch (NoSuchMethodException e) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        // the answers are not a public class
+                        answer.setAccessible(true);
+                        try {
+                            return answer.invoke(answers, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                }));
+    }
+}
@@ -0,0 +1,183 @@
+package com.dp.bigdata.taurus.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.core.mapper.TaurusDatabaseIdProvider;
+
+/**
+ * TaskAttemptQueryBenchmark measures the queries of one scheduler tick on TaurusTaskAttempt, before and after the
+ * indexes of SchemaMigration, on an embedded Derby database. The queries are the statements of TaskAttemptQueryMapper
+ * as the scheduler runs them. It is not a unit test, run it by hand:
+ *
+ * <pre>
+ * java -Dattempts=2000000 -Dtasks=2000 com.dp.bigdata.taurus.core.TaskAttemptQueryBenchmark
+ * </pre>
+ *
+ * @author damon.zhu
+ */
+public class TaskAttemptQueryBenchmark {
+
+    private static final int TICKS = 20;
+    private static final int BATCH_SIZE = 10000;
+
+    private final int attempts;
+    private final int tasks;
+    private final BasicDataSource dataSource;
+    private final SqlSessionFactory sessionFactory;
+    private final Random random = new Random(17);
+
+    public TaskAttemptQueryBenchmark(int attempts, int tasks) throws Exception {
+        this.attempts = attempts;
+        this.tasks = tasks;
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.apache.derby.jdbc.EmbeddedDriver");
+        dataSource.setUrl("jdbc:derby:memory:taurus-benchmark;create=true");
+        sessionFactory = sessionFactory();
+    }
+
+    /*
+     * the factory of the scheduler, with the statements of the mapper XML and the Derby variants picked by databaseId
+     */
+    private SqlSessionFactory sessionFactory() throws Exception {
+        SqlSessionFactoryBean factory = new SqlSessionFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setDatabaseIdProvider(new TaurusDatabaseIdProvider());
+        factory.setMapperLocations(new Resource[] { new ClassPathResource(
+                "com/dp/bigdata/taurus/core/mapper/TaskAttemptQueryMapper.xml") });
+        return factory.getObject();
+    }
+
+    public static void main(String[] args) throws Exception {
+        TaskAttemptQueryBenchmark benchmark = new TaskAttemptQueryBenchmark(Integer.getInteger("attempts", 2000000),
+                Integer.getInteger("tasks", 2000));
+        benchmark.load();
+        System.out.println("Without indexes : " + benchmark.tick() + " ms per tick");
+
+        SchemaMigration migration = new SchemaMigration();
+        ReflectionTestUtils.setField(migration, "dataSource", benchmark.dataSource);
+        long start = System.currentTimeMillis();
+        migration.migrate();
+        System.out.println("Indexes created in " + (System.currentTimeMillis() - start) + " ms");
+        System.out.println("With indexes : " + benchmark.tick() + " ms per tick");
+        benchmark.dataSource.close();
+    }
+
+    /*
+     * most of the attempts have finished, a few hundreds are waiting, ready or running as in a busy cluster
+     */
+    private void load() throws SQLException {
+        Connection conn = dataSource.getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("CREATE TABLE TaurusTaskAttempt (attemptID VARCHAR(100), instanceID VARCHAR(100),"
+                    + " taskID VARCHAR(100), startTime TIMESTAMP, endTime TIMESTAMP, scheduleTime TIMESTAMP,"
+                    + " status INT, returnValue INT, execHost VARCHAR(100), PRIMARY KEY (attemptID))");
+            stmt.close();
+
+            conn.setAutoCommit(false);
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO TaurusTaskAttempt (attemptID, instanceID,"
+                    + " taskID, startTime, endTime, scheduleTime, status, returnValue, execHost)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            long now = System.currentTimeMillis();
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < attempts; i++) {
+                int task = i % tasks;
+                int instance = i / tasks;
+                long scheduleTime = now - (long) (attempts - i) * 60 * 1000 / tasks;
+                int status = status(i);
+                insert.setString(1, attemptID(task, instance));
+                insert.setString(2, instanceID(task, instance));
+                insert.setString(3, taskID(task));
+                insert.setTimestamp(4, new Timestamp(scheduleTime + 1000));
+                insert.setTimestamp(5, new Timestamp(scheduleTime + 60000));
+                insert.setTimestamp(6, new Timestamp(scheduleTime));
+                insert.setInt(7, status);
+                insert.setInt(8, status == AttemptStatus.FAILED ? 1 : 0);
+                insert.setString(9, "10.1.1." + (task % 50));
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    conn.commit();
+                }
+            }
+            insert.executeBatch();
+            conn.commit();
+            insert.close();
+            System.out.println("Loaded " + attempts + " attempts of " + tasks + " tasks in "
+                    + (System.currentTimeMillis() - begin) + " ms");
+        } finally {
+            conn.close();
+        }
+    }
+
+    private int status(int i) {
+        if (i >= attempts - tasks / 2) {
+            int[] live = { AttemptStatus.INITIALIZED, AttemptStatus.DEPENDENCY_PASS, AttemptStatus.RUNNING };
+            return live[i % live.length];
+        }
+        return i % 10 == 0 ? AttemptStatus.FAILED : AttemptStatus.SUCCEEDED;
+    }
+
+    /*
+     * one tick : the waiting, the ready and the running attempts, the last fire time of the scheduled tasks, the
+     * outcomes of the tasks whose dependencies are checked and the retries of the failed instances, through the
+     * statements of TaskAttemptQueryMapper
+     */
+    private long tick() throws Exception {
+        SqlSession session = sessionFactory.openSession();
+        try {
+            TaskAttemptQueryMapper mapper = session.getMapper(TaskAttemptQueryMapper.class);
+            int outcomeLimit = InstanceOutcomeCache.DEFAULT_CAPACITY * InstanceOutcomeCache.ATTEMPTS_PER_INSTANCE;
+            long total = 0;
+            for (int tick = 0; tick <= TICKS; tick++) {
+                long start = System.nanoTime();
+                mapper.selectByStatuses(Arrays.asList(AttemptStatus.INITIALIZED, AttemptStatus.DEPENDENCY_TIMEOUT));
+                mapper.selectByStatuses(Collections.singletonList(AttemptStatus.DEPENDENCY_PASS));
+                mapper.selectByStatuses(Collections.singletonList(AttemptStatus.RUNNING));
+                for (int i = 0; i < 20; i++) {
+                    mapper.selectLastScheduleTime(taskID(random.nextInt(tasks)));
+                    mapper.selectRecentOutcomes(taskID(random.nextInt(tasks)), outcomeLimit);
+                    int task = random.nextInt(tasks);
+                    mapper.countByInstanceID(instanceID(task, random.nextInt(attempts / tasks)));
+                }
+                // the first tick warms up
+                if (tick > 0) {
+                    total += System.nanoTime() - start;
+                }
+                // the mapper would answer the same statements from the local cache of the session
+                session.clearCache();
+            }
+            return total / TICKS / 1000000;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static String taskID(int task) {
+        return String.format("task_201210171442_%04d", task);
+    }
+
+    private static String instanceID(int task, int instance) {
+        return String.format("instance_201210171442_%04d_%04d", task, instance);
+    }
+
+    private static String attemptID(int task, int instance) {
+        return String.format("attempt_201210171442_%04d_%04d_0001", task, instance);
+    }
+}
@@ -0,0 +1,118 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.AttemptFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+
+/**
+ * 
+ * TaskAttemptQueryMapperTest
+ * @author damon.zhu
+ *
+ */
+public class TaskAttemptQueryMapperTest extends AbstractDaoTest {
+
+    private static final String TASKID = "task_201210171442_0001";
+    private static final String INSTANCE1 = "instance_201210171442_0001_0001";
+    private static final String INSTANCE2 = "instance_201210171442_0001_0002";
+
+    @Autowired
+    private TaskAttemptQueryMapper attemptQueryMapper;
+
+    @Override
+    protected void loadData() {
+        insertAttempt("attempt_201210171442_0001_0001_0001", AttemptStatus.FAILED, time(10));
+        insertAttempt("attempt_201210171442_0001_0001_0002", AttemptStatus.DEPENDENCY_PASS, time(10));
+        insertAttempt("attempt_201210171442_0001_0002_0001", AttemptStatus.DEPENDENCY_PASS, time(5));
+    }
+
+    @Test
+    public void testSelectByStatuses() {
+        List<TaskAttempt> attempts = attemptQueryMapper.selectByStatuses(Arrays.asList(AttemptStatus.DEPENDENCY_PASS));
+        assertEquals(2, attempts.size());
+        // ordered by schedule time
+        assertEquals(INSTANCE2, attempts.get(0).getInstanceid());
+        assertEquals(TASKID, attempts.get(0).getTaskid());
+
+        attempts = attemptQueryMapper.selectByStatuses(Arrays.asList(AttemptStatus.DEPENDENCY_PASS, AttemptStatus.FAILED));
+        assertEquals(3, attempts.size());
+    }
+
+    @Test
+    public void testSelectLastScheduleTime() {
+        assertEquals(time(10).getTime(), attemptQueryMapper.selectLastScheduleTime(TASKID).getTime());
+        assertNull(attemptQueryMapper.selectLastScheduleTime("task_201210171442_0002"));
+    }
+
+    @Test
+    public void testCountByInstanceID() {
+        assertEquals(2, attemptQueryMapper.countByInstanceID(INSTANCE1));
+        assertEquals(1, attemptQueryMapper.countByInstanceID(INSTANCE2));
+    }
+
+    @Test
+    public void testSelectRecentOutcomes() {
+        assertEquals(3, attemptQueryMapper.selectRecentOutcomes(TASKID, 10).size());
+        List<TaskAttempt> outcomes = attemptQueryMapper.selectRecentOutcomes(TASKID, 2);
+        assertEquals(2, outcomes.size());
+        for (TaskAttempt outcome : outcomes) {
+            // the latest instance first
+            assertEquals(INSTANCE1, outcome.getInstanceid());
+            assertNotNull(outcome.getStatus());
+            // only the outcome columns are read
+            assertNull(outcome.getAttemptid());
+        }
+    }
+
+    @Test
+    public void testSelectPage() {
+        AttemptFilter filter = new AttemptFilter();
+        filter.setTaskID(TASKID);
+        List<TaskAttempt> page = attemptQueryMapper.selectPage(filter, 2);
+        assertEquals(2, page.size());
+        // the latest first, the attempts scheduled at the same time by attemptID
+        assertEquals("attempt_201210171442_0001_0001_0002", page.get(0).getAttemptid());
+        assertEquals("attempt_201210171442_0001_0001_0001", page.get(1).getAttemptid());
+
+        TaskAttempt last = page.get(1);
+        filter.setCursor(last.getScheduletime(), last.getAttemptid());
+        page = attemptQueryMapper.selectPage(filter, 2);
+        assertEquals(1, page.size());
+        assertEquals(INSTANCE2, page.get(0).getInstanceid());
+
+        filter.setCursor(null, null);
+        filter.setStatuses(Arrays.asList(AttemptStatus.FAILED));
+        assertEquals(1, attemptQueryMapper.selectPage(filter, 100).size());
+        filter.setStatuses(null);
+        filter.setFromTime(time(6));
+        filter.setToTime(time(11));
+        assertEquals(2, attemptQueryMapper.selectPage(filter, 100).size());
+        filter.setExecHost("10.1.1.1");
+        assertEquals(0, attemptQueryMapper.selectPage(filter, 100).size());
+    }
+
+    @Test
+    public void testExportAttempts() {
+        AttemptFilter filter = new AttemptFilter();
+        filter.setTaskID(TASKID);
+        final List<String> attemptIDs = new ArrayList<String>();
+        attemptQueryMapper.exportAttempts(filter, new ResultHandler() {
+            public void handleResult(ResultContext context) {
+                attemptIDs.add(((TaskAttempt) context.getResultObject()).getAttemptid());
+            }
+        });
+        assertEquals(Arrays.asList("attempt_201210171442_0001_0001_0002", "attempt_201210171442_0001_0001_0001",
+                "attempt_201210171442_0001_0002_0001"), attemptIDs);
+    }
+}
@@ -0,0 +1,70 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.TaskFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskQueryMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskMapper;
+import com.dp.bigdata.taurus.generated.module.Task;
+
+/**
+ *
+ * TaskQueryMapperTest
+ * @author damon.zhu
+ *
+ */
+public class TaskQueryMapperTest extends AbstractDaoTest {
+
+    @Autowired
+    private TaskMapper taskMapper;
+
+    @Autowired
+    private TaskQueryMapper taskQueryMapper;
+
+    @Override
+    protected void loadData() {
+        insert("task_201210171442_0001", "damon.zhu", 1, TaskStatus.RUNNING);
+        insert("task_201210171442_0002", "damon.zhu", 2, TaskStatus.SUSPEND);
+        insert("task_201210171442_0003", "renyuan.sun", 1, TaskStatus.DELETED);
+        insert("task_201210171442_0004", "renyuan.sun", 1, TaskStatus.RUNNING);
+    }
+
+    private void insert(String taskID, String creator, int poolID, int status) {
+        Task task = new Task();
+        task.setTaskid(taskID);
+        task.setName(taskID);
+        task.setCreator(creator);
+        task.setPoolid(poolID);
+        task.setStatus(status);
+        taskMapper.insertSelective(task);
+    }
+
+    @Test
+    public void testSelectPage() {
+        TaskFilter filter = new TaskFilter();
+        filter.setStatuses(Arrays.asList(TaskStatus.RUNNING, TaskStatus.SUSPEND));
+        List<Task> page = taskQueryMapper.selectPage(filter, 2);
+        assertEquals(2, page.size());
+        assertEquals("task_201210171442_0001", page.get(0).getTaskid());
+        assertEquals("damon.zhu", page.get(1).getCreator());
+
+        // the deleted task is skipped
+        filter.setCursorID(page.get(1).getTaskid());
+        page = taskQueryMapper.selectPage(filter, 2);
+        assertEquals(1, page.size());
+        assertEquals("task_201210171442_0004", page.get(0).getTaskid());
+
+        filter.setCursorID(null);
+        filter.setCreator("renyuan.sun");
+        assertEquals(1, taskQueryMapper.selectPage(filter, 100).size());
+        filter.setStatuses(null);
+        filter.setPoolID(1);
+        assertEquals(2, taskQueryMapper.selectPage(filter, 100).size());
+    }
+}
@@ -0,0 +1,48 @@
+package com.dp.bigdata.taurus.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * WakeupQueueTest
+ *
+ * @author damon.zhu
+ */
+public class WakeupQueueTest {
+
+    @Test
+    public void testPollTimeout() throws InterruptedException {
+        WakeupQueue queue = new WakeupQueue();
+        long start = System.currentTimeMillis();
+        assertEquals(0, queue.poll(start + 100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void testEventsCoalesced() throws InterruptedException {
+        WakeupQueue queue = new WakeupQueue();
+        queue.offer(WakeupQueue.CRONTAB);
+        queue.offer(WakeupQueue.DEPENDENCY);
+        assertEquals(WakeupQueue.CRONTAB | WakeupQueue.DEPENDENCY, queue.poll(System.currentTimeMillis() + 1000));
+        assertEquals(0, queue.poll(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testWakeupBeforeDeadline() throws InterruptedException {
+        final WakeupQueue queue = new WakeupQueue();
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                queue.offer(WakeupQueue.DISPATCH);
+            }
+        });
+        long start = System.currentTimeMillis();
+        t.start();
+        assertEquals(WakeupQueue.DISPATCH, queue.poll(start + Scheduler.SCHDUELE_INTERVAL));
+        assertTrue(System.currentTimeMillis() - start < Scheduler.SCHDUELE_INTERVAL);
+    }
+}
@@ -1,11 +1,15 @@
 package com.dp.bigdata.taurus.core.parser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.text.ParseException;
 
 import org.junit.Test;
 
+import com.dp.bigdata.taurus.core.AttemptStatusCheck;
+
 /**
  * 
  * DependencyParserTest
@@ -66,4 +70,35 @@ public class DependencyParserTest {
 		current = current.getNext();
 		assertEquals(null,current);
 	}
+
+	@Test
+	public void testCompile() throws ParseException {
+
+		String dependencyExpr = "[wordcount][10][0]|[LogSort][10][0]&[HipSort][10][0]";
+		DependencyExpression expression = DependencyParser.compile(dependencyExpr);
+		
+		assertEquals(3, expression.getDependencyNames().size());
+		assertTrue(expression.getDependencyNames().contains("LogSort"));
+		assertTrue(expression.evaluate(new NameCheck("wordcount")));
+		assertFalse(expression.evaluate(new NameCheck("LogSort")));
+		assertTrue(expression.evaluate(new NameCheck("LogSort", "HipSort")));
+	}
+	
+	private static final class NameCheck implements AttemptStatusCheck {
+		
+		private String[] doneNames;
+		
+		NameCheck(String... doneNames) {
+			this.doneNames = doneNames;
+		}
+
+		public boolean isDone(Operation operation) {
+			for (String name : doneNames) {
+				if (name.equals(operation.getName())) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 }
@@ -38,4 +38,20 @@ public class InstanceStatus {
 		return runStates[state - 1];
 	}
 
+	/**
+	 * the state of the given human-readable name, the reverse of getInstanceRunState.
+	 * 
+	 * @param name
+	 *            name of the state, in any case
+	 * @return the state, or -1 if the name is unknown
+	 */
+	public static int getInstanceState(String name) {
+		for (int i = 0; i < runStates.length - 1; i++) {
+			if (runStates[i].equalsIgnoreCase(name)) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
 }
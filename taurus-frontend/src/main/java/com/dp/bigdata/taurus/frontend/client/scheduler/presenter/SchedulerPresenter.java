@@ -1,9 +1,12 @@
 package com.dp.bigdata.taurus.frontend.client.scheduler.presenter;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 import org.restlet.client.resource.Result;
 
+import com.dp.bigdata.taurus.restlet.shared.AttemptCursor;
 import com.dp.bigdata.taurus.restlet.shared.AttemptDTO;
 import com.dp.bigdata.taurus.restlet.shared.TaskDTO;
 import com.dp.bigdata.taurus.frontend.client.scheduler.InstanceStatus;
@@ -16,9 +19,13 @@ import com.dp.bigdata.taurus.frontend.client.service.AttempsService;
 import com.dp.bigdata.taurus.frontend.client.service.ServiceApi;
 import com.dp.bigdata.taurus.frontend.client.service.TasksService;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.i18n.client.DateTimeFormat;
 import com.mvp4g.client.annotation.Presenter;
 import com.mvp4g.client.presenter.BasePresenter;
 import com.smartgwt.client.data.Record;
+import com.smartgwt.client.util.SC;
+import com.smartgwt.client.widgets.events.ClickEvent;
+import com.smartgwt.client.widgets.events.ClickHandler;
 import com.smartgwt.client.widgets.grid.ListGridRecord;
 import com.smartgwt.client.widgets.grid.events.RecordClickEvent;
 import com.smartgwt.client.widgets.grid.events.RecordClickHandler;
@@ -30,6 +37,20 @@ public class SchedulerPresenter extends
 	
 	private final TasksService tasksService = GWT.create(TasksService.class);
 	private final AttempsService attempsService = GWT.create(AttempsService.class);
+	
+	// the creator filter of the tasks, and the cursor of the next page of tasks
+	private String tasksCreator;
+	private String tasksCursor;
+	// the task whose attempts are listed, the filter and the cursor of its next page of attempts
+	private String attempsTaskId;
+	private List<Integer> attempsStatuses;
+	private Date attempsFrom;
+	private Date attempsTo;
+	private String attempsHost;
+	private String attempsCursor;
+	// a list started again drops the pages of the earlier one which arrive late
+	private int tasksList;
+	private int attempsList;
 
 	public void onLoadSchedulerModule() {
 		eventBus.changeSchedulerTab(view);
@@ -37,12 +58,127 @@ public class SchedulerPresenter extends
 	
 	@Override
 	public void bind() {
-		tasksService.getClientResource().setReference(ServiceApi.TASKSERVICE);
+		view.getTasksListGrid().removeAll();
+		view.getMoreTasksButton().setDisabled(true);
+		loadTasks(null);
+		
+		view.getMoreTasksButton().addClickHandler(new ClickHandler() {
+			
+			@Override
+			public void onClick(ClickEvent event) {
+				view.getMoreTasksButton().setDisabled(true);
+				loadTasks(tasksCursor);
+			}
+		});
+		
+		view.getFilterTasksButton().addClickHandler(new com.smartgwt.client.widgets.form.fields.events.ClickHandler() {
+			
+			@Override
+			public void onClick(com.smartgwt.client.widgets.form.fields.events.ClickEvent event) {
+				tasksCreator = emptyToNull(view.getTasksCreatorItem().getValueAsString());
+				view.getTasksListGrid().removeAll();
+				view.getMoreTasksButton().setDisabled(true);
+				loadTasks(null);
+			}
+		});
+		
+		view.getMoreAttempsButton().setDisabled(true);
+		view.getTasksListGrid().addRecordClickHandler(new RecordClickHandler() {
+			
+			@Override
+			public void onRecordClick(RecordClickEvent event) {
+				view.getAttempsListGrid().removeAll();
+				view.getMoreAttempsButton().setDisabled(true);
+				Record rec = event.getRecord();
+				String taskId = rec.getAttribute(SchedulerTaskListField.TASKID.getValue());
+				
+				if (taskId != null && !"".equals(taskId)){
+					attempsTaskId = taskId;
+					loadAttemps(taskId, null);
+				}
+			}
+		});
+		
+		view.getMoreAttempsButton().addClickHandler(new ClickHandler() {
+			
+			@Override
+			public void onClick(ClickEvent event) {
+				view.getMoreAttempsButton().setDisabled(true);
+				loadAttemps(attempsTaskId, attempsCursor);
+			}
+		});
+		
+		view.getFilterAttempsButton().addClickHandler(new com.smartgwt.client.widgets.form.fields.events.ClickHandler() {
+			
+			@Override
+			public void onClick(com.smartgwt.client.widgets.form.fields.events.ClickEvent event) {
+				if (readAttempsFilter() && attempsTaskId != null){
+					view.getAttempsListGrid().removeAll();
+					view.getMoreAttempsButton().setDisabled(true);
+					loadAttemps(attempsTaskId, null);
+				}
+			}
+		});
+	}
+	
+	/*
+	 * read the filter of the attempts from the form, false if it is malformed
+	 */
+	private boolean readAttempsFilter() {
+		List<Integer> statuses = new ArrayList<Integer>();
+		String statusText = emptyToNull(view.getAttempsStatusItem().getValueAsString());
+		if (statusText != null){
+			for (String name : statusText.split(",")){
+				int status = InstanceStatus.getInstanceState(name.trim());
+				if (status < 0){
+					SC.say("未知的状态 : " + name);
+					return false;
+				}
+				statuses.add(status);
+			}
+		}
+		Date from;
+		Date to;
+		try {
+			from = parseTime(view.getAttempsFromItem().getValueAsString());
+			to = parseTime(view.getAttempsToItem().getValueAsString());
+		} catch (IllegalArgumentException e) {
+			SC.say("时间格式应为 " + SchedulerView.TIME_FORMAT);
+			return false;
+		}
+		attempsStatuses = statuses.isEmpty() ? null : statuses;
+		attempsFrom = from;
+		attempsTo = to;
+		attempsHost = emptyToNull(view.getAttempsHostItem().getValueAsString());
+		return true;
+	}
+	
+	private static Date parseTime(String value) {
+		value = emptyToNull(value);
+		return value == null ? null : DateTimeFormat.getFormat(SchedulerView.TIME_FORMAT).parseStrict(value);
+	}
+	
+	private static String emptyToNull(String value) {
+		return value == null || value.trim().length() == 0 ? null : value.trim();
+	}
+	
+	/*
+	 * one page of the tasks, the next ones are loaded by the more button
+	 */
+	private void loadTasks(String cursor) {
+		if (cursor == null){
+			tasksList++;
+		}
+		final int list = tasksList;
+		tasksService.getClientResource().setReference(ServiceApi.tasksPage(null, tasksCreator, null, cursor));
 		tasksService.retrieve(new Result<ArrayList<TaskDTO>>() {
 			
 			@Override
 			public void onSuccess(ArrayList<TaskDTO> result) {
-				view.getTasksListGrid().removeAll();
+				if (list != tasksList){
+					// the filter has been changed since
+					return;
+				}
 				if (result != null && result.size() > 0){
 					for (int i = 0; i < result.size(); i++){
 						TaskDTO taskDto = result.get(i);
@@ -54,6 +190,8 @@ public class SchedulerPresenter extends
 						rec.setAttribute(SchedulerTaskListField.TASKTYPE.getValue(), "任务");
 						view.getTasksListGrid().addData(rec);
 					}
+					tasksCursor = result.get(result.size() - 1).getTaskid();
+					view.getMoreTasksButton().setDisabled(result.size() < ServiceApi.PAGE_SIZE);
 				}
 			}
 			
@@ -62,45 +200,48 @@ public class SchedulerPresenter extends
 				System.out.println("fail to get taskdto arraylist");
 			}
 		});
-		
-		view.getTasksListGrid().addRecordClickHandler(new RecordClickHandler() {
+	}
+	
+	/*
+	 * one page of the attempts, the older ones are loaded by the more button
+	 */
+	private void loadAttemps(String taskId, String cursor) {
+		if (cursor == null){
+			attempsList++;
+		}
+		final int list = attempsList;
+		attempsService.getClientResource().setReference(
+				ServiceApi.attemptsPage(taskId, attempsStatuses, attempsFrom, attempsTo, attempsHost, cursor));
+		attempsService.retrieve(new Result<ArrayList<AttemptDTO>>() {
 			
 			@Override
-			public void onRecordClick(RecordClickEvent event) {
-				view.getAttempsListGrid().removeAll();
-				Record rec = event.getRecord();
-				String taskId = rec.getAttribute(SchedulerTaskListField.TASKID.getValue());
-				
-				if (taskId != null && !"".equals(taskId)){
-					attempsService.getClientResource().setReference(ServiceApi.ATTEMPTSSERVICE + taskId);
-					attempsService.retrieve(new Result<ArrayList<AttemptDTO>>() {
-						
-						@Override
-						public void onSuccess(ArrayList<AttemptDTO> result) {
-							if (result != null && result.size() > 0){
-								for (int i = 0; i < result.size(); i++){
-									AttemptDTO attemptDto = result.get(i);
-									ListGridRecord rec = new ListGridRecord();
-									rec.setAttribute(SchedulerAttemptListField.ATTEMPTID.getValue(), attemptDto.getAttemptID());
-									rec.setAttribute(SchedulerAttemptListField.INSTANCEID.getValue(), attemptDto.getInstanceID());
-									rec.setAttribute(SchedulerAttemptListField.STARTTIME.getValue(), attemptDto.getStartTime());
-									rec.setAttribute(SchedulerAttemptListField.ENDTIME.getValue(), attemptDto.getEndTime());
-									rec.setAttribute(SchedulerAttemptListField.RETURNVALUE.getValue(), attemptDto.getReturnValue());
-									int instanceStatus = attemptDto.getStatus();
-									rec.setAttribute(SchedulerAttemptListField.STATUS.getValue(), InstanceStatus.getInstanceRunState(instanceStatus));
-									view.getAttempsListGrid().addData(rec);
-								}
-							}
-							
-						}
-						
-						@Override
-						public void onFailure(Throwable caught) {
-							System.out.println("fail to get attemps");
-						}
-					});
+			public void onSuccess(ArrayList<AttemptDTO> result) {
+				if (list != attempsList){
+					// another task has been clicked or the filter has been changed since
+					return;
+				}
+				if (result != null && result.size() > 0){
+					for (int i = 0; i < result.size(); i++){
+						AttemptDTO attemptDto = result.get(i);
+						ListGridRecord rec = new ListGridRecord();
+						rec.setAttribute(SchedulerAttemptListField.ATTEMPTID.getValue(), attemptDto.getAttemptID());
+						rec.setAttribute(SchedulerAttemptListField.INSTANCEID.getValue(), attemptDto.getInstanceID());
+						rec.setAttribute(SchedulerAttemptListField.STARTTIME.getValue(), attemptDto.getStartTime());
+						rec.setAttribute(SchedulerAttemptListField.ENDTIME.getValue(), attemptDto.getEndTime());
+						rec.setAttribute(SchedulerAttemptListField.RETURNVALUE.getValue(), attemptDto.getReturnValue());
+						int instanceStatus = attemptDto.getStatus();
+						rec.setAttribute(SchedulerAttemptListField.STATUS.getValue(), InstanceStatus.getInstanceRunState(instanceStatus));
+						view.getAttempsListGrid().addData(rec);
+					}
+					attempsCursor = AttemptCursor.next(result);
+					view.getMoreAttempsButton().setDisabled(result.size() < ServiceApi.PAGE_SIZE);
 				}
 			}
+			
+			@Override
+			public void onFailure(Throwable caught) {
+				System.out.println("fail to get attemps");
+			}
 		});
 	}
 }
@@ -1,6 +1,10 @@
 package com.dp.bigdata.taurus.frontend.client.scheduler.view;
 
+import org.synthful.smartgwt.client.widgets.UIButtonItem;
+import org.synthful.smartgwt.client.widgets.UIDynamicForm;
+import org.synthful.smartgwt.client.widgets.UIIButton;
 import org.synthful.smartgwt.client.widgets.UIListGrid;
+import org.synthful.smartgwt.client.widgets.UITextItem;
 import org.synthful.smartgwt.client.widgets.UIVLayout;
 
 import com.dp.bigdata.taurus.frontend.client.scheduler.SchedulerAttemptListField;
@@ -24,17 +28,45 @@ public class SchedulerView extends
 	private static SchedulerViewUiBinder uiBinder = GWT
 			.create(SchedulerViewUiBinder.class);
 
+	/**
+	 * the format of the time range of the attempt filter
+	 */
+	public static final String TIME_FORMAT = "yyyy-MM-dd HH:mm";
+
 	@UiField
 	UIVLayout schedulerLayout;
 	@UiField
 	UIListGrid tasksListGrid;
 	@UiField
 	UIListGrid attempsListGrid;
+	@UiField
+	UIIButton moreAttempsButton;
+	@UiField
+	UIIButton moreTasksButton;
+	@UiField
+	UIDynamicForm tasksFilterForm;
+	@UiField
+	UITextItem tasksCreatorItem;
+	@UiField
+	UIButtonItem filterTasksButton;
+	@UiField
+	UIDynamicForm attempsFilterForm;
+	@UiField
+	UITextItem attempsStatusItem;
+	@UiField
+	UITextItem attempsHostItem;
+	@UiField
+	UITextItem attempsFromItem;
+	@UiField
+	UITextItem attempsToItem;
+	@UiField
+	UIButtonItem filterAttempsButton;
 
 	public SchedulerView() {
 		uiBinder.createAndBindUi(this);
 
 		setupTaskListGrid();
+		setupAttempsFilterForm();
 		setupAttempsListGrid();
 	}
 
@@ -54,6 +86,12 @@ public class SchedulerView extends
 
 	}
 
+	private void setupAttempsFilterForm() {
+		attempsStatusItem.setHint("FAILED,TIMEOUT");
+		attempsFromItem.setHint(TIME_FORMAT);
+		attempsToItem.setHint(TIME_FORMAT);
+	}
+
 	private void setupAttempsListGrid() {
 		ListGridField attemptidField = new ListGridField(
 				SchedulerAttemptListField.ATTEMPTID.getValue(), "attemptid");
@@ -88,4 +126,49 @@ public class SchedulerView extends
 		return attempsListGrid;
 	}
 
+	@Override
+	public UIIButton getMoreAttempsButton() {
+		return moreAttempsButton;
+	}
+
+	@Override
+	public UIIButton getMoreTasksButton() {
+		return moreTasksButton;
+	}
+
+	@Override
+	public UITextItem getTasksCreatorItem() {
+		return tasksCreatorItem;
+	}
+
+	@Override
+	public UIButtonItem getFilterTasksButton() {
+		return filterTasksButton;
+	}
+
+	@Override
+	public UITextItem getAttempsStatusItem() {
+		return attempsStatusItem;
+	}
+
+	@Override
+	public UITextItem getAttempsHostItem() {
+		return attempsHostItem;
+	}
+
+	@Override
+	public UITextItem getAttempsFromItem() {
+		return attempsFromItem;
+	}
+
+	@Override
+	public UITextItem getAttempsToItem() {
+		return attempsToItem;
+	}
+
+	@Override
+	public UIButtonItem getFilterAttempsButton() {
+		return filterAttempsButton;
+	}
+
 }
@@ -1,6 +1,9 @@
 package com.dp.bigdata.taurus.frontend.client.scheduler.view.interfaces;
 
+import org.synthful.smartgwt.client.widgets.UIButtonItem;
+import org.synthful.smartgwt.client.widgets.UIIButton;
 import org.synthful.smartgwt.client.widgets.UIListGrid;
+import org.synthful.smartgwt.client.widgets.UITextItem;
 
 import com.dp.bigdata.taurus.frontend.client.common.IsCanvas;
 
@@ -12,4 +15,22 @@ public interface ISchedulerView  extends IsCanvas{
 	public UIListGrid getTasksListGrid();
 	
 	public UIListGrid getAttempsListGrid();
+
+	public UIIButton getMoreAttempsButton();
+
+	public UIIButton getMoreTasksButton();
+
+	public UITextItem getTasksCreatorItem();
+
+	public UIButtonItem getFilterTasksButton();
+
+	public UITextItem getAttempsStatusItem();
+
+	public UITextItem getAttempsHostItem();
+
+	public UITextItem getAttempsFromItem();
+
+	public UITextItem getAttempsToItem();
+
+	public UIButtonItem getFilterAttempsButton();
 }
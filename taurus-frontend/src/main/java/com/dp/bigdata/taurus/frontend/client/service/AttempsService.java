@@ -8,7 +8,10 @@ import org.restlet.client.resource.Result;
 
 import com.dp.bigdata.taurus.restlet.shared.AttemptDTO;
 
-
+/**
+ * the pages of the attempts of a task, the latest first. The reference is set by ServiceApi.attemptsPage(), and
+ * AttemptCursor.next() of a page is the cursor of the next one.
+ */
 public interface AttempsService extends ClientProxy {
 	
 	@Get
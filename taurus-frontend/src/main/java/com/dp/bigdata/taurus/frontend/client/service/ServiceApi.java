@@ -1,5 +1,10 @@
 package com.dp.bigdata.taurus.frontend.client.service;
 
+import java.util.Date;
+import java.util.List;
+
+import com.google.gwt.http.client.URL;
+
 public abstract class ServiceApi {
 	//public static final String HOST = "http://127.0.0.1:8888";
 	//public static final String HOST = "http://10.1.77.86:8080";
@@ -21,4 +26,65 @@ public abstract class ServiceApi {
 	public static final String WORKFLOWSERVICE = HOST + "/api/workflow";
 	public static final String TEMPLATESERVICE = HOST + "/api/template";
 
+	public static final int PAGE_SIZE = 100;
+
+	/**
+	 * the page of the attempts of the task after the cursor, the first page if the cursor is null. The filters which
+	 * are null are left out: the statuses, the range [from, to) of the schedule time and the host of the attempts.
+	 */
+	public static String attemptsPage(String taskId, List<Integer> statuses, Date from, Date to, String host,
+			String cursor) {
+		StringBuilder url = new StringBuilder(ATTEMPTSSERVICE).append(URL.encodeQueryString(taskId)).append('&');
+		appendStatuses(url, statuses);
+		if (from != null) {
+			url.append("from=").append(from.getTime()).append('&');
+		}
+		if (to != null) {
+			url.append("to=").append(to.getTime()).append('&');
+		}
+		appendValue(url, "host", host);
+		return page(url, cursor);
+	}
+
+	/**
+	 * the page of the tasks after the cursor, the first page if the cursor is null. The filters which are null are
+	 * left out: the statuses, the creator and the pool of the tasks; the DELETED tasks are left out unless the
+	 * statuses are given.
+	 */
+	public static String tasksPage(List<Integer> statuses, String creator, Integer poolId, String cursor) {
+		StringBuilder url = new StringBuilder(TASKSERVICE).append('?');
+		appendStatuses(url, statuses);
+		appendValue(url, "creator", creator);
+		if (poolId != null) {
+			url.append("pool_id=").append(poolId).append('&');
+		}
+		return page(url, cursor);
+	}
+
+	/*
+	 * each parameter is followed by '&', the names are the ones read by FilterParser of the restlet
+	 */
+	private static void appendStatuses(StringBuilder url, List<Integer> statuses) {
+		if (statuses != null && !statuses.isEmpty()) {
+			url.append("status=");
+			for (int i = 0; i < statuses.size(); i++) {
+				url.append(i == 0 ? "" : ",").append(statuses.get(i));
+			}
+			url.append('&');
+		}
+	}
+
+	private static void appendValue(StringBuilder url, String name, String value) {
+		if (value != null) {
+			url.append(name).append('=').append(URL.encodeQueryString(value)).append('&');
+		}
+	}
+
+	private static String page(StringBuilder url, String cursor) {
+		url.append("limit=").append(PAGE_SIZE);
+		if (cursor != null) {
+			url.append("&cursor=").append(URL.encodeQueryString(cursor));
+		}
+		return url.toString();
+	}
 }
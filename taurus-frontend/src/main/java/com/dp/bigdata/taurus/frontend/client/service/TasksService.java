@@ -9,7 +9,10 @@ import org.restlet.client.resource.Post;
 
 import com.dp.bigdata.taurus.restlet.shared.TaskDTO;
 
-
+/**
+ * the pages of the tasks ordered by taskID, the DELETED tasks are left out. The reference of retrieve is set by
+ * ServiceApi.tasksPage(), and the taskID of the last task of a page is the cursor of the next one.
+ */
 public interface TasksService extends ClientProxy {
 	
 	@Get
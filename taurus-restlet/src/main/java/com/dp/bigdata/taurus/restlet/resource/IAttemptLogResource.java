@@ -0,0 +1,18 @@
+package com.dp.bigdata.taurus.restlet.resource;
+
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+
+/**
+ * 
+ * IAttemptLogResource
+ * GET is to read the log of a attempt from the agent it runs on.
+ * @author damon.zhu
+ *
+ */
+public interface IAttemptLogResource {
+
+    @Get
+    public Representation retrieve();
+
+}
@@ -0,0 +1,16 @@
+package com.dp.bigdata.taurus.restlet.resource;
+
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+
+/**
+ * 
+ * IExportResource
+ * @author damon.zhu
+ *
+ */
+public interface IExportResource {
+
+   @Get("json")
+   public Representation export();
+}
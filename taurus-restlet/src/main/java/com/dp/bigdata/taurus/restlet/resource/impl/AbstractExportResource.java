@@ -0,0 +1,127 @@
+package com.dp.bigdata.taurus.restlet.resource.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ServerResource;
+
+import com.dp.bigdata.taurus.restlet.resource.IExportResource;
+import com.dp.bigdata.taurus.restlet.utils.JsonWriter;
+
+/**
+ * AbstractExportResource streams a JSON array of rows straight from a MyBatis ResultHandler to the client. No list
+ * of the rows is built, so the memory used is the same whatever the number of rows.
+ * <p>
+ * An export holds a database connection while the client reads it, so at most MAX_CONCURRENT_EXPORTS run at a time
+ * and the others wait; the connections of the <code>Engine</code> in the same JVM are left alone.
+ * 
+ * @author damon.zhu
+ */
+public abstract class AbstractExportResource<F, T> extends ServerResource implements IExportResource {
+
+    private static final Log LOG = LogFactory.getLog(AbstractExportResource.class);
+
+    public static final int MAX_CONCURRENT_EXPORTS = 2;
+    private static final Semaphore EXPORTS = new Semaphore(MAX_CONCURRENT_EXPORTS, true);
+    private static final int FLUSH_ROWS = 1000;
+
+    @Override
+    public Representation export() {
+        final F filter;
+        try {
+            filter = parseFilter(getRequest().getResourceRef().getQueryAsForm());
+        } catch (IllegalArgumentException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+
+        Representation representation = new OutputRepresentation(MediaType.APPLICATION_JSON) {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                try {
+                    EXPORTS.acquire();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for the other exports");
+                }
+                try {
+                    JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+                    ExportHandler handler = new ExportHandler(writer);
+                    writer.beginArray();
+                    query(filter, handler);
+                    if (handler.failure != null) {
+                        LOG.info("Export is aborted by the client");
+                        throw handler.failure;
+                    }
+                    writer.endArray();
+                    writer.flush();
+                } finally {
+                    EXPORTS.release();
+                }
+            }
+        };
+        representation.setCharacterSet(CharacterSet.UTF_8);
+        return representation;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    protected abstract F parseFilter(Form form);
+
+    /**
+     * select the rows matching the filter into the handler. A query made of several selects skips the rest once the
+     * handler is aborted.
+     */
+    protected abstract void query(F filter, ExportHandler handler);
+
+    protected abstract void writeRow(JsonWriter writer, T row) throws IOException;
+
+    /**
+     * ExportHandler writes the rows as they are fetched, and stops the fetch when the client has gone away.
+     */
+    protected final class ExportHandler implements ResultHandler {
+
+        private final JsonWriter writer;
+        private IOException failure;
+
+        ExportHandler(JsonWriter writer) {
+            this.writer = writer;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void handleResult(ResultContext context) {
+            if (failure != null) {
+                context.stop();
+                return;
+            }
+            try {
+                writeRow(writer, (T) context.getResultObject());
+                if (context.getResultCount() % FLUSH_ROWS == 0) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                // the client has gone away, stop fetching
+                failure = e;
+                context.stop();
+            }
+        }
+
+        public boolean isAborted() {
+            return failure != null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.dp.bigdata.taurus.restlet.resource.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Range;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ServerResource;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+import com.dp.bigdata.taurus.restlet.resource.IAttemptLogResource;
+
+/**
+ * Resource url : http://xxx.xxx/api/attempt/{attempt_id}/log?offset=&length=|tail=|follow=true
+ * <p>
+ * The log stays on the agent which ran the attempt, this resource streams it from the log server of that agent. The
+ * Range header of the client is passed on to the agent, and a partial answer of the agent is returned as it is.
+ * 
+ * @author damon.zhu
+ */
+public class AttemptLogResource extends ServerResource implements IAttemptLogResource {
+
+    private static final Log LOG = LogFactory.getLog(AttemptLogResource.class);
+
+    private static final String[] PARAMETERS = { "offset", "length", "tail", "follow" };
+    private static final int CONNECT_TIMEOUT = 5 * 1000;
+    private static final int READ_TIMEOUT = 30 * 1000;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    @Autowired
+    private TaskAttemptMapper taskAttemptMapper;
+
+    @Autowired
+    private TaskAttemptArchiveMapper taskAttemptArchiveMapper;
+
+    private int agentLogPort = 8183;
+
+    @Override
+    public Representation retrieve() {
+        String attemptID = (String) getRequest().getAttributes().get("attempt_id");
+        TaskAttempt attempt = taskAttemptMapper.selectByPrimaryKey(attemptID);
+        if (attempt == null) {
+            attempt = taskAttemptArchiveMapper.selectArchivedByID(attemptID);
+        }
+        if (attempt == null || attempt.getExechost() == null) {
+            setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return null;
+        }
+
+        Form form = getRequest().getResourceRef().getQueryAsForm();
+        StringBuilder url = new StringBuilder();
+        url.append("http://").append(attempt.getExechost()).append(':').append(agentLogPort);
+        url.append("/log/").append(attempt.getTaskid()).append('/').append(attemptID);
+        char separator = '?';
+        for (String name : PARAMETERS) {
+            String value = form.getFirstValue(name);
+            if (value != null) {
+                url.append(separator).append(name).append('=').append(encode(value));
+                separator = '&';
+            }
+        }
+        boolean isFollow = "true".equals(form.getFirstValue("follow"));
+
+        final HttpURLConnection connection;
+        Range range = null;
+        long size = Representation.UNKNOWN_SIZE;
+        try {
+            connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(isFollow ? 0 : READ_TIMEOUT);
+            String requestRange = formatRange(getRequest().getRanges());
+            if (requestRange != null) {
+                connection.setRequestProperty("Range", requestRange);
+            }
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+                connection.disconnect();
+                setStatus(Status.valueOf(code));
+                return null;
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                setStatus(Status.SUCCESS_PARTIAL_CONTENT);
+                String contentRange = connection.getHeaderField("Content-Range");
+                Matcher m = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange);
+                if (m != null && m.matches()) {
+                    long start = Long.parseLong(m.group(1));
+                    range = new Range(start, Long.parseLong(m.group(2)) - start + 1);
+                    size = Long.parseLong(m.group(3));
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Fail to read the log of " + attemptID + " from " + attempt.getExechost(), e);
+            setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+            return null;
+        }
+
+        OutputRepresentation representation = new OutputRepresentation(MediaType.TEXT_PLAIN) {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                InputStream in = null;
+                try {
+                    in = connection.getInputStream();
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                        out.flush();
+                    }
+                } finally {
+                    if (in != null) {
+                        in.close();
+                    }
+                    connection.disconnect();
+                }
+            }
+        };
+        // the agent has already cut the range, so the range filter of Restlet leaves the entity as it is
+        representation.setRange(range);
+        representation.setSize(size);
+        return representation;
+    }
+
+    /*
+     * the first range of the request as a Range header, the log server only serves one
+     */
+    private static String formatRange(List<Range> ranges) {
+        if (ranges == null || ranges.isEmpty()) {
+            return null;
+        }
+        Range range = ranges.get(0);
+        if (range.getIndex() == Range.INDEX_LAST) {
+            return range.getSize() > 0 ? "bytes=-" + range.getSize() : null;
+        }
+        if (range.getSize() == Range.SIZE_MAX) {
+            return "bytes=" + range.getIndex() + "-";
+        }
+        return "bytes=" + range.getIndex() + "-" + (range.getIndex() + range.getSize() - 1);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (IOException e) {
+            return value;
+        }
+    }
+
+    public int getAgentLogPort() {
+        return agentLogPort;
+    }
+
+    public void setAgentLogPort(int agentLogPort) {
+        this.agentLogPort = agentLogPort;
+    }
+}
@@ -0,0 +1,58 @@
+package com.dp.bigdata.taurus.restlet.resource.impl;
+
+import java.io.IOException;
+
+import org.restlet.data.Form;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.AttemptFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
+import com.dp.bigdata.taurus.generated.module.TaskAttempt;
+import com.dp.bigdata.taurus.restlet.utils.FilterParser;
+import com.dp.bigdata.taurus.restlet.utils.JsonWriter;
+
+/**
+ * Resource url : http://xxx.xxx/api/export/attempt?task_id=&status=&from=&to=&host=
+ * <p>
+ * All the attempts matching the filters as a JSON array, the live attempts first and then the archived ones, each
+ * the latest first. The filters are those of AttemptsResource, and all of them are optional.
+ * 
+ * @author damon.zhu
+ */
+public class AttemptsExportResource extends AbstractExportResource<AttemptFilter, TaskAttempt> {
+
+    @Autowired
+    private TaskAttemptQueryMapper taskAttemptQueryMapper;
+
+    @Autowired
+    private TaskAttemptArchiveMapper taskAttemptArchiveMapper;
+
+    @Override
+    protected AttemptFilter parseFilter(Form form) {
+        return FilterParser.parseAttemptFilter(form);
+    }
+
+    @Override
+    protected void query(AttemptFilter filter, ExportHandler handler) {
+        taskAttemptQueryMapper.exportAttempts(filter, handler);
+        if (!handler.isAborted()) {
+            taskAttemptArchiveMapper.exportArchivedAttempts(filter, handler);
+        }
+    }
+
+    @Override
+    protected void writeRow(JsonWriter writer, TaskAttempt attempt) throws IOException {
+        writer.beginObject();
+        writer.field("attemptID", attempt.getAttemptid());
+        writer.field("instanceID", attempt.getInstanceid());
+        writer.field("taskID", attempt.getTaskid());
+        writer.field("startTime", attempt.getStarttime());
+        writer.field("endTime", attempt.getEndtime());
+        writer.field("scheduleTime", attempt.getScheduletime());
+        writer.field("status", attempt.getStatus());
+        writer.field("returnValue", attempt.getReturnvalue());
+        writer.field("execHost", attempt.getExechost());
+        writer.endObject();
+    }
+}
@@ -4,29 +4,40 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.restlet.data.Form;
-import org.restlet.data.Parameter;
 import org.restlet.data.Status;
 import org.restlet.resource.Get;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.dp.bigdata.taurus.generated.mapper.TaskAttemptMapper;
+import com.dp.bigdata.taurus.core.mapper.AttemptFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptArchiveMapper;
+import com.dp.bigdata.taurus.core.mapper.TaskAttemptQueryMapper;
 import com.dp.bigdata.taurus.generated.module.TaskAttempt;
-import com.dp.bigdata.taurus.generated.module.TaskAttemptExample;
 import com.dp.bigdata.taurus.restlet.resource.IAttemptsResource;
 import com.dp.bigdata.taurus.restlet.shared.AttemptDTO;
+import com.dp.bigdata.taurus.restlet.utils.FilterParser;
 
 /**
  * Resource url : http://xxx.xxx/api/attempt?task_id={task_id}
+ * <p>
+ * A page of the attempts of the task, the latest first. The optional parameters are the filters of FilterParser
+ * (status, from, to and host), limit, the size of the page, DEFAULT_LIMIT by default and MAX_LIMIT at most, and
+ * cursor, AttemptCursor.next() of the previous page.
+ * The attempts moved to the archive by AttemptArchiver are merged into the pages, so the paging goes on into the
+ * archive transparently.
  * 
  * @author damon.zhu
  */
 public class AttemptsResource extends ServerResource implements IAttemptsResource {
 
-    private static final String TASK = "task_id";
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
 
     @Autowired
-    private TaskAttemptMapper taskAttemptMapper;
+    private TaskAttemptQueryMapper taskAttemptQueryMapper;
+
+    @Autowired
+    private TaskAttemptArchiveMapper taskAttemptArchiveMapper;
 
     @Override
     @Get
@@ -34,47 +45,66 @@ public class AttemptsResource extends ServerResource implements IAttemptsResourc
         ArrayList<AttemptDTO> attempts = new ArrayList<AttemptDTO>();
 
         Form form = getRequest().getResourceRef().getQueryAsForm();
-        if (form.size() != 1) {
+        AttemptFilter filter;
+        int limit;
+        try {
+            filter = FilterParser.parseAttemptFilter(form);
+            limit = FilterParser.parseLimit(form, DEFAULT_LIMIT, MAX_LIMIT);
+        } catch (IllegalArgumentException e) {
             setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
             return attempts;
         }
-
-        String parameterName = "";
-        String taskID = "";
-        for (Parameter parameter : form) {
-            parameterName = parameter.getName();
-            taskID = parameter.getValue();
-        }
-        if (!parameterName.equals(TASK)) {
+        if (filter.getTaskID() == null) {
             setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
             return attempts;
         }
 
-        TaskAttemptExample example = new TaskAttemptExample();
-        example.or().andTaskidEqualTo(taskID);
-        List<TaskAttempt> ats = taskAttemptMapper.selectByExample(example);
-        for (TaskAttempt at : ats) {
-            AttemptDTO dto = new AttemptDTO();
-            dto.setAttemptID(at.getAttemptid());
-            if (at.getEndtime() != null) {
-                dto.setEndTime(at.getEndtime());
+        /*
+         * the archive holds the older attempts, but an attempt which has stayed live for long may be older than some
+         * archived ones, so the two pages are merged
+         */
+        List<TaskAttempt> live = taskAttemptQueryMapper.selectPage(filter, limit);
+        List<TaskAttempt> archived = taskAttemptArchiveMapper.selectArchivedPage(filter, limit);
+        int i = 0;
+        int j = 0;
+        while (attempts.size() < limit && (i < live.size() || j < archived.size())) {
+            if (j == archived.size() || (i < live.size() && compare(live.get(i), archived.get(j)) <= 0)) {
+                attempts.add(toDto(live.get(i++)));
+            } else {
+                attempts.add(toDto(archived.get(j++)));
             }
-            if (at.getExechost() != null) {
-                dto.setExecHost(at.getExechost());
-            }
-            dto.setInstanceID(at.getInstanceid());
-            if (at.getReturnvalue() != null) {
-                dto.setReturnValue(at.getReturnvalue());
-            }
-            dto.setScheduleTime(at.getScheduletime());
-            if (at.getStarttime() != null) {
-                dto.setStartTime(at.getStarttime());
-            }
-            dto.setStatus(at.getStatus());
-            dto.setTaskID(at.getTaskid());
-            attempts.add(dto);
         }
         return attempts;
     }
 
+    /*
+     * the latest first
+     */
+    private static int compare(TaskAttempt a, TaskAttempt b) {
+        int result = b.getScheduletime().compareTo(a.getScheduletime());
+        return result != 0 ? result : b.getAttemptid().compareTo(a.getAttemptid());
+    }
+
+    private static AttemptDTO toDto(TaskAttempt at) {
+        AttemptDTO dto = new AttemptDTO();
+        dto.setAttemptID(at.getAttemptid());
+        if (at.getEndtime() != null) {
+            dto.setEndTime(at.getEndtime());
+        }
+        if (at.getExechost() != null) {
+            dto.setExecHost(at.getExechost());
+        }
+        dto.setInstanceID(at.getInstanceid());
+        if (at.getReturnvalue() != null) {
+            dto.setReturnValue(at.getReturnvalue());
+        }
+        dto.setScheduleTime(at.getScheduletime());
+        if (at.getStarttime() != null) {
+            dto.setStartTime(at.getStarttime());
+        }
+        dto.setStatus(at.getStatus());
+        dto.setTaskID(at.getTaskid());
+        return dto;
+    }
+
 }
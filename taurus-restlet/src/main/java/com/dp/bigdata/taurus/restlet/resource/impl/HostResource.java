@@ -10,6 +10,7 @@ import org.restlet.resource.Put;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.generated.mapper.HostMapper;
 import com.dp.bigdata.taurus.generated.module.Host;
 import com.dp.bigdata.taurus.restlet.resource.IHostResource;
@@ -26,12 +27,15 @@ public class HostResource extends ServerResource implements IHostResource {
 
     @Autowired
     private HostMapper hostMapper;
+
+    @Autowired
+    private MetadataCache metadataCache;
     
     @Override
     @Get
     public ArrayList<HostDTO> retrieve() {
         int hostID = Integer.parseInt((String) getRequest().getAttributes().get("host_id"));
-        Host host = hostMapper.selectByPrimaryKey(hostID);
+        Host host = metadataCache.getHost(hostID);
         ArrayList<HostDTO> dtos = new ArrayList<HostDTO>();
         if (host != null) {
             dtos.add(new HostDTO(host.getId(), host.getName(), host.getIp(), host.getPoolid(), host.getIsconnected()));
@@ -56,6 +60,7 @@ public class HostResource extends ServerResource implements IHostResource {
             host.setName(dto.getName());
             host.setPoolid(dto.getPoolid());
             hostMapper.updateByPrimaryKey(host);
+            metadataCache.hostsChanged();
             setStatus(Status.SUCCESS_OK);
         } catch (RuntimeException e) {
             setStatus(Status.SERVER_ERROR_INTERNAL);
@@ -1,6 +1,7 @@
 package com.dp.bigdata.taurus.restlet.resource.impl;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.restlet.data.Form;
 import org.restlet.data.Parameter;
@@ -8,9 +9,8 @@ import org.restlet.data.Status;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.dp.bigdata.taurus.generated.mapper.HostMapper;
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.generated.module.Host;
-import com.dp.bigdata.taurus.generated.module.HostExample;
 import com.dp.bigdata.taurus.restlet.resource.IHostsResource;
 import com.dp.bigdata.taurus.restlet.shared.HostDTO;
 
@@ -24,7 +24,7 @@ public class HostsResource extends ServerResource implements IHostsResource {
     //private static final Log logger = LogFactory.getLog(HostsResource.class);
 
     @Autowired
-    private HostMapper hostMapper;
+    private MetadataCache metadataCache;
 
     @Override
     public ArrayList<HostDTO> retrieve() {
@@ -45,9 +45,7 @@ public class HostsResource extends ServerResource implements IHostsResource {
             setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
             return hosts;
         }
-        HostExample example = new HostExample();
-        example.or().andPoolidEqualTo(Integer.parseInt(poolID));
-        ArrayList<Host> _hosts = (ArrayList<Host>) hostMapper.selectByExample(example);
+        List<Host> _hosts = metadataCache.getHosts(Integer.parseInt(poolID));
         for (Host _host : _hosts) {
             hosts.add(new HostDTO(_host.getId(), _host.getName(), _host.getIp(), _host.getPoolid(), _host.getIsconnected()));
         }
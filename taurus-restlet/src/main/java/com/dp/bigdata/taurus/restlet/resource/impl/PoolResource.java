@@ -7,6 +7,7 @@ import org.restlet.resource.Delete;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.generated.mapper.HostMapper;
 import com.dp.bigdata.taurus.generated.mapper.PoolMapper;
 import com.dp.bigdata.taurus.generated.module.Host;
@@ -29,6 +30,9 @@ public class PoolResource extends ServerResource implements IPoolResource {
     @Autowired
     private HostMapper hostMapper;
 
+    @Autowired
+    private MetadataCache metadataCache;
+
     @Override
     @Delete
     //TODO transactional bean
@@ -46,6 +50,7 @@ public class PoolResource extends ServerResource implements IPoolResource {
             Host record = new Host();
             record.setPoolid(1); //Unallocated this host
             hostMapper.updateByExampleSelective(record, example);
+            metadataCache.poolsChanged();
             setStatus(Status.SUCCESS_OK);
         } catch (RuntimeException e) {
             setStatus(Status.SERVER_ERROR_INTERNAL);
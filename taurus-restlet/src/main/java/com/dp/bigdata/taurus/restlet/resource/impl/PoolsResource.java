@@ -7,9 +7,9 @@ import org.restlet.data.Status;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.generated.mapper.PoolMapper;
 import com.dp.bigdata.taurus.generated.module.Pool;
-import com.dp.bigdata.taurus.generated.module.PoolExample;
 import com.dp.bigdata.taurus.restlet.resource.IPoolsResource;
 import com.dp.bigdata.taurus.restlet.shared.PoolDTO;
 import com.mysql.jdbc.StringUtils;
@@ -26,12 +26,13 @@ public class PoolsResource extends ServerResource implements IPoolsResource {
     @Autowired
     private PoolMapper poolMapper;
 
+    @Autowired
+    private MetadataCache metadataCache;
+
     @Override
     public ArrayList<PoolDTO> retrieve() {
         ArrayList<PoolDTO> pools = new ArrayList<PoolDTO>();
-        PoolExample example = new PoolExample();
-        example.or();
-        List<Pool> bPools = poolMapper.selectByExample(example);
+        List<Pool> bPools = metadataCache.getPools();
         for (Pool p : bPools) {
             PoolDTO dto = new PoolDTO(p.getId(),p.getName(),p.getCreator());
             pools.add(dto);
@@ -51,6 +52,7 @@ public class PoolsResource extends ServerResource implements IPoolsResource {
                     pool.setCreator(t.getCreator());
                 }
                 poolMapper.insertSelective(pool);
+                metadataCache.poolsChanged();
                 setStatus(Status.SUCCESS_CREATED);
             } catch (Exception e) {
                 setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
@@ -0,0 +1,61 @@
+package com.dp.bigdata.taurus.restlet.resource.impl;
+
+import java.io.IOException;
+
+import org.restlet.data.Form;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.dp.bigdata.taurus.core.mapper.TaskFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskQueryMapper;
+import com.dp.bigdata.taurus.generated.module.Task;
+import com.dp.bigdata.taurus.restlet.utils.FilterParser;
+import com.dp.bigdata.taurus.restlet.utils.JsonWriter;
+
+/**
+ * Resource url : http://xxx.xxx/api/export/task?status=&creator=&pool_id=
+ * <p>
+ * All the tasks matching the filters as a JSON array ordered by taskID. The filters are those of TasksResource, the
+ * DELETED tasks are left out unless the statuses are given.
+ * 
+ * @author damon.zhu
+ */
+public class TasksExportResource extends AbstractExportResource<TaskFilter, Task> {
+
+    @Autowired
+    private TaskQueryMapper taskQueryMapper;
+
+    @Override
+    protected TaskFilter parseFilter(Form form) {
+        return FilterParser.parseTaskFilter(form);
+    }
+
+    @Override
+    protected void query(TaskFilter filter, ExportHandler handler) {
+        taskQueryMapper.exportTasks(filter, handler);
+    }
+
+    @Override
+    protected void writeRow(JsonWriter writer, Task task) throws IOException {
+        writer.beginObject();
+        writer.field("taskid", task.getTaskid());
+        writer.field("name", task.getName());
+        writer.field("creator", task.getCreator());
+        writer.field("dependencyexpr", task.getDependencyexpr());
+        writer.field("addtime", task.getAddtime());
+        writer.field("lastscheduletime", task.getLastscheduletime());
+        writer.field("updatetime", task.getUpdatetime());
+        writer.field("crontab", task.getCrontab());
+        writer.field("status", task.getStatus());
+        writer.field("allowmultiinstances", task.getAllowmultiinstances());
+        writer.field("proxyuser", task.getProxyuser());
+        writer.field("waittimeout", task.getWaittimeout());
+        writer.field("executiontimeout", task.getExecutiontimeout());
+        writer.field("isautoretry", task.getIsautoretry());
+        writer.field("retrytimes", task.getRetrytimes());
+        writer.field("command", task.getCommand());
+        writer.field("poolid", task.getPoolid());
+        writer.field("type", task.getType());
+        writer.field("filename", task.getFilename());
+        writer.endObject();
+    }
+}
@@ -1,10 +1,13 @@
 package com.dp.bigdata.taurus.restlet.resource.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SortedMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.representation.Representation;
@@ -13,22 +16,32 @@ import org.restlet.resource.Post;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.core.ScheduleException;
 import com.dp.bigdata.taurus.core.Scheduler;
-import com.dp.bigdata.taurus.generated.mapper.TaskMapper;
+import com.dp.bigdata.taurus.core.TaskStatus;
+import com.dp.bigdata.taurus.core.mapper.TaskFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskQueryMapper;
 import com.dp.bigdata.taurus.generated.module.Task;
-import com.dp.bigdata.taurus.generated.module.TaskExample;
 import com.dp.bigdata.taurus.restlet.resource.ITasksResource;
 import com.dp.bigdata.taurus.restlet.shared.TaskDTO;
 import com.dp.bigdata.taurus.restlet.utils.AgentDeploymentUtils;
 import com.dp.bigdata.taurus.restlet.utils.DeployOptions;
 import com.dp.bigdata.taurus.restlet.utils.FilePathManager;
+import com.dp.bigdata.taurus.restlet.utils.FilterParser;
 import com.dp.bigdata.taurus.restlet.utils.HdfsUtils;
 import com.dp.bigdata.taurus.restlet.utils.RequestExtrator;
 import com.dp.bigdata.taurus.restlet.utils.TaskConverter;
 
 /**
  * Resource url : http://xxx.xxx/api/task/
+ * <p>
+ * GET returns a page of the tasks ordered by taskID. The optional parameters are the filters of FilterParser (status,
+ * all but DELETED by default, creator and pool_id), limit, the size of the page, DEFAULT_LIMIT by default and
+ * MAX_LIMIT at most, and cursor, the taskID of the last task of the previous page.
+ * <p>
+ * The RUNNING and SUSPEND tasks are registered in the MetadataCache, so the pages of these statuses are read from
+ * memory; the database is only queried when the DELETED tasks are asked for.
  * 
  * @author damon.zhu
  */
@@ -36,8 +49,15 @@ public class TasksResource extends ServerResource implements ITasksResource {
 
     private static final Log LOG = LogFactory.getLog(TasksResource.class);
 
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    private static final List<Integer> CACHED_STATUSES = Arrays.asList(TaskStatus.RUNNING, TaskStatus.SUSPEND);
+
+    @Autowired
+    private TaskQueryMapper taskQueryMapper;
+
     @Autowired
-    private TaskMapper taskMapper;
+    private MetadataCache metadataCache;
 
     @Autowired
     private Scheduler scheduler;
@@ -57,10 +77,23 @@ public class TasksResource extends ServerResource implements ITasksResource {
     @Get
     @Override
     public ArrayList<TaskDTO> retrieve() {
-        LOG.info("Get all tasks list...");
-        TaskExample example = new TaskExample();
-        example.or();
-        List<Task> tasks = taskMapper.selectByExample(example);
+        Form form = getRequest().getResourceRef().getQueryAsForm();
+        TaskFilter filter;
+        int limit;
+        try {
+            filter = FilterParser.parseTaskFilter(form);
+            limit = FilterParser.parseLimit(form, DEFAULT_LIMIT, MAX_LIMIT);
+        } catch (IllegalArgumentException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return new ArrayList<TaskDTO>();
+        }
+
+        List<Task> tasks;
+        if (CACHED_STATUSES.containsAll(filter.getStatuses())) {
+            tasks = selectCachedPage(filter, limit);
+        } else {
+            tasks = taskQueryMapper.selectPage(filter, limit);
+        }
         List<TaskDTO> result = new ArrayList<TaskDTO>();
         for (Task task : tasks) {
             TaskDTO dto = TaskConverter.toDto(task);
@@ -69,6 +102,30 @@ public class TasksResource extends ServerResource implements ITasksResource {
         return (ArrayList<TaskDTO>) result;
     }
 
+    /*
+     * the same page as TaskQueryMapper.selectPage, from the registered tasks
+     */
+    private List<Task> selectCachedPage(TaskFilter filter, int limit) {
+        List<Task> tasks = new ArrayList<Task>();
+        SortedMap<String, Task> registered = metadataCache.getTasks();
+        if (filter.getCursorID() != null) {
+            // the tasks strictly after the cursor
+            registered = registered.tailMap(filter.getCursorID() + "\0");
+        }
+        for (Task task : registered.values()) {
+            if (tasks.size() >= limit) {
+                break;
+            }
+            if (!filter.getStatuses().contains(task.getStatus())
+                    || (filter.getCreator() != null && !filter.getCreator().equals(task.getCreator()))
+                    || (filter.getPoolID() != null && !filter.getPoolID().equals(task.getPoolid()))) {
+                continue;
+            }
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
     @Post
     @Override
     public void create(Representation re) {
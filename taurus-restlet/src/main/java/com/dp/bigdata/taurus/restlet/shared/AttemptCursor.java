@@ -0,0 +1,53 @@
+package com.dp.bigdata.taurus.restlet.shared;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 
+ * AttemptCursor is the position of a page of attempts: {scheduleTime in ms}_{attemptID} of the last attempt of the
+ * previous page. It is shared by the restlet and the GWT client.
+ * @author damon.zhu
+ *
+ */
+public final class AttemptCursor {
+
+   private final Date scheduleTime;
+
+   private final String attemptID;
+
+   private AttemptCursor(Date scheduleTime, String attemptID) {
+      this.scheduleTime = scheduleTime;
+      this.attemptID = attemptID;
+   }
+
+   public Date getScheduleTime() {
+      return scheduleTime;
+   }
+
+   public String getAttemptID() {
+      return attemptID;
+   }
+
+   /**
+    * @return the cursor of the page after the given page, null if the page is empty
+    */
+   public static String next(List<AttemptDTO> page) {
+      if (page == null || page.isEmpty()) {
+         return null;
+      }
+      AttemptDTO last = page.get(page.size() - 1);
+      return last.getScheduleTime().getTime() + "_" + last.getAttemptID();
+   }
+
+   /**
+    * @throws IllegalArgumentException if the cursor is malformed
+    */
+   public static AttemptCursor parse(String cursor) {
+      int index = cursor.indexOf('_');
+      if (index <= 0 || index == cursor.length() - 1) {
+         throw new IllegalArgumentException("Illegal cursor " + cursor);
+      }
+      return new AttemptCursor(new Date(Long.parseLong(cursor.substring(0, index))), cursor.substring(index + 1));
+   }
+}
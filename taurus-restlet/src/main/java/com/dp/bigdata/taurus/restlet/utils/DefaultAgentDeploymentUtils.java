@@ -9,9 +9,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.dp.bigdata.taurus.generated.mapper.HostMapper;
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.generated.module.Host;
-import com.dp.bigdata.taurus.generated.module.HostExample;
 import com.dp.bigdata.taurus.generated.module.Task;
 import com.dp.bigdata.taurus.zookeeper.deploy.helper.Deployer;
 import com.dp.bigdata.taurus.zookeeper.deploy.helper.DeploymentContext;
@@ -30,7 +29,7 @@ public class DefaultAgentDeploymentUtils implements AgentDeploymentUtils {
     private final long WAITTIME = 3000;
 
     @Autowired
-    private HostMapper hostMapper;
+    private MetadataCache metadataCache;
 
     @Autowired
     private Deployer deployer;
@@ -40,9 +39,7 @@ public class DefaultAgentDeploymentUtils implements AgentDeploymentUtils {
 
     @Override
     public void notifyAllAgent(final Task task, final DeployOptions options) throws DeploymentException {
-        HostExample example = new HostExample();
-        example.or().andPoolidEqualTo(task.getPoolid());
-        List<Host> hosts = hostMapper.selectByExample(example);
+        List<Host> hosts = metadataCache.getHosts(task.getPoolid());
         final DeploymentContext context = new DeploymentContext();
         context.setHdfsPath(filePathManager.getRemotePath(task.getTaskid(), task.getFilename()));
         context.setTaskID(task.getTaskid());
@@ -0,0 +1,107 @@
+package com.dp.bigdata.taurus.restlet.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.restlet.data.Form;
+
+import com.dp.bigdata.taurus.core.TaskStatus;
+import com.dp.bigdata.taurus.core.mapper.AttemptFilter;
+import com.dp.bigdata.taurus.core.mapper.TaskFilter;
+import com.dp.bigdata.taurus.restlet.shared.AttemptCursor;
+
+/**
+ * 
+ * FilterParser reads the filters of the task and attempt lists from the query of a request:
+ * <ul>
+ * <li>status : repeated or separated by ','</li>
+ * <li>from, to : the range [from, to) of the schedule time of the attempts, in ms</li>
+ * <li>task_id, host : the task and the host of the attempts</li>
+ * <li>creator, pool_id : the creator and the pool of the tasks</li>
+ * <li>cursor : the position of the page, see AttemptCursor</li>
+ * </ul>
+ * @author damon.zhu
+ *
+ */
+public class FilterParser {
+
+    public static final String TASK = "task_id";
+    public static final String STATUS = "status";
+    public static final String FROM = "from";
+    public static final String TO = "to";
+    public static final String HOST = "host";
+    public static final String CREATOR = "creator";
+    public static final String POOL = "pool_id";
+    public static final String LIMIT = "limit";
+    public static final String CURSOR = "cursor";
+
+    private static final List<Integer> UNDELETED_STATUSES = Arrays.asList(TaskStatus.RUNNING, TaskStatus.SUSPEND);
+
+    /**
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    public static AttemptFilter parseAttemptFilter(Form form) {
+        AttemptFilter filter = new AttemptFilter();
+        filter.setTaskID(form.getFirstValue(TASK));
+        filter.setStatuses(parseInts(form.getValuesArray(STATUS)));
+        filter.setFromTime(parseDate(form.getFirstValue(FROM)));
+        filter.setToTime(parseDate(form.getFirstValue(TO)));
+        filter.setExecHost(form.getFirstValue(HOST));
+        if (form.getFirstValue(CURSOR) != null) {
+            AttemptCursor cursor = AttemptCursor.parse(form.getFirstValue(CURSOR));
+            filter.setCursor(cursor.getScheduleTime(), cursor.getAttemptID());
+        }
+        return filter;
+    }
+
+    /**
+     * the DELETED tasks are left out unless the statuses are given.
+     * 
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    public static TaskFilter parseTaskFilter(Form form) {
+        TaskFilter filter = new TaskFilter();
+        List<Integer> statuses = parseInts(form.getValuesArray(STATUS));
+        filter.setStatuses(statuses == null ? UNDELETED_STATUSES : statuses);
+        filter.setCreator(form.getFirstValue(CREATOR));
+        if (form.getFirstValue(POOL) != null) {
+            filter.setPoolID(Integer.valueOf(form.getFirstValue(POOL)));
+        }
+        filter.setCursorID(form.getFirstValue(CURSOR));
+        return filter;
+    }
+
+    /**
+     * @return the limit of the page, at most maxLimit
+     * @throws IllegalArgumentException if the limit is malformed or not positive
+     */
+    public static int parseLimit(Form form, int defaultLimit, int maxLimit) {
+        String value = form.getFirstValue(LIMIT);
+        if (value == null) {
+            return defaultLimit;
+        }
+        int limit = Integer.parseInt(value);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Illegal limit " + limit);
+        }
+        return Math.min(limit, maxLimit);
+    }
+
+    private static List<Integer> parseInts(String[] values) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (String value : values) {
+            for (String item : value.split(",")) {
+                if (item.trim().length() > 0) {
+                    result.add(Integer.parseInt(item.trim()));
+                }
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private static Date parseDate(String value) {
+        return value == null ? null : new Date(Long.parseLong(value));
+    }
+}
@@ -0,0 +1,129 @@
+package com.dp.bigdata.taurus.restlet.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * 
+ * JsonWriter writes a JSON document token by token, so a large array is never held in the memory as a whole. Dates
+ * are written as ms since the epoch.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * writer.beginArray();
+ * writer.beginObject().field("taskID", taskID).field("status", status).endObject();
+ * writer.endArray();
+ * </pre>
+ * @author damon.zhu
+ *
+ */
+public class JsonWriter {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final Writer out;
+    // whether the array or object at each depth has had an element, to place the commas
+    private final boolean[] hasElement = new boolean[MAX_DEPTH];
+    private int depth;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return begin('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return end(']');
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return begin('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return end('}');
+    }
+
+    public JsonWriter field(String name, Object value) throws IOException {
+        separate();
+        writeString(name);
+        out.write(':');
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else if (value instanceof Date) {
+            out.write(Long.toString(((Date) value).getTime()));
+        } else {
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter begin(char c) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON is nested too deeply");
+        }
+        separate();
+        out.write(c);
+        hasElement[depth++] = false;
+        return this;
+    }
+
+    private JsonWriter end(char c) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No array or object to end");
+        }
+        depth--;
+        out.write(c);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (depth > 0) {
+            if (hasElement[depth - 1]) {
+                out.write(',');
+            }
+            hasElement[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                out.write("\\\"");
+                break;
+            case '\\':
+                out.write("\\\\");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            case '\r':
+                out.write("\\r");
+                break;
+            case '\t':
+                out.write("\\t");
+                break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    out.write(String.format("\\u%04x", (int) c));
+                } else {
+                    out.write(c);
+                }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -1,48 +1,32 @@
 package com.dp.bigdata.taurus.restlet.utils;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.dp.bigdata.taurus.generated.mapper.PoolMapper;
+import com.dp.bigdata.taurus.core.MetadataCache;
 import com.dp.bigdata.taurus.generated.module.Pool;
-import com.dp.bigdata.taurus.generated.module.PoolExample;
 
 /**
- * 
- * PoolManager
+ *
+ * PoolManager maps the names of the pools to their ids, from the MetadataCache.
  * @author damon.zhu
  *
  */
 public class PoolManager {
-    
+
     @Autowired
-    private PoolMapper poolMapper;
-    
-    private Map<Integer, String> idMap;
-    
-    private Map<String, Integer> nameMap;
-    
-    public void init(){
-        idMap = new HashMap<Integer, String>();
-        nameMap = new HashMap<String, Integer>();
-        PoolExample example = new PoolExample();
-        example.or();
-        List<Pool> pools = poolMapper.selectByExample(example);
-        for(Pool pool : pools){
-            idMap.put(pool.getId(), pool.getName());
-            nameMap.put(pool.getName(), pool.getId());
-        }
-    }
-    
+    private MetadataCache metadataCache;
+
     public int getID(String name){
-        return nameMap.get(name);
+        Pool pool = metadataCache.getPoolByName(name);
+        if (pool == null) {
+            throw new IllegalArgumentException("Cannot find the pool : " + name);
+        }
+        return pool.getId();
     }
-    
+
     public String getName(int id){
-        return idMap.get(id);
+        Pool pool = metadataCache.getPool(id);
+        return pool == null ? null : pool.getName();
     }
 
 }
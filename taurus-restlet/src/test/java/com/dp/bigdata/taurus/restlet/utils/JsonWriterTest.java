@@ -0,0 +1,74 @@
+package com.dp.bigdata.taurus.restlet.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * JsonWriterTest
+ *
+ * @author damon.zhu
+ */
+public class JsonWriterTest {
+
+    private final StringWriter out = new StringWriter();
+    private final JsonWriter writer = new JsonWriter(out);
+
+    @Test
+    public void testValues() throws IOException {
+        writer.beginObject();
+        writer.field("taskID", "task_201210171442_0001");
+        writer.field("status", 3);
+        writer.field("isAutoRetry", true);
+        writer.field("endTime", null);
+        writer.field("addTime", new Date(1350456120000L));
+        writer.endObject();
+        writer.flush();
+        assertEquals("{\"taskID\":\"task_201210171442_0001\",\"status\":3,\"isAutoRetry\":true,\"endTime\":null,"
+                + "\"addTime\":1350456120000}", out.toString());
+    }
+
+    @Test
+    public void testEscape() throws IOException {
+        writer.beginObject();
+        writer.field("command", "echo \"a\\b\"\n\r\t\u0001\u2028");
+        writer.field("name", "\u4efb\u52a1");
+        writer.endObject();
+        assertEquals("{\"command\":\"echo \\\"a\\\\b\\\"\\n\\r\\t\\u0001\\u2028\",\"name\":\"\u4efb\u52a1\"}",
+                out.toString());
+    }
+
+    @Test
+    public void testNesting() throws IOException {
+        writer.beginArray();
+        writer.endArray();
+        assertEquals("[]", out.toString());
+
+        out.getBuffer().setLength(0);
+        writer.beginArray();
+        writer.beginObject().field("a", 1).endObject();
+        writer.beginObject().endObject();
+        writer.beginArray().beginArray().endArray().beginObject().field("b", 2).field("c", 3).endObject().endArray();
+        writer.endArray();
+        // a comma between the elements of each array and object, none after the last one
+        assertEquals("[{\"a\":1},{},[[],{\"b\":2,\"c\":3}]]", out.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndWithoutBegin() throws IOException {
+        writer.beginArray();
+        writer.endArray();
+        writer.endObject();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooDeep() throws IOException {
+        for (int i = 0; i <= 32; i++) {
+            writer.beginArray();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.dp.bigdata.taurus.zookeeper.common.infochannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentConf;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentStatus;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleConf;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleStatus;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.PayloadCodec;
+import com.dp.bigdata.taurus.zookeeper.common.utils.ClassLoaderUtils;
+
+/**
+ * DefaultPayloadCodec writes the beans of the info channels in a compact binary format:
+ * 
+ * <pre>
+ * payload := MAGIC VERSION value
+ * value   := type field* END | LIST size value* | SERIALIZED size bytes | NULL
+ * field   := key(tag << 3 | wire) (varint | size utf8)
+ * </pre>
+ * 
+ * Every field has an explicit tag, so unknown fields are skipped and new fields can be added without a new
+ * version. Objects of other classes are embedded as java serialization. Payloads written with java serialization
+ * are always readable, and the write format can be set back to java by <code>payloadFormat=java</code> in
+ * zooKeeper.properties while old agents are still running.
+ */
+public class DefaultPayloadCodec implements PayloadCodec{
+
+	private static final Log LOG = LogFactory.getLog(DefaultPayloadCodec.class);
+
+	private static final String ZK_CONF = "zooKeeper.properties";
+	private static final String KEY_PAYLOAD_FORMAT = "payloadFormat";
+	public static final String FORMAT_BINARY = "binary";
+	public static final String FORMAT_JAVA = "java";
+
+	static final byte MAGIC = (byte) 0x54;
+	static final byte VERSION = 1;
+	/*
+	 * the first bytes of a java serialization stream
+	 */
+	private static final byte JAVA_MAGIC_0 = (byte) 0xAC;
+	private static final byte JAVA_MAGIC_1 = (byte) 0xED;
+
+	private static final int NULL = 0;
+	private static final int SCHEDULE_CONF = 1;
+	private static final int SCHEDULE_STATUS = 2;
+	private static final int DEPLOYMENT_CONF = 3;
+	private static final int DEPLOYMENT_STATUS = 4;
+	private static final int HEARTBEAT_INFO = 5;
+	private static final int LIST = 6;
+	private static final int SERIALIZED = 7;
+
+	private static final int END = 0;
+	private static final int WIRE_VARINT = 0;
+	private static final int WIRE_BYTES = 2;
+
+	private final boolean isBinary;
+
+	public DefaultPayloadCodec(){
+		this(readFormat());
+	}
+
+	public DefaultPayloadCodec(String format){
+		this.isBinary = !FORMAT_JAVA.equalsIgnoreCase(format);
+	}
+
+	private static String readFormat(){
+		Properties props = new Properties();
+		try {
+			InputStream in = ClassLoaderUtils.getDefaultClassLoader().getResourceAsStream(ZK_CONF);
+			if(in != null){
+				props.load(in);
+				in.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("Fail to read " + ZK_CONF, e);
+		}
+		return props.getProperty(KEY_PAYLOAD_FORMAT, FORMAT_BINARY);
+	}
+
+	@Override
+	public byte[] encode(Object o) throws IOException{
+		if(o == null){
+			return new byte[0];
+		}
+		if(!isBinary){
+			return serialize(o);
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bos);
+		out.writeByte(MAGIC);
+		out.writeByte(VERSION);
+		writeValue(out, o);
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	@Override
+	public Object decode(byte[] bytes) throws IOException, ClassNotFoundException{
+		if(bytes == null || bytes.length == 0){
+			return null;
+		}
+		if(bytes.length >= 2 && bytes[0] == JAVA_MAGIC_0 && bytes[1] == JAVA_MAGIC_1){
+			return deserialize(bytes);
+		}
+		if(bytes[0] != MAGIC){
+			throw new IOException("Unknown payload format : " + bytes[0]);
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+		int version = in.readByte();
+		if(version > VERSION){
+			throw new IOException("Unsupported payload version : " + version);
+		}
+		return readValue(in);
+	}
+
+	private static void writeValue(DataOutputStream out, Object o) throws IOException{
+		if(o == null){
+			out.writeByte(NULL);
+		} else if(o instanceof ScheduleConf){
+			ScheduleConf conf = (ScheduleConf) o;
+			out.writeByte(SCHEDULE_CONF);
+			writeString(out, 1, conf.getTaskID());
+			writeString(out, 2, conf.getAttemptID());
+			writeString(out, 3, conf.getCommand());
+			writeString(out, 4, conf.getTaskType());
+			writeString(out, 5, conf.getUserName());
+			writeString(out, 6, conf.getPid());
+			out.writeByte(END);
+		} else if(o instanceof ScheduleStatus){
+			ScheduleStatus status = (ScheduleStatus) o;
+			out.writeByte(SCHEDULE_STATUS);
+			writeLong(out, 1, status.getStatus());
+			writeString(out, 2, status.getFailureInfo());
+			writeLong(out, 3, status.getReturnCode());
+			out.writeByte(END);
+		} else if(o instanceof DeploymentConf){
+			DeploymentConf conf = (DeploymentConf) o;
+			out.writeByte(DEPLOYMENT_CONF);
+			writeString(out, 1, conf.getHdfsPath());
+			writeString(out, 2, conf.getTaskID());
+			writeString(out, 3, conf.getLocalPath());
+			out.writeByte(END);
+		} else if(o instanceof DeploymentStatus){
+			DeploymentStatus status = (DeploymentStatus) o;
+			out.writeByte(DEPLOYMENT_STATUS);
+			writeLong(out, 1, status.getStatus());
+			writeString(out, 2, status.getFailureInfo());
+			out.writeByte(END);
+		} else if(o instanceof HeartbeatInfo){
+			HeartbeatInfo info = (HeartbeatInfo) o;
+			out.writeByte(HEARTBEAT_INFO);
+			if(info.getTime() != null){
+				writeLong(out, 1, info.getTime().getTime());
+			}
+			writeLong(out, 2, info.getProcessors());
+			// hundredths are precise enough for a load average
+			writeLong(out, 3, Math.round(info.getLoadAverage() * 100));
+			writeLong(out, 4, info.getFreeMemory());
+			writeLong(out, 5, info.getTotalMemory());
+			writeLong(out, 6, info.getFreeDiskSpace());
+			writeLong(out, 7, info.getRunningAttempts());
+			writeLong(out, 8, info.getQueuedAttempts());
+			writeLong(out, 9, info.getSlots());
+			writeLong(out, 10, info.getQueueWaitTime());
+			writeLong(out, 11, info.getRejectedAttempts());
+			// a repeated field, one entry per attempt
+			if(info.getRunningAttemptIDs() != null){
+				for(String attemptID : info.getRunningAttemptIDs()){
+					writeString(out, 12, attemptID);
+				}
+			}
+			out.writeByte(END);
+		} else if(o instanceof List){
+			List<?> list = (List<?>) o;
+			out.writeByte(LIST);
+			writeVarint(out, list.size());
+			for(Object item : list){
+				writeValue(out, item);
+			}
+		} else{
+			byte[] bytes = serialize(o);
+			out.writeByte(SERIALIZED);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException, ClassNotFoundException{
+		int type = in.readByte();
+		switch(type){
+		case NULL:
+			return null;
+		case SCHEDULE_CONF: {
+			ScheduleConf conf = new ScheduleConf();
+			for(int key = readKey(in); key != END; key = readKey(in)){
+				switch(key >>> 3){
+				case 1: conf.setTaskID(readString(in)); break;
+				case 2: conf.setAttemptID(readString(in)); break;
+				case 3: conf.setCommand(readString(in)); break;
+				case 4: conf.setTaskType(readString(in)); break;
+				case 5: conf.setUserName(readString(in)); break;
+				case 6: conf.setPid(readString(in)); break;
+				default: skip(in, key);
+				}
+			}
+			return conf;
+		}
+		case SCHEDULE_STATUS: {
+			ScheduleStatus status = new ScheduleStatus();
+			for(int key = readKey(in); key != END; key = readKey(in)){
+				switch(key >>> 3){
+				case 1: status.setStatus((int) readLong(in)); break;
+				case 2: status.setFailureInfo(readString(in)); break;
+				case 3: status.setReturnCode((int) readLong(in)); break;
+				default: skip(in, key);
+				}
+			}
+			return status;
+		}
+		case DEPLOYMENT_CONF: {
+			DeploymentConf conf = new DeploymentConf();
+			for(int key = readKey(in); key != END; key = readKey(in)){
+				switch(key >>> 3){
+				case 1: conf.setHdfsPath(readString(in)); break;
+				case 2: conf.setTaskID(readString(in)); break;
+				case 3: conf.setLocalPath(readString(in)); break;
+				default: skip(in, key);
+				}
+			}
+			return conf;
+		}
+		case DEPLOYMENT_STATUS: {
+			DeploymentStatus status = new DeploymentStatus();
+			for(int key = readKey(in); key != END; key = readKey(in)){
+				switch(key >>> 3){
+				case 1: status.setStatus((int) readLong(in)); break;
+				case 2: status.setFailureInfo(readString(in)); break;
+				default: skip(in, key);
+				}
+			}
+			return status;
+		}
+		case HEARTBEAT_INFO: {
+			HeartbeatInfo info = new HeartbeatInfo();
+			for(int key = readKey(in); key != END; key = readKey(in)){
+				switch(key >>> 3){
+				case 1: info.setTime(new Date(readLong(in))); break;
+				case 2: info.setProcessors((int) readLong(in)); break;
+				case 3: info.setLoadAverage(readLong(in) / 100.0); break;
+				case 4: info.setFreeMemory(readLong(in)); break;
+				case 5: info.setTotalMemory(readLong(in)); break;
+				case 6: info.setFreeDiskSpace(readLong(in)); break;
+				case 7: info.setRunningAttempts((int) readLong(in)); break;
+				case 8: info.setQueuedAttempts((int) readLong(in)); break;
+				case 9: info.setSlots((int) readLong(in)); break;
+				case 10: info.setQueueWaitTime(readLong(in)); break;
+				case 11: info.setRejectedAttempts(readLong(in)); break;
+				case 12: info.getRunningAttemptIDs().add(readString(in)); break;
+				default: skip(in, key);
+				}
+			}
+			return info;
+		}
+		case LIST: {
+			int size = (int) readVarint(in);
+			List<Object> list = new ArrayList<Object>(size);
+			for(int i = 0; i < size; i++){
+				list.add(readValue(in));
+			}
+			return list;
+		}
+		case SERIALIZED: {
+			byte[] bytes = new byte[(int) readVarint(in)];
+			in.readFully(bytes);
+			return deserialize(bytes);
+		}
+		default:
+			throw new IOException("Unknown payload type : " + type);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, int tag, String value) throws IOException{
+		if(value == null){
+			return;
+		}
+		byte[] bytes = value.getBytes("UTF-8");
+		writeVarint(out, (tag << 3) | WIRE_BYTES);
+		writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeLong(DataOutputStream out, int tag, long value) throws IOException{
+		writeVarint(out, (tag << 3) | WIRE_VARINT);
+		// zigzag, so small negative numbers are short too
+		writeVarint(out, (value << 1) ^ (value >> 63));
+	}
+
+	private static void writeVarint(DataOutputStream out, long value) throws IOException{
+		while((value & ~0x7FL) != 0){
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static int readKey(DataInputStream in) throws IOException{
+		return (int) readVarint(in);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = new byte[(int) readVarint(in)];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static long readLong(DataInputStream in) throws IOException{
+		long value = readVarint(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long readVarint(DataInputStream in) throws IOException{
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7){
+			int b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new EOFException("Malformed varint");
+	}
+
+	private static void skip(DataInputStream in, int key) throws IOException{
+		int wire = key & 0x7;
+		if(wire == WIRE_VARINT){
+			readVarint(in);
+		} else if(wire == WIRE_BYTES){
+			int length = (int) readVarint(in);
+			if(in.skipBytes(length) != length){
+				throw new EOFException();
+			}
+		} else{
+			throw new IOException("Unknown wire type : " + wire);
+		}
+	}
+
+	private static byte[] serialize(Object o) throws IOException{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutput out = new ObjectOutputStream(bos);   
+		out.writeObject(o);
+		out.flush();
+		byte[] byteArray = bos.toByteArray();
+		out.close();
+		bos.close();
+		return byteArray;
+	}
+
+	private static Object deserialize(byte[] byteArray) throws IOException, ClassNotFoundException{
+		ByteArrayInputStream bis = new ByteArrayInputStream(byteArray);
+		ObjectInput in = new ObjectInputStream(bis);
+		Object o = in.readObject(); 
+		bis.close();
+		in.close();
+		return o;
+	}
+}
@@ -46,11 +46,10 @@ class TaurusZKDeploymentInfoChannel extends TaurusZKInfoChannel implements Deplo
 	public void deploy(String ip, String taskID, Object conf,
 			Object status, Watcher watcher) {
 		try{
-			mkPath(BASE, ASSIGNMENTS, ip, taskID);
-			mkPath(BASE, ASSIGNMENTS, ip, taskID, CONF);
-			mkPath(BASE, ASSIGNMENTS, ip, taskID, STATUS);
-			setData(conf, BASE, ASSIGNMENTS, ip, taskID, CONF);
-			setData(status, BASE, ASSIGNMENTS, ip, taskID, STATUS);
+			mkPaths(new Object[]{null, conf, status},
+					new String[]{BASE, ASSIGNMENTS, ip, taskID},
+					new String[]{BASE, ASSIGNMENTS, ip, taskID, CONF},
+					new String[]{BASE, ASSIGNMENTS, ip, taskID, STATUS});
 			addDeploymentStatusWatcher(ip, taskID, watcher);
 			mkPath(BASE, ASSIGNMENTS, ip, NEW, taskID);
 		} catch(Exception e){
@@ -1,24 +1,24 @@
 package com.dp.bigdata.taurus.zookeeper.common.infochannel;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
 import org.apache.zookeeper.ZooDefs.Ids;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.Stat;
@@ -26,26 +26,78 @@ import org.apache.zookeeper.data.Stat;
 import com.dp.bigdata.taurus.zookeeper.common.MachineType;
 import com.dp.bigdata.taurus.zookeeper.common.TaurusZKException;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.ClusterInfoChannel;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.PayloadCodec;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
 abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 	private static final Log LOG = LogFactory.getLog(TaurusZKInfoChannel.class);
 
-	private static final int MAX_HEARTBEAT_LENGTH = 100;
-
 	protected static final String SEP = "/";
 	protected static final String BASE = "taurus";
 	private static final String HEARTBEATS = "heartbeats";
 	private static final String REALTIME = "realtime";
-	private static final String INFO = "info";
 
-	protected ZooKeeper zk;
+	protected volatile ZooKeeper zk;
+	private Provider<ZooKeeper> zkProvider;
+	private PayloadCodec codec = new DefaultPayloadCodec();
 
 	@Inject
 	TaurusZKInfoChannel(ZooKeeper zk){
 		this.zk = zk;
 	}
 
+	@Inject(optional = true)
+	void setZooKeeperProvider(Provider<ZooKeeper> zkProvider){
+		this.zkProvider = zkProvider;
+		watchSession(zk);
+	}
+
+	/*
+	 * ZooKeeper 3.3 never renews an expired session, every call of the handle fails with SESSIONEXPIRED. So the
+	 * channel connects a new handle; the ephemeral nodes and the watches of the old session are gone, the heartbeat
+	 * node is created again by the next heartbeat and the watches are set again by the next reads.
+	 */
+	private void watchSession(final ZooKeeper handle){
+		if(handle == null){
+			return;
+		}
+		handle.register(new Watcher() {
+			@Override
+			public void process(WatchedEvent event) {
+				if(event.getType() == EventType.None && event.getState() == KeeperState.Expired){
+					renewSession(handle);
+				}
+			}
+		});
+	}
+
+	protected synchronized void renewSession(ZooKeeper expired){
+		if(zk != expired || zkProvider == null){
+			// it has been renewed already
+			return;
+		}
+		LOG.warn("The zookeeper session has expired, connect again");
+		ZooKeeper renewed = zkProvider.get();
+		if(renewed == null){
+			// tried again by the next call which fails with SESSIONEXPIRED
+			LOG.error("Fail to connect to zookeeper");
+			return;
+		}
+		try{
+			expired.close();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		zk = renewed;
+		watchSession(renewed);
+	}
+
+	@Inject(optional = true)
+	void setCodec(PayloadCodec codec){
+		this.codec = codec;
+	}
+
 	@Override
 	public void connectToCluster(MachineType mt, String ip) {
 		try{
@@ -53,7 +105,6 @@ abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 				setupBasePath();
 			}
 			mkPath(CreateMode.EPHEMERAL, BASE, HEARTBEATS, mt.getName(), REALTIME, ip);
-			mkPath(BASE, HEARTBEATS, mt.getName(), INFO, ip);
 		} catch(Exception e){
 			throw new TaurusZKException(e);
 		}
@@ -69,28 +120,36 @@ abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 		}
 	}
 
+	/**
+	 * The latest heartbeat is the data of the ephemeral node of the machine, so an update is a single blind write
+	 * and the heartbeat goes away with the session. When the session has expired, a new one is connected and the
+	 * node is created again on it.
+	 */
 	@Override
 	public void updateHeartbeatInfo(MachineType mt, String ip, Object info) {
 		try{
-			List<Object> heartbeatInfoList = new ArrayList<Object>(getHeartbeatInfo(mt, ip));
-			if(heartbeatInfoList.size() >= MAX_HEARTBEAT_LENGTH){
-				heartbeatInfoList.remove(heartbeatInfoList.size()-1);
+			ZooKeeper current = zk;
+			try{
+				setData(info, BASE, HEARTBEATS, mt.getName(), REALTIME, ip);
+			} catch(KeeperException e){
+				if(e.code() == Code.SESSIONEXPIRED){
+					renewSession(current);
+				} else if(e.code() != Code.NONODE){
+					throw e;
+				}
+				mkPath(CreateMode.EPHEMERAL, info, BASE, HEARTBEATS, mt.getName(), REALTIME, ip);
 			}
-			heartbeatInfoList.add(info);
-
-			setData(heartbeatInfoList, BASE, HEARTBEATS, mt.getName(), INFO, ip);
 		} catch(Exception e){
 			throw new TaurusZKException(e);
 		}
 	}
 
 	@Override
-	public List<Object> getHeartbeatInfo(MachineType mt, String ip) {
+	public Object getHeartbeatInfo(MachineType mt, String ip) {
 		try{
-			return Collections.unmodifiableList(
-					(List<Object>)getData(BASE, HEARTBEATS, mt.getName(), INFO, ip));
+			return getData(BASE, HEARTBEATS, mt.getName(), REALTIME, ip);
 		} catch(Exception e){
-			return Collections.unmodifiableList(new ArrayList<Object>());
+			return null;
 		}	
 	}
 
@@ -123,10 +182,8 @@ abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 		mkPath(BASE, HEARTBEATS);
 		mkPath(BASE, HEARTBEATS, MachineType.SERVER.getName());
 		mkPath(BASE, HEARTBEATS, MachineType.SERVER.getName(), REALTIME);
-		mkPath(BASE, HEARTBEATS, MachineType.SERVER.getName(), INFO);
 		mkPath(BASE, HEARTBEATS, MachineType.AGENT.getName());
 		mkPath(BASE, HEARTBEATS, MachineType.AGENT.getName(), REALTIME);
-		mkPath(BASE, HEARTBEATS, MachineType.AGENT.getName(), INFO);
 	}
 
 	protected List<String> getChildrenNodeName(Watcher watcher, String ... path) 
@@ -182,10 +239,7 @@ abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 	protected void rmPath(String... node) 
 	throws InterruptedException, KeeperException{
 		try{
-			Stat stat = zk.exists(getFullPath(node), null);
-			if(stat != null){
-				zk.delete(getFullPath(node), stat.getVersion());
-			}
+			zk.delete(getFullPath(node), -1);
 		} catch(KeeperException e){
 			if(e.code() != Code.NONODE){
 				throw e;
@@ -195,11 +249,106 @@ abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 	
 	protected void setData(Object data, String... node) 
 	throws KeeperException, InterruptedException, IOException{
-		Stat stat = zk.exists(getFullPath(node), null);
+		zk.setData(getFullPath(node), changeObjectToByteArray(data), -1);
+	}
+
+	/**
+	 * Write the data and watch the next change of the node. Both requests are pipelined on the session, so they take
+	 * one round trip, and the watch is set after the write, so it is only triggered by a later one.
+	 */
+	protected void setDataAndWatch(Object data, Watcher watcher, String... node)
+	throws KeeperException, InterruptedException, IOException{
+		final String path = getFullPath(node);
+		final CountDownLatch latch = new CountDownLatch(2);
+		final int[] codes = new int[2];
+		zk.setData(path, changeObjectToByteArray(data), -1, new StatCallback() {
+			@Override
+			public void processResult(int rc, String path, Object ctx, Stat stat) {
+				codes[0] = rc;
+				latch.countDown();
+			}
+		}, null);
+		zk.getData(path, watcher, new DataCallback() {
+			@Override
+			public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+				codes[1] = rc;
+				latch.countDown();
+			}
+		}, null);
+		latch.await();
+		for(int code : codes){
+			if(code != Code.OK.intValue()){
+				throw KeeperException.create(Code.get(code), path);
+			}
+		}
+	}
+
+	/**
+	 * Create the persistent nodes with their data. The creates are pipelined on the session, so they take one round
+	 * trip and are applied in the given order. A node which already exists gets the new data by a write conditional on
+	 * the version just read, so a concurrent change of the node fails the call with BADVERSION instead of being
+	 * overwritten. When a create or a write fails, the nodes created by the call are deleted again, the children first.
+	 * ZooKeeper 3.3 has no multi, so this is not atomic: the other clients may see the nodes half created until they
+	 * are cleaned up, and a session lost in between leaves them behind.
+	 */
+	protected void mkPaths(Object[] data, String[]... nodes)
+	throws KeeperException, InterruptedException, IOException{
+		final CountDownLatch latch = new CountDownLatch(nodes.length);
+		final int[] codes = new int[nodes.length];
+		for(int i = 0; i < nodes.length; i++){
+			final int index = i;
+			zk.create(getFullPath(nodes[i]), changeObjectToByteArray(data[i]), Ids.OPEN_ACL_UNSAFE,
+					CreateMode.PERSISTENT, new StringCallback() {
+						@Override
+						public void processResult(int rc, String path, Object ctx, String name) {
+							codes[index] = rc;
+							latch.countDown();
+						}
+					}, null);
+		}
+		latch.await();
+		try{
+			for(int i = 0; i < nodes.length; i++){
+				Code code = Code.get(codes[i]);
+				if(code == Code.NODEEXISTS){
+					if(data[i] != null){
+						setDataIfUnchanged(data[i], nodes[i]);
+					}
+				} else if(code != Code.OK){
+					throw KeeperException.create(code, getFullPath(nodes[i]));
+				}
+			}
+		} catch(KeeperException e){
+			for(int i = nodes.length - 1; i >= 0; i--){
+				if(codes[i] == Code.OK.intValue()){
+					rmPathQuietly(nodes[i]);
+				}
+			}
+			throw e;
+		}
+	}
+
+	/*
+	 * write the data unless the node changes between the read of its version and the write
+	 */
+	private void setDataIfUnchanged(Object data, String... node)
+	throws KeeperException, InterruptedException, IOException{
+		String path = getFullPath(node);
+		Stat stat = zk.exists(path, null);
 		if(stat == null){
-			throw KeeperException.create(Code.NONODE, getFullPath(node));	
+			throw KeeperException.create(Code.NONODE, path);
+		}
+		zk.setData(path, changeObjectToByteArray(data), stat.getVersion());
+	}
+
+	private void rmPathQuietly(String... node){
+		try{
+			rmPath(node);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		} catch(KeeperException e){
+			LOG.warn("Fail to clean up " + getFullPath(node), e);
 		}
-		zk.setData(getFullPath(node), changeObjectToByteArray(data), stat.getVersion());
 	}
 
 	protected Object getData(Watcher watcher, String... node) 
@@ -215,28 +364,11 @@ abstract class TaurusZKInfoChannel implements ClusterInfoChannel{
 
 	private Object changeByteArrayToObject(byte[] byteArray) 
 	throws IOException, ClassNotFoundException{
-		if(byteArray.length == 0){
-			return null;
-		}
-		ByteArrayInputStream bis = new ByteArrayInputStream(byteArray);
-		ObjectInput in = new ObjectInputStream(bis);
-		Object o = in.readObject(); 
-		bis.close();
-		in.close();
-		return o;
+		return codec.decode(byteArray);
 	}
 
 	private byte[] changeObjectToByteArray(Object o) throws IOException{
-		if(o == null){
-			return new byte[0];
-		}
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		ObjectOutput out = new ObjectOutputStream(bos);   
-		out.writeObject(o);
-		byte[] byteArray = bos.toByteArray();
-		out.close();
-		bos.close();
-		return byteArray;
+		return codec.encode(o);
 	}
 
 }
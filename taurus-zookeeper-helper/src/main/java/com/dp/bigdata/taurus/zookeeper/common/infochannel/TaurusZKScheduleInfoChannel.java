@@ -58,7 +58,7 @@ public class TaurusZKScheduleInfoChannel extends TaurusZKInfoChannel implements
 	@Override
 	public Object getStatus(String ip, String attemptID, Watcher watcher) {
 		try{
-			return getData(BASE, SCHEDULE, ip, attemptID, STATUS);
+			return getData(watcher, BASE, SCHEDULE, ip, attemptID, STATUS);
 		} catch(Exception e){
 			return null;
 		}
@@ -82,24 +82,15 @@ public class TaurusZKScheduleInfoChannel extends TaurusZKInfoChannel implements
 		}
 	}
 	
-	private void addKillStatusWatcher(String ip,
-			String attemptID, Watcher watcher) {
-		try{
-			addDataWatcher(watcher, BASE, SCHEDULE, ip, attemptID, STATUS);
-		} catch(Exception e){
-			throw new TaurusZKException(e);
-		}
-	}
-
 	@Override
 	public void execute(String ip, String attemptID, Object conf,
 			Object status) {
 		try{
-			mkPath(BASE, SCHEDULE, ip, attemptID);
-			mkPath(BASE, SCHEDULE, ip, attemptID, CONF);
-			mkPath(BASE, SCHEDULE, ip, attemptID, STATUS);
-			setData(conf, BASE, SCHEDULE, ip, attemptID, CONF);
-			setData(status, BASE, SCHEDULE, ip, attemptID, STATUS);
+			mkPaths(new Object[]{null, conf, status},
+					new String[]{BASE, SCHEDULE, ip, attemptID},
+					new String[]{BASE, SCHEDULE, ip, attemptID, CONF},
+					new String[]{BASE, SCHEDULE, ip, attemptID, STATUS});
+			// the agent picks up the attempt only after the conf and status are written
 			mkPath(BASE, SCHEDULE, ip, NEW, attemptID);
 
 		} catch(Exception e){
@@ -131,8 +122,8 @@ public class TaurusZKScheduleInfoChannel extends TaurusZKInfoChannel implements
 	public void killTask(String ip, String attemptID, Object status,
 			Watcher watcher) {
 		try{
-			setData(status, BASE, SCHEDULE, ip, attemptID, STATUS);
-			addKillStatusWatcher(ip, attemptID, watcher);
+			setDataAndWatch(status, watcher, BASE, SCHEDULE, ip, attemptID, STATUS);
+			// the agent picks up the kill only after the status is written, so the marker waits for the write
 			mkPath(BASE, SCHEDULE, ip, DELETE, attemptID);
 		} catch(Exception e){
 			throw new TaurusZKException(e);
@@ -1,13 +1,40 @@
 package com.dp.bigdata.taurus.zookeeper.common.infochannel.bean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class HeartbeatInfo implements Serializable{
 
 	private static final long serialVersionUID = -4202863977946309890L;
-	
+
 	private Date time;
+	/*
+	 * resources of the machine, 0 when they are not reported
+	 */
+	private int processors;
+	private double loadAverage;
+	private long freeMemory;
+	private long totalMemory;
+	private long freeDiskSpace;
+	/*
+	 * attempts which the agent can execute at the same time, attempts executing on the machine,
+	 * and attempts waiting for an execute thread
+	 */
+	private int slots;
+	private int runningAttempts;
+	private int queuedAttempts;
+	/*
+	 * average queue wait in milliseconds of the attempts started since the last heartbeat,
+	 * and attempts rejected since the agent started
+	 */
+	private long queueWaitTime;
+	private long rejectedAttempts;
+	/*
+	 * attempts whose processes are alive on the machine
+	 */
+	private List<String> runningAttemptIDs = new ArrayList<String>();
 
 	public Date getTime() {
 		return time;
@@ -17,11 +44,111 @@ public class HeartbeatInfo implements Serializable{
 		this.time = time;
 	}
 
+	public int getProcessors() {
+		return processors;
+	}
+
+	public void setProcessors(int processors) {
+		this.processors = processors;
+	}
+
+	public double getLoadAverage() {
+		return loadAverage;
+	}
+
+	public void setLoadAverage(double loadAverage) {
+		this.loadAverage = loadAverage;
+	}
+
+	public long getFreeMemory() {
+		return freeMemory;
+	}
+
+	public void setFreeMemory(long freeMemory) {
+		this.freeMemory = freeMemory;
+	}
+
+	public long getTotalMemory() {
+		return totalMemory;
+	}
+
+	public void setTotalMemory(long totalMemory) {
+		this.totalMemory = totalMemory;
+	}
+
+	public long getFreeDiskSpace() {
+		return freeDiskSpace;
+	}
+
+	public void setFreeDiskSpace(long freeDiskSpace) {
+		this.freeDiskSpace = freeDiskSpace;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	public void setSlots(int slots) {
+		this.slots = slots;
+	}
+
+	public int getRunningAttempts() {
+		return runningAttempts;
+	}
+
+	public void setRunningAttempts(int runningAttempts) {
+		this.runningAttempts = runningAttempts;
+	}
+
+	public int getQueuedAttempts() {
+		return queuedAttempts;
+	}
+
+	public void setQueuedAttempts(int queuedAttempts) {
+		this.queuedAttempts = queuedAttempts;
+	}
+
+	public long getQueueWaitTime() {
+		return queueWaitTime;
+	}
+
+	public void setQueueWaitTime(long queueWaitTime) {
+		this.queueWaitTime = queueWaitTime;
+	}
+
+	public long getRejectedAttempts() {
+		return rejectedAttempts;
+	}
+
+	public void setRejectedAttempts(long rejectedAttempts) {
+		this.rejectedAttempts = rejectedAttempts;
+	}
+
+	public List<String> getRunningAttemptIDs() {
+		return runningAttemptIDs;
+	}
+
+	public void setRunningAttemptIDs(List<String> runningAttemptIDs) {
+		this.runningAttemptIDs = runningAttemptIDs;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((time == null) ? 0 : time.hashCode());
+		result = prime * result + processors;
+		long temp = Double.doubleToLongBits(loadAverage);
+		result = prime * result + (int) (temp ^ (temp >>> 32));
+		result = prime * result + (int) (freeMemory ^ (freeMemory >>> 32));
+		result = prime * result + (int) (totalMemory ^ (totalMemory >>> 32));
+		result = prime * result + (int) (freeDiskSpace ^ (freeDiskSpace >>> 32));
+		result = prime * result + slots;
+		result = prime * result + runningAttempts;
+		result = prime * result + queuedAttempts;
+		result = prime * result + (int) (queueWaitTime ^ (queueWaitTime >>> 32));
+		result = prime * result + (int) (rejectedAttempts ^ (rejectedAttempts >>> 32));
+		result = prime * result + ((runningAttemptIDs == null) ? 0 : runningAttemptIDs.hashCode());
 		return result;
 	}
 
@@ -39,6 +166,31 @@ public class HeartbeatInfo implements Serializable{
 				return false;
 		} else if (!time.equals(other.time))
 			return false;
+		if (processors != other.processors)
+			return false;
+		if (Double.doubleToLongBits(loadAverage) != Double.doubleToLongBits(other.loadAverage))
+			return false;
+		if (freeMemory != other.freeMemory)
+			return false;
+		if (totalMemory != other.totalMemory)
+			return false;
+		if (freeDiskSpace != other.freeDiskSpace)
+			return false;
+		if (slots != other.slots)
+			return false;
+		if (runningAttempts != other.runningAttempts)
+			return false;
+		if (queuedAttempts != other.queuedAttempts)
+			return false;
+		if (queueWaitTime != other.queueWaitTime)
+			return false;
+		if (rejectedAttempts != other.rejectedAttempts)
+			return false;
+		if (runningAttemptIDs == null) {
+			if (other.runningAttemptIDs != null)
+				return false;
+		} else if (!runningAttemptIDs.equals(other.runningAttemptIDs))
+			return false;
 		return true;
 	}
 }
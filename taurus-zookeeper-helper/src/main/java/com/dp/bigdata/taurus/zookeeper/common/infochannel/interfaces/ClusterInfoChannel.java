@@ -1,6 +1,5 @@
 package com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces;
 
-import java.util.List;
 import java.util.Set;
 
 import org.apache.zookeeper.Watcher;
@@ -15,7 +14,7 @@ public interface ClusterInfoChannel {
 
 	public void updateHeartbeatInfo(MachineType mt, String ip, Object info);
 
-	public List<Object> getHeartbeatInfo(MachineType mt, String ip);
+	public Object getHeartbeatInfo(MachineType mt, String ip);
 	
 	public Set<String> getAllConnectedMachineIps(MachineType mt, Watcher watcher);
 		
@@ -0,0 +1,25 @@
+package com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces;
+
+import java.io.IOException;
+
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.DefaultPayloadCodec;
+import com.google.inject.ImplementedBy;
+
+/**
+ * PayloadCodec converts the objects stored in the znodes to bytes and back.
+ */
+@ImplementedBy(DefaultPayloadCodec.class)
+public interface PayloadCodec {
+
+	/**
+	 * @param o the object, may be null
+	 * @return the bytes, an empty array for null
+	 */
+	public byte[] encode(Object o) throws IOException;
+
+	/**
+	 * @param bytes the bytes, may be empty
+	 * @return the object, null for an empty array
+	 */
+	public Object decode(byte[] bytes) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,97 @@
+package com.dp.bigdata.taurus.zookeeper.common.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * KeyedLock is a registry of reentrant locks by key, e.g. by attempt ID or by task ID. A lock only lives while some
+ * thread holds it or waits for it: every lock(key) is counted, and the lock is removed when the last unlock(key)
+ * brings the count back to 0. So the registry stays as small as the number of keys in use, and there is no global
+ * monitor; only the threads of the same key touch the same entry.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * locks.lock(attemptID);
+ * try {
+ *     ...
+ * } finally {
+ *     locks.unlock(attemptID);
+ * }
+ * </pre>
+ *
+ * lock(key) returns the underlying lock, so a Condition can be created from it while it is held. The count is kept
+ * while the holder awaits the Condition, so a signaller locking the returned lock meets the same lock.
+ */
+public class KeyedLock<K> {
+
+	private final ConcurrentMap<K, Entry> entries = new ConcurrentHashMap<K, Entry>();
+
+	private static final class Entry{
+		final ReentrantLock lock = new ReentrantLock();
+		/*
+		 * the threads holding or waiting for the lock, guarded by the entry; an entry is removed at 0 and never
+		 * used again
+		 */
+		int users;
+		boolean isRemoved;
+	}
+
+	/**
+	 * acquire the lock of the key, it must be released by unlock(key) in the same thread.
+	 *
+	 * @return the lock of the key, which is held by the current thread
+	 */
+	public ReentrantLock lock(K key){
+		Entry entry = retain(key);
+		entry.lock.lock();
+		return entry.lock;
+	}
+
+	/**
+	 * release the lock of the key, and remove it when no other thread holds or waits for it.
+	 *
+	 * @throws IllegalMonitorStateException if the current thread does not hold the lock of the key
+	 */
+	public void unlock(K key){
+		Entry entry = entries.get(key);
+		if(entry == null || !entry.lock.isHeldByCurrentThread()){
+			throw new IllegalMonitorStateException("Lock of " + key + " is not held by the current thread");
+		}
+		entry.lock.unlock();
+		synchronized(entry){
+			if(--entry.users == 0){
+				entry.isRemoved = true;
+				entries.remove(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of keys which are locked or waited for
+	 */
+	public int size(){
+		return entries.size();
+	}
+
+	private Entry retain(K key){
+		while(true){
+			Entry entry = entries.get(key);
+			if(entry == null){
+				Entry created = new Entry();
+				entry = entries.putIfAbsent(key, created);
+				if(entry == null){
+					entry = created;
+				}
+			}
+			synchronized(entry){
+				if(!entry.isRemoved){
+					entry.users++;
+					return entry;
+				}
+			}
+			// the entry has just been removed by its last user, retry with a new one
+		}
+	}
+}
@@ -1,11 +1,8 @@
 package com.dp.bigdata.taurus.zookeeper.deploy.helper;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -17,6 +14,7 @@ import com.dp.bigdata.taurus.zookeeper.common.infochannel.DeploymentInfoChannelM
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentConf;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentStatus;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.DeploymentInfoChannel;
+import com.dp.bigdata.taurus.zookeeper.common.utils.KeyedLock;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
@@ -25,7 +23,7 @@ public class DefaultDeployerManager implements Deployer{
 
 	private static final Log s_logger = LogFactory.getLog(DefaultDeployerManager.class);
 	private static final int DEFAULT_TIME_OUT_IN_SECONDS = 60;
-	private static Map<String, Lock> taskIDToLockMap = new HashMap<String, Lock>();
+	private static final KeyedLock<String> taskLocks = new KeyedLock<String>();
 
 	private DeploymentInfoChannel dic;
 	private int opTimeout = DEFAULT_TIME_OUT_IN_SECONDS;
@@ -35,16 +33,6 @@ public class DefaultDeployerManager implements Deployer{
 		dic = injector.getInstance(DeploymentInfoChannel.class);
 	}
 	
-	private static Lock getLock(String taskID){
-		synchronized(taskIDToLockMap){
-			Lock lock = taskIDToLockMap.get(taskID);
-			if(lock == null){
-				lock = new ReentrantLock();
-				taskIDToLockMap.put(taskID, lock);
-			}
-			return lock;
-		}
-	}
     @Override
     public void deploy(String agentIp, DeploymentContext context) throws DeploymentException {
     	String taskId = context.getTaskID();
@@ -60,9 +48,8 @@ public class DefaultDeployerManager implements Deployer{
 				conf.setTaskID(taskId);
 				status = new DeploymentStatus();
 				status.setStatus(DeploymentStatus.DEPLOY_SUBMITTED);
-				Lock lock = getLock(taskId);
+				Lock lock = taskLocks.lock(taskId);
 				try{
-					lock.lock();
 					Condition deployFinish = lock.newCondition();
 					DeploymentStatusWatcher w = new DeploymentStatusWatcher(lock, deployFinish, dic, agentIp, taskId);
 					dic.deploy(agentIp, taskId, conf, status, w);
@@ -84,7 +71,7 @@ public class DefaultDeployerManager implements Deployer{
 					throw new DeploymentException(e);
 				}
 				finally{
-					lock.unlock();
+					taskLocks.unlock(taskId);
 				}
 				if(status.getStatus() != DeploymentStatus.DEPLOY_SUCCESS) {
 					throw new DeploymentException("Task " + taskId + "deploy failed");
@@ -112,9 +99,8 @@ public class DefaultDeployerManager implements Deployer{
 				throw new DeploymentException("Task " + taskId + " is already deleted!");
 			}else{
 				status.setStatus(DeploymentStatus.DELETE_SUBMITTED);
-				Lock lock = getLock(taskId);
+				Lock lock = taskLocks.lock(taskId);
 				try{
-					lock.lock();
 					Condition deployFinish = lock.newCondition();
 					DeploymentStatusWatcher w = new DeploymentStatusWatcher(lock, deployFinish, dic, agentIp, taskId);
 					dic.undeploy(agentIp, taskId, status, w);
@@ -133,7 +119,7 @@ public class DefaultDeployerManager implements Deployer{
 				} catch (InterruptedException e){
 					throw new DeploymentException(e);
 				} finally{
-					lock.unlock();
+					taskLocks.unlock(taskId);
 				}
 				if(status.getStatus() != DeploymentStatus.DELETE_SUCCESS) {
 					throw new DeploymentException("Task " + taskId + "delete failed");
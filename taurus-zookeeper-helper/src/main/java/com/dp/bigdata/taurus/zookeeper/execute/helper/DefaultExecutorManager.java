@@ -1,23 +1,28 @@
 package com.dp.bigdata.taurus.zookeeper.execute.helper;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
 
 import com.dp.bigdata.taurus.zookeeper.common.MachineType;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.ScheduleInfoChanelModule;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleConf;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleStatus;
 import com.dp.bigdata.taurus.zookeeper.common.infochannel.interfaces.ScheduleInfoChannel;
+import com.dp.bigdata.taurus.zookeeper.common.utils.KeyedLock;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
@@ -31,27 +36,38 @@ public class DefaultExecutorManager implements ExecutorManager{
 	
 	private static final Log s_logger = LogFactory.getLog(DefaultExecutorManager.class);
 	private static final int DEFAULT_TIME_OUT_IN_SECONDS = 10;
-	private static Map<String, Lock> attemptIDToLockMap = new HashMap<String, Lock>();
+	private static final KeyedLock<String> attemptLocks = new KeyedLock<String>();
 
 	private ScheduleInfoChannel dic;
 	private int opTimeout = DEFAULT_TIME_OUT_IN_SECONDS;
+	/*
+	 * connected agents, refreshed by a children watch on the realtime nodes. The watch is lost with an expired
+	 * session, and changes may have been missed while disconnected, so the agents are read again on the next lookup.
+	 */
+	private volatile Set<String> connectedAgents;
+	private final Watcher agentsWatcher = new Watcher() {
+		public void process(WatchedEvent event) {
+			if(event.getType() == EventType.NodeChildrenChanged){
+				connectedAgents = dic.getAllConnectedMachineIps(MachineType.AGENT, this);
+			} else if(event.getType() == EventType.None
+					&& (event.getState() == KeeperState.Expired || event.getState() == KeeperState.SyncConnected)){
+				connectedAgents = null;
+			}
+		}
+	};
+	private final ExecutorService notifier = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ExecuteCompletionNotifier");
+			t.setDaemon(true);
+			return t;
+		}
+	});
 	
 	public DefaultExecutorManager(){
 		Injector injector = Guice.createInjector(new ScheduleInfoChanelModule());
 		dic = injector.getInstance(ScheduleInfoChannel.class);
 	}
 	
-	private static Lock getLock(String attemptID){
-		synchronized(attemptIDToLockMap){
-			Lock lock = attemptIDToLockMap.get(attemptID);
-			if(lock == null){
-				lock = new ReentrantLock();
-				attemptIDToLockMap.put(attemptID, lock);
-			}
-			return lock;
-		}
-	}
-	
     public void execute(ExecuteContext context) throws ExecuteException {
     	
     	String agentIP = context.getAgentIP();
@@ -76,16 +92,15 @@ public class DefaultExecutorManager implements ExecutorManager{
 				conf.setUserName(proxyUser);
 				status = new ScheduleStatus();
 				status.setStatus(ScheduleStatus.SCHEDULE_SUCCESS);
-				Lock lock = getLock(attemptID);
+				attemptLocks.lock(attemptID);
 				try{
-					lock.lock();
 					dic.execute(agentIP, attemptID, conf, status);
 				} catch (RuntimeException e) {
 					status.setStatus(ScheduleStatus.SCHEDULE_FAILED);
 					throw new ExecuteException(e);
 				}	
 				finally{
-					lock.unlock();
+					attemptLocks.unlock(attemptID);
 				}
 			}
 			else{
@@ -110,9 +125,8 @@ public class DefaultExecutorManager implements ExecutorManager{
 				throw new ExecuteException("Job Instance:" + attemptID + " cannot be killed!");
 			}else{
 				status.setStatus(ScheduleStatus.DELETE_SUBMITTED);
-				Lock lock = getLock(attemptID);
+				Lock lock = attemptLocks.lock(attemptID);
 				try{
-					lock.lock();
 					Condition killFinish = lock.newCondition();
 					ScheduleStatusWatcher w = new ScheduleStatusWatcher(lock, killFinish, dic, agentIP, attemptID);
 					dic.killTask(agentIP, attemptID, status, w);
@@ -131,7 +145,7 @@ public class DefaultExecutorManager implements ExecutorManager{
 					throw new ExecuteException("Delete " + attemptID + " failed");
 				}
 				finally{
-					lock.unlock();
+					attemptLocks.unlock(attemptID);
 				}
 				if(status.getStatus()!=ScheduleStatus.DELETE_SUCCESS) {
 					throw new ExecuteException("Delete " + attemptID + " failed");
@@ -144,33 +158,61 @@ public class DefaultExecutorManager implements ExecutorManager{
     	String agentIP = context.getAgentIP();
     	String attemptID = context.getAttemptID();
 
-    	if(!dic.exists(MachineType.AGENT, agentIP)){
-			throw new ExecuteException("Agent unavailable");
-		} else{
-			ScheduleStatus status = (ScheduleStatus) dic.getStatus(agentIP, attemptID, null);
-			if(status == null) {
-				throw new ExecuteException("Fail to get status");
-			}
-			ExecuteStatus result = null;
-			int statusCode = status.getStatus();
-			if(statusCode == ScheduleStatus.EXECUTE_FAILED) {
-				result = new ExecuteStatus(ExecuteStatus.FAILED);
-			} else if(statusCode == ScheduleStatus.EXECUTE_SUCCESS) {
-				result = new ExecuteStatus(ExecuteStatus.SUCCEEDED);
-			} else if(statusCode == ScheduleStatus.DELETE_SUCCESS) {
-				result = new ExecuteStatus(ExecuteStatus.KILLED);
-			} else if(statusCode == ScheduleStatus.SCHEDULE_FAILED) {
-				result = new ExecuteStatus(ExecuteStatus.SUBMIT_FAIL);
-			} else if(statusCode == ScheduleStatus.SCHEDULE_SUCCESS) {
-				result = new ExecuteStatus(ExecuteStatus.SUBMIT_SUCCESS);
-			} else {
-				result = new ExecuteStatus(ExecuteStatus.RUNNING);
+    	// read the status first, the agent is only checked when there is no status
+		ScheduleStatus status = (ScheduleStatus) dic.getStatus(agentIP, attemptID, null);
+		if(status == null){
+			if(!dic.exists(MachineType.AGENT, agentIP)){
+				throw new ExecuteException("Agent unavailable");
 			}
-			result.setReturnCode(status.getReturnCode());
-			return result;
+			throw new ExecuteException("Fail to get status");
+		} else{
+			return toExecuteStatus(status);
 		}
     }
 
+    public void watchCompletion(ExecuteContext context, ExecuteCompletionListener listener) {
+    	CompletionWatcher watcher = new CompletionWatcher(context, listener);
+    	watcher.check();
+    }
+
+    private static ExecuteStatus toExecuteStatus(ScheduleStatus status) {
+		ExecuteStatus result = null;
+		int statusCode = status.getStatus();
+		if(statusCode == ScheduleStatus.EXECUTE_FAILED) {
+			result = new ExecuteStatus(ExecuteStatus.FAILED);
+		} else if(statusCode == ScheduleStatus.EXECUTE_SUCCESS) {
+			result = new ExecuteStatus(ExecuteStatus.SUCCEEDED);
+		} else if(statusCode == ScheduleStatus.DELETE_SUCCESS) {
+			result = new ExecuteStatus(ExecuteStatus.KILLED);
+		} else if(statusCode == ScheduleStatus.SCHEDULE_FAILED) {
+			result = new ExecuteStatus(ExecuteStatus.SUBMIT_FAIL);
+		} else if(statusCode == ScheduleStatus.SCHEDULE_SUCCESS) {
+			result = new ExecuteStatus(ExecuteStatus.SUBMIT_SUCCESS);
+		} else {
+			result = new ExecuteStatus(ExecuteStatus.RUNNING);
+		}
+		result.setReturnCode(status.getReturnCode());
+		return result;
+    }
+
+    public Set<String> getConnectedAgents() {
+    	Set<String> agents = connectedAgents;
+    	if(agents == null || agents.isEmpty()){
+    		// the first read, a reconnected or expired session, or a failed read
+    		agents = dic.getAllConnectedMachineIps(MachineType.AGENT, agentsWatcher);
+    		connectedAgents = agents;
+    	}
+    	return agents;
+    }
+
+    public HeartbeatInfo getHeartbeatInfo(String agentIP) {
+    	Object heartbeat = dic.getHeartbeatInfo(MachineType.AGENT, agentIP);
+    	if(heartbeat instanceof HeartbeatInfo){
+    		return (HeartbeatInfo) heartbeat;
+    	}
+    	return null;
+    }
+
     public List<String> registerNewHost() {
         // TODO Auto-generated method stub
         return null;
@@ -209,4 +251,47 @@ public class DefaultExecutorManager implements ExecutorManager{
 		}
 	}
 
+	/*
+	 * data watch on the status node of a running attempt, it is set again after each change until
+	 * the attempt has finished.
+	 */
+	private final class CompletionWatcher implements Watcher{
+
+		private final ExecuteContext context;
+		private final ExecuteCompletionListener listener;
+
+		CompletionWatcher(ExecuteContext context, ExecuteCompletionListener listener){
+			this.context = context;
+			this.listener = listener;
+		}
+
+		@Override
+		public void process(WatchedEvent event) {
+			if(event.getType() == EventType.NodeDataChanged){
+				check();
+			}
+		}
+
+		void check(){
+			ScheduleStatus status = (ScheduleStatus) dic.getStatus(context.getAgentIP(), context.getAttemptID(), this);
+			if(status == null){
+				return;
+			}
+			final ExecuteStatus result = toExecuteStatus(status);
+			int code = result.getStatus();
+			if(code == ExecuteStatus.SUCCEEDED || code == ExecuteStatus.FAILED || code == ExecuteStatus.KILLED
+					|| code == ExecuteStatus.SUBMIT_FAIL){
+				// never block the zookeeper event thread with the listener
+				notifier.execute(new Runnable() {
+					public void run() {
+						try{
+							listener.onCompleted(context, result);
+						} catch(RuntimeException e){
+							s_logger.error("Fail to notify the completion of " + context.getAttemptID(), e);
+						}
+					}
+				});
+			}
+		}
+	}
 }
@@ -0,0 +1,18 @@
+package com.dp.bigdata.taurus.zookeeper.execute.helper;
+
+/**
+ * 
+ * ExecuteCompletionListener is notified when an attempt reaches a final status.
+ * @author damon.zhu
+ *
+ */
+public interface ExecuteCompletionListener {
+
+    /**
+     * the attempt has finished
+     * @param context
+     * @param status SUCCEEDED, FAILED or KILLED
+     */
+    public void onCompleted(ExecuteContext context, ExecuteStatus status);
+
+}
@@ -1,6 +1,9 @@
 package com.dp.bigdata.taurus.zookeeper.execute.helper;
 
 import java.util.List;
+import java.util.Set;
+
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
 
 /**
  * 
@@ -31,7 +34,27 @@ public interface ExecutorManager {
      * @throws ScheduleException
      */
     public ExecuteStatus getStatus(ExecuteContext context) throws ExecuteException;
+
+    /**
+     * watch the status of the attempt, the listener is called once the attempt has finished
+     * @param context
+     * @param listener
+     */
+    public void watchCompletion(ExecuteContext context, ExecuteCompletionListener listener);
     
+    /**
+     * get the ips of the agents which are connected to the cluster now
+     * @return Set<ip>
+     */
+    public Set<String> getConnectedAgents();
+
+    /**
+     * get the latest heartbeat of the given agent
+     * @param agentIP
+     * @return HeartbeatInfo, null if the agent has not reported any heartbeat
+     */
+    public HeartbeatInfo getHeartbeatInfo(String agentIP);
+
     /**
      * get all new agent hosts List<ip>
      * @return List<Host>
@@ -0,0 +1,98 @@
+package com.dp.bigdata.taurus.zookeeper.common.infochannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleConf;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleStatus;
+
+/**
+ * DefaultPayloadCodecBenchmark compares the size and the encode + decode time of the binary and the java formats for
+ * the payloads written on every heartbeat and attempt. It is not a unit test, run it by hand on a quiet machine:
+ *
+ * <pre>
+ * java -Drounds=200000 -Diterations=5 com.dp.bigdata.taurus.zookeeper.common.infochannel.DefaultPayloadCodecBenchmark
+ * </pre>
+ */
+public class DefaultPayloadCodecBenchmark {
+
+	private final int rounds;
+	private final int iterations;
+	/*
+	 * keeps the decoded objects reachable, so the loops are not optimized away
+	 */
+	private int sink;
+
+	public DefaultPayloadCodecBenchmark(int rounds, int iterations){
+		this.rounds = rounds;
+		this.iterations = iterations;
+	}
+
+	public static void main(String[] args) throws Exception{
+		DefaultPayloadCodecBenchmark benchmark = new DefaultPayloadCodecBenchmark(Integer.getInteger("rounds", 200000),
+				Integer.getInteger("iterations", 5));
+		benchmark.run("HeartbeatInfo", heartbeat());
+		benchmark.run("ScheduleConf", scheduleConf());
+		benchmark.run("ScheduleStatus", scheduleStatus());
+	}
+
+	private void run(String name, Object payload) throws Exception{
+		DefaultPayloadCodec binary = new DefaultPayloadCodec(DefaultPayloadCodec.FORMAT_BINARY);
+		DefaultPayloadCodec java = new DefaultPayloadCodec(DefaultPayloadCodec.FORMAT_JAVA);
+		// the first iteration warms up
+		measure(binary, payload);
+		measure(java, payload);
+		long binaryTime = Long.MAX_VALUE;
+		long javaTime = Long.MAX_VALUE;
+		for(int i = 0; i < iterations; i++){
+			binaryTime = Math.min(binaryTime, measure(binary, payload));
+			javaTime = Math.min(javaTime, measure(java, payload));
+		}
+		System.out.println(name + " : binary " + binary.encode(payload).length + " bytes " + binaryTime / rounds
+				+ " ns, java " + java.encode(payload).length + " bytes " + javaTime / rounds + " ns");
+	}
+
+	private long measure(DefaultPayloadCodec codec, Object payload) throws Exception{
+		long start = System.nanoTime();
+		for(int i = 0; i < rounds; i++){
+			sink += codec.decode(codec.encode(payload)).hashCode();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static HeartbeatInfo heartbeat(){
+		HeartbeatInfo info = new HeartbeatInfo();
+		info.setTime(new Date(1350455520000L));
+		info.setProcessors(8);
+		info.setLoadAverage(1.25);
+		info.setFreeMemory(3L << 30);
+		info.setTotalMemory(16L << 30);
+		info.setFreeDiskSpace(500L << 30);
+		info.setSlots(4);
+		info.setRunningAttempts(3);
+		info.setQueuedAttempts(1);
+		info.setQueueWaitTime(120);
+		info.setRejectedAttempts(0);
+		info.setRunningAttemptIDs(new ArrayList<String>(Arrays.asList("attempt_201210171442_0001_0001_0001",
+				"attempt_201210171442_0002_0001_0001", "attempt_201210171442_0003_0001_0002")));
+		return info;
+	}
+
+	private static ScheduleConf scheduleConf(){
+		ScheduleConf conf = new ScheduleConf();
+		conf.setTaskID("task_201210171442_0001");
+		conf.setAttemptID("attempt_201210171442_0001_0001_0001");
+		conf.setCommand("sh run.sh 2012-10-17");
+		conf.setTaskType("other");
+		conf.setUserName("nobody");
+		return conf;
+	}
+
+	private static ScheduleStatus scheduleStatus(){
+		ScheduleStatus status = new ScheduleStatus(ScheduleStatus.EXECUTE_SUCCESS);
+		status.setReturnCode(0);
+		return status;
+	}
+}
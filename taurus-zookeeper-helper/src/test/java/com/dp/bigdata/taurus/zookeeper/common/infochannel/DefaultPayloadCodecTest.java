@@ -0,0 +1,164 @@
+package com.dp.bigdata.taurus.zookeeper.common.infochannel;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentConf;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.DeploymentStatus;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.HeartbeatInfo;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleConf;
+import com.dp.bigdata.taurus.zookeeper.common.infochannel.bean.ScheduleStatus;
+
+public class DefaultPayloadCodecTest {
+
+	private final DefaultPayloadCodec binary = new DefaultPayloadCodec(DefaultPayloadCodec.FORMAT_BINARY);
+	private final DefaultPayloadCodec java = new DefaultPayloadCodec(DefaultPayloadCodec.FORMAT_JAVA);
+
+	private static ScheduleConf scheduleConf(){
+		ScheduleConf conf = new ScheduleConf();
+		conf.setTaskID("task_201210171442_0001");
+		conf.setAttemptID("attempt_201210171442_0001_0001_0001");
+		conf.setCommand("echo \u4efb\u52a1 && sleep 1");
+		conf.setTaskType("other");
+		conf.setUserName("nobody");
+		// pid is not set yet
+		return conf;
+	}
+
+	private static HeartbeatInfo heartbeat(){
+		HeartbeatInfo info = new HeartbeatInfo();
+		info.setTime(new Date(1350455520000L));
+		info.setProcessors(8);
+		info.setLoadAverage(1.25);
+		info.setFreeMemory(3L << 30);
+		info.setTotalMemory(16L << 30);
+		info.setFreeDiskSpace(500L << 30);
+		info.setSlots(4);
+		info.setRunningAttempts(3);
+		info.setQueuedAttempts(1);
+		info.setQueueWaitTime(120);
+		info.setRejectedAttempts(0);
+		info.setRunningAttemptIDs(new ArrayList<String>(Arrays.asList("attempt_201210171442_0001_0001_0001",
+				"attempt_201210171442_0002_0001_0001", "attempt_201210171442_0003_0001_0002")));
+		return info;
+	}
+
+	private static byte[] serialize(Object o) throws IOException{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bos);
+		out.writeObject(o);
+		out.close();
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testScheduleConf() throws Exception{
+		ScheduleConf conf = scheduleConf();
+		byte[] bytes = binary.encode(conf);
+		assertEquals(DefaultPayloadCodec.MAGIC, bytes[0]);
+		ScheduleConf decoded = (ScheduleConf) binary.decode(bytes);
+		assertEquals(conf.getTaskID(), decoded.getTaskID());
+		assertEquals(conf.getAttemptID(), decoded.getAttemptID());
+		assertEquals(conf.getCommand(), decoded.getCommand());
+		assertEquals(conf.getTaskType(), decoded.getTaskType());
+		assertEquals(conf.getUserName(), decoded.getUserName());
+		assertNull(decoded.getPid());
+	}
+
+	@Test
+	public void testScheduleStatus() throws Exception{
+		ScheduleStatus status = new ScheduleStatus(ScheduleStatus.EXECUTE_FAILED);
+		status.setFailureInfo("exit");
+		// negative return codes are zigzag encoded
+		status.setReturnCode(-1);
+		ScheduleStatus decoded = (ScheduleStatus) binary.decode(binary.encode(status));
+		assertEquals(status, decoded);
+		assertEquals(-1, decoded.getReturnCode());
+	}
+
+	@Test
+	public void testDeployment() throws Exception{
+		DeploymentConf conf = new DeploymentConf();
+		conf.setHdfsPath("/user/taurus/task_201210171442_0001.tar.gz");
+		conf.setTaskID("task_201210171442_0001");
+		conf.setLocalPath("/data/app/taurus/task_201210171442_0001");
+		assertEquals(conf, binary.decode(binary.encode(conf)));
+
+		DeploymentStatus status = new DeploymentStatus(DeploymentStatus.DEPLOY_FAILED);
+		status.setFailureInfo("no such file");
+		assertEquals(status, binary.decode(binary.encode(status)));
+	}
+
+	@Test
+	public void testHeartbeatInfo() throws Exception{
+		HeartbeatInfo info = heartbeat();
+		HeartbeatInfo decoded = (HeartbeatInfo) binary.decode(binary.encode(info));
+		assertEquals(info, decoded);
+		// tag 12 is repeated once per attempt, in order
+		assertEquals(3, decoded.getRunningAttemptIDs().size());
+		assertEquals("attempt_201210171442_0003_0001_0002", decoded.getRunningAttemptIDs().get(2));
+
+		info.setRunningAttemptIDs(new ArrayList<String>());
+		info.setTime(null);
+		decoded = (HeartbeatInfo) binary.decode(binary.encode(info));
+		assertTrue(decoded.getRunningAttemptIDs().isEmpty());
+		assertNull(decoded.getTime());
+	}
+
+	@Test
+	public void testListAndOthers() throws Exception{
+		List<Object> list = new ArrayList<Object>();
+		list.add(new ScheduleStatus(ScheduleStatus.SCHEDULED));
+		list.add(null);
+		// classes without a binary form are embedded as java serialization
+		list.add(new Date(1350455520000L));
+		assertEquals(list, binary.decode(binary.encode(list)));
+
+		assertEquals(0, binary.encode(null).length);
+		assertNull(binary.decode(new byte[0]));
+		assertNull(binary.decode(null));
+	}
+
+	@Test
+	public void testLegacyPayloads() throws Exception{
+		HeartbeatInfo info = heartbeat();
+		// written by an agent which still serializes its beans
+		assertEquals(info, binary.decode(serialize(info)));
+		assertEquals(info, binary.decode(java.encode(info)));
+		ScheduleStatus status = new ScheduleStatus(ScheduleStatus.EXECUTE_SUCCESS);
+		assertEquals(status, binary.decode(serialize(status)));
+		// and the java format reads the binary payloads of the new agents
+		assertEquals(info, java.decode(binary.encode(info)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownFormat() throws Exception{
+		binary.decode(new byte[] { 1, 2, 3 });
+	}
+
+	@Test(expected = IOException.class)
+	public void testNewerVersion() throws Exception{
+		binary.decode(new byte[] { DefaultPayloadCodec.MAGIC, DefaultPayloadCodec.VERSION + 1, 0 });
+	}
+
+	/*
+	 * the binary heartbeat is several times smaller than the serialized one, DefaultPayloadCodecBenchmark compares
+	 * their speed
+	 */
+	@Test
+	public void testSize() throws Exception{
+		HeartbeatInfo info = heartbeat();
+		int binarySize = binary.encode(info).length;
+		int javaSize = java.encode(info).length;
+		assertTrue(binarySize + " bytes against " + javaSize, binarySize * 3 < javaSize);
+	}
+}
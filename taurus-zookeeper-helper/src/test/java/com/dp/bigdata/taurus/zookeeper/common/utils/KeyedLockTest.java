@@ -0,0 +1,102 @@
+package com.dp.bigdata.taurus.zookeeper.common.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+public class KeyedLockTest {
+
+	private static final int THREADS = 8;
+	private static final int ATTEMPTS = 1000000;
+
+	@Test
+	public void testReentrant(){
+		KeyedLock<String> locks = new KeyedLock<String>();
+		locks.lock("attempt_1");
+		locks.lock("attempt_1");
+		assertEquals(1, locks.size());
+		locks.unlock("attempt_1");
+		assertEquals(1, locks.size());
+		locks.unlock("attempt_1");
+		assertEquals(0, locks.size());
+	}
+
+	@Test(expected = IllegalMonitorStateException.class)
+	public void testUnlockNotHeld(){
+		new KeyedLock<String>().unlock("attempt_1");
+	}
+
+	@Test
+	public void testCondition() throws InterruptedException{
+		final KeyedLock<String> locks = new KeyedLock<String>();
+		final Lock lock = locks.lock("attempt_1");
+		final Condition finish = lock.newCondition();
+		Thread signaller = new Thread(){
+			public void run(){
+				lock.lock();
+				try{
+					finish.signal();
+				} finally{
+					lock.unlock();
+				}
+			}
+		};
+		try{
+			signaller.start();
+			assertTrue(finish.await(10, TimeUnit.SECONDS));
+		} finally{
+			locks.unlock("attempt_1");
+		}
+		assertEquals(0, locks.size());
+	}
+
+	/*
+	 * a million attempts of few threads sharing some keys: the locks exclude each other, and none is left behind
+	 */
+	@Test
+	public void testSoak() throws InterruptedException{
+		final KeyedLock<String> locks = new KeyedLock<String>();
+		final int[] counters = new int[ATTEMPTS / 4];
+		final AtomicInteger maxSize = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for(int t = 0; t < THREADS; t++){
+			final int offset = t;
+			new Thread(){
+				public void run(){
+					try{
+						for(int i = offset; i < ATTEMPTS; i += THREADS){
+							// every key is locked 4 times by neighbouring threads
+							String attemptID = "attempt_" + (i / 4);
+							locks.lock(attemptID);
+							try{
+								counters[i / 4]++;
+							} finally{
+								locks.unlock(attemptID);
+							}
+							if(i % 1000 == 0){
+								int size = locks.size();
+								if(size > maxSize.get()){
+									maxSize.set(size);
+								}
+							}
+						}
+					} finally{
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		assertTrue(done.await(5, TimeUnit.MINUTES));
+		for(int counter : counters){
+			assertEquals(4, counter);
+		}
+		assertEquals(0, locks.size());
+		assertTrue(maxSize.get() <= THREADS);
+	}
+}